@@ -187,7 +187,8 @@ public final class ConnectionFactory {
 
     /**
      * Creates a new Session to the target DoveMQ broker. Internally, it creates
-     * an AMQP connection. It then creates an AMQP session over it.
+     * an AMQP session over the least loaded of a pool of AMQP connections to
+     * the broker, opening a new connection if the pool is not full yet.
      *
      * @param targetDoveMQBrokerAddress
      * @return Session, that encapsulates an AMQP session
@@ -18,29 +18,30 @@
 package net.dovemq.broker.endpoint;
 
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import net.dovemq.transport.utils.CAMQPThreadFactory;
+import net.dovemq.transport.utils.CAMQPThreadPool;
+import net.dovemq.transport.utils.CAMQPThreadingConfig;
 
 public abstract class DoveMQAbstractEndpointManager implements DoveMQEndpointManager {
-    private static final int NUM_ENDPOINT_MANAGER_THREADS = 128;
-
-    private final ThreadPoolExecutor executor;
+    private final CAMQPThreadPool executor;
 
     DoveMQAbstractEndpointManager() {
-        executor = new ThreadPoolExecutor(NUM_ENDPOINT_MANAGER_THREADS,
-                NUM_ENDPOINT_MANAGER_THREADS, 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(), new CAMQPThreadFactory(
-                        "DoveMQEndpointManagerThread"));
-        executor.allowCoreThreadTimeOut(true);
+        executor = CAMQPThreadPool.createThreadPool("DoveMQEndpointManagerThread",
+                CAMQPThreadingConfig.getRouterThreadCount());
     }
 
     ExecutorService getExecutor() {
         return executor;
     }
 
+    /**
+     * @return number of routing tasks waiting for a thread
+     */
+    public int getRouterQueueDepth() {
+        return executor.getQueueDepth();
+    }
+
     public void shutdown() {
         executor.shutdown();
         try {
@@ -17,13 +17,11 @@
 
 package net.dovemq.broker.endpoint;
 
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.dovemq.api.DoveMQMessage;
 import net.dovemq.transport.endpoint.CAMQPTargetInterface;
+import net.dovemq.transport.endpoint.CAMQPUnsettledDeliveryStore;
 import net.dovemq.transport.endpoint.DoveMQMessageImpl;
 import net.jcip.annotations.Immutable;
 
@@ -97,10 +95,11 @@ final class PublisherContext {
     }
 
     void subscriberDetached(long subscriberAttachTime, long now) {
-        Set<Long> inFlightMessageIds = inFlightMessages.keySet();
-        for (long deliveryId : inFlightMessageIds) {
+        for (long deliveryId = inFlightMessages.ceilingDeliveryId(0, Long.MAX_VALUE);
+                deliveryId != -1;
+                deliveryId = inFlightMessages.ceilingDeliveryId(deliveryId + 1, Long.MAX_VALUE)) {
             MessageContext msgContext = inFlightMessages.get(deliveryId);
-            if (msgContext.sentInBetween(subscriberAttachTime, now)) {
+            if ((msgContext != null) && msgContext.sentInBetween(subscriberAttachTime, now)) {
                 int numSubscribersLeftToAck = msgContext.numSubscribers.decrementAndGet();
 
                 /*
@@ -115,5 +114,5 @@ final class PublisherContext {
     }
 
     private final CAMQPTargetInterface publisher;
-    private final ConcurrentMap<Long, MessageContext> inFlightMessages = new ConcurrentHashMap<>();
+    private final CAMQPUnsettledDeliveryStore<MessageContext> inFlightMessages = new CAMQPUnsettledDeliveryStore<>();
 }
@@ -19,7 +19,6 @@ package net.dovemq.broker.endpoint;
 
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
@@ -28,6 +27,7 @@ import net.dovemq.api.DoveMQMessage;
 import net.dovemq.transport.endpoint.CAMQPMessageDispositionObserver;
 import net.dovemq.transport.endpoint.CAMQPSourceInterface;
 import net.dovemq.transport.endpoint.CAMQPTargetInterface;
+import net.dovemq.transport.endpoint.CAMQPUnsettledDeliveryStore;
 import net.dovemq.transport.endpoint.DoveMQMessageImpl;
 import net.dovemq.transport.protocol.data.CAMQPConstants;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionError;
@@ -53,7 +53,7 @@ final class QueueRouter implements
 
     private final Queue<CAMQPSourceInterface> consumerProxies = new LinkedList<>();
 
-    private final ConcurrentMap<Long, ConcurrentMap<Long, DoveMQMessage>> inFlightMessagesByConsumerId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, CAMQPUnsettledDeliveryStore<DoveMQMessage>> inFlightMessagesByConsumerId = new ConcurrentHashMap<>();
 
     private CAMQPTargetInterface producerSink = null;
 
@@ -142,7 +142,7 @@ final class QueueRouter implements
 
             try {
                 long deliveryId = ((DoveMQMessageImpl) messageToSend).getDeliveryId();
-                ConcurrentMap<Long, DoveMQMessage> messageMap = inFlightMessagesByConsumerId.get(consumerProxy.getId());
+                CAMQPUnsettledDeliveryStore<DoveMQMessage> messageMap = inFlightMessagesByConsumerId.get(consumerProxy.getId());
                 if (messageMap != null) {
                     messageMap.put(deliveryId, messageToSend);
                 }
@@ -164,7 +164,7 @@ final class QueueRouter implements
     @Override
     public void messageAckedByConsumer(DoveMQMessage message, CAMQPSourceInterface consumer) {
         long deliveryId = ((DoveMQMessageImpl) message).getDeliveryId();
-        ConcurrentMap<Long, DoveMQMessage> messageMap = inFlightMessagesByConsumerId.get(consumer.getId());
+        CAMQPUnsettledDeliveryStore<DoveMQMessage> messageMap = inFlightMessagesByConsumerId.get(consumer.getId());
         if (messageMap != null) {
             if (messageMap.remove(deliveryId) != null) {
                 acknowledgeMessageDelivered(message, deliveryId);
@@ -191,7 +191,7 @@ final class QueueRouter implements
         }
         consumerProxy.registerDispositionObserver(this);
 
-        ConcurrentMap<Long, DoveMQMessage> messageMap = new ConcurrentHashMap<>();
+        CAMQPUnsettledDeliveryStore<DoveMQMessage> messageMap = new CAMQPUnsettledDeliveryStore<>();
         inFlightMessagesByConsumerId.put(consumerProxy.getId(), messageMap);
 
         if (currentDestination != null) {
@@ -209,7 +209,7 @@ final class QueueRouter implements
         synchronized (this) {
             consumerProxies.remove(consumerProxy);
         }
-        final ConcurrentMap<Long, DoveMQMessage> messageMap = inFlightMessagesByConsumerId.remove(consumerProxy.getId());
+        final CAMQPUnsettledDeliveryStore<DoveMQMessage> messageMap = inFlightMessagesByConsumerId.remove(consumerProxy.getId());
         /*
          * Since the consumer has detached, treat the following messages as
          * having been acked and notify the producer, so its link-credit window
@@ -219,10 +219,13 @@ final class QueueRouter implements
             DoveMQEndpointDriver.getExecutor().execute(new Runnable() {
                 @Override
                 public void run() {
-                    Set<Long> deliveryIds = messageMap.keySet();
-                    for (long deliveryId : deliveryIds) {
+                    for (long deliveryId = messageMap.ceilingDeliveryId(0, Long.MAX_VALUE);
+                            deliveryId != -1;
+                            deliveryId = messageMap.ceilingDeliveryId(deliveryId + 1, Long.MAX_VALUE)) {
                         DoveMQMessage message = messageMap.get(deliveryId);
-                        acknowledgeMessageDelivered(message, deliveryId);
+                        if (message != null) {
+                            acknowledgeMessageDelivered(message, deliveryId);
+                        }
                     }
                 }
             });
@@ -18,14 +18,15 @@
 package net.dovemq.transport.connection;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import net.dovemq.transport.frame.CAMQPFrame;
 import net.dovemq.transport.frame.CAMQPFrameConstants;
 import net.dovemq.transport.frame.CAMQPFrameHeader;
+import net.dovemq.transport.protocol.CAMQPBufferLease;
 import net.dovemq.transport.session.CAMQPSessionFrameHandler;
 import net.dovemq.transport.session.CAMQPSessionInterface;
 import net.jcip.annotations.GuardedBy;
@@ -44,16 +45,22 @@ import org.jboss.netty.channel.Channel;
  *
  */
 @ThreadSafe
-final class CAMQPConnection implements CAMQPConnectionInterface {
+final class CAMQPConnection implements CAMQPConnectionInterface, CAMQPSender.WritabilityListener {
     private final CAMQPConnectionStateActor stateActor;
 
     private CAMQPSender sender = null;
 
-    @GuardedBy("stateActor")
-    private final Map<Integer, CAMQPIncomingChannelHandler> incomingChannels = new HashMap<>();
+    /*
+     * Dispatch table of the attached incoming channels, indexed by the
+     * channel number. Updated under the stateActor lock, but read without
+     * any lock when dispatching incoming frames. The peer cannot use a
+     * channel number above the channel-max that we advertise.
+     */
+    private final AtomicReferenceArray<CAMQPIncomingChannelHandler> incomingChannels =
+            new AtomicReferenceArray<>(CAMQPConnectionConstants.MAX_CHANNELS_SUPPORTED + 1);
 
     @GuardedBy("stateActor")
-    private final boolean[] outgoingChannelsInUse = new boolean[CAMQPConnectionConstants.MAX_CHANNELS_SUPPORTED];
+    private final BitSet outgoingChannelsInUse = new BitSet(CAMQPConnectionConstants.MAX_CHANNELS_SUPPORTED);
 
     private final CAMQPSessionFrameHandler sessionFrameHandler = CAMQPSessionFrameHandler.createInstance();
 
@@ -62,10 +69,10 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
     }
 
     CAMQPConnection(CAMQPConnectionStateActor stateActor) {
-        Arrays.fill(outgoingChannelsInUse, false);
         this.stateActor = stateActor;
         if (!stateActor.isInitiator) {
             sender = stateActor.sender;
+            sender.setWritabilityListener(this);
             CAMQPConnectionHandler connectionHandler = sender.getChannel()
                     .getPipeline()
                     .get(CAMQPConnectionHandler.class);
@@ -97,6 +104,49 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
         sender.sendBuffer(ChannelBuffers.wrappedBuffer(header, data), CAMQPFrameConstants.FRAME_TYPE_SESSION);
     }
 
+    /**
+     * Send an AMQP frame that already contains its frame header. The pooled
+     * buffers (if any) are released on write completion.
+     *
+     * @param frame
+     * @param bufferLease
+     */
+    @Override
+    public void sendEncodedFrame(ChannelBuffer frame, CAMQPBufferLease bufferLease) {
+        sender.sendBuffer(frame, CAMQPFrameConstants.FRAME_TYPE_SESSION, bufferLease);
+    }
+
+    @Override
+    public boolean isWritable() {
+        CAMQPSender currentSender = sender;
+        return (currentSender == null) || currentSender.isWritable();
+    }
+
+    @Override
+    public long getOutboundBytes() {
+        CAMQPSender currentSender = sender;
+        return (currentSender == null) ? 0 : currentSender.getOutboundBytes();
+    }
+
+    @Override
+    public long getMaxFrameSize() {
+        return stateActor.getConnectionProps().getMaxFrameSizeSupported();
+    }
+
+    /**
+     * Notifies the attached channels that the connection is writable again,
+     * so they resume sending transfer frames.
+     */
+    @Override
+    public void writabilityRestored() {
+        for (int i = 0; i < incomingChannels.length(); i++) {
+            CAMQPIncomingChannelHandler channelHandler = incomingChannels.get(i);
+            if (channelHandler != null) {
+                channelHandler.channelWritable();
+            }
+        }
+    }
+
     /**
      * Initiate AMQP connection handshake
      *
@@ -119,6 +169,7 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
     void waitForReady() {
         stateActor.waitForOpenExchange();
         sender = stateActor.sender;
+        sender.setWritabilityListener(this);
         CAMQPConnectionManager.connectionCreated(stateActor.key, this);
     }
 
@@ -159,11 +210,10 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
             /*
              * ChannelID 0 is reserved for Connection control
              */
-            for (int i = 1; i < maxChannels; i++) {
-                if (!outgoingChannelsInUse[i]) {
-                    outgoingChannelsInUse[i] = true;
-                    return i;
-                }
+            int channelNumber = outgoingChannelsInUse.nextClearBit(1);
+            if (channelNumber < maxChannels) {
+                outgoingChannelsInUse.set(channelNumber);
+                return channelNumber;
             }
             throw new CAMQPConnectionException("All channels on this connection are in use; connection key: " + stateActor.key.toString());
         }
@@ -179,8 +229,11 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
     @Override
     public void register(int receiveChannelNumber, CAMQPIncomingChannelHandler channelHandler) {
         synchronized (stateActor) {
+            if ((receiveChannelNumber < 0) || (receiveChannelNumber >= incomingChannels.length())) {
+                throw new CAMQPConnectionException("Channel number " + receiveChannelNumber + " exceeds channel-max; connection key: " + stateActor.key.toString());
+            }
             if (stateActor.canAttachChannels()) {
-                incomingChannels.put(receiveChannelNumber, channelHandler);
+                incomingChannels.set(receiveChannelNumber, channelHandler);
             } else {
                 throw new IllegalStateException("Not connected anymore; connection key: " + stateActor.key.toString());
             }
@@ -196,9 +249,22 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
     @Override
     public void detach(int outgoingChannelNumber, int incomingChannelNumber) {
         synchronized (stateActor) {
-            outgoingChannelsInUse[outgoingChannelNumber] = false;
-            incomingChannels.remove(incomingChannelNumber);
+            outgoingChannelsInUse.clear(outgoingChannelNumber);
+            if ((incomingChannelNumber >= 0) && (incomingChannelNumber < incomingChannels.length())) {
+                incomingChannels.set(incomingChannelNumber, null);
+            }
+        }
+    }
+
+    /*
+     * Looks up the channelHandler attached to the incoming channelNumber,
+     * without locking.
+     */
+    private CAMQPIncomingChannelHandler getIncomingChannelHandler(int channelNumber) {
+        if (channelNumber >= incomingChannels.length()) {
+            return null;
         }
+        return incomingChannels.get(channelNumber);
     }
 
     /**
@@ -210,10 +276,7 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
      * @param frame
      */
     void frameReceived(int channelNumber, CAMQPFrame frame) {
-        CAMQPIncomingChannelHandler channelHandler = null;
-        synchronized (stateActor) {
-            channelHandler = incomingChannels.get(channelNumber);
-        }
+        CAMQPIncomingChannelHandler channelHandler = getIncomingChannelHandler(channelNumber);
 
         if (channelHandler == null) {
             /*
@@ -227,12 +290,37 @@ final class CAMQPConnection implements CAMQPConnectionInterface {
         }
     }
 
+    /**
+     * Dispatches a batch of incoming AMQP frames received on the same
+     * channelNumber. The channelHandler is looked up once for the whole
+     * batch. If the channel has not been attached yet, the frames are
+     * dispatched one at a time, since one of them may attach it.
+     *
+     * @param channelNumber
+     * @param frames
+     */
+    void framesReceived(int channelNumber, List<CAMQPFrame> frames) {
+        CAMQPIncomingChannelHandler channelHandler = getIncomingChannelHandler(channelNumber);
+
+        if (channelHandler == null) {
+            for (CAMQPFrame frame : frames) {
+                frameReceived(channelNumber, frame);
+            }
+        }
+        else {
+            channelHandler.framesReceived(frames);
+        }
+    }
+
     void aborted() {
         Collection<CAMQPIncomingChannelHandler> channelsToDetach = new ArrayList<>();
 
         synchronized (stateActor) {
-            if (incomingChannels.size() > 0) {
-                channelsToDetach.addAll(incomingChannels.values());
+            for (int i = 0; i < incomingChannels.length(); i++) {
+                CAMQPIncomingChannelHandler channelHandler = incomingChannels.get(i);
+                if (channelHandler != null) {
+                    channelsToDetach.add(channelHandler);
+                }
             }
         }
         for (CAMQPIncomingChannelHandler channelHandler : channelsToDetach) {
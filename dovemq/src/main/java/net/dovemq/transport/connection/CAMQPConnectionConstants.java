@@ -34,7 +34,24 @@ public final class CAMQPConnectionConstants {
 
     protected static final long HEARTBEAT_PERIOD = 30000L; // milliseconds
 
-    protected static final int DEFAULT_HEARTBEAT_PROCESSOR_THREAD_COUNT = 4;
+    protected static final long HEARTBEAT_TIMER_TICK = 10L; // milliseconds
+
+    protected static final int HEARTBEAT_TIMER_WHEEL_SIZE = 512;
+
+    protected static final long DEFAULT_MAX_FRAME_SIZE = 64 * 1024;
+
+    /*
+     * Smallest max-frame-size an AMQP peer may advertise
+     */
+    protected static final long MIN_MAX_FRAME_SIZE = 512;
 
     protected static final long CONNECTION_HANDSHAKE_TIMEOUT = 10000L; // milliseconds
+
+    protected static final int DEFAULT_MAX_FLUSH_BATCH_BYTES = 64 * 1024;
+
+    protected static final long DEFAULT_MAX_FLUSH_DELAY = 0L; // milliseconds
+
+    protected static final long DEFAULT_WRITE_BUFFER_HIGH_WATERMARK = 4 * 1024 * 1024;
+
+    protected static final long DEFAULT_WRITE_BUFFER_LOW_WATERMARK = 2 * 1024 * 1024;
 }
@@ -18,16 +18,12 @@
 package net.dovemq.transport.connection;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import net.dovemq.transport.utils.CAMQPThreadFactory;
-
 import org.apache.log4j.Logger;
 import org.jboss.netty.bootstrap.ClientBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
 
 /**
  * Factory for creating AMQP Connection
@@ -61,11 +57,7 @@ public final class CAMQPConnectionFactory {
     }
 
     private CAMQPConnectionFactory() {
-        bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(
-                Executors.newCachedThreadPool(new CAMQPThreadFactory(
-                        "DoveMQNettyBossThread")),
-                Executors.newCachedThreadPool(new CAMQPThreadFactory(
-                        "DoveMQNettyWorkerThread"))));
+        bootstrap = new ClientBootstrap(CAMQPTransport.createClientChannelFactory());
 
         bootstrap.setPipelineFactory(new CAMQPConnectionPipelineFactory(true, null));
     }
@@ -17,12 +17,14 @@
 
 package net.dovemq.transport.connection;
 
+import java.util.List;
+
 import net.dovemq.transport.frame.CAMQPFrame;
-import net.dovemq.transport.frame.CAMQPFrameHeader;
 import net.dovemq.transport.frame.CAMQPHandshakeFrame;
 import net.dovemq.transport.protocol.CAMQPSyncDecoder;
 import net.dovemq.transport.protocol.data.CAMQPControlClose;
 import net.dovemq.transport.protocol.data.CAMQPControlOpen;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -113,6 +115,7 @@ final class CAMQPConnectionHandler extends SimpleChannelUpstreamHandler {
 
     @Override
     public void messageReceived(ChannelHandlerContext ctx, final MessageEvent e) {
+        stateActor.dataReceived();
         Object message = e.getMessage();
         if (message instanceof CAMQPHandshakeFrame) {
             handshakeFrameReceived((CAMQPHandshakeFrame) message);
@@ -120,6 +123,11 @@ final class CAMQPConnectionHandler extends SimpleChannelUpstreamHandler {
         else if (message instanceof CAMQPFrame) {
             frameReceived((CAMQPFrame) message);
         }
+        else if (message instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<CAMQPFrame> frames = (List<CAMQPFrame>) message;
+            framesReceived(frames);
+        }
         else {
             ctx.sendUpstream(e);
         }
@@ -129,14 +137,40 @@ final class CAMQPConnectionHandler extends SimpleChannelUpstreamHandler {
         stateActor.connectionHeaderBytesReceived(frame.getBody());
     }
 
+    /**
+     * Process a batch of incoming AMQP frames, decoded from a single read.
+     * Consecutive session/link frames of the same channel are dispatched
+     * together, so that the channel is looked up once for all of them.
+     *
+     * @param frames
+     */
+    private void framesReceived(List<CAMQPFrame> frames) {
+        int frameCount = frames.size();
+        int index = 0;
+        while (index < frameCount) {
+            int channelNumber = frames.get(index).getChannelNumber();
+            if (channelNumber == 0) {
+                frameReceived(frames.get(index));
+                index++;
+                continue;
+            }
+
+            int end = index + 1;
+            while ((end < frameCount) && (frames.get(end).getChannelNumber() == channelNumber)) {
+                end++;
+            }
+            connection.framesReceived(channelNumber, frames.subList(index, end));
+            index = end;
+        }
+    }
+
     /**
      * Process incoming AMQP frames
      *
      * @param frame
      */
     private void frameReceived(CAMQPFrame frame) {
-        CAMQPFrameHeader frameHeader = frame.getHeader();
-        int channelNumber = frameHeader.getChannelNumber();
+        int channelNumber = frame.getChannelNumber();
         if (channelNumber == 0) {
             /*
              * connection frame
@@ -144,23 +178,25 @@ final class CAMQPConnectionHandler extends SimpleChannelUpstreamHandler {
             ChannelBuffer frameBody = frame.getBody();
             if (frameBody == null) {
                 /*
-                 * Heart-Beat control frame
+                 * Heart-Beat control frame: already accounted for in
+                 * messageReceived()
                  */
-                stateActor.heartbeatReceived();
                 return;
             }
             CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
             decoder.take(frameBody);
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPControlOpen.descriptor)) {
+            int descriptorCode = decoder.readDescriptorCode();
+            switch (descriptorCode) {
+            case CAMQPDescriptors.OPEN:
                 CAMQPControlOpen peerConnectionProps = CAMQPControlOpen.decode(decoder);
                 stateActor.openControlReceived(peerConnectionProps);
-            }
-            else if (controlName.equalsIgnoreCase(CAMQPControlClose.descriptor)) {
+                break;
+            case CAMQPDescriptors.CLOSE:
                 CAMQPControlClose closeContext = CAMQPControlClose.decode(decoder);
                 stateActor.closeControlReceived(closeContext);
-            } else {
-                log.error("Unknown control frame " + controlName + " received on connection: " + stateActor.key.toString());
+                break;
+            default:
+                log.error("Unknown control frame " + CAMQPDescriptors.getSymbol(descriptorCode) + " received on connection: " + stateActor.key.toString());
             }
         }
         else {
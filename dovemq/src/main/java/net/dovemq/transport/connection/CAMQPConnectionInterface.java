@@ -17,6 +17,7 @@
 
 package net.dovemq.transport.connection;
 
+import net.dovemq.transport.protocol.CAMQPBufferLease;
 import net.dovemq.transport.session.CAMQPSessionInterface;
 
 import org.jboss.netty.buffer.ChannelBuffer;
@@ -51,8 +52,43 @@ public interface CAMQPConnectionInterface {
      */
     public void sendFrame(ChannelBuffer data, int channelId);
 
+    /**
+     * Send an AMQP frame that has been encoded along with its frame header,
+     * by CAMQPEncoder.getEncodedFrame(). If the frame is encoded into pooled
+     * buffers, the bufferLease is released when the write completes,
+     * otherwise it is null.
+     *
+     * @param frame
+     * @param bufferLease
+     */
+    public void sendEncodedFrame(ChannelBuffer frame, CAMQPBufferLease bufferLease);
+
     public CAMQPConnectionKey getKey();
 
+    /**
+     * Returns false if the outbound bytes of the connection have reached the
+     * high watermark. The registered channel handlers are notified through
+     * {@link CAMQPIncomingChannelHandler#channelWritable()} once the
+     * connection is writable again.
+     *
+     * @return
+     */
+    public boolean isWritable();
+
+    /**
+     * Returns the max-frame-size negotiated with the peer.
+     *
+     * @return
+     */
+    public long getMaxFrameSize();
+
+    /**
+     * Returns the bytes queued or being written to the socket.
+     *
+     * @return
+     */
+    public long getOutboundBytes();
+
     /**
      * Synchronously close the connection
      */
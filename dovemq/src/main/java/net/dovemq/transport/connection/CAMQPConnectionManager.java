@@ -23,8 +23,6 @@ import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -33,6 +31,8 @@ import net.dovemq.transport.utils.CAMQPThreadFactory;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
 
 /**
  * Manages outstanding AMQP connections
@@ -53,12 +53,18 @@ public final class CAMQPConnectionManager {
 
     private static final Object shutdownLock = new Object();
 
-    private static final ScheduledExecutorService connectionHeartbeatScheduler =
-            Executors.newScheduledThreadPool(CAMQPConnectionConstants.DEFAULT_HEARTBEAT_PROCESSOR_THREAD_COUNT,
-                    new CAMQPThreadFactory("DoveMQConnectionHeartbeatProcessor"));
+    /*
+     * Single timer wheel that drives the heart-beats, idle detection and
+     * delayed flushes of all the connections.
+     */
+    private static final HashedWheelTimer connectionHeartbeatTimer =
+            new HashedWheelTimer(new CAMQPThreadFactory("DoveMQConnectionHeartbeatTimer"),
+                    CAMQPConnectionConstants.HEARTBEAT_TIMER_TICK,
+                    TimeUnit.MILLISECONDS,
+                    CAMQPConnectionConstants.HEARTBEAT_TIMER_WHEEL_SIZE);
 
-    static ScheduledExecutorService getConnectionHeartbeatScheduler() {
-        return connectionHeartbeatScheduler;
+    static Timer getConnectionHeartbeatTimer() {
+        return connectionHeartbeatTimer;
     }
 
     public synchronized static void initialize(String containerId) {
@@ -110,6 +116,65 @@ public final class CAMQPConnectionManager {
         return containerId;
     }
 
+    /**
+     * Sets the maximum number of bytes of frames that a connection coalesces
+     * into a single gathering write.
+     *
+     * @param maxBatchBytes
+     */
+    public static void setMaxFlushBatchBytes(int maxBatchBytes) {
+        CAMQPSender.setMaxFlushBatchBytes(maxBatchBytes);
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) that a connection holds back
+     * an outgoing frame, to coalesce it with later frames. Zero by default.
+     *
+     * @param maxDelay
+     */
+    public static void setMaxFlushDelay(long maxDelay) {
+        CAMQPSender.setMaxFlushDelay(maxDelay);
+    }
+
+    /**
+     * Sets the outbound bytes of a connection, above which its sessions stop
+     * sending transfer frames, and below which they resume.
+     *
+     * @param lowWatermark
+     * @param highWatermark
+     */
+    public static void setWriteBufferWatermarks(long lowWatermark, long highWatermark) {
+        CAMQPSender.setWriteBufferWatermarks(lowWatermark, highWatermark);
+    }
+
+    /**
+     * Sets the max-frame-size that new connections advertise to their peer.
+     * A connection uses the smaller of its own and its peer's
+     * max-frame-size, and splits the larger messages into several transfer
+     * frames.
+     *
+     * @param maxFrameSize
+     */
+    public static void setMaxFrameSize(long maxFrameSize) {
+        CAMQPConnectionProperties.setDefaultMaxFrameSize(maxFrameSize);
+    }
+
+    /**
+     * @return number of Netty boss and I/O tasks, of the listener and of the
+     *         outgoing connections, waiting for a thread
+     */
+    public static int getIOQueueDepth() {
+        return CAMQPTransport.getIOQueueDepth();
+    }
+
+    /**
+     * @return largest number of Netty boss and I/O tasks that have been
+     *         waiting for a thread
+     */
+    public static int getMaxIOQueueDepth() {
+        return CAMQPTransport.getMaxIOQueueDepth();
+    }
+
     static Collection<String> listConnections() {
         Collection<String> connectionList = new ArrayList<>();
         Set<CAMQPConnectionKey> keys = openConnections.keySet();
@@ -195,13 +260,7 @@ public final class CAMQPConnectionManager {
         catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        connectionHeartbeatScheduler.shutdown();
-        try {
-            connectionHeartbeatScheduler.awaitTermination(300, TimeUnit.SECONDS);
-        }
-        catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        connectionHeartbeatTimer.stop();
 
         log.info("Shutdown DoveMQ endpoint ID: " + containerId);
         System.out.println("Shutdown DoveMQ endpoint ID: " + containerId);
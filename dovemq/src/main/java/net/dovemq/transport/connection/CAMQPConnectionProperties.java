@@ -21,6 +21,21 @@ import net.dovemq.transport.protocol.CAMQPProtocolConstants;
 import net.dovemq.transport.protocol.data.CAMQPControlOpen;
 
 public final class CAMQPConnectionProperties {
+    private static volatile long defaultMaxFrameSize = CAMQPConnectionConstants.DEFAULT_MAX_FRAME_SIZE;
+
+    /**
+     * Sets the max-frame-size advertised in the open control of the
+     * connections created afterwards.
+     *
+     * @param maxFrameSize
+     */
+    static void setDefaultMaxFrameSize(long maxFrameSize) {
+        if ((maxFrameSize < CAMQPConnectionConstants.MIN_MAX_FRAME_SIZE) || (maxFrameSize > CAMQPProtocolConstants.INT_MAX_VALUE)) {
+            throw new IllegalArgumentException("Invalid max-frame-size: " + maxFrameSize);
+        }
+        defaultMaxFrameSize = maxFrameSize;
+    }
+
     public static CAMQPConnectionProperties createConnectionProperties() {
         return new CAMQPConnectionProperties();
     }
@@ -43,11 +58,13 @@ public final class CAMQPConnectionProperties {
         else {
             this.maxChannels = CAMQPConnectionConstants.MAX_CHANNELS_SUPPORTED;
         }
-        if (peerRequested.getMaxFrameSize() <= CAMQPProtocolConstants.INT_MAX_VALUE) {
-            this.maxFrameSizeSupported = peerRequested.getMaxFrameSize();
-        }
-        else {
-            this.maxFrameSizeSupported = CAMQPProtocolConstants.INT_MAX_VALUE;
+        /*
+         * Neither peer may send a frame larger than the smaller of the two
+         * advertised max-frame-sizes.
+         */
+        if (peerRequested.isSetMaxFrameSize()) {
+            long peerMaxFrameSize = Math.max(peerRequested.getMaxFrameSize(), CAMQPConnectionConstants.MIN_MAX_FRAME_SIZE);
+            this.maxFrameSizeSupported = Math.min(this.maxFrameSizeSupported, peerMaxFrameSize);
         }
     }
 
@@ -75,7 +92,7 @@ public final class CAMQPConnectionProperties {
         this.heartbeatInterval = heartbeatInterval;
     }
 
-    private long maxFrameSizeSupported = CAMQPProtocolConstants.INT_MAX_VALUE;
+    private long maxFrameSizeSupported = defaultMaxFrameSize;
 
     private int maxChannels = CAMQPConnectionConstants.MAX_CHANNELS_SUPPORTED;
 
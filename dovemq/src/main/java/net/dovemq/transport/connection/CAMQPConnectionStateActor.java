@@ -159,8 +159,15 @@ class CAMQPConnectionStateActor {
         processEvents();
     }
 
-    void heartbeatReceived() {
-        heartbeatProcessor.receivedHeartbeat();
+    /**
+     * Called for every read from the socket: any incoming data, not just
+     * an empty frame, shows that the peer is alive.
+     */
+    void dataReceived() {
+        CAMQPHeartbeatProcessor processor = heartbeatProcessor;
+        if (processor != null) {
+            processor.dataReceived();
+        }
     }
 
     void connectionHeaderBytesReceived(ChannelBuffer buffer) {
@@ -407,6 +414,7 @@ class CAMQPConnectionStateActor {
                 queuedGeneratedEvents.add(new CAMQPQueuedContext<Event>(Event.SEND_OPEN, controlOpen));
             }
             else if (currentState == State.OPEN_SENT) {
+                connectionProps.update(peerOpenControlData);
                 currentState = State.OPENED;
                 queuedGeneratedEvents.add(new CAMQPQueuedContext<Event>(Event.OPENED, null));
             }
@@ -17,42 +17,76 @@
 
 package net.dovemq.transport.connection;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.dovemq.transport.frame.CAMQPFrame;
 import net.dovemq.transport.frame.CAMQPFrameConstants;
-import net.dovemq.transport.frame.CAMQPFrameHeader;
-import net.dovemq.transport.frame.CAMQPFrameHeaderCodec;
 import net.dovemq.transport.frame.CAMQPHandshakeFrame;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.handler.codec.frame.FrameDecoder;
 
 /**
- * Decodes AMQP frames from the byte-stream
+ * Decodes AMQP frames from the byte-stream.
+ *
+ * The decoding is incremental: decode() returns null (i.e, it needs more
+ * bytes) until the part of the byte-stream expected in the current state
+ * (the connection header, a frame header or a frame body) has been
+ * received, and resumes from that state when more bytes arrive.
+ *
+ * A partially received frame is accumulated in a single flat buffer, sized
+ * for the remainder of the frame, instead of in a composite buffer that
+ * grows by one component per read.
+ *
+ * Each call to decode() drains all the complete frames available: a single
+ * frame is returned as a CAMQPFrame, and several frames as a batch, i.e, a
+ * List of CAMQPFrame, that is dispatched upstream in one go. The frame
+ * header is parsed in place.
+ *
  * @author tejdas
  *
  */
 final class CAMQPFrameDecoder extends FrameDecoder {
+    private enum DecoderState {
+        CONNECTION_HEADER, FRAME_HEADER, FRAME_BODY
+    }
+
     /*
-     * If only the header has been available so far, and not the body, it is
-     * stored here, and is used when the remainder of the body is available
+     * Upper bound on the capacity reserved up-front for the remainder of a
+     * frame. A larger frame grows the cumulation buffer as it arrives.
      */
-    private CAMQPFrameHeader header = null;
+    private static final int MAX_PREALLOCATED_CUMULATION_SIZE = 1024 * 1024;
 
-    private volatile boolean receivedConnectionHeaderBytes = false;
+    private volatile DecoderState state = DecoderState.CONNECTION_HEADER;
+
+    /*
+     * In the FRAME_BODY state: the fields of the frame header that has been
+     * decoded, and the size of the frame body that is awaited.
+     */
+    private int channelNumber = 0;
+
+    private int frameType = 0;
+
+    private long frameSize = 0;
+
+    private int frameBodySize = 0;
 
     /*
      * For junit testing only
      */
     void setReceivedConnectionHeaderBytes(boolean receivedConnectionHeaderBytes) {
-        this.receivedConnectionHeaderBytes = receivedConnectionHeaderBytes;
+        state = (receivedConnectionHeaderBytes) ? DecoderState.FRAME_HEADER : DecoderState.CONNECTION_HEADER;
     }
 
-    private CAMQPFrameHeader getHeaderAndReset() {
-        CAMQPFrameHeader currentHeader = header;
-        header = null;
-        return currentHeader;
+    /*
+     * For junit testing only
+     */
+    ChannelBuffer getCumulation() {
+        return cumulation;
     }
 
     @Override
@@ -61,54 +95,136 @@ final class CAMQPFrameDecoder extends FrameDecoder {
             throw new IllegalArgumentException("null argument(s) to CAMQPFrameDecoder.decode()");
         }
 
-        if (!receivedConnectionHeaderBytes) {
+        if (state == DecoderState.CONNECTION_HEADER) {
             if (buffer.readableBytes() < CAMQPConnectionConstants.HEADER_LENGTH) {
-                /*
-                 * Insufficient bytes available to read the frame header. Wait
-                 * until we receive more bytes.
-                 */
                 return null;
             }
-
             ChannelBuffer handshakeHeader = buffer.readBytes(CAMQPConnectionConstants.HEADER_LENGTH);
-            receivedConnectionHeaderBytes = true;
+            state = DecoderState.FRAME_HEADER;
             return new CAMQPHandshakeFrame(handshakeHeader);
         }
 
-        if (header == null) {
+        CAMQPFrame frame = decodeFrame(buffer);
+        if (frame == null) {
+            return null;
+        }
+        CAMQPFrame nextFrame = decodeFrame(buffer);
+        if (nextFrame == null) {
+            return frame;
+        }
+
+        List<CAMQPFrame> frames = new ArrayList<>();
+        frames.add(frame);
+        do {
+            frames.add(nextFrame);
+            nextFrame = decodeFrame(buffer);
+        } while (nextFrame != null);
+        return frames;
+    }
+
+    /*
+     * Decodes the next frame, or returns null if it has not been received
+     * completely yet.
+     */
+    private CAMQPFrame decodeFrame(ChannelBuffer buffer) {
+        if (state == DecoderState.FRAME_HEADER) {
             if (buffer.readableBytes() < CAMQPFrameConstants.FRAME_HEADER_SIZE) {
-                /*
-                 * Insufficient bytes available to read the frame header. Wait
-                 * until we receive more bytes.
-                 */
                 return null;
             }
-            ChannelBuffer headerBuffer = buffer.readBytes(CAMQPFrameConstants.FRAME_HEADER_SIZE);
-            header = CAMQPFrameHeaderCodec.decode(headerBuffer);
-        }
-
-        int dataOffset = header.getDataOffset();
-        int variableHeaderSize = (dataOffset - CAMQPFrameConstants.DEFAULT_DATA_OFFSET) * 4;
+            /*
+             * Wait until the extended header (if any) is available too.
+             */
+            int readerIndex = buffer.readerIndex();
+            int headerSize = getDataOffset(buffer) * 4;
+            if (buffer.readableBytes() < headerSize) {
+                return null;
+            }
+            frameSize = buffer.getUnsignedInt(readerIndex);
+            frameType = buffer.getUnsignedByte(readerIndex + 5);
+            channelNumber = buffer.getUnsignedShort(readerIndex + 6);
+            buffer.readerIndex(readerIndex + headerSize);
 
-        int frameBodySize = (int) header.getFrameSize() - (CAMQPFrameConstants.FRAME_HEADER_SIZE + variableHeaderSize);
-        if (frameBodySize > 0) {
-            if (buffer.readableBytes() < frameBodySize) {
+            frameBodySize = (int) frameSize - headerSize;
+            if (frameBodySize <= 0) {
                 /*
-                 * Insufficient bytes available to read the frame body. Wait
-                 * until we receive more bytes.
+                 * AMQP frame without a body
                  */
-                return null;
+                return createFrame(null);
             }
-            int readerIndex = buffer.readerIndex();
-            ChannelBuffer body = buffer.slice(readerIndex, frameBodySize);
-            buffer.readerIndex(readerIndex + frameBodySize);
-            return new CAMQPFrame(getHeaderAndReset(), body);
+            state = DecoderState.FRAME_BODY;
         }
-        else {
-            /*
-             * AMQP frame without a body
-             */
-            return new CAMQPFrame(getHeaderAndReset(), null);
+
+        if (buffer.readableBytes() < frameBodySize) {
+            return null;
+        }
+        int readerIndex = buffer.readerIndex();
+        ChannelBuffer body = buffer.slice(readerIndex, frameBodySize);
+        buffer.readerIndex(readerIndex + frameBodySize);
+        return createFrame(body);
+    }
+
+    private CAMQPFrame createFrame(ChannelBuffer body) {
+        state = DecoderState.FRAME_HEADER;
+        return new CAMQPFrame(channelNumber, frameType, frameSize, body);
+    }
+
+    private static int getDataOffset(ChannelBuffer buffer) {
+        return Math.max(buffer.getUnsignedByte(buffer.readerIndex() + 4), CAMQPFrameConstants.DEFAULT_DATA_OFFSET);
+    }
+
+    /*
+     * Appends the bytes received to the flat cumulation buffer, instead of
+     * wrapping them in a composite buffer.
+     */
+    @Override
+    protected ChannelBuffer appendToCumulation(ChannelBuffer input) {
+        cumulation.writeBytes(input);
+        return cumulation;
+    }
+
+    /*
+     * Called after decoding the bytes received. The remainder of a partial
+     * frame is copied into a new flat cumulation buffer, unless it is
+     * already in one that can hold the rest of the frame. The cumulation
+     * buffer is never compacted, because the frame bodies decoded from it
+     * are slices of it.
+     */
+    @Override
+    protected ChannelBuffer updateCumulation(ChannelHandlerContext ctx, ChannelBuffer input) {
+        if (!input.readable()) {
+            cumulation = null;
+            return null;
+        }
+
+        int pendingBytes = getPendingBytes(input);
+        if ((input == cumulation) && (input.capacity() - input.readerIndex() >= pendingBytes)) {
+            return cumulation;
+        }
+
+        cumulation = ChannelBuffers.dynamicBuffer(Math.max(pendingBytes, input.readableBytes()));
+        cumulation.writeBytes(input);
+        return cumulation;
+    }
+
+    /*
+     * Number of bytes needed to complete the part of the byte-stream that
+     * is expected in the current state, including the bytes received so
+     * far.
+     */
+    private int getPendingBytes(ChannelBuffer buffer) {
+        switch (state) {
+        case CONNECTION_HEADER:
+            return CAMQPConnectionConstants.HEADER_LENGTH;
+
+        case FRAME_HEADER:
+            if (buffer.readableBytes() < 4) {
+                return CAMQPFrameConstants.FRAME_HEADER_SIZE;
+            }
+            long frameSize = buffer.getUnsignedInt(buffer.readerIndex());
+            return (int) Math.max(Math.min(frameSize, MAX_PREALLOCATED_CUMULATION_SIZE), CAMQPFrameConstants.FRAME_HEADER_SIZE);
+
+        default:
+            return Math.min(frameBodySize, MAX_PREALLOCATED_CUMULATION_SIZE);
         }
     }
 }
@@ -17,27 +17,41 @@
 
 package net.dovemq.transport.connection;
 
-import java.util.Date;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import net.dovemq.transport.frame.CAMQPFrameConstants;
 import net.dovemq.transport.frame.CAMQPFrameHeader;
 import net.dovemq.transport.frame.CAMQPFrameHeaderCodec;
 import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
 /**
  * Sends heart-beats to AMQP peer. Also detects if there are any
  * delays in incoming heart-beats.
  *
+ * Runs off the single timer wheel of CAMQPConnectionManager, with at most
+ * one pending Timeout per connection. The time of the last read and the
+ * last write are kept as System.nanoTime() values: an empty frame is sent
+ * only if nothing has been written for a HEARTBEAT_PERIOD, and the
+ * connection is closed if nothing has been read for twice as long. The
+ * Timeout is re-armed for the earlier of the two deadlines.
+ *
  * @author tejdas
  *
  */
-final class CAMQPHeartbeatProcessor implements Runnable {
-    @GuardedBy("this")
-    private Date lastReceivedHeartBeatTime = new Date();
+@ThreadSafe
+final class CAMQPHeartbeatProcessor implements TimerTask {
+    private static final long HEARTBEAT_PERIOD = TimeUnit.MILLISECONDS.toNanos(CAMQPConnectionConstants.HEARTBEAT_PERIOD);
+
+    private static final long HEARTBEAT_TIMEOUT = 2 * HEARTBEAT_PERIOD;
+
+    private static final long MIN_HEARTBEAT_DELAY = TimeUnit.MILLISECONDS.toNanos(CAMQPConnectionConstants.HEARTBEAT_TIMER_TICK);
+
+    private volatile long lastReadTime = System.nanoTime();
 
     @GuardedBy("this")
     private CAMQPConnectionStateActor stateActor = null;
@@ -45,14 +59,22 @@ final class CAMQPHeartbeatProcessor implements Runnable {
     @GuardedBy("this")
     private CAMQPSender sender = null;
 
-    private volatile ScheduledFuture<?> scheduledFuture = null;
+    @GuardedBy("this")
+    private Timeout timeout = null;
 
     void scheduleNextHeartbeat() {
-        scheduledFuture = CAMQPConnectionManager.getConnectionHeartbeatScheduler()
-                .scheduleWithFixedDelay(this,
-                        CAMQPConnectionConstants.HEARTBEAT_PERIOD,
-                        CAMQPConnectionConstants.HEARTBEAT_PERIOD,
-                        TimeUnit.MILLISECONDS);
+        schedule(HEARTBEAT_PERIOD);
+    }
+
+    private synchronized void schedule(long delay) {
+        if (stateActor == null) {
+            /*
+             * HeartbeatProcessor already shutdown
+             */
+            return;
+        }
+        timeout = CAMQPConnectionManager.getConnectionHeartbeatTimer()
+                .newTimeout(this, Math.max(delay, MIN_HEARTBEAT_DELAY), TimeUnit.NANOSECONDS);
     }
 
     CAMQPHeartbeatProcessor(CAMQPConnectionStateActor stateActor,
@@ -62,36 +84,26 @@ final class CAMQPHeartbeatProcessor implements Runnable {
         this.sender = sender;
     }
 
-    synchronized void receivedHeartbeat() {
-        lastReceivedHeartBeatTime = new Date();
+    void dataReceived() {
+        lastReadTime = System.nanoTime();
     }
 
     /**
-     * Even after the scheduled timer encapsulating CAMQPHeartbeatProcessor is
-     * cancelled, a reference to it is still held by
-     * CAMQPConnectionManager._scheduledExecutor. As a result,
-     * CAMQPHeartbeatProcessor is still around even after the AMQP connection is
-     * closed. The following hack is to at least ensure that the references to
-     * CAMQPConnectionStateActor and CAMQPSender is released, so they are not
-     * around after the connection closure.
+     * Cancels the pending Timeout, which removes it from the timer wheel,
+     * and releases the references to CAMQPConnectionStateActor and
+     * CAMQPSender.
      */
-    void stop() {
-        if ((scheduledFuture != null) && !scheduledFuture.isCancelled()) {
-            scheduledFuture.cancel(false);
-        }
-        scheduledFuture = null;
-
-        synchronized (this) {
-            stateActor = null;
-            sender = null;
+    synchronized void stop() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
         }
+        stateActor = null;
+        sender = null;
     }
 
     @Override
-    public void run() {
-        boolean heartBeatDelayed = false;
-        Date now = new Date();
-
+    public void run(Timeout expiredTimeout) {
         CAMQPConnectionStateActor localStateActor = null;
         CAMQPSender localSender = null;
         synchronized (this) {
@@ -101,21 +113,27 @@ final class CAMQPHeartbeatProcessor implements Runnable {
                  */
                 return;
             }
-
-            heartBeatDelayed = ((now.getTime() - lastReceivedHeartBeatTime.getTime()) > (2 * CAMQPConnectionConstants.HEARTBEAT_PERIOD));
             localStateActor = this.stateActor;
             localSender = this.sender;
         }
 
-        if (heartBeatDelayed) {
+        long now = System.nanoTime();
+        long sinceLastRead = now - lastReadTime;
+        if (sinceLastRead > HEARTBEAT_TIMEOUT) {
             localStateActor.notifyHeartbeatDelay();
+            return;
         }
-        else {
+
+        long sinceLastWrite = now - localSender.getLastWriteTime();
+        if (sinceLastWrite >= HEARTBEAT_PERIOD) {
             CAMQPFrameHeader frameHeader = new CAMQPFrameHeader();
             frameHeader.setChannelNumber((short) 0);
             frameHeader.setFrameSize(CAMQPFrameConstants.FRAME_HEADER_SIZE);
             ChannelBuffer header = CAMQPFrameHeaderCodec.encode(frameHeader);
             localSender.sendBuffer(header, CAMQPFrameConstants.FRAME_TYPE_CONNECTION);
+            sinceLastWrite = 0;
         }
+
+        schedule(Math.min(HEARTBEAT_PERIOD - sinceLastWrite, HEARTBEAT_TIMEOUT - sinceLastRead));
     }
 }
@@ -17,7 +17,10 @@
 
 package net.dovemq.transport.connection;
 
+import java.util.List;
+
 import net.dovemq.transport.frame.CAMQPFrame;
+
 /**
  * Session layer implements this interface to receive incoming
  * session/link frames.
@@ -28,5 +31,19 @@ import net.dovemq.transport.frame.CAMQPFrame;
 public interface CAMQPIncomingChannelHandler {
     public void frameReceived(CAMQPFrame frame);
 
+    /**
+     * Receives a batch of frames, decoded from a single read, in the order
+     * they were received.
+     *
+     * @param frames
+     */
+    public void framesReceived(List<CAMQPFrame> frames);
+
     public void channelAbruptlyDetached();
+
+    /**
+     * Called when the connection becomes writable again, after it stopped
+     * accepting transfer frames because of outbound backpressure.
+     */
+    public void channelWritable();
 }
@@ -18,9 +18,6 @@
 package net.dovemq.transport.connection;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
-
-import net.dovemq.transport.utils.CAMQPThreadFactory;
 
 import org.apache.log4j.Logger;
 import org.jboss.netty.bootstrap.ServerBootstrap;
@@ -28,7 +25,6 @@ import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
 import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 public final class CAMQPListener {
     private static final Logger log = Logger.getLogger(CAMQPListener.class);
@@ -58,9 +54,7 @@ public final class CAMQPListener {
     }
 
     public void start(int listenPort) {
-        factory = new NioServerSocketChannelFactory(
-                Executors.newCachedThreadPool(new CAMQPThreadFactory("DoveMQNettyBossThread")),
-                        Executors.newCachedThreadPool(new CAMQPThreadFactory("DoveMQNettyWorkerThread")));
+        factory = CAMQPTransport.createServerChannelFactory();
 
         ServerBootstrap bootstrap = new ServerBootstrap(factory);
 
@@ -17,15 +17,50 @@
 
 package net.dovemq.transport.connection;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.dovemq.transport.protocol.CAMQPBufferLease;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.Immutable;
 import net.jcip.annotations.ThreadSafe;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelFuture;
 import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
 /**
  * Sender of AMQP frames. Owned by CAMQPConnection
+ *
+ * The frames are not written one by one: sendBuffer() queues the frame in
+ * a lock-free queue, and the first frame queued after a flush schedules
+ * the next flush on the Netty I/O thread of the channel. The flush drains
+ * the queue, and writes the frames as gathering writes of up to
+ * maxFlushBatchBytes each, with a single write future per batch.
+ *
+ * If maxFlushDelay is set, the flush is deferred by up to maxFlushDelay
+ * milliseconds to let more frames accumulate, unless maxFlushBatchBytes
+ * are queued before then. The delayed flush is scheduled on the
+ * connection timer wheel, so the delay is rounded up to its tick.
+ *
+ * The sender keeps track of the outbound bytes, i.e, the bytes queued or
+ * being written to the socket. The sender becomes unwritable when they
+ * reach the high watermark, and writable again when they drain down to
+ * the low watermark, at which point the WritabilityListener is notified.
+ * The session layer stops sending transfer frames while the sender is
+ * unwritable, so a slow peer cannot make the outbound buffers grow without
+ * bound.
+ *
  * @author tejdas
  *
  */
@@ -34,21 +69,200 @@ enum SenderState {
 }
 
 @ThreadSafe
-final class CAMQPSender implements ChannelFutureListener {
+final class CAMQPSender {
+    private static volatile int maxFlushBatchBytes = CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_BATCH_BYTES;
+
+    private static volatile long maxFlushDelay = CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_DELAY;
+
+    /**
+     * Sets the maximum number of bytes written in a single gathering write.
+     *
+     * @param maxBatchBytes
+     */
+    static void setMaxFlushBatchBytes(int maxBatchBytes) {
+        if (maxBatchBytes <= 0) {
+            throw new IllegalArgumentException("maxFlushBatchBytes must be positive: " + maxBatchBytes);
+        }
+        maxFlushBatchBytes = maxBatchBytes;
+    }
+
+    /**
+     * Sets the maximum time (in milliseconds) a queued frame waits for
+     * more frames before it is flushed. Zero, the default, flushes on the
+     * I/O thread right away.
+     *
+     * @param maxDelay
+     */
+    static void setMaxFlushDelay(long maxDelay) {
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxFlushDelay must not be negative: " + maxDelay);
+        }
+        maxFlushDelay = maxDelay;
+    }
+
+    private static volatile long writeBufferHighWatermark = CAMQPConnectionConstants.DEFAULT_WRITE_BUFFER_HIGH_WATERMARK;
+
+    private static volatile long writeBufferLowWatermark = CAMQPConnectionConstants.DEFAULT_WRITE_BUFFER_LOW_WATERMARK;
+
+    /**
+     * Sets the outbound bytes above which a connection becomes unwritable,
+     * and below which it becomes writable again.
+     *
+     * @param lowWatermark
+     * @param highWatermark
+     */
+    static void setWriteBufferWatermarks(long lowWatermark, long highWatermark) {
+        if ((lowWatermark < 0) || (lowWatermark > highWatermark)) {
+            throw new IllegalArgumentException("Invalid write buffer watermarks: low: " + lowWatermark + " high: " + highWatermark);
+        }
+        writeBufferLowWatermark = lowWatermark;
+        writeBufferHighWatermark = highWatermark;
+    }
+
+    /**
+     * Notified when an unwritable sender becomes writable again.
+     */
+    interface WritabilityListener {
+        void writabilityRestored();
+    }
+
+    private static final int FLUSH_IDLE = 0;
+
+    private static final int FLUSH_DELAYED = 1;
+
+    private static final int FLUSH_SCHEDULED = 2;
+
+    @Immutable
+    private static final class PendingWrite {
+        PendingWrite(ChannelBuffer data, CAMQPBufferLease bufferLease) {
+            this.data = data;
+            this.bufferLease = bufferLease;
+        }
+
+        final ChannelBuffer data;
+
+        final CAMQPBufferLease bufferLease;
+    }
+
+    /**
+     * Frames written together in one gathering write. Returns the pooled
+     * buffers of the frames when the write completes.
+     */
+    private final class WriteBatch implements ChannelFutureListener {
+        private final List<ChannelBuffer> buffers = new ArrayList<>();
+
+        private List<CAMQPBufferLease> bufferLeases = null;
+
+        private int batchBytes = 0;
+
+        void add(PendingWrite pendingWrite) {
+            buffers.add(pendingWrite.data);
+            batchBytes += pendingWrite.data.readableBytes();
+            if (pendingWrite.bufferLease != null) {
+                if (bufferLeases == null) {
+                    bufferLeases = new ArrayList<>();
+                }
+                bufferLeases.add(pendingWrite.bufferLease);
+            }
+        }
+
+        ChannelBuffer getBuffer() {
+            if (buffers.size() == 1) {
+                return buffers.get(0);
+            }
+            return ChannelBuffers.wrappedBuffer(true, buffers.toArray(new ChannelBuffer[buffers.size()]));
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (bufferLeases != null) {
+                for (CAMQPBufferLease bufferLease : bufferLeases) {
+                    bufferLease.release();
+                }
+            }
+            writesCompleted(buffers.size(), batchBytes);
+        }
+    }
+
     private final Channel channel;
 
     Channel getChannel() {
         return channel;
     }
 
-    private SenderState state = SenderState.ACTIVE;
+    /*
+     * Changed under the lock of the sender, only on the close transition.
+     * Read without locking on the send path.
+     */
+    private volatile SenderState state = SenderState.ACTIVE;
 
     /**
-     * Keeps track of the outstanding write count.
+     * Keeps track of the outstanding write count, i.e, the frames that are
+     * queued or being written.
      * Incremented in {@link CAMQPSender#sendBuffer()}
-     * Decremented in {@link ChannelFutureListener#operationComplete() }
+     * Decremented in {@link CAMQPSender#writesCompleted() }
+     *
+     * sendBuffer() increments it before checking the state, and close()
+     * sets the state before checking it, so either the frame is backed out,
+     * or close() sees it outstanding, and the channel is closed once the
+     * last outstanding write completes.
      */
-    private int outstandingWrites = 0;
+    private final AtomicInteger outstandingWrites = new AtomicInteger(0);
+
+    private final AtomicBoolean channelCloseStarted = new AtomicBoolean(false);
+
+    private final ConcurrentLinkedQueue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong pendingBytes = new AtomicLong(0L);
+
+    private final AtomicInteger flushState = new AtomicInteger(FLUSH_IDLE);
+
+    private final Object flushLock = new Object();
+
+    private final AtomicLong flushCount = new AtomicLong(0L);
+
+    private final AtomicLong flushedFrameCount = new AtomicLong(0L);
+
+    private final AtomicLong flushedByteCount = new AtomicLong(0L);
+
+    /*
+     * System.nanoTime() of the last write to the socket
+     */
+    private volatile long lastWriteTime = System.nanoTime();
+
+    /*
+     * Bytes queued or being written to the socket
+     */
+    private final AtomicLong outboundBytes = new AtomicLong(0L);
+
+    private volatile boolean writable = true;
+
+    private volatile WritabilityListener writabilityListener = null;
+
+    private final Object writabilityLock = new Object();
+
+    @GuardedBy("writabilityLock")
+    private long unwritableSince = 0L;
+
+    @GuardedBy("writabilityLock")
+    private long unwritableCount = 0L;
+
+    @GuardedBy("writabilityLock")
+    private long unwritableTime = 0L; // nanoseconds
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final TimerTask delayedFlushTask = new TimerTask() {
+        @Override
+        public void run(Timeout timeout) {
+            delayedFlush();
+        }
+    };
 
     CAMQPSender(Channel channel) {
         super();
@@ -61,11 +275,10 @@ final class CAMQPSender implements ChannelFutureListener {
                 return;
             }
             state = SenderState.CLOSE_REQUESTED;
-            if (outstandingWrites > 0) {
-                return;
-            }
         }
-        closeChannel();
+        if (outstandingWrites.get() == 0) {
+            closeChannel();
+        }
     }
 
     synchronized void waitForClose() {
@@ -79,10 +292,83 @@ final class CAMQPSender implements ChannelFutureListener {
         }
     }
 
-    synchronized boolean isClosed() {
+    boolean isClosed() {
         return (state == SenderState.CLOSED);
     }
 
+    /**
+     * @return number of gathering writes issued
+     */
+    long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return number of frames written
+     */
+    long getFlushedFrameCount() {
+        return flushedFrameCount.get();
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    long getFlushedByteCount() {
+        return flushedByteCount.get();
+    }
+
+    boolean isWritable() {
+        return writable;
+    }
+
+    void setWritabilityListener(WritabilityListener listener) {
+        writabilityListener = listener;
+    }
+
+    long getOutboundBytes() {
+        return outboundBytes.get();
+    }
+
+    /**
+     * @return number of times the sender became unwritable
+     */
+    long getUnwritableCount() {
+        synchronized (writabilityLock) {
+            return unwritableCount;
+        }
+    }
+
+    /**
+     * @return total time (in milliseconds) the sender has been unwritable,
+     *         including the ongoing unwritable period, if any
+     */
+    long getUnwritableTime() {
+        synchronized (writabilityLock) {
+            long time = unwritableTime;
+            if (!writable) {
+                time += System.nanoTime() - unwritableSince;
+            }
+            return TimeUnit.NANOSECONDS.toMillis(time);
+        }
+    }
+
+    /**
+     * @return System.nanoTime() of the last write to the socket
+     */
+    long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    double getFramesPerFlush() {
+        long flushes = flushCount.get();
+        return (flushes == 0) ? 0 : (double) flushedFrameCount.get() / flushes;
+    }
+
+    double getBytesPerFlush() {
+        long flushes = flushCount.get();
+        return (flushes == 0) ? 0 : (double) flushedByteCount.get() / flushes;
+    }
+
     /**
      * Sends the buffer on the underlying Netty channel.
      *
@@ -90,29 +376,149 @@ final class CAMQPSender implements ChannelFutureListener {
      * @param frameType
      */
     void sendBuffer(ChannelBuffer data, int frameType) {
-        synchronized (this) {
-            if (state != SenderState.ACTIVE) {
-                return;
+        sendBuffer(data, frameType, null);
+    }
+
+    /**
+     * Queues the buffer to be sent on the underlying Netty channel, and
+     * schedules a flush if there is none pending. If the buffer is backed by
+     * pooled buffers, the bufferLease returns them when the write completes.
+     *
+     * @param data
+     * @param frameType
+     * @param bufferLease
+     */
+    void sendBuffer(ChannelBuffer data, int frameType, CAMQPBufferLease bufferLease) {
+        outstandingWrites.incrementAndGet();
+        if (state != SenderState.ACTIVE) {
+            if (bufferLease != null) {
+                bufferLease.release();
+            }
+            if ((outstandingWrites.decrementAndGet() == 0) && (state == SenderState.CLOSE_REQUESTED)) {
+                closeChannel();
             }
-            outstandingWrites++;
+            return;
         }
 
-        ChannelFuture future = channel.write(data);
-        future.addListener(this);
+        int frameBytes = data.readableBytes();
+        pendingWrites.add(new PendingWrite(data, bufferLease));
+        long queuedBytes = pendingBytes.addAndGet(frameBytes);
+        if ((outboundBytes.addAndGet(frameBytes) >= writeBufferHighWatermark) && writable) {
+            updateWritability();
+        }
+
+        long flushDelay = maxFlushDelay;
+        if ((flushDelay == 0) || (queuedBytes >= maxFlushBatchBytes)) {
+            if (flushState.getAndSet(FLUSH_SCHEDULED) != FLUSH_SCHEDULED) {
+                executeFlush();
+            }
+        }
+        else if (flushState.compareAndSet(FLUSH_IDLE, FLUSH_DELAYED)) {
+            try {
+                CAMQPConnectionManager.getConnectionHeartbeatTimer().newTimeout(delayedFlushTask, flushDelay, TimeUnit.MILLISECONDS);
+            }
+            catch (IllegalStateException ex) {
+                /*
+                 * Timer already stopped
+                 */
+                delayedFlush();
+            }
+        }
     }
 
-    @Override
-    public void operationComplete(ChannelFuture future) {
-        synchronized (this) {
-            outstandingWrites--;
-            if ((outstandingWrites > 0) || (state != SenderState.CLOSE_REQUESTED)) {
-                return;
+    private void delayedFlush() {
+        if (flushState.compareAndSet(FLUSH_DELAYED, FLUSH_SCHEDULED)) {
+            executeFlush();
+        }
+    }
+
+    /*
+     * Runs the flush on the I/O thread of the channel.
+     */
+    private void executeFlush() {
+        ChannelPipeline pipeline = channel.getPipeline();
+        if (pipeline == null) {
+            flush();
+        }
+        else {
+            pipeline.execute(flushTask);
+        }
+    }
+
+    private void flush() {
+        synchronized (flushLock) {
+            /*
+             * Reset the flushState before draining the queue, so that a
+             * frame queued after the drain schedules the next flush.
+             */
+            flushState.set(FLUSH_IDLE);
+
+            int batchLimit = maxFlushBatchBytes;
+            PendingWrite pendingWrite;
+            while ((pendingWrite = pendingWrites.poll()) != null) {
+                WriteBatch batch = new WriteBatch();
+                batch.add(pendingWrite);
+                while (((pendingWrite = pendingWrites.peek()) != null)
+                        && (batch.batchBytes + pendingWrite.data.readableBytes() <= batchLimit)) {
+                    batch.add(pendingWrites.poll());
+                }
+                write(batch);
+            }
+        }
+    }
+
+    private void write(WriteBatch batch) {
+        pendingBytes.addAndGet(-batch.batchBytes);
+        flushCount.incrementAndGet();
+        flushedFrameCount.addAndGet(batch.buffers.size());
+        flushedByteCount.addAndGet(batch.batchBytes);
+        lastWriteTime = System.nanoTime();
+
+        ChannelFuture future = channel.write(batch.getBuffer());
+        future.addListener(batch);
+    }
+
+    private void writesCompleted(int frameCount, int frameBytes) {
+        if ((outboundBytes.addAndGet(-frameBytes) <= writeBufferLowWatermark) && !writable) {
+            updateWritability();
+        }
+
+        if ((outstandingWrites.addAndGet(-frameCount) == 0) && (state == SenderState.CLOSE_REQUESTED)) {
+            closeChannel();
+        }
+    }
+
+    private void updateWritability() {
+        boolean writabilityRestored = false;
+        synchronized (writabilityLock) {
+            long bytes = outboundBytes.get();
+            if (writable && (bytes >= writeBufferHighWatermark)) {
+                writable = false;
+                unwritableSince = System.nanoTime();
+                unwritableCount++;
+            }
+            else if (!writable && (bytes <= writeBufferLowWatermark)) {
+                writable = true;
+                unwritableTime += System.nanoTime() - unwritableSince;
+                writabilityRestored = true;
             }
         }
-        closeChannel();
+
+        WritabilityListener listener = writabilityListener;
+        if (writabilityRestored && (listener != null)) {
+            listener.writabilityRestored();
+        }
     }
 
+    /**
+     * Closes the channel, once: close(), the back-out of a frame sent after
+     * close() and the completion of the last write may all find the sender
+     * drained.
+     */
     private void closeChannel() {
+        if (!channelCloseStarted.compareAndSet(false, true)) {
+            return;
+        }
         try {
             ChannelFuture future = channel.close();
             future.awaitUninterruptibly();
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.connection;
+
+import net.dovemq.transport.utils.CAMQPThreadPool;
+import net.dovemq.transport.utils.CAMQPThreadingConfig;
+
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+
+/**
+ * Creates the Netty ChannelFactory used by CAMQPListener and
+ * CAMQPConnectionFactory, so the transport is set up in one place.
+ *
+ * The NIO transport runs a single boss thread, and a fixed number of I/O
+ * threads, each serving its own selector. The thread pools are sized to
+ * exactly those counts, instead of growing without bound. The I/O thread
+ * count is taken from CAMQPThreadingConfig when the listener is started,
+ * or the first connection is created.
+ *
+ * The boss and I/O threads are run by CAMQPThreadPools. Each of them runs
+ * a selector loop for as long as the ChannelFactory is in use, so a
+ * non-zero queue depth means that a selector is waiting for a thread.
+ *
+ * @author tejdas
+ */
+final class CAMQPTransport {
+    private static volatile CAMQPThreadPool[] serverThreadPools = new CAMQPThreadPool[0];
+
+    private static volatile CAMQPThreadPool[] clientThreadPools = new CAMQPThreadPool[0];
+
+    static ChannelFactory createServerChannelFactory() {
+        int threadCount = CAMQPThreadingConfig.getIOThreadCount();
+        CAMQPThreadPool bossThreadPool = CAMQPThreadPool.createThreadPool("DoveMQNettyBossThread", 1);
+        CAMQPThreadPool workerThreadPool = CAMQPThreadPool.createThreadPool("DoveMQNettyWorkerThread", threadCount);
+        serverThreadPools = new CAMQPThreadPool[] {bossThreadPool, workerThreadPool};
+        return new NioServerSocketChannelFactory(bossThreadPool, 1, new NioWorkerPool(workerThreadPool, threadCount));
+    }
+
+    static ChannelFactory createClientChannelFactory() {
+        int threadCount = CAMQPThreadingConfig.getIOThreadCount();
+        CAMQPThreadPool bossThreadPool = CAMQPThreadPool.createThreadPool("DoveMQNettyBossThread", 1);
+        CAMQPThreadPool workerThreadPool = CAMQPThreadPool.createThreadPool("DoveMQNettyWorkerThread", threadCount);
+        clientThreadPools = new CAMQPThreadPool[] {bossThreadPool, workerThreadPool};
+        return new NioClientSocketChannelFactory(bossThreadPool, 1, new NioWorkerPool(workerThreadPool, threadCount));
+    }
+
+    /**
+     * @return number of Netty boss and I/O tasks waiting for a thread
+     */
+    static int getIOQueueDepth() {
+        int queueDepth = 0;
+        for (CAMQPThreadPool threadPool : serverThreadPools) {
+            queueDepth += threadPool.getQueueDepth();
+        }
+        for (CAMQPThreadPool threadPool : clientThreadPools) {
+            queueDepth += threadPool.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * @return largest number of Netty boss and I/O tasks that have been
+     *         waiting for a thread
+     */
+    static int getMaxIOQueueDepth() {
+        int maxQueueDepth = 0;
+        for (CAMQPThreadPool threadPool : serverThreadPools) {
+            maxQueueDepth = Math.max(maxQueueDepth, threadPool.getMaxQueueDepth());
+        }
+        for (CAMQPThreadPool threadPool : clientThreadPools) {
+            maxQueueDepth = Math.max(maxQueueDepth, threadPool.getMaxQueueDepth());
+        }
+        return maxQueueDepth;
+    }
+
+    private CAMQPTransport() {
+    }
+}
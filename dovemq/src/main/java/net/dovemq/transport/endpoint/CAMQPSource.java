@@ -17,12 +17,7 @@
 
 package net.dovemq.transport.endpoint;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import net.dovemq.api.DoveMQMessage;
 import net.dovemq.transport.endpoint.CAMQPEndpointPolicy.CAMQPMessageDeliveryPolicy;
@@ -54,7 +49,7 @@ final class CAMQPSource implements CAMQPSourceInterface {
     /*
      * Count of unsettled messages
      */
-    private final Map<Long, CAMQPMessage> unsettledDeliveries = new ConcurrentHashMap<>();
+    private final CAMQPUnsettledDeliveryStore<CAMQPMessage> unsettledDeliveries = new CAMQPUnsettledDeliveryStore<>();
 
     /*
      * Count of unsent messages at Link Sender, because of link congestion.
@@ -138,17 +133,17 @@ final class CAMQPSource implements CAMQPSourceInterface {
     }
 
     /**
-     * Processes the Collection of disposed transferIds.
+     * Processes the range of disposed deliveryIds.
      */
     @Override
-    public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+    public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
         /*
          * In the case of AtmostOnce delivery policy, the messages are already
          * deemed settled by the source at the point of sending, so nothing
          * needs to be done.
          */
         if (endpointPolicy.getDeliveryPolicy() == CAMQPMessageDeliveryPolicy.AtmostOnce) {
-            return deliveryIds;
+            return;
         }
 
         /*
@@ -158,40 +153,31 @@ final class CAMQPSource implements CAMQPSourceInterface {
          * nothing needs to be done here.
          */
         if (isMessageSettledByPeer && (endpointPolicy.getDeliveryPolicy() == CAMQPMessageDeliveryPolicy.ExactlyOnce)) {
-            return deliveryIds;
+            return;
         }
 
         /*
-         * Process the unsettled messages
+         * Process and settle the unsettled messages
          */
-        List<Long> settledDeliveryIds = new ArrayList<>();
-        for (long deliveryId : deliveryIds) {
-            CAMQPMessage message = unsettledDeliveries.remove(deliveryId);
-            if (message != null) {
-                settledDeliveryIds.add(deliveryId);
-                if (observer != null) {
-                    observer.messageAckedByConsumer(message.getMessage(), this);
-                }
-            }
+        for (long deliveryId = unsettledDeliveries.ceilingDeliveryId(firstDeliveryId, lastDeliveryId);
+                deliveryId != -1;
+                deliveryId = unsettledDeliveries.ceilingDeliveryId(deliveryId + 1, lastDeliveryId)) {
+            settleDelivery(deliveryId);
         }
+    }
 
-        /*
-         * Settle the transferIds
-         */
-        boolean settled = true;
-        for (long settledDeliveryId : settledDeliveryIds) {
-            CAMQPLinkEndpoint linkEndpoint = (CAMQPLinkEndpoint) linkSender;
-            linkEndpoint.sendDisposition(settledDeliveryId, settled, new CAMQPDefinitionAccepted());
+    private void settleDelivery(long deliveryId) {
+        CAMQPMessage message = unsettledDeliveries.remove(deliveryId);
+        if (message == null) {
+            return;
         }
-
-        if (!settledDeliveryIds.isEmpty()) {
-            deliveryIds.removeAll(settledDeliveryIds);
+        if (observer != null) {
+            observer.messageAckedByConsumer(message.getMessage(), this);
         }
-        /*
-         * At this point, the collection deliveryIds contains transferIds that
-         * have not originated at this endpoint.
-         */
-        return deliveryIds;
+
+        boolean settled = true;
+        CAMQPLinkEndpoint linkEndpoint = (CAMQPLinkEndpoint) linkSender;
+        linkEndpoint.sendDisposition(deliveryId, settled, new CAMQPDefinitionAccepted());
     }
 
     /**
@@ -205,6 +191,10 @@ final class CAMQPSource implements CAMQPSourceInterface {
     @Override
     public void sendMessage(DoveMQMessage message) {
         DoveMQMessageImpl messageImpl = (DoveMQMessageImpl) message;
+        /*
+         * A message forwarded by the broker is not re-encoded, unless it
+         * has been modified: marshal() reuses its original encoding.
+         */
         CAMQPMessagePayload encodedMessagePayload = messageImpl.marshal();
         String deliveryTag = UUID.randomUUID().toString();
         checkUnsentMessageCountThresholdAtLink();
@@ -17,8 +17,6 @@
 
 package net.dovemq.transport.endpoint;
 
-import java.util.Collection;
-
 import net.dovemq.api.DoveMQMessage;
 import net.dovemq.transport.link.CAMQPMessage;
 
@@ -71,20 +69,20 @@ public interface CAMQPSourceInterface extends CAMQPEndpointInterface {
 
     /**
      * Called by Link Sender upon receipt of disposition control frame. Receives
-     * a collection of deliveryIds corresponding to messages being disposed.
-     * Processes the messages that are sent by this end-point, and returns back
-     * a collection of unprocessed messages. The reason this happens is that,
-     * for a session attached to multiple links, a batched disposition frame may
-     * contain messages sent from different link end-points.
+     * the range of deliveryIds corresponding to messages being disposed.
+     * Processes the messages of the range that are sent from this end-point,
+     * and ignores the rest. The reason this happens is that, for a session
+     * attached to multiple links, a batched disposition frame may contain
+     * messages sent from different link end-points.
      *
-     * @param deliveryIds
-     *            : collection of deliveryIds for batched disposition of
-     *            messages.
+     * @param firstDeliveryId
+     *            : first deliveryId of the range of messages for batched
+     *            disposition.
+     * @param lastDeliveryId
+     *            : last deliveryId of the range.
      * @param isMessageSettledByPeer
      *            : true/false.
      * @param newState
-     * @return A Collection of deliveryIds for messages that are not sent from
-     *         this end-point.
      */
-    public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState);
+    public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState);
 }
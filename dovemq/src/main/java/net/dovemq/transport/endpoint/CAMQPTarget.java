@@ -17,12 +17,6 @@
 
 package net.dovemq.transport.endpoint;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-
 import net.dovemq.api.DoveMQEndpointPolicy.MessageAcknowledgementPolicy;
 import net.dovemq.broker.endpoint.CAMQPMessageReceiver;
 import net.dovemq.transport.frame.CAMQPMessagePayload;
@@ -41,9 +35,9 @@ import net.dovemq.transport.session.CAMQPSessionInterface;
  * @author tejdas
  */
 final class CAMQPTarget implements CAMQPTargetInterface {
-    private final Map<Long, CAMQPMessage> unsettledDeliveries = new ConcurrentHashMap<>();
+    private final CAMQPUnsettledDeliveryStore<CAMQPMessage> unsettledDeliveries = new CAMQPUnsettledDeliveryStore<>();
 
-    private final Map<Long, Boolean> deliveriesWaitingExplicitAck = new ConcurrentHashMap<>();
+    private final CAMQPUnsettledDeliveryStore<Boolean> deliveriesWaitingExplicitAck = new CAMQPUnsettledDeliveryStore<>();
 
     private final CAMQPLinkReceiverInterface linkReceiver;
 
@@ -107,30 +101,19 @@ final class CAMQPTarget implements CAMQPTargetInterface {
     }
 
     /**
-     * Processes the Collection of disposed transferIds. Removes the settled
-     * transferIds from unsettled map.
+     * Processes the range of disposed deliveryIds. Removes the settled
+     * deliveryIds from unsettled map.
      */
     @Override
-    public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+    public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
         if (!isMessageSettledByPeer) {
-            return deliveryIds;
-        }
-        List<Long> settledDeliveryIds = new ArrayList<>();
-        for (long deliveryId : deliveryIds) {
-            CAMQPMessage message = unsettledDeliveries.remove(deliveryId);
-            if (message != null) {
-                settledDeliveryIds.add(deliveryId);
-            }
+            return;
         }
-
-        if (!settledDeliveryIds.isEmpty()) {
-            deliveryIds.removeAll(settledDeliveryIds);
+        for (long deliveryId = unsettledDeliveries.ceilingDeliveryId(firstDeliveryId, lastDeliveryId);
+                deliveryId != -1;
+                deliveryId = unsettledDeliveries.ceilingDeliveryId(deliveryId + 1, lastDeliveryId)) {
+            unsettledDeliveries.remove(deliveryId);
         }
-        /*
-         * At this point, the collection deliveryIds contains transferIds that
-         * have not originated at this endpoint.
-         */
-        return deliveryIds;
     }
 
     private void sendDisposition(long deliveryId, boolean settled, Object settledState) {
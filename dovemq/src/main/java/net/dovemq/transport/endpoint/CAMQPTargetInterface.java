@@ -17,8 +17,6 @@
 
 package net.dovemq.transport.endpoint;
 
-import java.util.Collection;
-
 import net.dovemq.broker.endpoint.CAMQPMessageReceiver;
 import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionError;
@@ -51,23 +49,23 @@ public interface CAMQPTargetInterface extends CAMQPEndpointInterface {
     public void messageReceived(long deliveryId, String deliveryTag, CAMQPMessagePayload message, boolean settledBySender, int receiverSettleMode);
 
     /**
-     * Called by Link Sender upon receipt of disposition control frame. Receives
-     * a collection of deliveryIds corresponding to messages being disposed.
-     * Processes the messages that are received by this end-point, and returns
-     * back a collection of unprocessed messages. The reason this happens is
-     * that, for a session attached to multiple links, a batched disposition
-     * frame may contain messages received by different link end-points.
+     * Called by Link Receiver upon receipt of disposition control frame. Receives
+     * the range of deliveryIds corresponding to messages being disposed.
+     * Processes the messages of the range that are received by this end-point,
+     * and ignores the rest. The reason this happens is that, for a session
+     * attached to multiple links, a batched disposition frame may contain
+     * messages received by different link end-points.
      *
-     * @param deliveryIds
-     *            : collection of deliveryIds for batched disposition of
-     *            messages.
+     * @param firstDeliveryId
+     *            : first deliveryId of the range of messages for batched
+     *            disposition.
+     * @param lastDeliveryId
+     *            : last deliveryId of the range.
      * @param isMessageSettledByPeer
      *            : true/false.
      * @param newState
-     * @return A Collection of deliveryIds for messages that are not received by
-     *         this end-point.
      */
-    public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState);
+    public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState);
 
     /**
      * Called by DoveMQMessageReceiver to acknowledge processing of a message.
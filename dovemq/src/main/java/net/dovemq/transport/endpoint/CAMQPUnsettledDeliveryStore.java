@@ -0,0 +1,295 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.endpoint;
+
+import java.util.TreeMap;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Store of unsettled (in-flight) deliveries, keyed by deliveryId.
+ *
+ * Since the deliveryIds are dense and increasing, the deliveries are kept in
+ * a ring buffer, indexed by the deliveryId modulo its capacity. The ring
+ * buffer covers the span of deliveryIds between the oldest and the newest
+ * unsettled delivery, and is doubled when the span outgrows it, so an
+ * insert, lookup or settlement is O(1), and costs one slot per delivery.
+ * It is halved when less than a quarter of it is in use, and the span fits
+ * in half of it, down to INITIAL_CAPACITY.
+ *
+ * The capacity is bounded by MAX_CAPACITY. A delivery that stays unsettled
+ * while more than MAX_CAPACITY newer deliveries are made, is moved out of
+ * the ring buffer to an overflow map.
+ *
+ * The deliveries are walked in the order of their deliveryIds, with
+ * ceilingDeliveryId().
+ *
+ * @author tejdas
+ *
+ * @param <T>
+ *            : delivery state
+ */
+@ThreadSafe
+public final class CAMQPUnsettledDeliveryStore<T> {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final int MAX_CAPACITY = 1 << 20;
+
+    @GuardedBy("this")
+    private Object[] slots = new Object[INITIAL_CAPACITY];
+
+    /*
+     * deliveryIds of the oldest and the newest delivery in the ring buffer.
+     * Valid only if ringSize > 0.
+     */
+    @GuardedBy("this")
+    private long first = 0;
+
+    @GuardedBy("this")
+    private long last = 0;
+
+    @GuardedBy("this")
+    private int ringSize = 0;
+
+    @GuardedBy("this")
+    private TreeMap<Long, T> overflow = null;
+
+    /**
+     * Stores the delivery, replacing the existing delivery with the same
+     * deliveryId, if any.
+     *
+     * @param deliveryId
+     * @param delivery
+     */
+    public synchronized void put(long deliveryId, T delivery) {
+        if (delivery == null) {
+            throw new IllegalArgumentException("Cannot store a null delivery: deliveryId: " + deliveryId);
+        }
+
+        if (ringSize == 0) {
+            first = deliveryId;
+            last = deliveryId;
+        }
+        else {
+            long newFirst = Math.min(first, deliveryId);
+            long newLast = Math.max(last, deliveryId);
+            if (newLast - newFirst >= slots.length) {
+                long windowStart = resize(newFirst, newLast);
+                if (deliveryId < windowStart) {
+                    getOverflow().put(deliveryId, delivery);
+                    return;
+                }
+                newFirst = (ringSize == 0) ? deliveryId : Math.min(first, deliveryId);
+            }
+            first = newFirst;
+            last = newLast;
+        }
+
+        int index = index(deliveryId);
+        if (slots[index] == null) {
+            ringSize++;
+        }
+        slots[index] = delivery;
+    }
+
+    /**
+     * @param deliveryId
+     * @return the delivery, or null if there is no unsettled delivery with
+     *         the deliveryId.
+     */
+    public synchronized T get(long deliveryId) {
+        if (isInRing(deliveryId)) {
+            return getSlot(deliveryId);
+        }
+        return (overflow != null) ? overflow.get(deliveryId) : null;
+    }
+
+    /**
+     * Removes the delivery upon its settlement.
+     *
+     * @param deliveryId
+     * @return the removed delivery, or null if there is no unsettled delivery
+     *         with the deliveryId.
+     */
+    public synchronized T remove(long deliveryId) {
+        if (!isInRing(deliveryId)) {
+            return (overflow != null) ? overflow.remove(deliveryId) : null;
+        }
+
+        int index = index(deliveryId);
+        T delivery = getSlot(deliveryId);
+        if (delivery == null) {
+            return null;
+        }
+        slots[index] = null;
+        ringSize--;
+        if (ringSize > 0) {
+            if (deliveryId == first) {
+                while (slots[index(first)] == null) {
+                    first++;
+                }
+            }
+            else if (deliveryId == last) {
+                while (slots[index(last)] == null) {
+                    last--;
+                }
+            }
+        }
+        if ((slots.length > INITIAL_CAPACITY) && (ringSize < slots.length / 4)) {
+            shrink();
+        }
+        return delivery;
+    }
+
+    /**
+     * Returns the lowest deliveryId within [from, to], for which there is an
+     * unsettled delivery. Used to walk the deliveries:
+     *
+     * <pre>
+     * for (long id = store.ceilingDeliveryId(first, last); id != -1; id = store.ceilingDeliveryId(id + 1, last))
+     * </pre>
+     *
+     * @param from
+     * @param to
+     *            : inclusive upper bound of the scan
+     * @return the deliveryId, or -1 if there is none.
+     */
+    public synchronized long ceilingDeliveryId(long from, long to) {
+        long ceiling = -1;
+        if (ringSize > 0) {
+            long scanEnd = Math.min(last, to);
+            for (long id = Math.max(from, first); id <= scanEnd; id++) {
+                if (slots[index(id)] != null) {
+                    ceiling = id;
+                    break;
+                }
+            }
+        }
+
+        if ((overflow != null) && !overflow.isEmpty() && (from <= to)) {
+            Long overflowCeiling = overflow.ceilingKey(from);
+            if ((overflowCeiling != null) && (overflowCeiling <= to) && ((ceiling == -1) || (overflowCeiling < ceiling))) {
+                ceiling = overflowCeiling;
+            }
+        }
+        return ceiling;
+    }
+
+    public synchronized int size() {
+        return ringSize + ((overflow != null) ? overflow.size() : 0);
+    }
+
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    synchronized int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Grows the ring buffer to cover the deliveryIds [newFirst, newLast]. If
+     * it would exceed MAX_CAPACITY, it covers only the newest MAX_CAPACITY
+     * deliveryIds, and the older deliveries are moved to the overflow map.
+     *
+     * @return the oldest deliveryId covered by the ring buffer.
+     */
+    @GuardedBy("this")
+    private long resize(long newFirst, long newLast) {
+        long span = newLast - newFirst + 1;
+        int newCapacity = slots.length;
+        while ((newCapacity < span) && (newCapacity < MAX_CAPACITY)) {
+            newCapacity <<= 1;
+        }
+        long windowStart = Math.max(newFirst, newLast - newCapacity + 1);
+
+        Object[] oldSlots = slots;
+        long oldFirst = first;
+        long oldLast = last;
+        slots = new Object[newCapacity];
+        ringSize = 0;
+        for (long id = oldFirst; id <= oldLast; id++) {
+            @SuppressWarnings("unchecked")
+            T delivery = (T) oldSlots[(int) (id & (oldSlots.length - 1))];
+            if (delivery == null) {
+                continue;
+            }
+            if (id < windowStart) {
+                getOverflow().put(id, delivery);
+            }
+            else {
+                if (ringSize == 0) {
+                    first = id;
+                }
+                last = id;
+                slots[index(id)] = delivery;
+                ringSize++;
+            }
+        }
+        return windowStart;
+    }
+
+    /**
+     * Halves the ring buffer while less than a quarter of it is in use, and
+     * the span of the deliveries fits in half of it.
+     */
+    @GuardedBy("this")
+    private void shrink() {
+        long span = (ringSize > 0) ? last - first + 1 : 0;
+        int newCapacity = slots.length;
+        while ((newCapacity > INITIAL_CAPACITY) && (ringSize < newCapacity / 4) && (span <= newCapacity / 2)) {
+            newCapacity >>= 1;
+        }
+        if (newCapacity == slots.length) {
+            return;
+        }
+
+        Object[] oldSlots = slots;
+        slots = new Object[newCapacity];
+        if (ringSize > 0) {
+            for (long id = first; id <= last; id++) {
+                slots[index(id)] = oldSlots[(int) (id & (oldSlots.length - 1))];
+            }
+        }
+    }
+
+    @GuardedBy("this")
+    private boolean isInRing(long deliveryId) {
+        return (ringSize > 0) && (deliveryId >= first) && (deliveryId <= last);
+    }
+
+    @SuppressWarnings("unchecked")
+    @GuardedBy("this")
+    private T getSlot(long deliveryId) {
+        return (T) slots[index(deliveryId)];
+    }
+
+    @GuardedBy("this")
+    private int index(long deliveryId) {
+        return (int) (deliveryId & (slots.length - 1));
+    }
+
+    @GuardedBy("this")
+    private TreeMap<Long, T> getOverflow() {
+        if (overflow == null) {
+            overflow = new TreeMap<>();
+        }
+        return overflow;
+    }
+}
@@ -30,10 +30,14 @@ import net.dovemq.api.MessageProperties;
 import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.CAMQPEncoder;
 import net.dovemq.transport.protocol.CAMQPProtocolConstants;
+import net.dovemq.transport.protocol.CAMQPSymbolTable;
 import net.dovemq.transport.protocol.CAMQPSyncDecoder;
-import net.jcip.annotations.Immutable;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
 
 import org.apache.commons.lang.StringUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 public final class DoveMQMessageImpl implements DoveMQMessage {
     private static final String SYMBOL_DELIVERY_ANNOTATIONS = "amqp:delivery-annotations:map";
@@ -48,31 +52,100 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     public static final String TOPIC_PUBLISH_HIERARCHY_KEY = "TopicPublishHierarchyKey";
 
-    @Immutable
+    static {
+        CAMQPSymbolTable.register(SYMBOL_DELIVERY_ANNOTATIONS);
+        CAMQPSymbolTable.register(SYMBOL_MESSAGE_ANNOTATIONS);
+        CAMQPSymbolTable.register(SYMBOL_APPLICATION_ANNOTATIONS);
+        CAMQPSymbolTable.register(SYMBOL_FOOTERS);
+        CAMQPSymbolTable.register(ROUTING_TAG_KEY);
+        CAMQPSymbolTable.register(TOPIC_PUBLISH_HIERARCHY_KEY);
+    }
+
+    /*
+     * Sections of an encoded message, in the order they are encoded.
+     */
+    private static final int HEADER_SECTION = 0;
+
+    private static final int DELIVERY_ANNOTATIONS_SECTION = 1;
+
+    private static final int MESSAGE_ANNOTATIONS_SECTION = 2;
+
+    private static final int PROPERTIES_SECTION = 3;
+
+    private static final int APPLICATION_PROPERTIES_SECTION = 4;
+
+    private static final int PAYLOAD_SECTION = 5;
+
+    private static final int FOOTERS_SECTION = 6;
+
+    private static final int SECTION_COUNT = 7;
+
+    private static final int SECTION_DECODED = -1;
+
+    /**
+     * Payload section of the message. A payload added by the application is
+     * kept as a private copy of the byte array. A decoded payload is kept as
+     * a slice of the received frame body, and the byte array is only
+     * materialized when the application asks for it.
+     */
+    @ThreadSafe
     private static class DoveMQPayload {
         public DoveMQPayload(byte[] payload) {
             super();
             this.payload = Arrays.copyOf(payload, payload.length);
+            this.payloadBuffer = null;
+        }
+
+        public DoveMQPayload(ChannelBuffer payloadBuffer) {
+            super();
+            this.payload = null;
+            this.payloadBuffer = payloadBuffer;
         }
 
         void encode(CAMQPEncoder encoder) {
-            encoder.writeBinaryPayload(payload, payload.length);
+            if (payloadBuffer != null) {
+                encoder.writeBinaryPayload(payloadBuffer);
+            }
+            else {
+                encoder.writeBinaryPayload(payload, payload.length);
+            }
         }
 
         byte[] getPayload() {
-            return payload;
+            byte[] materializedPayload = payload;
+            if (materializedPayload == null) {
+                materializedPayload = new byte[payloadBuffer.readableBytes()];
+                payloadBuffer.getBytes(payloadBuffer.readerIndex(), materializedPayload);
+                payload = materializedPayload;
+            }
+            return materializedPayload;
+        }
+
+        ChannelBuffer getPayloadBuffer() {
+            if (payloadBuffer != null) {
+                return payloadBuffer.duplicate();
+            }
+            return ChannelBuffers.wrappedBuffer(payload);
         }
 
-        private final byte[] payload;
+        /*
+         * Lazily materialized for a decoded payload. A benign race may
+         * materialize it more than once.
+         */
+        private volatile byte[] payload;
+
+        private final ChannelBuffer payloadBuffer;
     }
 
     @Override
     public HeaderProperties getHeaderProperties() {
+        decodeSectionForUpdate(HEADER_SECTION);
         return headerProperties;
     }
 
     @Override
     public void addDeliveryAnnotation(String key, String val) {
+        decodeSectionForUpdate(DELIVERY_ANNOTATIONS_SECTION);
         if (deliveryAnnotations == null) {
             deliveryAnnotations = new HashMap<>();
         }
@@ -81,6 +154,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public void addMessageAnnotation(String key, String val) {
+        decodeSectionForUpdate(MESSAGE_ANNOTATIONS_SECTION);
         if (messageAnnotations == null) {
             messageAnnotations = new HashMap<>();
         }
@@ -89,11 +163,13 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public MessageProperties getMessageProperties() {
+        decodeSectionForUpdate(PROPERTIES_SECTION);
         return messageProperties;
     }
 
     @Override
     public void addApplicationProperty(String key, String val) {
+        decodeSectionForUpdate(APPLICATION_PROPERTIES_SECTION);
         if (applicationProperties == null) {
             applicationProperties = new HashMap<>();
         }
@@ -102,6 +178,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public void addPayload(byte[] body) {
+        decodeSectionForUpdate(PAYLOAD_SECTION);
         if (payloads != null) {
             payloads.add(new DoveMQPayload(body));
         }
@@ -116,6 +193,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public void addFooter(String key, String val) {
+        decodeSectionForUpdate(FOOTERS_SECTION);
         if (footers == null) {
             footers = new HashMap<>();
         }
@@ -124,6 +202,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public String getDeliveryAnnotation(String key) {
+        decodeSection(DELIVERY_ANNOTATIONS_SECTION);
         if (deliveryAnnotations != null) {
             return deliveryAnnotations.get(key);
         }
@@ -134,6 +213,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public Collection<String> getDeliveryAnnotationKeys() {
+        decodeSection(DELIVERY_ANNOTATIONS_SECTION);
         if (deliveryAnnotations != null) {
             return deliveryAnnotations.keySet();
         }
@@ -144,6 +224,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public String getMessageAnnotation(String key) {
+        decodeSection(MESSAGE_ANNOTATIONS_SECTION);
         if (messageAnnotations != null) {
             return messageAnnotations.get(key);
         }
@@ -154,6 +235,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public Collection<String> getMessageAnnotationKeys() {
+        decodeSection(MESSAGE_ANNOTATIONS_SECTION);
         if (messageAnnotations != null) {
             return messageAnnotations.keySet();
         }
@@ -164,6 +246,18 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public String getApplicationProperty(String key) {
+        synchronized (this) {
+            if (isSectionEncoded(APPLICATION_PROPERTIES_SECTION)) {
+                /*
+                 * Look up just the one property, without decoding the
+                 * application properties section.
+                 */
+                CAMQPSyncDecoder decoder = createSectionDecoder(APPLICATION_PROPERTIES_SECTION);
+                String symbolRead = decoder.readSymbol();
+                assert (StringUtils.equals(symbolRead, SYMBOL_APPLICATION_ANNOTATIONS));
+                return decoder.findPropertyInMap(key);
+            }
+        }
         if (applicationProperties != null) {
             return applicationProperties.get(key);
         }
@@ -174,6 +268,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public Collection<String> getApplicationPropertyKeys() {
+        decodeSection(APPLICATION_PROPERTIES_SECTION);
         if (applicationProperties != null) {
             return applicationProperties.keySet();
         }
@@ -184,6 +279,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public String getFooter(String key) {
+        decodeSection(FOOTERS_SECTION);
         if (footers != null) {
             return footers.get(key);
         }
@@ -194,6 +290,7 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public Collection<String> getFooterKeys() {
+        decodeSection(FOOTERS_SECTION);
         if (footers != null) {
             return footers.keySet();
         }
@@ -204,19 +301,35 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
 
     @Override
     public boolean hasMultiplePayloads() {
+        decodeSection(PAYLOAD_SECTION);
         return (payloads != null);
     }
 
     @Override
     public byte[] getPayload() {
+        decodeSection(PAYLOAD_SECTION);
         if (payload != null) {
             return payload.getPayload();
         }
         return null;
     }
 
+    /**
+     * Returns a read-only view of the (first) payload, without copying it.
+     *
+     * @return
+     */
+    public ChannelBuffer getPayloadBuffer() {
+        decodeSection(PAYLOAD_SECTION);
+        if (payload != null) {
+            return ChannelBuffers.unmodifiableBuffer(payload.getPayloadBuffer());
+        }
+        return null;
+    }
+
     @Override
     public Collection<byte[]> getPayloads() {
+        decodeSection(PAYLOAD_SECTION);
         Collection<byte[]> payloadCollection = null;
         if (payload != null) {
             payloadCollection = new ArrayList<>();
@@ -244,6 +357,8 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
         super();
         headerProperties = new HeaderPropertiesImpl();
         messageProperties = new MessagePropertiesImpl();
+        encodedMessage = null;
+        sectionOffsets = null;
     }
 
     private DoveMQMessageImpl(HeaderPropertiesImpl headerProps,
@@ -251,9 +366,20 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
         super();
         headerProperties = headerProps;
         messageProperties = messageProps;
+        encodedMessage = null;
+        sectionOffsets = null;
+    }
+
+    private DoveMQMessageImpl(ChannelBuffer encodedMessage, int[] sectionOffsets) {
+        super();
+        this.encodedMessage = encodedMessage;
+        this.sectionOffsets = sectionOffsets;
+        this.encodedMessageUnmodified = true;
     }
 
     public void encode(CAMQPEncoder encoder) {
+        decodeAllSections();
+
         headerProperties.encode(encoder);
 
         encoder.encodePropertiesMap(SYMBOL_DELIVERY_ANNOTATIONS, deliveryAnnotations);
@@ -305,32 +431,170 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
                 break;
             }
             assert (StringUtils.equals(symbolRead, CAMQPProtocolConstants.SYMBOL_BINARY_PAYLOAD));
-            byte[] payloadBytes = decoder.readBinaryPayload();
-            if (message.payload == null) {
-                message.payload = new DoveMQPayload(payloadBytes);
-            }
-            else {
-                if (message.payloads == null) {
-                    message.payloads = new ArrayList<>();
-                }
-                message.payloads.add(new DoveMQPayload(payloadBytes));
-            }
-
+            message.addDecodedPayload(decoder.readBinaryPayloadSlice());
         }
         message.footers = decoder.decodePropertiesMap();
         return message;
     }
 
+    /**
+     * Returns the encoded message. A lazily unmarshalled message that has
+     * not been modified is not re-encoded: the original encoded message is
+     * returned as a duplicate that shares its content, so the message can
+     * be forwarded to any number of subscribers without being re-encoded.
+     *
+     * @return
+     */
     public CAMQPMessagePayload marshal() {
+        if (encodedMessageUnmodified) {
+            return new CAMQPMessagePayload(encodedMessage.duplicate());
+        }
         CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
         encode(encoder);
         return new CAMQPMessagePayload(encoder.getEncodedBuffer());
     }
 
+    /**
+     * Unmarshals the message lazily: the encoded message is scanned once to
+     * index the offsets of its sections, and each section is only decoded
+     * on first access. The payload buffer is not consumed.
+     *
+     * @param payload
+     * @return
+     */
     public static DoveMQMessageImpl unmarshal(CAMQPMessagePayload payload) {
+        ChannelBuffer encodedMessage = payload.getPayload().duplicate();
+        return new DoveMQMessageImpl(encodedMessage, indexSections(encodedMessage));
+    }
+
+    private static int[] indexSections(ChannelBuffer encodedMessage) {
+        ChannelBuffer buffer = encodedMessage.duplicate();
         CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
-        decoder.take(payload.getPayload());
-        return DoveMQMessageImpl.decode(decoder);
+        decoder.take(buffer);
+
+        int[] sectionOffsets = new int[SECTION_COUNT];
+        for (int section = HEADER_SECTION; section < PAYLOAD_SECTION; section++) {
+            sectionOffsets[section] = buffer.readerIndex();
+            decoder.skipValue();
+        }
+
+        sectionOffsets[PAYLOAD_SECTION] = buffer.readerIndex();
+        while (true) {
+            int sectionOffset = buffer.readerIndex();
+            String symbolRead = decoder.readSymbol();
+            if (symbolRead.equals(SYMBOL_FOOTERS)) {
+                sectionOffsets[FOOTERS_SECTION] = sectionOffset;
+                break;
+            }
+            decoder.skipValue();
+        }
+        return sectionOffsets;
+    }
+
+    @GuardedBy("this")
+    private boolean isSectionEncoded(int section) {
+        return (sectionOffsets != null) && (sectionOffsets[section] != SECTION_DECODED);
+    }
+
+    @GuardedBy("this")
+    private CAMQPSyncDecoder createSectionDecoder(int section) {
+        ChannelBuffer sectionBuffer = encodedMessage.duplicate();
+        sectionBuffer.readerIndex(sectionOffsets[section]);
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(sectionBuffer);
+        return decoder;
+    }
+
+    /**
+     * Decodes the section of a lazily unmarshalled message, if it has not
+     * been decoded yet.
+     *
+     * @param section
+     */
+    private synchronized void decodeSection(int section) {
+        if (!isSectionEncoded(section)) {
+            return;
+        }
+
+        CAMQPSyncDecoder decoder = createSectionDecoder(section);
+        String symbolRead;
+        switch (section) {
+        case HEADER_SECTION:
+            headerProperties = HeaderPropertiesImpl.decode(decoder);
+            break;
+
+        case DELIVERY_ANNOTATIONS_SECTION:
+            symbolRead = decoder.readSymbol();
+            assert (StringUtils.equals(symbolRead, SYMBOL_DELIVERY_ANNOTATIONS));
+            deliveryAnnotations = decoder.decodePropertiesMap();
+            break;
+
+        case MESSAGE_ANNOTATIONS_SECTION:
+            symbolRead = decoder.readSymbol();
+            assert (StringUtils.equals(symbolRead, SYMBOL_MESSAGE_ANNOTATIONS));
+            messageAnnotations = decoder.decodePropertiesMap();
+            break;
+
+        case PROPERTIES_SECTION:
+            messageProperties = MessagePropertiesImpl.decode(decoder);
+            break;
+
+        case APPLICATION_PROPERTIES_SECTION:
+            symbolRead = decoder.readSymbol();
+            assert (StringUtils.equals(symbolRead, SYMBOL_APPLICATION_ANNOTATIONS));
+            applicationProperties = decoder.decodePropertiesMap();
+            break;
+
+        case PAYLOAD_SECTION:
+            while (true) {
+                symbolRead = decoder.readSymbol();
+                if (symbolRead.equals(SYMBOL_FOOTERS)) {
+                    break;
+                }
+                assert (StringUtils.equals(symbolRead, CAMQPProtocolConstants.SYMBOL_BINARY_PAYLOAD));
+                addDecodedPayload(decoder.readBinaryPayloadSlice());
+            }
+            break;
+
+        case FOOTERS_SECTION:
+            symbolRead = decoder.readSymbol();
+            assert (StringUtils.equals(symbolRead, SYMBOL_FOOTERS));
+            footers = decoder.decodePropertiesMap();
+            break;
+
+        default:
+            break;
+        }
+        sectionOffsets[section] = SECTION_DECODED;
+    }
+
+    /**
+     * Decodes the section before it is (potentially) modified. The original
+     * encoded message can no longer be forwarded as is.
+     *
+     * @param section
+     */
+    private void decodeSectionForUpdate(int section) {
+        decodeSection(section);
+        encodedMessageUnmodified = false;
+    }
+
+    private void decodeAllSections() {
+        for (int section = HEADER_SECTION; section < SECTION_COUNT; section++) {
+            decodeSection(section);
+        }
+    }
+
+    private void addDecodedPayload(ChannelBuffer payloadBuffer) {
+        if (payload == null) {
+            payload = new DoveMQPayload(payloadBuffer);
+        }
+        else {
+            if (payloads == null) {
+                payloads = new ArrayList<>();
+            }
+            payloads.add(new DoveMQPayload(payloadBuffer));
+        }
     }
 
     public long getDeliveryId() {
@@ -349,13 +613,26 @@ public final class DoveMQMessageImpl implements DoveMQMessage {
         this.sourceId = sourceHashCode;
     }
 
-    private final HeaderPropertiesImpl headerProperties;
+    /*
+     * Set only for a lazily unmarshalled message: the encoded message, and
+     * the offsets of its sections that have not been decoded yet. The
+     * encoded message is forwarded as is by marshal(), until the message
+     * is modified.
+     */
+    private final ChannelBuffer encodedMessage;
+
+    @GuardedBy("this")
+    private final int[] sectionOffsets;
+
+    private volatile boolean encodedMessageUnmodified;
+
+    private HeaderPropertiesImpl headerProperties;
 
     private Map<String, String> deliveryAnnotations = null;
 
     private Map<String, String> messageAnnotations = null;
 
-    private final MessagePropertiesImpl messageProperties;
+    private MessagePropertiesImpl messageProperties;
 
     private Map<String, String> applicationProperties = null;
 
@@ -29,21 +29,60 @@ import org.jboss.netty.buffer.ChannelBuffer;
 @Immutable
 public final class CAMQPFrame {
     public CAMQPFrame(CAMQPFrameHeader header, ChannelBuffer body) {
+        this(header.getChannelNumber() & 0xFFFF, header.getFrameType(), header.getFrameSize(), body);
+    }
+
+    /**
+     * Creates a frame from the fields of its frame header, which are parsed
+     * in place by the frame decoder, without creating a CAMQPFrameHeader.
+     *
+     * @param channelNumber
+     * @param frameType
+     * @param frameSize
+     * @param body
+     */
+    public CAMQPFrame(int channelNumber, int frameType, long frameSize, ChannelBuffer body) {
         super();
-        this.header = header;
+        this.channelNumber = channelNumber;
+        this.frameType = frameType;
+        this.frameSize = frameSize;
         this.body = body;
     }
 
+    /**
+     * Creates a CAMQPFrameHeader with the fields of the frame header.
+     *
+     * @return
+     */
     public CAMQPFrameHeader getHeader() {
+        CAMQPFrameHeader header = new CAMQPFrameHeader();
+        header.setChannelNumber((short) channelNumber);
+        header.setFrameType(frameType);
+        header.setFrameSize(frameSize);
         return header;
     }
 
+    public int getChannelNumber() {
+        return channelNumber;
+    }
+
+    public int getFrameType() {
+        return frameType;
+    }
+
+    public long getFrameSize() {
+        return frameSize;
+    }
+
     public ChannelBuffer getBody() {
         return body;
     }
 
-    private final CAMQPFrameHeader header;
+    private final int channelNumber;
+
+    private final int frameType;
+
+    private final long frameSize;
 
     private final ChannelBuffer body;
 }
-
@@ -41,6 +41,22 @@ public final class CAMQPFrameHeaderCodec {
         return headerBuffer;
     }
 
+    /**
+     * Encodes the frame header in place, at the index of a buffer in which
+     * FRAME_HEADER_SIZE bytes have been reserved for it.
+     *
+     * @param buffer
+     * @param index
+     * @param frameSize
+     * @param channelNumber
+     */
+    public static void encode(ChannelBuffer buffer, int index, int frameSize, int channelNumber) {
+        buffer.setInt(index, frameSize);
+        buffer.setByte(index + 4, CAMQPFrameConstants.DEFAULT_DATA_OFFSET);
+        buffer.setByte(index + 5, CAMQPFrameConstants.AMQP_FRAME_TYPE);
+        buffer.setShort(index + 6, channelNumber);
+    }
+
     public static CAMQPFrameHeader decode(ChannelBuffer buffer) {
         CAMQPFrameHeader frameHeader = new CAMQPFrameHeader();
 
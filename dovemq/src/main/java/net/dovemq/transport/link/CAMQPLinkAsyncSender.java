@@ -17,7 +17,6 @@
 
 package net.dovemq.transport.link;
 
-import java.util.Collection;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.dovemq.transport.endpoint.CAMQPSourceInterface;
@@ -25,7 +24,6 @@ import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.data.CAMQPControlFlow;
 import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
 import net.dovemq.transport.session.CAMQPSessionInterface;
-import net.dovemq.transport.session.CAMQPSessionManager;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
@@ -108,7 +106,7 @@ final class CAMQPLinkAsyncSender extends CAMQPLinkEndpoint implements CAMQPLinkS
         }
 
         if (messagesParked) {
-            CAMQPSessionManager.getExecutor().execute(this);
+            session.getSendExecutor().execute(this);
         }
     }
 
@@ -176,7 +174,7 @@ final class CAMQPLinkAsyncSender extends CAMQPLinkEndpoint implements CAMQPLinkS
         }
 
         if (parkedMessages) {
-            CAMQPSessionManager.getExecutor().execute(this);
+            session.getSendExecutor().execute(this);
         }
     }
 
@@ -236,11 +234,10 @@ final class CAMQPLinkAsyncSender extends CAMQPLinkEndpoint implements CAMQPLinkS
     }
 
     @Override
-    public Collection<Long> dispositionReceived(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+    public void dispositionReceived(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
         if (source != null) {
-            return source.processDisposition(deliveryIds, isMessageSettledByPeer, newState);
+            source.processDisposition(firstDeliveryId, lastDeliveryId, isMessageSettledByPeer, newState);
         }
-        return deliveryIds;
     }
 
     @Override
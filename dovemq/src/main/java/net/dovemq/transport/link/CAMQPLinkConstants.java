@@ -28,6 +28,12 @@ public final class CAMQPLinkConstants {
 
     static final long LINK_CREDIT_VIOLATION_LIMIT = 10L;
 
+    /*
+     * Upper bound of the frame header and the encoded transfer performative,
+     * excluding the delivery-tag
+     */
+    static final int MAX_TRANSFER_FRAME_OVERHEAD = 128;
+
     static final int MAX_LINK_CREDIT_ISSUANCE_INTERVAL = 1000; // milliseconds
 
     protected static final long LINK_HANDSHAKE_TIMEOUT = 10000L; // milliseconds
@@ -26,6 +26,8 @@ import net.dovemq.transport.endpoint.CAMQPEndpointPolicy.CAMQPMessageDeliveryPol
 import net.dovemq.transport.endpoint.CAMQPEndpointPolicy.EndpointType;
 import net.dovemq.transport.endpoint.CAMQPSourceInterface;
 import net.dovemq.transport.endpoint.CAMQPTargetInterface;
+import net.dovemq.transport.frame.CAMQPMessagePayload;
+import net.dovemq.transport.protocol.CAMQPProtocolConstants;
 import net.dovemq.transport.protocol.data.CAMQPConstants;
 import net.dovemq.transport.protocol.data.CAMQPControlAttach;
 import net.dovemq.transport.protocol.data.CAMQPControlDetach;
@@ -39,6 +41,7 @@ import net.jcip.annotations.GuardedBy;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
 
 /**
  * This class is extended by Link Sender and Link Receiver
@@ -415,23 +418,21 @@ public abstract class CAMQPLinkEndpoint implements CAMQPLinkMessageHandler, CAMQ
 
     /**
      * Send the message on the underlying AMQP session as a transfer frame.
+     * A message that does not fit in the max-frame-size negotiated on the
+     * connection is sent as several transfer frames, all but the last one
+     * with the more flag set, so that other frames on the connection do not
+     * wait behind the whole message.
      *
      * @param message
      * @param messageSource
      */
     void send(CAMQPMessage message, CAMQPSourceInterface messageSource) {
-        /*
-         * TODO: fragment the message into multiple transfer frames if the
-         * message size is greater than the negotiated transfer frame size.
-         */
         long deliveryId = session.getNextDeliveryId();
-        CAMQPControlTransfer transferFrame = new CAMQPControlTransfer();
-        transferFrame.setDeliveryId(deliveryId);
-        transferFrame.setMore(false);
-        transferFrame.setHandle(linkHandle);
-        transferFrame.setDeliveryTag(message.getDeliveryTag().getBytes());
-
-        populateTransferFrameWithDispositionPolicy(transferFrame, endpointPolicy.getDeliveryPolicy());
+        byte[] deliveryTag = message.getDeliveryTag().getBytes();
+        CAMQPMessagePayload payload = message.getPayload();
+        ChannelBuffer payloadBody = payload.getPayload();
+        int payloadSize = (payloadBody != null) ? payloadBody.readableBytes() : 0;
+        int maxFragmentSize = getMaxTransferPayloadSize(deliveryTag);
 
         /*
          * Notify the source end-point that the message is about to be sent.
@@ -441,7 +442,42 @@ public abstract class CAMQPLinkEndpoint implements CAMQPLinkMessageHandler, CAMQ
         }
 
         assert (this instanceof CAMQPLinkSenderInterface);
-        session.sendTransfer(transferFrame, message.getPayload(), (CAMQPLinkSenderInterface) this);
+        CAMQPLinkSenderInterface linkSender = (CAMQPLinkSenderInterface) this;
+        if (payloadSize <= maxFragmentSize) {
+            session.sendTransfer(createTransferFrame(deliveryId, deliveryTag, false), payload, linkSender);
+            return;
+        }
+
+        int index = payloadBody.readerIndex();
+        int endIndex = index + payloadSize;
+        while (index < endIndex) {
+            int fragmentSize = Math.min(maxFragmentSize, endIndex - index);
+            boolean more = (index + fragmentSize < endIndex);
+            session.sendTransfer(createTransferFrame(deliveryId, deliveryTag, more),
+                    new CAMQPMessagePayload(payloadBody.slice(index, fragmentSize)),
+                    linkSender);
+            index += fragmentSize;
+        }
+    }
+
+    private CAMQPControlTransfer createTransferFrame(long deliveryId, byte[] deliveryTag, boolean more) {
+        CAMQPControlTransfer transferFrame = new CAMQPControlTransfer();
+        transferFrame.setDeliveryId(deliveryId);
+        transferFrame.setMore(more);
+        transferFrame.setHandle(linkHandle);
+        transferFrame.setDeliveryTag(deliveryTag);
+
+        populateTransferFrameWithDispositionPolicy(transferFrame, endpointPolicy.getDeliveryPolicy());
+        return transferFrame;
+    }
+
+    /**
+     * @param deliveryTag
+     * @return maximum number of payload bytes that fit in a transfer frame
+     */
+    private int getMaxTransferPayloadSize(byte[] deliveryTag) {
+        long maxFrameSize = Math.min(session.getMaxFrameSize(), CAMQPProtocolConstants.INT_MAX_VALUE);
+        return (int) Math.max(maxFrameSize - CAMQPLinkConstants.MAX_TRANSFER_FRAME_OVERHEAD - deliveryTag.length, 1);
     }
 
     private static void populateTransferFrameWithDispositionPolicy(CAMQPControlTransfer transferFrame, CAMQPMessageDeliveryPolicy deliveryPolicy) {
@@ -17,8 +17,6 @@
 
 package net.dovemq.transport.link;
 
-import java.util.Collection;
-
 import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.data.CAMQPControlAttach;
 import net.dovemq.transport.protocol.data.CAMQPControlDetach;
@@ -71,16 +69,17 @@ public interface CAMQPLinkMessageHandler {
     /**
      * Called by Session layer upon receipt of disposition frame.
      *
-     * @param deliveryIds
-     *            : Collection of deliveryIds of messages for batched
+     * @param firstDeliveryId
+     *            : first deliveryId of the range of messages for batched
      *            disposition.
+     * @param lastDeliveryId
+     *            : last deliveryId of the range.
      * @param isMessageSettledByPeer
      *            : true/false indicating if the message is settled by the peer.
      * @param newState
      *            : new message state.
-     * @return
      */
-    public Collection<Long> dispositionReceived(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState);
+    public void dispositionReceived(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState);
 
     /**
      * Called by Session layer upon session closure.
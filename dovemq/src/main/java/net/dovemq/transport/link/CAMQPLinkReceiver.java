@@ -17,7 +17,8 @@
 
 package net.dovemq.transport.link;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.dovemq.transport.endpoint.CAMQPTargetInterface;
 import net.dovemq.transport.frame.CAMQPMessagePayload;
@@ -30,6 +31,8 @@ import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
  * Implementation of AMQP Link Receiver.
@@ -74,6 +77,14 @@ final class CAMQPLinkReceiver extends CAMQPLinkEndpoint implements CAMQPLinkRece
         this.target = target;
     }
 
+    /*
+     * Payloads of the transfer frames received so far for a message that
+     * spans several transfer frames. Transfer frames of a link arrive in
+     * order, so at most one message is being reassembled at a time.
+     */
+    @GuardedBy("this")
+    private final List<ChannelBuffer> partialPayload = new ArrayList<>();
+
     private ReceiverLinkCreditPolicy linkCreditPolicy = ReceiverLinkCreditPolicy.CREDIT_OFFERED_BY_TARGET;
 
     synchronized void setLinkCreditPolicy(ReceiverLinkCreditPolicy linkCreditPolicy) {
@@ -89,15 +100,29 @@ final class CAMQPLinkReceiver extends CAMQPLinkEndpoint implements CAMQPLinkRece
         /*
          * In case of message fragmentation, change the I/O flow state and make
          * link-layer flow-control calculations only when the last fragment has
-         * been received.
+         * been received. Until then, keep the payload of the fragments, and
+         * acknowledge each transfer frame to the Session layer.
          */
-        if (transferFrame.getMore()) {
+        if (transferFrame.getMore() || transferFrame.getAborted()) {
+            synchronized (this) {
+                if (transferFrame.getAborted()) {
+                    partialPayload.clear();
+                }
+                else if (payload.getPayload() != null) {
+                    partialPayload.add(payload.getPayload());
+                }
+            }
+            session.ackTransfer(transferId);
             return;
         }
 
         CAMQPControlFlow flow = null;
         boolean violatedLinkCredit = false;
         synchronized (this) {
+            if (!partialPayload.isEmpty()) {
+                payload = reassemblePayload(payload);
+            }
+
             /*
              * update flow-control attributes
              */
@@ -153,8 +178,7 @@ final class CAMQPLinkReceiver extends CAMQPLinkEndpoint implements CAMQPLinkRece
         }
 
         /*
-         * Deliver the message to the Link target. TODO reassemble transfer
-         * frames of a fragmented message.
+         * Deliver the message to the Link target.
          */
         deliverMessage(transferFrame, payload);
         /*
@@ -163,6 +187,24 @@ final class CAMQPLinkReceiver extends CAMQPLinkEndpoint implements CAMQPLinkRece
         session.ackTransfer(transferId);
     }
 
+    /**
+     * Wraps the payloads of the fragments received so far, followed by the
+     * payload of the last fragment, in a composite buffer, without copying
+     * them.
+     *
+     * @param lastPayload
+     * @return
+     */
+    @GuardedBy("this")
+    private CAMQPMessagePayload reassemblePayload(CAMQPMessagePayload lastPayload) {
+        if (lastPayload.getPayload() != null) {
+            partialPayload.add(lastPayload.getPayload());
+        }
+        ChannelBuffer reassembled = ChannelBuffers.wrappedBuffer(partialPayload.toArray(new ChannelBuffer[partialPayload.size()]));
+        partialPayload.clear();
+        return new CAMQPMessagePayload(reassembled);
+    }
+
     /**
      * Deliver the message to Link target.
      *
@@ -323,11 +365,10 @@ final class CAMQPLinkReceiver extends CAMQPLinkEndpoint implements CAMQPLinkRece
     }
 
     @Override
-    public Collection<Long> dispositionReceived(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+    public void dispositionReceived(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
         if (target != null) {
-            return target.processDisposition(deliveryIds, isMessageSettledByPeer, newState);
+            target.processDisposition(firstDeliveryId, lastDeliveryId, isMessageSettledByPeer, newState);
         }
-        return deliveryIds;
     }
 
     @Override
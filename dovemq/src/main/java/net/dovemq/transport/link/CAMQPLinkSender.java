@@ -17,7 +17,6 @@
 
 package net.dovemq.transport.link;
 
-import java.util.Collection;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import net.dovemq.transport.endpoint.CAMQPEndpointPolicy;
@@ -26,7 +25,6 @@ import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.data.CAMQPControlFlow;
 import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
 import net.dovemq.transport.session.CAMQPSessionInterface;
-import net.dovemq.transport.session.CAMQPSessionManager;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.ThreadSafe;
 
@@ -168,7 +166,7 @@ class CAMQPLinkSender extends CAMQPLinkEndpoint implements CAMQPLinkSenderInterf
         }
 
         if (messagesParked) {
-            CAMQPSessionManager.getExecutor().execute(this);
+            session.getSendExecutor().execute(this);
         }
     }
 
@@ -280,7 +278,7 @@ class CAMQPLinkSender extends CAMQPLinkEndpoint implements CAMQPLinkSenderInterf
         }
 
         if (parkedMessages) {
-            CAMQPSessionManager.getExecutor().execute(this);
+            session.getSendExecutor().execute(this);
         }
     }
 
@@ -351,7 +349,7 @@ class CAMQPLinkSender extends CAMQPLinkEndpoint implements CAMQPLinkSenderInterf
         }
 
         if (parkedMessages) {
-            CAMQPSessionManager.getExecutor().execute(this);
+            session.getSendExecutor().execute(this);
         }
     }
 
@@ -423,11 +421,10 @@ class CAMQPLinkSender extends CAMQPLinkEndpoint implements CAMQPLinkSenderInterf
     }
 
     @Override
-    public Collection<Long> dispositionReceived(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+    public void dispositionReceived(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
         if (source != null) {
-            return source.processDisposition(deliveryIds, isMessageSettledByPeer, newState);
+            source.processDisposition(firstDeliveryId, lastDeliveryId, isMessageSettledByPeer, newState);
         }
-        return deliveryIds;
     }
 
     @Override
@@ -0,0 +1,90 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import org.jboss.netty.buffer.AbstractChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Keeps track of the pooled buffers that back a single encoded frame.
+ *
+ * Used as the ChannelBufferFactory of the recycled CAMQPEncoder, so every
+ * buffer the encoder (or a growing dynamic buffer) draws from the
+ * CAMQPBufferPool is remembered here. CAMQPSender releases the lease when
+ * the write of the frame completes, giving the buffers back to the pool.
+ *
+ * @author tejdas
+ */
+@NotThreadSafe
+public final class CAMQPBufferLease extends AbstractChannelBufferFactory {
+    private final CAMQPBufferPool bufferPool;
+
+    private final List<ChannelBuffer> leasedBuffers = new ArrayList<>(4);
+
+    CAMQPBufferLease(CAMQPBufferPool bufferPool) {
+        super(ByteOrder.BIG_ENDIAN);
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public ChannelBuffer getBuffer(ByteOrder order, int capacity) {
+        assert (order == ByteOrder.BIG_ENDIAN);
+        ChannelBuffer buffer = bufferPool.acquire(capacity);
+        leasedBuffers.add(buffer);
+        return buffer;
+    }
+
+    @Override
+    public ChannelBuffer getBuffer(ByteOrder order, byte[] array, int offset, int length) {
+        ChannelBuffer buffer = getBuffer(order, length);
+        buffer.writeBytes(array, offset, length);
+        return buffer;
+    }
+
+    @Override
+    public ChannelBuffer getBuffer(ByteBuffer nioBuffer) {
+        if (!nioBuffer.isReadOnly() && nioBuffer.isDirect()) {
+            return ChannelBuffers.wrappedBuffer(nioBuffer);
+        }
+        ChannelBuffer buffer = getBuffer(nioBuffer.order(), nioBuffer.remaining());
+        int pos = nioBuffer.position();
+        buffer.writeBytes(nioBuffer);
+        nioBuffer.position(pos);
+        return buffer;
+    }
+
+    /**
+     * Returns all the leased buffers to the pool, and recycles the lease.
+     * The encoded frame must not be accessed afterwards.
+     */
+    public void release() {
+        for (ChannelBuffer buffer : leasedBuffers) {
+            bufferPool.release(buffer);
+        }
+        leasedBuffers.clear();
+        bufferPool.recycleLease(this);
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * Size-classed pool of direct ChannelBuffers used by the recycled
+ * CAMQPEncoder. The buffers are handed out through a CAMQPBufferLease,
+ * and come back to the pool once the Netty write of the encoded frame
+ * completes.
+ *
+ * The allocation count is the number of direct buffers that had to be
+ * allocated because the pool had none available. Once the pool is warmed
+ * up, it stays constant in the steady state.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+public final class CAMQPBufferPool {
+    private static final int[] SIZE_CLASSES = { 4096, 8192, 16384, 32768, 65536 };
+
+    private static final int MAX_POOLED_BUFFERS_PER_SIZE_CLASS = 1024;
+
+    private static final int MAX_POOLED_LEASES = 4096;
+
+    private static volatile boolean poolingEnabled = false;
+
+    private static final CAMQPBufferPool bufferPool = new CAMQPBufferPool();
+
+    /**
+     * Enables or disables encoding of outgoing frames into pooled direct
+     * buffers. Disabled by default.
+     *
+     * @param enabled
+     */
+    public static void setPoolingEnabled(boolean enabled) {
+        poolingEnabled = enabled;
+    }
+
+    public static boolean isPoolingEnabled() {
+        return poolingEnabled;
+    }
+
+    public static CAMQPBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    private final ConcurrentLinkedQueue<?>[] freeBuffers = new ConcurrentLinkedQueue<?>[SIZE_CLASSES.length];
+
+    private final AtomicInteger[] freeBufferCounts = new AtomicInteger[SIZE_CLASSES.length];
+
+    private final ConcurrentLinkedQueue<CAMQPBufferLease> freeLeases = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger freeLeaseCount = new AtomicInteger(0);
+
+    private final AtomicLong allocationCount = new AtomicLong(0L);
+
+    private final AtomicLong reuseCount = new AtomicLong(0L);
+
+    private CAMQPBufferPool() {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            freeBuffers[i] = new ConcurrentLinkedQueue<ChannelBuffer>();
+            freeBufferCounts[i] = new AtomicInteger(0);
+        }
+    }
+
+    /**
+     * @return number of direct buffers allocated because the pool was empty
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * @return number of buffers handed out from the pool without allocation
+     */
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    CAMQPBufferLease acquireLease() {
+        CAMQPBufferLease lease = freeLeases.poll();
+        if (lease == null) {
+            return new CAMQPBufferLease(this);
+        }
+        freeLeaseCount.decrementAndGet();
+        return lease;
+    }
+
+    void recycleLease(CAMQPBufferLease lease) {
+        if (freeLeaseCount.incrementAndGet() > MAX_POOLED_LEASES) {
+            freeLeaseCount.decrementAndGet();
+            return;
+        }
+        freeLeases.offer(lease);
+    }
+
+    /**
+     * Returns a cleared direct buffer whose capacity is at least
+     * minCapacity. Requests larger than the largest size class are not
+     * pooled.
+     *
+     * @param minCapacity
+     * @return
+     */
+    ChannelBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClassFor(minCapacity);
+        if (sizeClass < 0) {
+            allocationCount.incrementAndGet();
+            return ChannelBuffers.directBuffer(ByteOrder.BIG_ENDIAN, minCapacity);
+        }
+
+        ChannelBuffer buffer = freeBufferQueue(sizeClass).poll();
+        if (buffer == null) {
+            allocationCount.incrementAndGet();
+            return ChannelBuffers.directBuffer(ByteOrder.BIG_ENDIAN, SIZE_CLASSES[sizeClass]);
+        }
+        freeBufferCounts[sizeClass].decrementAndGet();
+        reuseCount.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffers that do not belong to a size
+     * class, or that exceed the per size class limit, are left for the GC.
+     *
+     * @param buffer
+     */
+    void release(ChannelBuffer buffer) {
+        int sizeClass = exactSizeClass(buffer.capacity());
+        if ((sizeClass < 0) || !buffer.isDirect()) {
+            return;
+        }
+        if (freeBufferCounts[sizeClass].incrementAndGet() > MAX_POOLED_BUFFERS_PER_SIZE_CLASS) {
+            freeBufferCounts[sizeClass].decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        freeBufferQueue(sizeClass).offer(buffer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentLinkedQueue<ChannelBuffer> freeBufferQueue(int sizeClass) {
+        return (ConcurrentLinkedQueue<ChannelBuffer>) freeBuffers[sizeClass];
+    }
+
+    private static int sizeClassFor(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int exactSizeClass(int capacity) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (capacity == SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
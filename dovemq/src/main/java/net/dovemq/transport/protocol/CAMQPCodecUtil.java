@@ -61,26 +61,15 @@ public final class CAMQPCodecUtil {
     }
 
     public static void writeUShort(int value, ChannelBuffer writableBuffer) {
-        final byte[] unsignedVal = new byte[] { (byte) ((value >> CAMQPProtocolConstants.OCTET) & 0xFF), (byte) (value & 0xFF) };
-        writableBuffer.writeBytes(unsignedVal);
+        writableBuffer.writeShort((short) (value & 0xFFFF));
     }
 
     public static void writeUInt(long value, ChannelBuffer writableBuffer) {
-        int width = 4;
-        byte[] uIntVal = new byte[width];
-        for (int i = 0; i < width; i++) {
-            uIntVal[i] = (byte) ((value >> (CAMQPProtocolConstants.OCTET * ((width - 1) - i))) & 0xFF);
-        }
-        writableBuffer.writeBytes(uIntVal);
+        writableBuffer.writeInt((int) (value & 0xFFFFFFFFL));
     }
 
     public static void writeUIntAt(long value, int position, ChannelBuffer writableBuffer) {
-        int width = 4;
-        byte[] uIntVal = new byte[width];
-        for (int i = 0; i < width; i++) {
-            uIntVal[i] = (byte) ((value >> (CAMQPProtocolConstants.OCTET * ((width - 1) - i))) & 0xFF);
-        }
-        writableBuffer.setBytes(position, uIntVal);
+        writableBuffer.setInt(position, (int) (value & 0xFFFFFFFFL));
     }
 
     static int readFormatCode(ChannelBuffer buffer) {
@@ -94,16 +83,11 @@ public final class CAMQPCodecUtil {
     }
 
     public static int readUShort(ChannelBuffer buffer) {
-        byte[] val = new byte[2];
-        buffer.readBytes(val);
-        return ((val[0] & 0xFF) << CAMQPProtocolConstants.OCTET) + (val[1] & 0xFF);
+        return buffer.readUnsignedShort();
     }
 
     public static long readUInt(ChannelBuffer buffer) {
-        int width = 4;
-        byte[] val = new byte[width];
-        buffer.readBytes(val);
-        return ((long) (val[0] & 0xFF) << 24) + ((val[1] & 0xFF) << 16) + ((val[2] & 0xFF) << 8) + (val[3] & 0xFF);
+        return buffer.readUnsignedInt();
     }
 
     static byte readByte(ChannelBuffer buffer) {
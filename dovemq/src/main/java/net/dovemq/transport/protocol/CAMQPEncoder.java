@@ -17,20 +17,22 @@
 
 package net.dovemq.transport.protocol;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
 import java.util.UUID;
 
+import net.dovemq.transport.frame.CAMQPFrameConstants;
+import net.dovemq.transport.frame.CAMQPFrameHeaderCodec;
 import net.dovemq.transport.frame.CAMQPMessagePayload;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
 import net.dovemq.transport.protocol.data.CAMQPFormatCodes;
-import net.dovemq.transport.protocol.data.CAMQPTypes;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
 
@@ -49,19 +51,165 @@ public final class CAMQPEncoder {
 
     private boolean isComposite = false;
 
-    private final Stack<Integer> compoundSizePosition = new Stack<>();
+    /**
+     * A compound (list, map or array) whose header has been written, but
+     * whose size is yet to be filled in by fillCompoundSize().
+     */
+    private static final class CompoundFrame {
+        /*
+         * Buffer containing the header, and the index of the size field
+         * within it.
+         */
+        ChannelBuffer headerBuffer;
+
+        int sizePosition;
+
+        /*
+         * Offset of the size field from the beginning of the encoded data.
+         */
+        int encodedPosition;
+
+        /*
+         * Width of the size and count fields: 1 or 4
+         */
+        int width;
+
+        long count;
+
+        /*
+         * A list that is not an array element: its trailing null elements
+         * are trimmed, and it is widened from list8 to list32 if needed.
+         */
+        boolean isCompactList;
+
+        /*
+         * A compound that is not an array element: it is widened from
+         * 8-bit to 32-bit size if needed.
+         */
+        boolean isWidenable;
+
+        /*
+         * Run of null elements written last.
+         */
+        ChannelBuffer nullRunBuffer;
+
+        int nullRunStart;
+
+        int nullRunEnd;
+
+        int nullRunCount;
+
+        void nullWritten(ChannelBuffer writableBuffer) {
+            int position = writableBuffer.writerIndex();
+            if ((nullRunBuffer == writableBuffer) && (nullRunEnd == position)) {
+                nullRunCount++;
+            }
+            else {
+                nullRunBuffer = writableBuffer;
+                nullRunStart = position;
+                nullRunCount = 1;
+            }
+            nullRunEnd = position + 1;
+        }
+
+        boolean endsWithNullRun(ChannelBuffer writableBuffer) {
+            return (nullRunCount > 0) && (nullRunBuffer == writableBuffer) && (nullRunEnd == writableBuffer.writerIndex());
+        }
+    }
+
+    private static final int INITIAL_COMPOUND_DEPTH = 8;
+
+    /*
+     * 8-bit size and count fields are widened to 32 bits.
+     */
+    private static final int WIDENED_HEADER_DELTA = 6;
+
+    private CompoundFrame[] compoundFrames = new CompoundFrame[INITIAL_COMPOUND_DEPTH];
+
+    private int compoundDepth = 0;
+
+    /*
+     * Set only for a recycled encoder: tracks the pooled buffers that back
+     * the frame being encoded.
+     */
+    private CAMQPBufferLease bufferLease = null;
+
+    /*
+     * Set only while encoding a frame along with its frame header: the
+     * buffer containing the reserved frame header, and its index.
+     */
+    private ChannelBuffer frameHeaderBuffer = null;
+
+    private int frameHeaderPosition = 0;
+
+    private static final ThreadLocal<CAMQPEncoder> recycledEncoder = new ThreadLocal<CAMQPEncoder>() {
+        @Override
+        protected CAMQPEncoder initialValue() {
+            return new CAMQPEncoder();
+        }
+    };
 
     public static CAMQPEncoder createCAMQPEncoder() {
         return new CAMQPEncoder();
     }
 
+    /**
+     * Returns the calling thread's recycled encoder, that encodes into
+     * direct buffers drawn from the CAMQPBufferPool. Only meant for frames
+     * that are written exactly once: after getEncodedBuffer(), the caller
+     * must hand the CAMQPBufferLease obtained from takeBufferLease() to the
+     * connection, so the buffers are returned to the pool on write
+     * completion.
+     *
+     * If buffer pooling is not enabled, a regular encoder is returned.
+     *
+     * @return
+     */
+    public static CAMQPEncoder createRecycledCAMQPEncoder() {
+        if (!CAMQPBufferPool.isPoolingEnabled()) {
+            return new CAMQPEncoder();
+        }
+        CAMQPEncoder encoder = recycledEncoder.get();
+        if (encoder.isInUse()) {
+            /*
+             * Re-entrant use on the same thread: fall back to a
+             * stand-alone pooled encoder.
+             */
+            encoder = new CAMQPEncoder();
+        }
+        encoder.bufferLease = CAMQPBufferPool.getBufferPool().acquireLease();
+        return encoder;
+    }
+
     private CAMQPEncoder() {
     }
 
+    private boolean isInUse() {
+        return (buffer != null) || (bufferLease != null);
+    }
+
+    /**
+     * Hands over the CAMQPBufferLease of the frame encoded last, and makes
+     * the recycled encoder available for the next frame. Returns null
+     * for a regular encoder.
+     *
+     * @return
+     */
+    public CAMQPBufferLease takeBufferLease() {
+        CAMQPBufferLease lease = bufferLease;
+        bufferLease = null;
+        return lease;
+    }
+
+    private ChannelBuffer createDynamicBuffer() {
+        ChannelBufferFactory factory = (bufferLease != null) ? bufferLease : HeapChannelBufferFactory.getInstance();
+        return ChannelBuffers.dynamicBuffer(CAMQPProtocolConstants.DYNAMIC_BUFFER_INITIAL_SIZE, factory);
+    }
+
     public ChannelBuffer getEncodedBuffer() {
         ChannelBuffer flushedBuffer;
         if (dynamicBuffer != null) {
-            flushedBuffer = ChannelBuffers.wrappedBuffer(buffer, dynamicBuffer);
+            flushedBuffer = wrapComponents(buffer, dynamicBuffer);
             dynamicBuffer = null;
         }
         else {
@@ -70,19 +218,48 @@ public final class CAMQPEncoder {
 
         buffer = null;
         isComposite = false;
-        assert (compoundSizePosition.empty());
+        assert (compoundDepth == 0);
         return flushedBuffer;
     }
 
+    /**
+     * Reserves the AMQP frame header at the beginning of the frame, so that
+     * the frame is encoded in a single pass, without wrapping a separately
+     * encoded frame header. Must be called before anything else is encoded.
+     * The frame header is filled in by getEncodedFrame().
+     */
+    public void reserveFrameHeader() {
+        assert (buffer == null);
+        frameHeaderBuffer = getWritableBuffer();
+        frameHeaderPosition = frameHeaderBuffer.writerIndex();
+        frameHeaderBuffer.writeZero(CAMQPFrameConstants.FRAME_HEADER_SIZE);
+    }
+
+    /**
+     * Fills in the frame header reserved by reserveFrameHeader(), and
+     * returns the encoded frame. Large payloads are adopted as separate
+     * components, which are written with a gathering write.
+     *
+     * @param channelId
+     * @return
+     */
+    public ChannelBuffer getEncodedFrame(int channelId) {
+        assert (frameHeaderBuffer != null);
+        CAMQPFrameHeaderCodec.encode(frameHeaderBuffer, frameHeaderPosition, getEncodedSize(), channelId);
+        ChannelBuffer encodedFrame = getEncodedBuffer();
+        frameHeaderBuffer = null;
+        return encodedFrame;
+    }
+
     private ChannelBuffer getWritableBuffer() {
         if (dynamicBuffer == null) {
             if (buffer == null) {
-                buffer = ChannelBuffers.dynamicBuffer(CAMQPProtocolConstants.DYNAMIC_BUFFER_INITIAL_SIZE, new HeapChannelBufferFactory());
+                buffer = createDynamicBuffer();
                 return buffer;
             }
             else {
                 if (isComposite) {
-                    dynamicBuffer = ChannelBuffers.dynamicBuffer(CAMQPProtocolConstants.DYNAMIC_BUFFER_INITIAL_SIZE, new HeapChannelBufferFactory());
+                    dynamicBuffer = createDynamicBuffer();
                     return dynamicBuffer;
                 }
                 else {
@@ -101,13 +278,25 @@ public final class CAMQPEncoder {
         if (size <= (CAMQPProtocolConstants.INT_MAX_VALUE - currentBuffer.capacity())) {
             return currentBuffer;
         }
+        prepareForComposite();
         if (dynamicBuffer != null) {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, dynamicBuffer);
+            buffer = wrapComponents(buffer, dynamicBuffer);
         }
-        dynamicBuffer = ChannelBuffers.dynamicBuffer(CAMQPProtocolConstants.DYNAMIC_BUFFER_INITIAL_SIZE, new HeapChannelBufferFactory());
+        dynamicBuffer = createDynamicBuffer();
         return dynamicBuffer;
     }
 
+    /*
+     * Number of bytes encoded so far.
+     */
+    private int getEncodedSize() {
+        int encodedSize = (buffer != null) ? buffer.readableBytes() : 0;
+        if (dynamicBuffer != null) {
+            encodedSize += dynamicBuffer.readableBytes();
+        }
+        return encodedSize;
+    }
+
     public void writePayload(CAMQPMessagePayload payload) {
         ChannelBuffer payloadBody = payload.getPayload();
         writePayloadInternal(payloadBody);
@@ -115,7 +304,11 @@ public final class CAMQPEncoder {
 
     public void writeNull() {
         byte formatCode = (byte) CAMQPFormatCodes.NULL;
-        getWritableBuffer().writeByte(formatCode);
+        ChannelBuffer writableBuffer = getWritableBuffer();
+        if (compoundDepth > 0) {
+            compoundFrames[compoundDepth - 1].nullWritten(writableBuffer);
+        }
+        writableBuffer.writeByte(formatCode);
     }
 
     public void writeBoolean(boolean value) {
@@ -137,11 +330,24 @@ public final class CAMQPEncoder {
         CAMQPCodecUtil.writeUShort(value, writableBuffer);
     }
 
+    /**
+     * Writes the uint in the narrowest encoding: uint0, smalluint or uint.
+     *
+     * @param value
+     */
     public void writeUInt(long value) {
         ChannelBuffer writableBuffer = getWritableBuffer();
-        byte formatCode = (byte) CAMQPFormatCodes.UINT;
-        writableBuffer.writeByte(formatCode);
-        CAMQPCodecUtil.writeUInt(value, writableBuffer);
+        if (value == 0) {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.UINT0);
+        }
+        else if ((value > 0) && (value <= CAMQPProtocolConstants.UBYTE_MAX_VALUE)) {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.SMALLUINT);
+            CAMQPCodecUtil.writeUByte((int) value, writableBuffer);
+        }
+        else {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.UINT);
+            CAMQPCodecUtil.writeUInt(value, writableBuffer);
+        }
     }
 
     public void writeByte(byte value) {
@@ -165,8 +371,26 @@ public final class CAMQPEncoder {
         writableBuffer.writeInt(value);
     }
 
+    /**
+     * Writes the ulong in the narrowest encoding: ulong0, smallulong or
+     * ulong.
+     *
+     * @param value
+     */
     public void writeULong(BigInteger value) {
-        writeLong(value.longValue()); // TODO correct?
+        long longValue = value.longValue();
+        ChannelBuffer writableBuffer = getWritableBuffer();
+        if (longValue == 0) {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.ULONG0);
+        }
+        else if ((longValue > 0) && (longValue <= CAMQPProtocolConstants.UBYTE_MAX_VALUE)) {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.SMALLULONG);
+            CAMQPCodecUtil.writeUByte((int) longValue, writableBuffer);
+        }
+        else {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.ULONG);
+            writableBuffer.writeLong(longValue);
+        }
     }
 
     public void writeLong(long value) {
@@ -213,47 +437,46 @@ public final class CAMQPEncoder {
     public void writeUTF8String(String str) {
         boolean isSymbol = false;
         boolean isSelfDescribed = true;
-        writeString(str, CAMQPProtocolConstants.CHARSET_UTF8, isSymbol, isSelfDescribed);
+        writeString(str, CAMQPProtocolConstants.UTF8, isSymbol, isSelfDescribed);
     }
 
     public void writeUTF16String(String str) {
         boolean isSymbol = false;
         boolean isSelfDescribed = true;
-        writeString(str, CAMQPProtocolConstants.CHARSET_UTF16, isSymbol, isSelfDescribed);
+        writeString(str, CAMQPProtocolConstants.UTF16, isSymbol, isSelfDescribed);
     }
 
     public void writeSymbol(String symbol) {
+        byte[] encodedSymbol = CAMQPSymbolTable.getEncodedSymbol(symbol);
+        if (encodedSymbol != null) {
+            getWritableBuffer().writeBytes(encodedSymbol);
+            return;
+        }
         boolean isSymbol = true;
         boolean isSelfDescribed = true;
-        writeString(symbol, CAMQPProtocolConstants.CHARSET_UTF8, isSymbol, isSelfDescribed);
+        writeString(symbol, CAMQPProtocolConstants.UTF8, isSymbol, isSelfDescribed);
     }
 
     public void writeUTF8StringArrayElement(String str) {
         boolean isSymbol = false;
         boolean isSelfDescribed = false;
-        writeString(str, CAMQPProtocolConstants.CHARSET_UTF8, isSymbol, isSelfDescribed);
+        writeString(str, CAMQPProtocolConstants.UTF8, isSymbol, isSelfDescribed);
     }
 
     public void writeUTF16StringArrayElement(String str) {
         boolean isSymbol = false;
         boolean isSelfDescribed = false;
-        writeString(str, CAMQPProtocolConstants.CHARSET_UTF16, isSymbol, isSelfDescribed);
+        writeString(str, CAMQPProtocolConstants.UTF16, isSymbol, isSelfDescribed);
     }
 
     public void writeSymbolArrayElement(String symbol) {
         boolean isSymbol = true;
         boolean isSelfDescribed = false;
-        writeString(symbol, CAMQPProtocolConstants.CHARSET_UTF8, isSymbol, isSelfDescribed);
+        writeString(symbol, CAMQPProtocolConstants.UTF8, isSymbol, isSelfDescribed);
     }
 
-    private void writeString(String str, String charSet, boolean isSymbol, boolean isSelfDescribed) {
-        byte[] encodedString;
-        try {
-            encodedString = str.getBytes(charSet);
-        }
-        catch (UnsupportedEncodingException e) {
-            throw new CAMQPCodecException(CAMQPTypes.STR8_UTF8, CAMQPFormatCodes.STR8_UTF8, e);
-        }
+    private void writeString(String str, Charset charSet, boolean isSymbol, boolean isSelfDescribed) {
+        byte[] encodedString = str.getBytes(charSet);
         long size = encodedString.length;
 
         ChannelBuffer writableBuffer = getWritableBuffer();
@@ -297,15 +520,7 @@ public final class CAMQPEncoder {
                 writableBuffer.writeByte(formatCode);
             }
             CAMQPCodecUtil.writeUInt(size, writableBuffer);
-            ChannelBuffer wrappedBinaryData = ChannelBuffers.wrappedBuffer(encodedString);
-            if (dynamicBuffer != null) {
-                buffer = ChannelBuffers.wrappedBuffer(buffer, dynamicBuffer, wrappedBinaryData);
-                dynamicBuffer = null;
-            }
-            else {
-                buffer = ChannelBuffers.wrappedBuffer(buffer, wrappedBinaryData);
-            }
-            isComposite = true;
+            appendComponent(ChannelBuffers.wrappedBuffer(encodedString));
         }
         else {
             // error condition
@@ -351,16 +566,33 @@ public final class CAMQPEncoder {
     }
 
     private void writePayloadInternal(ChannelBuffer binaryData) {
+        appendComponent(binaryData);
+    }
+
+    /*
+     * Adopts the component into the composite buffer, after the data
+     * encoded so far.
+     */
+    private void appendComponent(ChannelBuffer component) {
+        prepareForComposite();
         if (dynamicBuffer != null) {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, dynamicBuffer, binaryData);
+            buffer = wrapComponents(buffer, dynamicBuffer, component);
             dynamicBuffer = null;
         }
         else {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, binaryData);
+            buffer = wrapComponents(buffer, component);
         }
         isComposite = true;
     }
 
+    /*
+     * A frame encoded with its frame header is written with a gathering
+     * write, instead of being copied into a single buffer first.
+     */
+    private ChannelBuffer wrapComponents(ChannelBuffer... components) {
+        return ChannelBuffers.wrappedBuffer(frameHeaderBuffer != null, components);
+    }
+
     private void writeBinaryBody(byte[] binaryData, boolean copyFree) {
         ChannelBuffer wrappedBinaryData;
         if (copyFree) {
@@ -371,14 +603,7 @@ public final class CAMQPEncoder {
             wrappedBinaryData = ChannelBuffers.copiedBuffer(binaryData);
         }
 
-        if (dynamicBuffer != null) {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, dynamicBuffer, wrappedBinaryData);
-            dynamicBuffer = null;
-        }
-        else {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, wrappedBinaryData);
-        }
-        isComposite = true;
+        appendComponent(wrappedBinaryData);
     }
 
     public void writeNumericDescriptor(long domainID, long descriptorID) {
@@ -407,10 +632,57 @@ public final class CAMQPEncoder {
         }
     }
 
+    /**
+     * Writes the binary payload from a ChannelBuffer (typically a slice of a
+     * received frame). A large payload is adopted into the composite buffer
+     * without being copied.
+     *
+     * @param binaryData
+     */
+    public void writeBinaryPayload(ChannelBuffer binaryData) {
+        int size = binaryData.readableBytes();
+        byte formatCode = (size <= CAMQPProtocolConstants.UBYTE_MAX_VALUE) ? (byte) CAMQPFormatCodes.VBIN8 : (byte) CAMQPFormatCodes.VBIN32;
+        writeSymbolicConstructor(CAMQPProtocolConstants.SYMBOL_BINARY_PAYLOAD, formatCode);
+
+        ChannelBuffer writableBuffer = getWritableBuffer();
+
+        if (size <= CAMQPProtocolConstants.UBYTE_MAX_VALUE) {
+            CAMQPCodecUtil.writeUByte(size, writableBuffer);
+            ChannelBuffer bufferToCopy = ensureCapacity(size);
+            bufferToCopy.writeBytes(binaryData, binaryData.readerIndex(), size);
+        }
+        else {
+            CAMQPCodecUtil.writeUInt(size, writableBuffer);
+            writePayloadInternal(binaryData.duplicate());
+        }
+    }
+
+    /**
+     * Writes the described constructor. Descriptors registered with
+     * CAMQPDescriptors are written as numeric (smallulong) descriptors,
+     * the others as symbols. The constructors of the symbols registered with
+     * CAMQPSymbolTable are written pre-encoded.
+     *
+     * @param symbol
+     * @param formatCode
+     */
     public void writeSymbolicConstructor(String symbol, int formatCode) {
+        byte[] constructor = CAMQPSymbolTable.getConstructor(symbol, formatCode);
+        if (constructor != null) {
+            getWritableBuffer().writeBytes(constructor);
+            return;
+        }
+
         ChannelBuffer writableBuffer = getWritableBuffer();
         CAMQPCodecUtil.writeUByte(0, writableBuffer);
-        writeSymbol(symbol);
+        int descriptorCode = CAMQPDescriptors.getEncodableCode(symbol);
+        if (descriptorCode != CAMQPDescriptors.UNKNOWN) {
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.SMALLULONG);
+            CAMQPCodecUtil.writeUByte(descriptorCode, writableBuffer);
+        }
+        else {
+            writeSymbol(symbol);
+        }
         getWritableBuffer().writeByte((byte) formatCode);
     }
 
@@ -431,7 +703,8 @@ public final class CAMQPEncoder {
 
     private void writeCompoundDescriptor(String symbol, int formatCode, long compoundCount) {
         writeSymbolicConstructor(symbol, formatCode);
-        writeCompoundHeader(formatCode, compoundCount);
+        boolean isList = (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32);
+        writeCompoundHeader(formatCode, compoundCount, isList, true);
     }
 
     public void writePrimitiveDescriptor(int primitiveFormatCode) {
@@ -453,7 +726,7 @@ public final class CAMQPEncoder {
             CAMQPCodecUtil.writeUByte(0, writableBuffer);
             getWritableBuffer().writeByte(CAMQPFormatCodes.TRUE);
             getWritableBuffer().writeByte((byte) formatCode);
-            writeCompoundHeader(formatCode, listCount);
+            writeCompoundHeader(formatCode, listCount, false, true);
             getWritableBuffer().writeByte((byte) listElementFormatCode);
         }
         else {
@@ -463,13 +736,13 @@ public final class CAMQPEncoder {
 
     public void writeListHeaderArrayElement(long listCount) {
         int formatCode = (listCount <= 255) ? CAMQPFormatCodes.LIST8 : CAMQPFormatCodes.LIST32;
-        writeCompoundHeader(formatCode, listCount);
+        writeCompoundHeader(formatCode, listCount, false, false);
     }
 
     public void writeArrayHeader(long arrayCount, int arrayElementFormatCode) {
         int formatCode = (arrayCount <= 255) ? CAMQPFormatCodes.ARRAY8 : CAMQPFormatCodes.ARRAY32;
         getWritableBuffer().writeByte((byte) formatCode);
-        writeCompoundHeader(formatCode, arrayCount);
+        writeCompoundHeader(formatCode, arrayCount, false, true);
         getWritableBuffer().writeByte((byte) arrayElementFormatCode);
     }
 
@@ -487,7 +760,7 @@ public final class CAMQPEncoder {
             CAMQPCodecUtil.writeUByte(0, writableBuffer);
             getWritableBuffer().writeByte(CAMQPFormatCodes.TRUE);
             getWritableBuffer().writeByte((byte) formatCode);
-            writeCompoundHeader(formatCode, arrayCount);
+            writeCompoundHeader(formatCode, arrayCount, false, true);
             getWritableBuffer().writeByte((byte) arrayElementFormatCode);
         }
         else {
@@ -498,30 +771,62 @@ public final class CAMQPEncoder {
     public void writeMapHeader(long mapCount) {
         int formatCode = (mapCount <= 255) ? CAMQPFormatCodes.MAP8 : CAMQPFormatCodes.MAP32;
         getWritableBuffer().writeByte((byte) formatCode);
-        writeCompoundHeader(formatCode, mapCount * 2);
+        writeCompoundHeader(formatCode, mapCount * 2, false, true);
     }
 
+    /**
+     * Fills in the size of the compound whose header was written last. The
+     * count of a list is reduced by its trailing null elements, which are
+     * trimmed: a list with no elements left is written as list0. A list8
+     * or map8 whose size exceeds 255 bytes is widened to list32 or map32.
+     *
+     * @param compoundCount
+     */
     public void fillCompoundSize(long compoundCount) {
-        if (compoundSizePosition.size() == 0) {
+        if (compoundDepth == 0) {
+            return;
+        }
+
+        int frameIndex = compoundDepth - 1;
+        CompoundFrame frame = compoundFrames[frameIndex];
+        ChannelBuffer writableBuffer = getWritableBuffer();
+        long count = frame.count;
+        if (frame.isCompactList && frame.endsWithNullRun(writableBuffer) && (frame.nullRunCount <= count)) {
+            count -= frame.nullRunCount;
+            writableBuffer.writerIndex(frame.nullRunStart);
+        }
+
+        boolean isHeaderWritable = (frame.headerBuffer == writableBuffer);
+        if (frame.isCompactList && (count == 0) && isHeaderWritable && (writableBuffer.writerIndex() == frame.sizePosition + 2 * frame.width)) {
+            /*
+             * Replace the list8/list32 format code and the size and count
+             * fields with list0.
+             */
+            writableBuffer.writerIndex(frame.sizePosition - 1);
+            writableBuffer.writeByte((byte) CAMQPFormatCodes.LIST0);
+            popCompoundFrame();
             return;
         }
 
-        int width = (compoundCount <= 255) ? Width.FIXED_ONE.widthOctets() : Width.FIXED_FOUR.widthOctets();
-        int position = compoundSizePosition.pop();
         /*
          * We need to exclude the size field from the compound size.
          */
-        long compoundSize = getWritableBuffer().readableBytes() - (position + width);
-        getWritableBuffer().markWriterIndex();
+        long compoundSize = getEncodedSize() - (frame.encodedPosition + frame.width);
+        if ((frame.width == 1) && (compoundSize > CAMQPProtocolConstants.UBYTE_MAX_VALUE) && frame.isWidenable && isHeaderWritable) {
+            widenCompoundHeader(frameIndex);
+            compoundSize = getEncodedSize() - (frame.encodedPosition + frame.width);
+        }
 
-        if (width == 1) {
-            CAMQPCodecUtil.writeUByteAt((int) compoundSize, position, getWritableBuffer());
+        if (frame.width == 1) {
+            CAMQPCodecUtil.writeUByteAt((int) compoundSize, frame.sizePosition, frame.headerBuffer);
+            CAMQPCodecUtil.writeUByteAt((int) count, frame.sizePosition + 1, frame.headerBuffer);
         }
         else // (width == 4)
         {
-            CAMQPCodecUtil.writeUIntAt(compoundSize, position, getWritableBuffer());
+            CAMQPCodecUtil.writeUIntAt(compoundSize, frame.sizePosition, frame.headerBuffer);
+            CAMQPCodecUtil.writeUIntAt(count, frame.sizePosition + 4, frame.headerBuffer);
         }
-        getWritableBuffer().resetWriterIndex();
+        popCompoundFrame();
     }
 
     public void encodePropertiesMap(String symbol, Map<String, String> properties) {
@@ -540,19 +845,103 @@ public final class CAMQPEncoder {
         }
     }
 
-    private void writeCompoundHeader(int formatCode, long compoundCount) {
+    private void writeCompoundHeader(int formatCode, long compoundCount, boolean isCompactList, boolean isWidenable) {
         int width = CAMQPCodecUtil.computeWidth(formatCode);
-        compoundSizePosition.push(getWritableBuffer().readableBytes());
+        ChannelBuffer writableBuffer = getWritableBuffer();
+        CompoundFrame frame = pushCompoundFrame();
+        frame.headerBuffer = writableBuffer;
+        frame.sizePosition = writableBuffer.writerIndex();
+        frame.encodedPosition = getEncodedSize();
+        frame.width = width;
+        frame.count = compoundCount;
+        frame.isCompactList = isCompactList;
+        frame.isWidenable = isWidenable;
+        frame.nullRunBuffer = null;
+        frame.nullRunCount = 0;
+
+        /*
+         * The size is filled in by fillCompoundSize()
+         */
         if (width == 1) {
-            // size of the composite structure: for now set to 0 TODO
-            CAMQPCodecUtil.writeUByte(0, getWritableBuffer());
-            CAMQPCodecUtil.writeUByte((int) compoundCount, getWritableBuffer());
+            CAMQPCodecUtil.writeUByte(0, writableBuffer);
+            CAMQPCodecUtil.writeUByte((int) compoundCount, writableBuffer);
         }
         else // (width == 4)
         {
-            // size of the composite structure: for now set to 0 TODO
-            CAMQPCodecUtil.writeUInt(0, getWritableBuffer());
-            CAMQPCodecUtil.writeUInt(compoundCount, getWritableBuffer());
+            CAMQPCodecUtil.writeUInt(0, writableBuffer);
+            CAMQPCodecUtil.writeUInt(compoundCount, writableBuffer);
+        }
+    }
+
+    private CompoundFrame pushCompoundFrame() {
+        if (compoundDepth == compoundFrames.length) {
+            CompoundFrame[] frames = new CompoundFrame[compoundDepth * 2];
+            System.arraycopy(compoundFrames, 0, frames, 0, compoundDepth);
+            compoundFrames = frames;
+        }
+        CompoundFrame frame = compoundFrames[compoundDepth];
+        if (frame == null) {
+            frame = new CompoundFrame();
+            compoundFrames[compoundDepth] = frame;
+        }
+        compoundDepth++;
+        return frame;
+    }
+
+    private void popCompoundFrame() {
+        CompoundFrame frame = compoundFrames[--compoundDepth];
+        frame.headerBuffer = null;
+        frame.nullRunBuffer = null;
+    }
+
+    /*
+     * Called before a large value is adopted into the composite buffer:
+     * once the header of an open compound is no longer in the writable
+     * buffer, it can not be widened any more. So the open 8-bit compounds
+     * are widened up-front, as the large value will not fit in them anyway.
+     */
+    private void prepareForComposite() {
+        ChannelBuffer writableBuffer = (dynamicBuffer != null) ? dynamicBuffer : buffer;
+        for (int frameIndex = compoundDepth - 1; frameIndex >= 0; frameIndex--) {
+            CompoundFrame frame = compoundFrames[frameIndex];
+            if ((frame.width == 1) && frame.isWidenable && (frame.headerBuffer == writableBuffer)) {
+                widenCompoundHeader(frameIndex);
+            }
+        }
+    }
+
+    /*
+     * Widens the 8-bit size and count fields of the compound to 32 bits,
+     * shifting the bytes written after them.
+     */
+    private void widenCompoundHeader(int frameIndex) {
+        CompoundFrame frame = compoundFrames[frameIndex];
+        ChannelBuffer headerBuffer = frame.headerBuffer;
+        int tailPosition = frame.sizePosition + 2;
+        byte[] tail = new byte[headerBuffer.writerIndex() - tailPosition];
+        headerBuffer.getBytes(tailPosition, tail);
+
+        int formatCodePosition = frame.sizePosition - 1;
+        int widenedFormatCode = (headerBuffer.getUnsignedByte(formatCodePosition) | 0x10);
+        headerBuffer.setByte(formatCodePosition, widenedFormatCode);
+        headerBuffer.writerIndex(frame.sizePosition);
+        CAMQPCodecUtil.writeUInt(0, headerBuffer);
+        CAMQPCodecUtil.writeUInt(frame.count, headerBuffer);
+        headerBuffer.writeBytes(tail);
+        frame.width = 4;
+
+        for (int index = frameIndex; index < compoundDepth; index++) {
+            CompoundFrame shiftedFrame = compoundFrames[index];
+            if (index > frameIndex) {
+                shiftedFrame.encodedPosition += WIDENED_HEADER_DELTA;
+                if (shiftedFrame.headerBuffer == headerBuffer) {
+                    shiftedFrame.sizePosition += WIDENED_HEADER_DELTA;
+                }
+            }
+            if ((shiftedFrame.nullRunBuffer == headerBuffer) && (shiftedFrame.nullRunStart >= tailPosition)) {
+                shiftedFrame.nullRunStart += WIDENED_HEADER_DELTA;
+                shiftedFrame.nullRunEnd += WIDENED_HEADER_DELTA;
+            }
         }
     }
 }
@@ -17,6 +17,8 @@
 
 package net.dovemq.transport.protocol;
 
+import java.nio.charset.Charset;
+
 public final class CAMQPProtocolConstants {
     public static final int OCTET = 8;
 
@@ -36,7 +38,11 @@ public final class CAMQPProtocolConstants {
 
     public static final String CHARSET_UTF8 = "UTF-8";
 
+    public static final Charset UTF8 = Charset.forName(CHARSET_UTF8);
+
     protected static final String CHARSET_UTF16 = "UTF-16";
 
+    protected static final Charset UTF16 = Charset.forName(CHARSET_UTF16);
+
     public static final String SYMBOL_BINARY_PAYLOAD = "amqp:data:binary";
 }
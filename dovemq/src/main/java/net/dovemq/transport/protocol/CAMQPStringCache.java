@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Bounded cache of decoded Strings, used by CAMQPSyncDecoder to return a
+ * canonical String instance for a short string that is decoded repeatedly,
+ * such as the keys of the application properties, or routing tags.
+ *
+ * The cache is a direct-mapped table, indexed by the hash of the encoded
+ * bytes: a lookup compares the encoded bytes in place, and only a miss
+ * allocates the String. A miss replaces the entry of its slot, so the
+ * cache holds at most CACHE_SIZE strings, and it needs no locking.
+ *
+ * The hits and misses are counted in COUNTER_STRIPES counters, each on its
+ * own cache line, picked by the id of the decoding thread, so that the I/O
+ * threads do not contend on a shared counter. The getters add them up.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+public final class CAMQPStringCache {
+    private static final int CACHE_SIZE = 1024;
+
+    private static final int MAX_CACHED_STRING_LENGTH = 64;
+
+    private static final int COUNTER_STRIPES = 16;
+
+    /*
+     * Number of longs per counter: a 128-byte stride keeps two counters off
+     * the same (or adjacent, prefetched) cache line.
+     */
+    private static final int COUNTER_STRIDE = 16;
+
+    private static volatile boolean cachingEnabled = true;
+
+    private static final CAMQPStringCache stringCache = new CAMQPStringCache();
+
+    /**
+     * Enables or disables the caching of decoded Strings. Enabled by
+     * default.
+     *
+     * @param enabled
+     */
+    public static void setCachingEnabled(boolean enabled) {
+        cachingEnabled = enabled;
+    }
+
+    public static boolean isCachingEnabled() {
+        return cachingEnabled;
+    }
+
+    public static CAMQPStringCache getStringCache() {
+        return stringCache;
+    }
+
+    @Immutable
+    private static final class CachedString {
+        CachedString(byte[] encodedString, String value) {
+            this.encodedString = encodedString;
+            this.value = value;
+        }
+
+        boolean matches(ChannelBuffer buffer, int index, int length) {
+            if (encodedString.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (encodedString[i] != buffer.getByte(index + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        final byte[] encodedString;
+
+        final String value;
+    }
+
+    private final AtomicReferenceArray<CachedString> cachedStrings = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    private final AtomicLongArray hitCounts = new AtomicLongArray(COUNTER_STRIPES * COUNTER_STRIDE);
+
+    private final AtomicLongArray missCounts = new AtomicLongArray(COUNTER_STRIPES * COUNTER_STRIDE);
+
+    private CAMQPStringCache() {
+    }
+
+    /**
+     * @return number of Strings returned from the cache, without being
+     *         decoded
+     */
+    public long getHitCount() {
+        return sum(hitCounts);
+    }
+
+    /**
+     * @return number of cacheable Strings that had to be decoded
+     */
+    public long getMissCount() {
+        return sum(missCounts);
+    }
+
+    static boolean isCacheable(long length) {
+        return cachingEnabled && (length <= MAX_CACHED_STRING_LENGTH);
+    }
+
+    /**
+     * Returns the String UTF-8 encoded at the index of the buffer, from the
+     * cache if possible. Does not move the readerIndex of the buffer.
+     *
+     * @param buffer
+     * @param index
+     * @param length
+     * @return
+     */
+    String decode(ChannelBuffer buffer, int index, int length) {
+        int slot = hash(buffer, index, length) & (CACHE_SIZE - 1);
+        CachedString cachedString = cachedStrings.get(slot);
+        if ((cachedString != null) && cachedString.matches(buffer, index, length)) {
+            hitCounts.incrementAndGet(getCounterIndex());
+            return cachedString.value;
+        }
+
+        missCounts.incrementAndGet(getCounterIndex());
+        byte[] encodedString = new byte[length];
+        buffer.getBytes(index, encodedString);
+        String value = new String(encodedString, CAMQPProtocolConstants.UTF8);
+        cachedStrings.set(slot, new CachedString(encodedString, value));
+        return value;
+    }
+
+    private static int getCounterIndex() {
+        return ((int) Thread.currentThread().getId() & (COUNTER_STRIPES - 1)) * COUNTER_STRIDE;
+    }
+
+    private static long sum(AtomicLongArray counts) {
+        long sum = 0;
+        for (int i = 0; i < COUNTER_STRIPES; i++) {
+            sum += counts.get(i * COUNTER_STRIDE);
+        }
+        return sum;
+    }
+
+    private static int hash(ChannelBuffer buffer, int index, int length) {
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.getByte(index + i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
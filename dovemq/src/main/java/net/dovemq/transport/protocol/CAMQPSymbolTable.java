@@ -0,0 +1,150 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.dovemq.transport.protocol.data.CAMQPDefinitionDeliveryState;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
+import net.dovemq.transport.protocol.data.CAMQPFormatCodes;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Table of pre-encoded symbols, used by CAMQPEncoder to write the well
+ * known symbols, and the described constructors of the well known
+ * descriptors, with a single writeBytes, without encoding the symbol
+ * String every time.
+ *
+ * All the descriptors of protocol.data are registered up-front. Other
+ * constant symbols (for instance, those of DoveMQMessageImpl) are
+ * registered by their owners. Symbols that are not registered are encoded
+ * on the fly.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+public final class CAMQPSymbolTable {
+    private static final int MAX_FORMAT_CODE = 0xFF;
+
+    /**
+     * Pre-encoded forms of a registered symbol.
+     */
+    private static final class EncodedSymbol {
+        EncodedSymbol(String symbol) {
+            byte[] symbolBytes = symbol.getBytes(CAMQPProtocolConstants.UTF8);
+            encodedSymbol = new byte[symbolBytes.length + 2];
+            encodedSymbol[0] = (byte) CAMQPFormatCodes.SYM8;
+            encodedSymbol[1] = (byte) symbolBytes.length;
+            System.arraycopy(symbolBytes, 0, encodedSymbol, 2, symbolBytes.length);
+            descriptorCode = CAMQPDescriptors.getCode(symbol);
+        }
+
+        /*
+         * Described constructor 0x00 descriptor formatCode, created on
+         * first use for a given format code.
+         */
+        byte[] getConstructor(int formatCode, boolean numericDescriptor) {
+            AtomicReferenceArray<byte[]> constructors = numericDescriptor ? numericConstructors : symbolicConstructors;
+            byte[] constructor = constructors.get(formatCode);
+            if (constructor == null) {
+                constructor = createConstructor(formatCode, numericDescriptor);
+                constructors.set(formatCode, constructor);
+            }
+            return constructor;
+        }
+
+        private byte[] createConstructor(int formatCode, boolean numericDescriptor) {
+            byte[] constructor;
+            if (numericDescriptor) {
+                constructor = new byte[] { 0, (byte) CAMQPFormatCodes.SMALLULONG, (byte) descriptorCode, 0 };
+            }
+            else {
+                constructor = new byte[encodedSymbol.length + 2];
+                System.arraycopy(encodedSymbol, 0, constructor, 1, encodedSymbol.length);
+            }
+            constructor[constructor.length - 1] = (byte) formatCode;
+            return constructor;
+        }
+
+        final byte[] encodedSymbol;
+
+        final int descriptorCode;
+
+        private final AtomicReferenceArray<byte[]> numericConstructors = new AtomicReferenceArray<>(MAX_FORMAT_CODE + 1);
+
+        private final AtomicReferenceArray<byte[]> symbolicConstructors = new AtomicReferenceArray<>(MAX_FORMAT_CODE + 1);
+    }
+
+    private static final ConcurrentMap<String, EncodedSymbol> encodedSymbols = new ConcurrentHashMap<>();
+
+    static {
+        for (String descriptor : CAMQPDescriptors.getRegisteredSymbols()) {
+            register(descriptor);
+        }
+        register(CAMQPDefinitionDeliveryState.descriptor);
+        register(CAMQPProtocolConstants.SYMBOL_BINARY_PAYLOAD);
+    }
+
+    private CAMQPSymbolTable() {
+    }
+
+    /**
+     * Registers a constant symbol, so that it is written pre-encoded. Only
+     * symbols of up to 255 UTF-8 bytes are registered.
+     *
+     * @param symbol
+     */
+    public static void register(String symbol) {
+        if (symbol.getBytes(CAMQPProtocolConstants.UTF8).length > CAMQPProtocolConstants.UBYTE_MAX_VALUE) {
+            return;
+        }
+        encodedSymbols.putIfAbsent(symbol, new EncodedSymbol(symbol));
+    }
+
+    /**
+     * Returns the self-described (sym8) encoding of the symbol, or null if
+     * the symbol is not registered.
+     *
+     * @param symbol
+     * @return
+     */
+    static byte[] getEncodedSymbol(String symbol) {
+        EncodedSymbol encodedSymbol = encodedSymbols.get(symbol);
+        return (encodedSymbol != null) ? encodedSymbol.encodedSymbol : null;
+    }
+
+    /**
+     * Returns the encoding of the described constructor: the descriptor
+     * (numeric, if enabled in CAMQPDescriptors, or symbolic) followed by the
+     * format code. Returns null if the symbol is not registered.
+     *
+     * @param symbol
+     * @param formatCode
+     * @return
+     */
+    static byte[] getConstructor(String symbol, int formatCode) {
+        EncodedSymbol encodedSymbol = encodedSymbols.get(symbol);
+        if (encodedSymbol == null) {
+            return null;
+        }
+        boolean numericDescriptor = (encodedSymbol.descriptorCode != CAMQPDescriptors.UNKNOWN) && CAMQPDescriptors.isNumericDescriptorsEnabled();
+        return encodedSymbol.getConstructor(formatCode & MAX_FORMAT_CODE, numericDescriptor);
+    }
+}
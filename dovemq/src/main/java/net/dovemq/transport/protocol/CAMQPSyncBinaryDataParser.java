@@ -44,9 +44,8 @@ final class CAMQPSyncBinaryDataParser {
             buffer.readerIndex(readerIndex + bytesToRead);
         }
         else {
-            binaryData = ChannelBuffers.buffer(CAMQPProtocolConstants.USHORT_MAX_VALUE + 1);
+            binaryData = ChannelBuffers.buffer(bytesToRead);
             buffer.readBytes(binaryData, bytesToRead);
-            buffer.discardReadBytes();
         }
         return binaryData;
     }
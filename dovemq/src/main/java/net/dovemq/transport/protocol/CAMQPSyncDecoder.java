@@ -17,7 +17,6 @@
 
 package net.dovemq.transport.protocol;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.util.Date;
 import java.util.HashMap;
@@ -25,6 +24,7 @@ import java.util.Map;
 import java.util.UUID;
 
 import net.dovemq.transport.frame.CAMQPMessagePayload;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
 import net.dovemq.transport.protocol.data.CAMQPFormatCodes;
 import net.dovemq.transport.protocol.data.CAMQPTypes;
 
@@ -40,10 +40,24 @@ import org.jboss.netty.buffer.ChannelBuffers;
  *
  */
 public final class CAMQPSyncDecoder {
+    private static final BigInteger ULONG_MODULUS = BigInteger.ONE.shiftLeft(64);
+
     private ChannelBuffer buffer = null;
 
+    /*
+     * Flat buffer accumulating the bytes taken, if take() is called before
+     * the bytes taken earlier have been decoded.
+     */
+    private ChannelBuffer cumulation = null;
+
     private boolean enoughDataAvailable = false;
 
+    /*
+     * Format code read last by readFormatCode(): determines the encoding
+     * of the uint or ulong read by readUInt() or readULong().
+     */
+    private int lastFormatCode = CAMQPFormatCodes.NULL;
+
     public static CAMQPSyncDecoder createCAMQPSyncDecoder() {
         return new CAMQPSyncDecoder();
     }
@@ -61,14 +75,27 @@ public final class CAMQPSyncDecoder {
         return enoughDataAvailable;
     }
 
+    /**
+     * Takes the bytes to be decoded. If bytes taken earlier have not been
+     * decoded yet, they are accumulated, along with the bytes received, in
+     * a flat cumulation buffer, rather than in a composite buffer that
+     * grows by one component per call.
+     *
+     * @param bufferReceived
+     */
     public void take(ChannelBuffer bufferReceived) {
         enoughDataAvailable = true;
-        if (buffer == null) {
+        if ((buffer == null) || !buffer.readable()) {
             buffer = bufferReceived;
+            return;
         }
-        else {
-            buffer = ChannelBuffers.wrappedBuffer(buffer, bufferReceived);
+
+        if (buffer != cumulation) {
+            cumulation = ChannelBuffers.dynamicBuffer(buffer.readableBytes() + bufferReceived.readableBytes());
+            cumulation.writeBytes(buffer);
+            buffer = cumulation;
         }
+        cumulation.writeBytes(bufferReceived);
     }
 
     private void checkEnoughBytesAvailable(int width) {
@@ -80,7 +107,8 @@ public final class CAMQPSyncDecoder {
 
     public int readFormatCode() {
         checkEnoughBytesAvailable(1);
-        return CAMQPCodecUtil.readFormatCode(buffer);
+        lastFormatCode = CAMQPCodecUtil.readFormatCode(buffer);
+        return lastFormatCode;
     }
 
     public int readUByte() {
@@ -93,15 +121,44 @@ public final class CAMQPSyncDecoder {
         return CAMQPCodecUtil.readUShort(buffer);
     }
 
+    /**
+     * Reads a uint encoded as uint0, smalluint or uint, as determined by
+     * the format code read last.
+     *
+     * @return
+     */
     public long readUInt() {
+        if (lastFormatCode == CAMQPFormatCodes.UINT0) {
+            return 0L;
+        }
+        else if (lastFormatCode == CAMQPFormatCodes.SMALLUINT) {
+            return readUByte();
+        }
         checkEnoughBytesAvailable(Width.FIXED_FOUR.widthOctets());
         return CAMQPCodecUtil.readUInt(buffer);
     }
 
+    /**
+     * Reads a ulong encoded as ulong0, smallulong or ulong, as determined
+     * by the format code read last. A (small)long, as written by the
+     * earlier versions of the encoder, is also accepted.
+     *
+     * @return
+     */
     public BigInteger readULong() {
-        // TODO correct?
-        long val = readLong();
-        return BigInteger.valueOf(val);
+        switch (lastFormatCode) {
+        case CAMQPFormatCodes.ULONG0:
+            return BigInteger.ZERO;
+        case CAMQPFormatCodes.SMALLULONG:
+            return BigInteger.valueOf(readUByte());
+        case CAMQPFormatCodes.SMALLLONG:
+            return BigInteger.valueOf(readByte());
+        case CAMQPFormatCodes.ULONG:
+            long val = readLong();
+            return (val >= 0) ? BigInteger.valueOf(val) : BigInteger.valueOf(val).add(ULONG_MODULUS);
+        default:
+            return BigInteger.valueOf(readLong());
+        }
     }
 
     public byte readByte() {
@@ -163,56 +220,133 @@ public final class CAMQPSyncDecoder {
     }
 
     public String readString(int formatCode) {
-        long size = 0;
-        String charSet = CAMQPProtocolConstants.CHARSET_UTF8;
+        long size = readStringSize(formatCode);
+        return readString(formatCode, size);
+    }
+
+    private long readStringSize(int formatCode) {
         if (Width.VARIABLE_ONE.widthOctets() == CAMQPCodecUtil.computeWidth(formatCode)) {
             checkEnoughBytesAvailable(Width.VARIABLE_ONE.widthOctets());
-            size = CAMQPCodecUtil.readUByte(buffer);
+            return CAMQPCodecUtil.readUByte(buffer);
         }
         else {
             checkEnoughBytesAvailable(Width.VARIABLE_FOUR.widthOctets());
-            size = CAMQPCodecUtil.readUInt(buffer);
-        }
-
-        long parsedSoFar = 0;
-        ChannelBuffer channelStrBuf = null;
-        while (parsedSoFar < size) {
-            boolean copyFree = false;
-            ChannelBuffer buf = CAMQPSyncBinaryDataParser.parseBinaryData(buffer, (size - parsedSoFar), copyFree);
-            parsedSoFar += buf.readableBytes();
-            if (channelStrBuf == null) {
-                channelStrBuf = buf;
-            }
-            else {
-                channelStrBuf = ChannelBuffers.wrappedBuffer(channelStrBuf, buf);
-            }
+            return CAMQPCodecUtil.readUInt(buffer);
         }
+    }
 
-        byte[] strBytes = new byte[channelStrBuf.readableBytes()];
-        channelStrBuf.getBytes(0, strBytes);
-
-        try {
-            return new String(strBytes, charSet);
+    /*
+     * Short strings are returned from the CAMQPStringCache.
+     */
+    private String readString(int formatCode, long size) {
+        checkEnoughBytesAvailable((int) size);
+        int index = buffer.readerIndex();
+        String str;
+        if (CAMQPStringCache.isCacheable(size)) {
+            str = CAMQPStringCache.getStringCache().decode(buffer, index, (int) size);
         }
-        catch (UnsupportedEncodingException e) {
-            // TODO
-            throw new CAMQPCodecException(CAMQPTypes.STR8_UTF8, formatCode, e);
+        else {
+            str = buffer.toString(index, (int) size, CAMQPProtocolConstants.UTF8);
         }
+        buffer.skipBytes((int) size);
+        return str;
     }
 
     public boolean isNextDescribedConstructor() {
         return (buffer.getByte(buffer.readerIndex()) == 0);
     }
 
+    /**
+     * Reads the descriptor of a described constructor, and returns the
+     * descriptor symbol. For a numeric descriptor or a registered symbolic
+     * descriptor, the canonical symbol constant is returned, without
+     * decoding a String.
+     *
+     * @return
+     */
     public String readSymbol() {
         int firstByte = CAMQPCodecUtil.readUByte(buffer);
         assert (firstByte == 0);
         int formatCode = CAMQPCodecUtil.readFormatCode(buffer);
+        if (isNumericDescriptor(formatCode)) {
+            long descriptorCode = readNumericDescriptor(formatCode);
+            String symbol = CAMQPDescriptors.getSymbol(descriptorCode);
+            if (symbol == null) {
+                throw new CAMQPCodecException(CAMQPTypes.ULONG, formatCode, new IllegalArgumentException("Unknown descriptor: " + descriptorCode));
+            }
+            return symbol;
+        }
+
         assert ((formatCode == CAMQPFormatCodes.SYM8) || (formatCode == CAMQPFormatCodes.SYM32));
-        return readString(formatCode);
+        long size = readStringSize(formatCode);
+        String symbol = CAMQPDescriptors.getSymbol(findDescriptorCode(size));
+        if (symbol != null) {
+            buffer.skipBytes((int) size);
+            return symbol;
+        }
+        return readString(formatCode, size);
+    }
+
+    /**
+     * Reads the descriptor of a described constructor, and returns its
+     * numeric code (see CAMQPDescriptors). Symbolic descriptors are mapped
+     * to their numeric code. Returns CAMQPDescriptors.UNKNOWN for a
+     * descriptor that is not registered.
+     *
+     * @return
+     */
+    public int readDescriptorCode() {
+        int firstByte = CAMQPCodecUtil.readUByte(buffer);
+        assert (firstByte == 0);
+        int formatCode = CAMQPCodecUtil.readFormatCode(buffer);
+        if (isNumericDescriptor(formatCode)) {
+            long descriptorCode = readNumericDescriptor(formatCode);
+            return (CAMQPDescriptors.getSymbol(descriptorCode) != null) ? (int) descriptorCode : CAMQPDescriptors.UNKNOWN;
+        }
+
+        assert ((formatCode == CAMQPFormatCodes.SYM8) || (formatCode == CAMQPFormatCodes.SYM32));
+        long size = readStringSize(formatCode);
+        int descriptorCode = findDescriptorCode(size);
+        if (descriptorCode != CAMQPDescriptors.UNKNOWN) {
+            buffer.skipBytes((int) size);
+            return descriptorCode;
+        }
+        /*
+         * Not an exact match: could still be a registered descriptor that
+         * differs in case.
+         */
+        return CAMQPDescriptors.getCode(readString(formatCode, size));
+    }
+
+    private int findDescriptorCode(long size) {
+        if (buffer.readableBytes() < size) {
+            return CAMQPDescriptors.UNKNOWN;
+        }
+        return CAMQPDescriptors.findCode(buffer, buffer.readerIndex(), (int) size);
+    }
+
+    private static boolean isNumericDescriptor(int formatCode) {
+        return (formatCode == CAMQPFormatCodes.SMALLULONG) || (formatCode == CAMQPFormatCodes.ULONG) || (formatCode == CAMQPFormatCodes.ULONG0);
+    }
+
+    private long readNumericDescriptor(int formatCode) {
+        if (formatCode == CAMQPFormatCodes.ULONG0) {
+            return 0L;
+        }
+        else if (formatCode == CAMQPFormatCodes.SMALLULONG) {
+            checkEnoughBytesAvailable(Width.FIXED_ONE.widthOctets());
+            return CAMQPCodecUtil.readUByte(buffer);
+        }
+        else {
+            checkEnoughBytesAvailable(Width.FIXED_EIGHT.widthOctets());
+            return CAMQPCodecUtil.readLong(buffer);
+        }
     }
 
     public long readCompoundSize(int formatCode) {
+        if (formatCode == CAMQPFormatCodes.LIST0) {
+            return 0;
+        }
         // size of the composite structure: for now skip it:TODO
         int width = CAMQPCodecUtil.computeWidth(formatCode);
         buffer.skipBytes(width);
@@ -283,12 +417,125 @@ public final class CAMQPSyncDecoder {
         return propertiesMap;
     }
 
-    public byte[] readBinaryPayload() {
+    /**
+     * Looks up a single property of the properties map that follows, without
+     * building the map: the keys are compared against the UTF-8 encoding of
+     * the given key, and only the matching value is decoded. Consumes the
+     * whole map.
+     *
+     * @param key
+     * @return value of the property, or null if not present
+     */
+    public String findPropertyInMap(String key) {
+        byte[] encodedKey = key.getBytes(CAMQPProtocolConstants.UTF8);
         int formatCode = readFormatCode();
-        int size = (int) readBinaryDataSize(formatCode);
-        ChannelBuffer buf = readBinary(formatCode, size, false);
-        byte[] payload = new byte[size];
+        assert ((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+        long mapSize = readMapCount(formatCode);
+
+        String val = null;
+        for (long index = 0; index < mapSize; index++) {
+            boolean keyMatched = false;
+            formatCode = readFormatCode();
+            if (formatCode == CAMQPFormatCodes.SYM8) {
+                long size = readStringSize(formatCode);
+                checkEnoughBytesAvailable((int) size);
+                keyMatched = (val == null) && (size == encodedKey.length) && matches(encodedKey);
+                buffer.skipBytes((int) size);
+            }
+            else {
+                skipValueBody(formatCode);
+            }
+
+            if (keyMatched) {
+                formatCode = readFormatCode();
+                if (formatCode != CAMQPFormatCodes.NULL) {
+                    val = readString(formatCode);
+                }
+            }
+            else {
+                skipValue();
+            }
+        }
+        return val;
+    }
+
+    private boolean matches(byte[] encodedBytes) {
+        int readerIndex = buffer.readerIndex();
+        for (int i = 0; i < encodedBytes.length; i++) {
+            if (buffer.getByte(readerIndex + i) != encodedBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Skips the next value (including its descriptor, if it is a described
+     * value) without decoding it. Compound values are walked element by
+     * element, so the compound size field is not relied upon.
+     */
+    public void skipValue() {
+        int formatCode = readFormatCode();
+        if (formatCode == 0) {
+            /*
+             * Described constructor: skip the descriptor, and then the
+             * described value.
+             */
+            skipValue();
+            skipValue();
+        }
+        else {
+            skipValueBody(formatCode);
+        }
+    }
+
+    private void skipValueBody(int formatCode) {
+        int category = formatCode & 0xF0;
+        if ((category >= 0x40) && (category <= 0x90)) {
+            int width = CAMQPCodecUtil.computeWidth(formatCode);
+            checkEnoughBytesAvailable(width);
+            buffer.skipBytes(width);
+        }
+        else if ((category == 0xA0) || (category == 0xB0)) {
+            long size = readStringSize(formatCode);
+            checkEnoughBytesAvailable((int) size);
+            buffer.skipBytes((int) size);
+        }
+        else if ((category == 0xC0) || (category == 0xD0)) {
+            long count = readCompoundSize(formatCode);
+            for (long index = 0; index < count; index++) {
+                skipValue();
+            }
+        }
+        else if ((category == 0xE0) || (category == 0xF0)) {
+            long count = readArrayCount(formatCode);
+            int elementFormatCode = readFormatCode();
+            for (long index = 0; index < count; index++) {
+                skipValueBody(elementFormatCode);
+            }
+        }
+        else {
+            throw new CAMQPCodecException(CAMQPTypes.NULL, formatCode, new IllegalArgumentException("Unknown format code: " + formatCode));
+        }
+    }
+
+    public byte[] readBinaryPayload() {
+        ChannelBuffer buf = readBinaryPayloadSlice();
+        byte[] payload = new byte[buf.readableBytes()];
         buf.readBytes(payload);
         return payload;
     }
+
+    /**
+     * Reads the binary payload as a slice of the underlying buffer, without
+     * copying it. The slice shares its content with the received frame.
+     *
+     * @return
+     */
+    public ChannelBuffer readBinaryPayloadSlice() {
+        int formatCode = readFormatCode();
+        int size = (int) readBinaryDataSize(formatCode);
+        checkEnoughBytesAvailable(size);
+        return buffer.readSlice(size);
+    }
 }
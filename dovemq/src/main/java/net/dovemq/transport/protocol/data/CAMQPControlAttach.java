@@ -426,113 +426,144 @@ public class CAMQPControlAttach
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 13);
+        assert(listSize <= 13);
         CAMQPControlAttach data = new CAMQPControlAttach();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
-        {
-            data.name = decoder.readString(formatCode);
-        }
-
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
-        {
-            data.handle = decoder.readUInt();
-        }
-
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.role = (formatCode == CAMQPFormatCodes.TRUE);
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.name = decoder.readString(formatCode);
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.sndSettleMode = decoder.readUByte();
-            data.isSetSndSettleMode = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.handle = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.rcvSettleMode = decoder.readUByte();
-            data.isSetRcvSettleMode = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.role = (formatCode == CAMQPFormatCodes.TRUE);
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 3)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionSource.descriptor))
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.source = CAMQPDefinitionSource.decode(decoder);
+                data.sndSettleMode = decoder.readUByte();
+                data.isSetSndSettleMode = true;
             }
         }
-        else
+
+        if (listSize > 4)
         {
             formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.rcvSettleMode = decoder.readUByte();
+                data.isSetRcvSettleMode = true;
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 5)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionTarget.descriptor))
+            if (decoder.isNextDescribedConstructor())
             {
-                data.target = CAMQPDefinitionTarget.decode(decoder);
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionSource.descriptor))
+                {
+                    data.source = CAMQPDefinitionSource.decode(decoder);
+                }
+            }
+            else
+            {
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
             }
-        }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 6)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            if (decoder.isNextDescribedConstructor())
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionTarget.descriptor))
                 {
-                    innerKey = decoder.readString(formatCode);
+                    data.target = CAMQPDefinitionTarget.decode(decoder);
                 }
-                String innerVal = null;
+            }
+            else
+            {
                 formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert (formatCode == CAMQPFormatCodes.NULL);
+            }
+        }
+
+        if (listSize > 7)
+        {
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.unsettled.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.unsettled.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetUnsettled = true;
             }
-            data.isSetUnsettled = true;
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 8)
         {
-            data.initialDeliveryCount = decoder.readUInt();
-            data.isSetInitialDeliveryCount = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.initialDeliveryCount = decoder.readUInt();
+                data.isSetInitialDeliveryCount = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 9)
         {
-            data.maxMessageSize = decoder.readULong();
-            data.isSetMaxMessageSize = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.maxMessageSize = decoder.readULong();
+                data.isSetMaxMessageSize = true;
+            }
         }
 
+        if (listSize > 10)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -541,6 +572,7 @@ public class CAMQPControlAttach
             }
         }
 
+        if (listSize > 11)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -549,31 +581,34 @@ public class CAMQPControlAttach
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 12)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.properties.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.properties.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetProperties = true;
             }
-            data.isSetProperties = true;
         }
         return data;
     }
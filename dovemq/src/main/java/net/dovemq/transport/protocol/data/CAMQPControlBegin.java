@@ -260,44 +260,60 @@ public class CAMQPControlBegin
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 8);
+        assert(listSize <= 8);
         CAMQPControlBegin data = new CAMQPControlBegin();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.remoteChannel = decoder.readUShort();
-            data.isSetRemoteChannel = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.remoteChannel = decoder.readUShort();
+                data.isSetRemoteChannel = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.nextOutgoingId = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.nextOutgoingId = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.incomingWindow = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.incomingWindow = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.outgoingWindow = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.outgoingWindow = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.handleMax = decoder.readUInt();
-            data.isSetHandleMax = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.handleMax = decoder.readUInt();
+                data.isSetHandleMax = true;
+            }
         }
 
+        if (listSize > 5)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -306,6 +322,7 @@ public class CAMQPControlBegin
             }
         }
 
+        if (listSize > 6)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -314,31 +331,34 @@ public class CAMQPControlBegin
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 7)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.properties.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.properties.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetProperties = true;
             }
-            data.isSetProperties = true;
         }
         return data;
     }
@@ -109,36 +109,45 @@ public class CAMQPControlDetach
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 3);
+        assert(listSize <= 3);
         CAMQPControlDetach data = new CAMQPControlDetach();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.handle = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.handle = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.closed = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetClosed = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.closed = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetClosed = true;
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 2)
         {
-            String controlName = decoder.readSymbol();
-            assert(controlName.equalsIgnoreCase(CAMQPDefinitionError.descriptor));
-            data.error = CAMQPDefinitionError.decode(decoder);
-            data.isSetError = true;
-        }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
+            if (decoder.isNextDescribedConstructor())
+            {
+                String controlName = decoder.readSymbol();
+                assert(controlName.equalsIgnoreCase(CAMQPDefinitionError.descriptor));
+                data.error = CAMQPDefinitionError.decode(decoder);
+                data.isSetError = true;
+            }
+            else
+            {
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
+            }
         }
         return data;
     }
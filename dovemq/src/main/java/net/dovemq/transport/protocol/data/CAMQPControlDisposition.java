@@ -27,13 +27,13 @@ public class CAMQPControlDisposition
 {
     public static final String descriptor = "amqp:disposition:list";
 
-    private Boolean role = false;
-    public void setRole(Boolean val)
+    private boolean role = false;
+    public void setRole(boolean val)
     {
         role = val;
     }
 
-    public Boolean getRole()
+    public boolean getRole()
     {
         return role;
     }
@@ -47,25 +47,25 @@ public class CAMQPControlDisposition
     {
         return isSetBatchable;
     }
-    private Boolean batchable = false;
-    public void setBatchable(Boolean val)
+    private boolean batchable = false;
+    public void setBatchable(boolean val)
     {
         isSetBatchable = true;
         batchable = val;
     }
 
-    public Boolean getBatchable()
+    public boolean getBatchable()
     {
         return batchable;
     }
 
-    private Long first = 0L;
-    public void setFirst(Long val)
+    private long first = 0L;
+    public void setFirst(long val)
     {
         first = val;
     }
 
-    public Long getFirst()
+    public long getFirst()
     {
         return first;
     }
@@ -79,14 +79,14 @@ public class CAMQPControlDisposition
     {
         return isSetLast;
     }
-    private Long last = 0L;
-    public void setLast(Long val)
+    private long last = 0L;
+    public void setLast(long val)
     {
         isSetLast = true;
         last = val;
     }
 
-    public Long getLast()
+    public long getLast()
     {
         return last;
     }
@@ -100,14 +100,14 @@ public class CAMQPControlDisposition
     {
         return isSetSettled;
     }
-    private Boolean settled = false;
-    public void setSettled(Boolean val)
+    private boolean settled = false;
+    public void setSettled(boolean val)
     {
         isSetSettled = true;
         settled = val;
     }
 
-    public Boolean getSettled()
+    public boolean getSettled()
     {
         return settled;
     }
@@ -133,6 +133,24 @@ public class CAMQPControlDisposition
         return state;
     }
 
+    /**
+     * Resets all the fields to their defaults, so that the instance can be
+     * reused for another disposition.
+     */
+    public void reset()
+    {
+        role = false;
+        isSetBatchable = false;
+        batchable = false;
+        first = 0L;
+        isSetLast = false;
+        last = 0L;
+        isSetSettled = false;
+        settled = false;
+        isSetState = false;
+        state = null;
+    }
+
     public static void encode(CAMQPEncoder encoder, CAMQPControlDisposition data)
     {
         long listSize = 6;
@@ -184,59 +202,85 @@ public class CAMQPControlDisposition
     }
     public static CAMQPControlDisposition decode(CAMQPSyncDecoder decoder)
     {
+        return decode(decoder, new CAMQPControlDisposition());
+    }
+
+    /**
+     * Decodes into a (reused) instance, which is reset first.
+     */
+    public static CAMQPControlDisposition decode(CAMQPSyncDecoder decoder, CAMQPControlDisposition data)
+    {
+        data.reset();
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 6);
-        CAMQPControlDisposition data = new CAMQPControlDisposition();
+        assert(listSize <= 6);
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.role = (formatCode == CAMQPFormatCodes.TRUE);
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.role = (formatCode == CAMQPFormatCodes.TRUE);
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.batchable = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetBatchable = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.batchable = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetBatchable = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.first = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.first = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.last = decoder.readUInt();
-            data.isSetLast = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.last = decoder.readUInt();
+                data.isSetLast = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.settled = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetSettled = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.settled = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetSettled = true;
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 5)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionDeliveryState.descriptor))
+            if (decoder.isNextDescribedConstructor())
             {
-                data.state = CAMQPDefinitionDeliveryState.decode(decoder);
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionDeliveryState.descriptor))
+                {
+                    data.state = CAMQPDefinitionDeliveryState.decode(decoder);
+                }
+            }
+            else
+            {
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
             }
-        }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
         }
         return data;
     }
@@ -66,23 +66,26 @@ public class CAMQPControlEnd
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 1);
+        assert(listSize <= 1);
         CAMQPControlEnd data = new CAMQPControlEnd();
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 0)
         {
-            String controlName = decoder.readSymbol();
-            assert(controlName.equalsIgnoreCase(CAMQPDefinitionError.descriptor));
-            data.error = CAMQPDefinitionError.decode(decoder);
-            data.isSetError = true;
-        }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
+            if (decoder.isNextDescribedConstructor())
+            {
+                String controlName = decoder.readSymbol();
+                assert(controlName.equalsIgnoreCase(CAMQPDefinitionError.descriptor));
+                data.error = CAMQPDefinitionError.decode(decoder);
+                data.isSetError = true;
+            }
+            else
+            {
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
+            }
         }
         return data;
     }
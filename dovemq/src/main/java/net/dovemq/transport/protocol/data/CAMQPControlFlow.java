@@ -40,47 +40,47 @@ public class CAMQPControlFlow
     {
         return isSetNextIncomingId;
     }
-    private Long nextIncomingId = 0L;
-    public void setNextIncomingId(Long val)
+    private long nextIncomingId = 0L;
+    public void setNextIncomingId(long val)
     {
         isSetNextIncomingId = true;
         nextIncomingId = val;
     }
 
-    public Long getNextIncomingId()
+    public long getNextIncomingId()
     {
         return nextIncomingId;
     }
 
-    private Long incomingWindow = 0L;
-    public void setIncomingWindow(Long val)
+    private long incomingWindow = 0L;
+    public void setIncomingWindow(long val)
     {
         incomingWindow = val;
     }
 
-    public Long getIncomingWindow()
+    public long getIncomingWindow()
     {
         return incomingWindow;
     }
 
-    private Long nextOutgoingId = 0L;
-    public void setNextOutgoingId(Long val)
+    private long nextOutgoingId = 0L;
+    public void setNextOutgoingId(long val)
     {
         nextOutgoingId = val;
     }
 
-    public Long getNextOutgoingId()
+    public long getNextOutgoingId()
     {
         return nextOutgoingId;
     }
 
-    private Long outgoingWindow = 0L;
-    public void setOutgoingWindow(Long val)
+    private long outgoingWindow = 0L;
+    public void setOutgoingWindow(long val)
     {
         outgoingWindow = val;
     }
 
-    public Long getOutgoingWindow()
+    public long getOutgoingWindow()
     {
         return outgoingWindow;
     }
@@ -94,14 +94,14 @@ public class CAMQPControlFlow
     {
         return isSetHandle;
     }
-    private Long handle = 0L;
-    public void setHandle(Long val)
+    private long handle = 0L;
+    public void setHandle(long val)
     {
         isSetHandle = true;
         handle = val;
     }
 
-    public Long getHandle()
+    public long getHandle()
     {
         return handle;
     }
@@ -115,14 +115,14 @@ public class CAMQPControlFlow
     {
         return isSetDeliveryCount;
     }
-    private Long deliveryCount = 0L;
-    public void setDeliveryCount(Long val)
+    private long deliveryCount = 0L;
+    public void setDeliveryCount(long val)
     {
         isSetDeliveryCount = true;
         deliveryCount = val;
     }
 
-    public Long getDeliveryCount()
+    public long getDeliveryCount()
     {
         return deliveryCount;
     }
@@ -136,14 +136,14 @@ public class CAMQPControlFlow
     {
         return isSetLinkCredit;
     }
-    private Long linkCredit = 0L;
-    public void setLinkCredit(Long val)
+    private long linkCredit = 0L;
+    public void setLinkCredit(long val)
     {
         isSetLinkCredit = true;
         linkCredit = val;
     }
 
-    public Long getLinkCredit()
+    public long getLinkCredit()
     {
         return linkCredit;
     }
@@ -157,14 +157,14 @@ public class CAMQPControlFlow
     {
         return isSetAvailable;
     }
-    private Long available = 0L;
-    public void setAvailable(Long val)
+    private long available = 0L;
+    public void setAvailable(long val)
     {
         isSetAvailable = true;
         available = val;
     }
 
-    public Long getAvailable()
+    public long getAvailable()
     {
         return available;
     }
@@ -178,14 +178,14 @@ public class CAMQPControlFlow
     {
         return isSetDrain;
     }
-    private Boolean drain = false;
-    public void setDrain(Boolean val)
+    private boolean drain = false;
+    public void setDrain(boolean val)
     {
         isSetDrain = true;
         drain = val;
     }
 
-    public Boolean getDrain()
+    public boolean getDrain()
     {
         return drain;
     }
@@ -199,14 +199,14 @@ public class CAMQPControlFlow
     {
         return isSetEcho;
     }
-    private Boolean echo = false;
-    public void setEcho(Boolean val)
+    private boolean echo = false;
+    public void setEcho(boolean val)
     {
         isSetEcho = true;
         echo = val;
     }
 
-    public Boolean getEcho()
+    public boolean getEcho()
     {
         return echo;
     }
@@ -226,6 +226,36 @@ public class CAMQPControlFlow
         return properties;
     }
 
+    /**
+     * Resets all the fields to their defaults, so that the instance can be
+     * reused for another flow.
+     */
+    public void reset()
+    {
+        isSetNextIncomingId = false;
+        nextIncomingId = 0L;
+        incomingWindow = 0L;
+        nextOutgoingId = 0L;
+        outgoingWindow = 0L;
+        isSetHandle = false;
+        handle = 0L;
+        isSetDeliveryCount = false;
+        deliveryCount = 0L;
+        isSetLinkCredit = false;
+        linkCredit = 0L;
+        isSetAvailable = false;
+        available = 0L;
+        isSetDrain = false;
+        drain = false;
+        isSetEcho = false;
+        echo = false;
+        isSetProperties = false;
+        if (!properties.isEmpty())
+        {
+            properties.clear();
+        }
+    }
+
     public static void encode(CAMQPEncoder encoder, CAMQPControlFlow data)
     {
         long listSize = 11;
@@ -320,106 +350,147 @@ public class CAMQPControlFlow
     }
     public static CAMQPControlFlow decode(CAMQPSyncDecoder decoder)
     {
+        return decode(decoder, new CAMQPControlFlow());
+    }
+
+    /**
+     * Decodes into a (reused) instance, which is reset first.
+     */
+    public static CAMQPControlFlow decode(CAMQPSyncDecoder decoder, CAMQPControlFlow data)
+    {
+        data.reset();
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 11);
-        CAMQPControlFlow data = new CAMQPControlFlow();
+        assert(listSize <= 11);
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.nextIncomingId = decoder.readUInt();
-            data.isSetNextIncomingId = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.nextIncomingId = decoder.readUInt();
+                data.isSetNextIncomingId = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.incomingWindow = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.incomingWindow = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.nextOutgoingId = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.nextOutgoingId = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.outgoingWindow = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.outgoingWindow = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.handle = decoder.readUInt();
-            data.isSetHandle = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.handle = decoder.readUInt();
+                data.isSetHandle = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 5)
         {
-            data.deliveryCount = decoder.readUInt();
-            data.isSetDeliveryCount = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.deliveryCount = decoder.readUInt();
+                data.isSetDeliveryCount = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 6)
         {
-            data.linkCredit = decoder.readUInt();
-            data.isSetLinkCredit = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.linkCredit = decoder.readUInt();
+                data.isSetLinkCredit = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 7)
         {
-            data.available = decoder.readUInt();
-            data.isSetAvailable = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.available = decoder.readUInt();
+                data.isSetAvailable = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 8)
         {
-            data.drain = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetDrain = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.drain = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetDrain = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 9)
         {
-            data.echo = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetEcho = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.echo = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetEcho = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 10)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.properties.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.properties.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetProperties = true;
             }
-            data.isSetProperties = true;
         }
         return data;
     }
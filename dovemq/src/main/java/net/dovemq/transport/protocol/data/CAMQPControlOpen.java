@@ -387,46 +387,62 @@ public class CAMQPControlOpen
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 10);
+        assert(listSize <= 10);
         CAMQPControlOpen data = new CAMQPControlOpen();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.containerId = decoder.readString(formatCode);
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.containerId = decoder.readString(formatCode);
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.hostname = decoder.readString(formatCode);
-            data.isSetHostname = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.hostname = decoder.readString(formatCode);
+                data.isSetHostname = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.maxFrameSize = decoder.readUInt();
-            data.isSetMaxFrameSize = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.maxFrameSize = decoder.readUInt();
+                data.isSetMaxFrameSize = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.channelMax = decoder.readUShort();
-            data.isSetChannelMax = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.channelMax = decoder.readUShort();
+                data.isSetChannelMax = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.idleTimeOut = decoder.readUInt();
-            data.isSetIdleTimeOut = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.idleTimeOut = decoder.readUInt();
+                data.isSetIdleTimeOut = true;
+            }
         }
 
+        if (listSize > 5)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -435,6 +451,7 @@ public class CAMQPControlOpen
             }
         }
 
+        if (listSize > 6)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -443,6 +460,7 @@ public class CAMQPControlOpen
             }
         }
 
+        if (listSize > 7)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -451,6 +469,7 @@ public class CAMQPControlOpen
             }
         }
 
+        if (listSize > 8)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -459,31 +478,34 @@ public class CAMQPControlOpen
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 9)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.properties.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.properties.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetProperties = true;
             }
-            data.isSetProperties = true;
         }
         return data;
     }
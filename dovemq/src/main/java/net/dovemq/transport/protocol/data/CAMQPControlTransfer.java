@@ -21,7 +21,6 @@
  */
 package net.dovemq.transport.protocol.data;
 
-import java.util.Arrays;
 import org.jboss.netty.buffer.ChannelBuffer;
 
 import net.dovemq.transport.protocol.*;
@@ -30,24 +29,24 @@ public class CAMQPControlTransfer
 {
     public static final String descriptor = "amqp:transfer:list";
 
-    private Long handle = 0L;
-    public void setHandle(Long val)
+    private long handle = 0L;
+    public void setHandle(long val)
     {
         handle = val;
     }
 
-    public Long getHandle()
+    public long getHandle()
     {
         return handle;
     }
 
-    private Long deliveryId = 0L;
-    public void setDeliveryId(Long val)
+    private long deliveryId = 0L;
+    public void setDeliveryId(long val)
     {
         deliveryId = val;
     }
 
-    public Long getDeliveryId()
+    public long getDeliveryId()
     {
         return deliveryId;
     }
@@ -62,10 +61,14 @@ public class CAMQPControlTransfer
         return isSetDeliveryTag;
     }
     private byte[] deliveryTag = null;
+    /**
+     * The delivery tag array is adopted, not copied: the caller must not
+     * modify it afterwards.
+     */
     public void setDeliveryTag(byte[] val)
     {
         isSetDeliveryTag = true;
-        deliveryTag = Arrays.copyOf(val, val.length);
+        deliveryTag = val;
     }
 
     public byte[] getDeliveryTag()
@@ -82,14 +85,14 @@ public class CAMQPControlTransfer
     {
         return isSetMessageFormat;
     }
-    private Long messageFormat = 0L;
-    public void setMessageFormat(Long val)
+    private long messageFormat = 0L;
+    public void setMessageFormat(long val)
     {
         isSetMessageFormat = true;
         messageFormat = val;
     }
 
-    public Long getMessageFormat()
+    public long getMessageFormat()
     {
         return messageFormat;
     }
@@ -103,14 +106,14 @@ public class CAMQPControlTransfer
     {
         return isSetSettled;
     }
-    private Boolean settled = false;
-    public void setSettled(Boolean val)
+    private boolean settled = false;
+    public void setSettled(boolean val)
     {
         isSetSettled = true;
         settled = val;
     }
 
-    public Boolean getSettled()
+    public boolean getSettled()
     {
         return settled;
     }
@@ -166,14 +169,14 @@ public class CAMQPControlTransfer
     {
         return isSetResume;
     }
-    private Boolean resume = false;
-    public void setResume(Boolean val)
+    private boolean resume = false;
+    public void setResume(boolean val)
     {
         isSetResume = true;
         resume = val;
     }
 
-    public Boolean getResume()
+    public boolean getResume()
     {
         return resume;
     }
@@ -187,14 +190,14 @@ public class CAMQPControlTransfer
     {
         return isSetMore;
     }
-    private Boolean more = false;
-    public void setMore(Boolean val)
+    private boolean more = false;
+    public void setMore(boolean val)
     {
         isSetMore = true;
         more = val;
     }
 
-    public Boolean getMore()
+    public boolean getMore()
     {
         return more;
     }
@@ -208,14 +211,14 @@ public class CAMQPControlTransfer
     {
         return isSetAborted;
     }
-    private Boolean aborted = false;
-    public void setAborted(Boolean val)
+    private boolean aborted = false;
+    public void setAborted(boolean val)
     {
         isSetAborted = true;
         aborted = val;
     }
 
-    public Boolean getAborted()
+    public boolean getAborted()
     {
         return aborted;
     }
@@ -229,18 +232,46 @@ public class CAMQPControlTransfer
     {
         return isSetBatchable;
     }
-    private Boolean batchable = false;
-    public void setBatchable(Boolean val)
+    private boolean batchable = false;
+    public void setBatchable(boolean val)
     {
         isSetBatchable = true;
         batchable = val;
     }
 
-    public Boolean getBatchable()
+    public boolean getBatchable()
     {
         return batchable;
     }
 
+    /**
+     * Resets all the fields to their defaults, so that the instance can be
+     * reused for another transfer.
+     */
+    public void reset()
+    {
+        handle = 0L;
+        deliveryId = 0L;
+        isSetDeliveryTag = false;
+        deliveryTag = null;
+        isSetMessageFormat = false;
+        messageFormat = 0L;
+        isSetSettled = false;
+        settled = false;
+        isSetRcvSettleMode = false;
+        rcvSettleMode = 0;
+        isSetState = false;
+        state = null;
+        isSetResume = false;
+        resume = false;
+        isSetMore = false;
+        more = false;
+        isSetAborted = false;
+        aborted = false;
+        isSetBatchable = false;
+        batchable = false;
+    }
+
     public static void encode(CAMQPEncoder encoder, CAMQPControlTransfer data)
     {
         long listSize = 11;
@@ -337,97 +368,138 @@ public class CAMQPControlTransfer
     }
     public static CAMQPControlTransfer decode(CAMQPSyncDecoder decoder)
     {
+        return decode(decoder, new CAMQPControlTransfer());
+    }
+
+    /**
+     * Decodes into a (reused) instance, which is reset first.
+     */
+    public static CAMQPControlTransfer decode(CAMQPSyncDecoder decoder, CAMQPControlTransfer data)
+    {
+        data.reset();
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 11);
-        CAMQPControlTransfer data = new CAMQPControlTransfer();
+        assert(listSize <= 11);
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.handle = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.handle = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.deliveryId = decoder.readUInt();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.deliveryId = decoder.readUInt();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            int size = (int) decoder.readBinaryDataSize(formatCode);
-            ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-            data.deliveryTag = new byte[size];
-            channelBuf.readBytes(data.deliveryTag);
-            data.isSetDeliveryTag = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                int size = (int) decoder.readBinaryDataSize(formatCode);
+                ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                data.deliveryTag = new byte[size];
+                channelBuf.readBytes(data.deliveryTag);
+                data.isSetDeliveryTag = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.messageFormat = decoder.readUInt();
-            data.isSetMessageFormat = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.messageFormat = decoder.readUInt();
+                data.isSetMessageFormat = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.settled = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetSettled = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.settled = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetSettled = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 5)
         {
-            data.rcvSettleMode = decoder.readUByte();
-            data.isSetRcvSettleMode = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.rcvSettleMode = decoder.readUByte();
+                data.isSetRcvSettleMode = true;
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 6)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionDeliveryState.descriptor))
+            if (decoder.isNextDescribedConstructor())
             {
-                data.state = CAMQPDefinitionDeliveryState.decode(decoder);
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionDeliveryState.descriptor))
+                {
+                    data.state = CAMQPDefinitionDeliveryState.decode(decoder);
+                }
+            }
+            else
+            {
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
             }
         }
-        else
+
+        if (listSize > 7)
         {
             formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.resume = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetResume = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 8)
         {
-            data.resume = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetResume = true;
-        }
-
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
-        {
-            data.more = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetMore = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.more = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetMore = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 9)
         {
-            data.aborted = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetAborted = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.aborted = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetAborted = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 10)
         {
-            data.batchable = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetBatchable = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.batchable = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetBatchable = true;
+            }
         }
         return data;
     }
@@ -73,37 +73,40 @@ public class CAMQPDefinitionAccepted
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 1);
+        assert(listSize <= 1);
         CAMQPDefinitionAccepted data = new CAMQPDefinitionAccepted();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.options.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.options.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetOptions = true;
             }
-            data.isSetOptions = true;
         }
         return data;
     }
@@ -209,84 +209,99 @@ public class CAMQPDefinitionDeliveryState
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 5);
+        assert(listSize <= 5);
         CAMQPDefinitionDeliveryState data = new CAMQPDefinitionDeliveryState();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.options.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.options.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetOptions = true;
             }
-            data.isSetOptions = true;
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.sectionNumber = decoder.readUInt();
-            data.isSetSectionNumber = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.sectionNumber = decoder.readUInt();
+                data.isSetSectionNumber = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.sectionOffset = decoder.readULong();
-            data.isSetSectionOffset = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.sectionOffset = decoder.readULong();
+                data.isSetSectionOffset = true;
+            }
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 3)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionModified.descriptor))
-            {
-                data.outcome = CAMQPDefinitionModified.decode(decoder);
-            }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionReleased.descriptor))
+            if (decoder.isNextDescribedConstructor())
             {
-                data.outcome = CAMQPDefinitionReleased.decode(decoder);
-            }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionAccepted.descriptor))
-            {
-                data.outcome = CAMQPDefinitionAccepted.decode(decoder);
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionModified.descriptor))
+                {
+                    data.outcome = CAMQPDefinitionModified.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionReleased.descriptor))
+                {
+                    data.outcome = CAMQPDefinitionReleased.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionAccepted.descriptor))
+                {
+                    data.outcome = CAMQPDefinitionAccepted.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionRejected.descriptor))
+                {
+                    data.outcome = CAMQPDefinitionRejected.decode(decoder);
+                }
             }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionRejected.descriptor))
+            else
             {
-                data.outcome = CAMQPDefinitionRejected.decode(decoder);
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
             }
         }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
-        }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.txnId = decoder.readString(formatCode);
-            data.isSetTxnId = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.txnId = decoder.readString(formatCode);
+                data.isSetTxnId = true;
+            }
         }
         return data;
     }
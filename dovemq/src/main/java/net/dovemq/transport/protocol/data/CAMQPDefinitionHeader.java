@@ -187,45 +187,60 @@ public class CAMQPDefinitionHeader
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 5);
+        assert(listSize <= 5);
         CAMQPDefinitionHeader data = new CAMQPDefinitionHeader();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.durable = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetDurable = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.durable = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetDurable = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.priority = decoder.readUByte();
-            data.isSetPriority = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.priority = decoder.readUByte();
+                data.isSetPriority = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.ttl = decoder.readUInt();
-            data.isSetTtl = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.ttl = decoder.readUInt();
+                data.isSetTtl = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.firstAcquirer = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetFirstAcquirer = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.firstAcquirer = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetFirstAcquirer = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.deliveryCount = decoder.readUInt();
-            data.isSetDeliveryCount = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.deliveryCount = decoder.readUInt();
+                data.isSetDeliveryCount = true;
+            }
         }
         return data;
     }
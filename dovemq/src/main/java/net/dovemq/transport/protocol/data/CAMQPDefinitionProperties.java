@@ -469,146 +469,185 @@ public class CAMQPDefinitionProperties
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 13);
+        assert(listSize <= 13);
         CAMQPDefinitionProperties data = new CAMQPDefinitionProperties();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.isSetMessageId = true;
-            if (formatCode == CAMQPFormatCodes.UUID)
-            {
-                data.messageId = decoder.readUUID();
-            }
-            else if (formatCode == CAMQPFormatCodes.LONG)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.messageId = decoder.readULong();
+                data.isSetMessageId = true;
+                if (formatCode == CAMQPFormatCodes.UUID)
+                {
+                    data.messageId = decoder.readUUID();
+                }
+                else if ((formatCode == CAMQPFormatCodes.ULONG0) || (formatCode == CAMQPFormatCodes.SMALLULONG) || (formatCode == CAMQPFormatCodes.ULONG) || (formatCode == CAMQPFormatCodes.LONG))
+                {
+                    data.messageId = decoder.readULong();
+                }
+                else if (formatCode == CAMQPFormatCodes.VBIN8)
+                {
+                    int size = (int) decoder.readBinaryDataSize(formatCode);
+                    ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                    data.messageId = new byte[size];
+                    channelBuf.readBytes((byte[]) data.messageId);
+                }
+                else if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+                {
+                    data.messageId = decoder.readString(formatCode);
+                }
             }
-            else if (formatCode == CAMQPFormatCodes.VBIN8)
+        }
+
+        if (listSize > 1)
+        {
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
                 int size = (int) decoder.readBinaryDataSize(formatCode);
                 ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-                data.messageId = new byte[size];
-                channelBuf.readBytes((byte[]) data.messageId);
+                data.userId = new byte[size];
+                channelBuf.readBytes(data.userId);
+                data.isSetUserId = true;
             }
-            else if (formatCode == CAMQPFormatCodes.STR8_UTF8)
-            {
-                data.messageId = decoder.readString(formatCode);
-            }
-        }
-
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
-        {
-            int size = (int) decoder.readBinaryDataSize(formatCode);
-            ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-            data.userId = new byte[size];
-            channelBuf.readBytes(data.userId);
-            data.isSetUserId = true;
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.isSetTo = true;
-            if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.to = decoder.readString(formatCode);
+                data.isSetTo = true;
+                if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+                {
+                    data.to = decoder.readString(formatCode);
+                }
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.subject = decoder.readString(formatCode);
-            data.isSetSubject = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.subject = decoder.readString(formatCode);
+                data.isSetSubject = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.isSetReplyTo = true;
-            if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.replyTo = decoder.readString(formatCode);
+                data.isSetReplyTo = true;
+                if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+                {
+                    data.replyTo = decoder.readString(formatCode);
+                }
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 5)
         {
-            data.isSetCorrelationId = true;
-            if (formatCode == CAMQPFormatCodes.UUID)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.correlationId = decoder.readUUID();
-            }
-            else if (formatCode == CAMQPFormatCodes.LONG)
-            {
-                data.correlationId = decoder.readULong();
-            }
-            else if (formatCode == CAMQPFormatCodes.VBIN8)
-            {
-                int size = (int) decoder.readBinaryDataSize(formatCode);
-                ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-                data.correlationId = new byte[size];
-                channelBuf.readBytes((byte[]) data.correlationId);
-            }
-            else if (formatCode == CAMQPFormatCodes.STR8_UTF8)
-            {
-                data.correlationId = decoder.readString(formatCode);
+                data.isSetCorrelationId = true;
+                if (formatCode == CAMQPFormatCodes.UUID)
+                {
+                    data.correlationId = decoder.readUUID();
+                }
+                else if ((formatCode == CAMQPFormatCodes.ULONG0) || (formatCode == CAMQPFormatCodes.SMALLULONG) || (formatCode == CAMQPFormatCodes.ULONG) || (formatCode == CAMQPFormatCodes.LONG))
+                {
+                    data.correlationId = decoder.readULong();
+                }
+                else if (formatCode == CAMQPFormatCodes.VBIN8)
+                {
+                    int size = (int) decoder.readBinaryDataSize(formatCode);
+                    ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                    data.correlationId = new byte[size];
+                    channelBuf.readBytes((byte[]) data.correlationId);
+                }
+                else if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+                {
+                    data.correlationId = decoder.readString(formatCode);
+                }
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 6)
         {
-            data.contentType = decoder.readString(formatCode);
-            data.isSetContentType = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.contentType = decoder.readString(formatCode);
+                data.isSetContentType = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 7)
         {
-            data.contentEncoding = decoder.readString(formatCode);
-            data.isSetContentEncoding = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.contentEncoding = decoder.readString(formatCode);
+                data.isSetContentEncoding = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 8)
         {
-            data.absoluteExpiryTime = decoder.readTimeStamp();
-            data.isSetAbsoluteExpiryTime = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.absoluteExpiryTime = decoder.readTimeStamp();
+                data.isSetAbsoluteExpiryTime = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 9)
         {
-            data.creationTime = decoder.readTimeStamp();
-            data.isSetCreationTime = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.creationTime = decoder.readTimeStamp();
+                data.isSetCreationTime = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 10)
         {
-            data.groupId = decoder.readString(formatCode);
-            data.isSetGroupId = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.groupId = decoder.readString(formatCode);
+                data.isSetGroupId = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 11)
         {
-            data.groupSequence = decoder.readUInt();
-            data.isSetGroupSequence = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.groupSequence = decoder.readUInt();
+                data.isSetGroupSequence = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 12)
         {
-            data.replyToGroupId = decoder.readString(formatCode);
-            data.isSetReplyToGroupId = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.replyToGroupId = decoder.readString(formatCode);
+                data.isSetReplyToGroupId = true;
+            }
         }
         return data;
     }
@@ -60,19 +60,22 @@ public class CAMQPDefinitionSaslChallenge
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 1);
+        assert(listSize <= 1);
         CAMQPDefinitionSaslChallenge data = new CAMQPDefinitionSaslChallenge();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            int size = (int) decoder.readBinaryDataSize(formatCode);
-            ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-            data.challenge = new byte[size];
-            channelBuf.readBytes(data.challenge);
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                int size = (int) decoder.readBinaryDataSize(formatCode);
+                ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                data.challenge = new byte[size];
+                channelBuf.readBytes(data.challenge);
+            }
         }
         return data;
     }
@@ -120,33 +120,42 @@ public class CAMQPDefinitionSaslInit
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 3);
+        assert(listSize <= 3);
         CAMQPDefinitionSaslInit data = new CAMQPDefinitionSaslInit();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.mechanism = decoder.readString(formatCode);
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.mechanism = decoder.readString(formatCode);
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            int size = (int) decoder.readBinaryDataSize(formatCode);
-            ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-            data.initialResponse = new byte[size];
-            channelBuf.readBytes(data.initialResponse);
-            data.isSetInitialResponse = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                int size = (int) decoder.readBinaryDataSize(formatCode);
+                ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                data.initialResponse = new byte[size];
+                channelBuf.readBytes(data.initialResponse);
+                data.isSetInitialResponse = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.hostname = decoder.readString(formatCode);
-            data.isSetHostname = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.hostname = decoder.readString(formatCode);
+                data.isSetHostname = true;
+            }
         }
         return data;
     }
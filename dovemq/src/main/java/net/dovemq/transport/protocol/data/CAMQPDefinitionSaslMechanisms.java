@@ -72,12 +72,13 @@ public class CAMQPDefinitionSaslMechanisms
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 1);
+        assert(listSize <= 1);
         CAMQPDefinitionSaslMechanisms data = new CAMQPDefinitionSaslMechanisms();
 
+        if (listSize > 0)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -83,26 +83,32 @@ public class CAMQPDefinitionSaslOutcome
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 2);
+        assert(listSize <= 2);
         CAMQPDefinitionSaslOutcome data = new CAMQPDefinitionSaslOutcome();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            data.code = decoder.readUByte();
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.code = decoder.readUByte();
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            int size = (int) decoder.readBinaryDataSize(formatCode);
-            ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
-            data.additionalData = new byte[size];
-            channelBuf.readBytes(data.additionalData);
-            data.isSetAdditionalData = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                int size = (int) decoder.readBinaryDataSize(formatCode);
+                ChannelBuffer channelBuf = decoder.readBinary(formatCode, size, false);
+                data.additionalData = new byte[size];
+                channelBuf.readBytes(data.additionalData);
+                data.isSetAdditionalData = true;
+            }
         }
         return data;
     }
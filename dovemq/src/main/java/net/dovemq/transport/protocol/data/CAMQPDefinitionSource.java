@@ -453,164 +453,195 @@ public class CAMQPDefinitionSource
     {
         int formatCode;
         formatCode = decoder.readFormatCode();
-        assert((formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
+        assert((formatCode == CAMQPFormatCodes.LIST0) || (formatCode == CAMQPFormatCodes.LIST8) || (formatCode == CAMQPFormatCodes.LIST32));
 
         long listSize = decoder.readCompoundSize(formatCode);
-        assert(listSize == 12);
+        assert(listSize <= 12);
         CAMQPDefinitionSource data = new CAMQPDefinitionSource();
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 0)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
-                {
-                    data.options.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.options.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetOptions = true;
             }
-            data.isSetOptions = true;
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 1)
         {
-            data.isSetAddress = true;
-            if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                data.address = decoder.readString(formatCode);
+                data.isSetAddress = true;
+                if (formatCode == CAMQPFormatCodes.STR8_UTF8)
+                {
+                    data.address = decoder.readString(formatCode);
+                }
             }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 2)
         {
-            data.durable = decoder.readUInt();
-            data.isSetDurable = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.durable = decoder.readUInt();
+                data.isSetDurable = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 3)
         {
-            data.expiryPolicy = decoder.readString(formatCode);
-            data.isSetExpiryPolicy = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.expiryPolicy = decoder.readString(formatCode);
+                data.isSetExpiryPolicy = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 4)
         {
-            data.timeout = decoder.readUInt();
-            data.isSetTimeout = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.timeout = decoder.readUInt();
+                data.isSetTimeout = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 5)
         {
-            data.dynamic = (formatCode == CAMQPFormatCodes.TRUE);
-            data.isSetDynamic = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.dynamic = (formatCode == CAMQPFormatCodes.TRUE);
+                data.isSetDynamic = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 6)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
-                {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    data.dynamicNodeProperties.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.dynamicNodeProperties.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetDynamicNodeProperties = true;
             }
-            data.isSetDynamicNodeProperties = true;
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 7)
         {
-            data.distributionMode = decoder.readString(formatCode);
-            data.isSetDistributionMode = true;
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
+            {
+                data.distributionMode = decoder.readString(formatCode);
+                data.isSetDistributionMode = true;
+            }
         }
 
-        formatCode = decoder.readFormatCode();
-        if (formatCode != CAMQPFormatCodes.NULL)
+        if (listSize > 8)
         {
-            assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
-            long innerMapSize = decoder.readMapCount(formatCode);
-            for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
+            formatCode = decoder.readFormatCode();
+            if (formatCode != CAMQPFormatCodes.NULL)
             {
-                String innerKey = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode == CAMQPFormatCodes.SYM8)
-                {
-                    innerKey = decoder.readString(formatCode);
-                }
-                String innerVal = null;
-                formatCode = decoder.readFormatCode();
-                if (formatCode != CAMQPFormatCodes.NULL)
+                assert((formatCode == CAMQPFormatCodes.MAP8) || (formatCode == CAMQPFormatCodes.MAP32));
+                long innerMapSize = decoder.readMapCount(formatCode);
+                for (long innerIndex = 0; innerIndex < innerMapSize; innerIndex++)
                 {
-                    innerVal = decoder.readString(formatCode);
-                }
-                if ((innerKey != null) && (innerVal != null))
-                {
-                    data.filter.put(innerKey, innerVal);
+                    String innerKey = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode == CAMQPFormatCodes.SYM8)
+                    {
+                        innerKey = decoder.readString(formatCode);
+                    }
+                    String innerVal = null;
+                    formatCode = decoder.readFormatCode();
+                    if (formatCode != CAMQPFormatCodes.NULL)
+                    {
+                        innerVal = decoder.readString(formatCode);
+                    }
+                    if ((innerKey != null) && (innerVal != null))
+                    {
+                        data.filter.put(innerKey, innerVal);
+                    }
                 }
+                data.isSetFilter = true;
             }
-            data.isSetFilter = true;
         }
 
-        if (decoder.isNextDescribedConstructor())
+        if (listSize > 9)
         {
-            String controlName = decoder.readSymbol();
-            if (controlName.equalsIgnoreCase(CAMQPDefinitionModified.descriptor))
-            {
-                data.defaultOutcome = CAMQPDefinitionModified.decode(decoder);
-            }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionReleased.descriptor))
+            if (decoder.isNextDescribedConstructor())
             {
-                data.defaultOutcome = CAMQPDefinitionReleased.decode(decoder);
-            }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionAccepted.descriptor))
-            {
-                data.defaultOutcome = CAMQPDefinitionAccepted.decode(decoder);
+                String controlName = decoder.readSymbol();
+                if (controlName.equalsIgnoreCase(CAMQPDefinitionModified.descriptor))
+                {
+                    data.defaultOutcome = CAMQPDefinitionModified.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionReleased.descriptor))
+                {
+                    data.defaultOutcome = CAMQPDefinitionReleased.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionAccepted.descriptor))
+                {
+                    data.defaultOutcome = CAMQPDefinitionAccepted.decode(decoder);
+                }
+                else if (controlName.equalsIgnoreCase(CAMQPDefinitionRejected.descriptor))
+                {
+                    data.defaultOutcome = CAMQPDefinitionRejected.decode(decoder);
+                }
             }
-            else if (controlName.equalsIgnoreCase(CAMQPDefinitionRejected.descriptor))
+            else
             {
-                data.defaultOutcome = CAMQPDefinitionRejected.decode(decoder);
+                formatCode = decoder.readFormatCode();
+                assert (formatCode == CAMQPFormatCodes.NULL);
             }
         }
-        else
-        {
-            formatCode = decoder.readFormatCode();
-            assert (formatCode == CAMQPFormatCodes.NULL);
-        }
 
+        if (listSize > 10)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
@@ -619,6 +650,7 @@ public class CAMQPDefinitionSource
             }
         }
 
+        if (listSize > 11)
         {
             CAMQPCompundHeader compoundHeader = decoder.readMultipleElementCount();
             for (int innerIndex = 0; innerIndex < compoundHeader.elementCount; innerIndex++)
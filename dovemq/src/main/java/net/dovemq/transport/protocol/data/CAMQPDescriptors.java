@@ -0,0 +1,212 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol.data;
+
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Maps the symbolic descriptors of the AMQP composite types to the numeric
+ * (ulong) descriptor codes of the AMQP 1.0 domain (0x00000000).
+ *
+ * The encoder writes the numeric code of a registered descriptor, and the
+ * decoder maps it back to the canonical symbol, so that the frame
+ * dispatchers can switch on the code without decoding a String.
+ *
+ * Descriptors without an AMQP 1.0 equivalent (amqp:delivery-state:list)
+ * are not registered, and are always encoded as symbols.
+ *
+ * @author tejdas
+ */
+public final class CAMQPDescriptors {
+    public static final int UNKNOWN = -1;
+
+    public static final int OPEN = 0x10;
+    public static final int BEGIN = 0x11;
+    public static final int ATTACH = 0x12;
+    public static final int FLOW = 0x13;
+    public static final int TRANSFER = 0x14;
+    public static final int DISPOSITION = 0x15;
+    public static final int DETACH = 0x16;
+    public static final int END = 0x17;
+    public static final int CLOSE = 0x18;
+    public static final int ERROR = 0x1d;
+    public static final int ACCEPTED = 0x24;
+    public static final int REJECTED = 0x25;
+    public static final int RELEASED = 0x26;
+    public static final int MODIFIED = 0x27;
+    public static final int SOURCE = 0x28;
+    public static final int TARGET = 0x29;
+    public static final int DELETE_ON_CLOSE = 0x2b;
+    public static final int DELETE_ON_NO_LINKS = 0x2c;
+    public static final int DELETE_ON_NO_MESSAGES = 0x2d;
+    public static final int DELETE_ON_NO_LINKS_OR_MESSAGES = 0x2e;
+    public static final int SASL_MECHANISMS = 0x40;
+    public static final int SASL_INIT = 0x41;
+    public static final int SASL_CHALLENGE = 0x42;
+    public static final int SASL_RESPONSE = 0x43;
+    public static final int SASL_OUTCOME = 0x44;
+    public static final int HEADER = 0x70;
+    public static final int PROPERTIES = 0x73;
+    public static final int FOOTER = 0x78;
+
+    private static final int MAX_DESCRIPTOR_CODE = 0x7f;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] symbolsByCode = new String[MAX_DESCRIPTOR_CODE + 1];
+
+    private static final byte[][] encodedSymbolsByCode = new byte[MAX_DESCRIPTOR_CODE + 1][];
+
+    private static final Map<String, Integer> codesBySymbol = new HashMap<>();
+
+    private static volatile boolean numericDescriptorsEnabled = true;
+
+    static {
+        register(CAMQPControlOpen.descriptor, OPEN);
+        register(CAMQPControlBegin.descriptor, BEGIN);
+        register(CAMQPControlAttach.descriptor, ATTACH);
+        register(CAMQPControlFlow.descriptor, FLOW);
+        register(CAMQPControlTransfer.descriptor, TRANSFER);
+        register(CAMQPControlDisposition.descriptor, DISPOSITION);
+        register(CAMQPControlDetach.descriptor, DETACH);
+        register(CAMQPControlEnd.descriptor, END);
+        register(CAMQPControlClose.descriptor, CLOSE);
+        register(CAMQPDefinitionError.descriptor, ERROR);
+        register(CAMQPDefinitionAccepted.descriptor, ACCEPTED);
+        register(CAMQPDefinitionRejected.descriptor, REJECTED);
+        register(CAMQPDefinitionReleased.descriptor, RELEASED);
+        register(CAMQPDefinitionModified.descriptor, MODIFIED);
+        register(CAMQPDefinitionSource.descriptor, SOURCE);
+        register(CAMQPDefinitionTarget.descriptor, TARGET);
+        register(CAMQPDefinitionDeleteOnClose.descriptor, DELETE_ON_CLOSE);
+        register(CAMQPDefinitionDeleteOnNoLinks.descriptor, DELETE_ON_NO_LINKS);
+        register(CAMQPDefinitionDeleteOnNoMessages.descriptor, DELETE_ON_NO_MESSAGES);
+        register(CAMQPDefinitionDeleteOnNoLinksOrMessages.descriptor, DELETE_ON_NO_LINKS_OR_MESSAGES);
+        register(CAMQPDefinitionSaslMechanisms.descriptor, SASL_MECHANISMS);
+        register(CAMQPDefinitionSaslInit.descriptor, SASL_INIT);
+        register(CAMQPDefinitionSaslChallenge.descriptor, SASL_CHALLENGE);
+        register(CAMQPDefinitionSaslResponse.descriptor, SASL_RESPONSE);
+        register(CAMQPDefinitionSaslOutcome.descriptor, SASL_OUTCOME);
+        register(CAMQPDefinitionHeader.descriptor, HEADER);
+        register(CAMQPDefinitionProperties.descriptor, PROPERTIES);
+        register(CAMQPDefinitionFooter.descriptor, FOOTER);
+    }
+
+    private static void register(String symbol, int code) {
+        symbolsByCode[code] = symbol;
+        encodedSymbolsByCode[code] = symbol.getBytes(UTF8);
+        codesBySymbol.put(symbol, code);
+    }
+
+    private CAMQPDescriptors() {
+    }
+
+    /**
+     * If enabled (the default), the registered descriptors are encoded as
+     * numeric descriptors. Otherwise, they are encoded as symbols, for peers
+     * that only understand symbolic descriptors.
+     *
+     * @param enabled
+     */
+    public static void setNumericDescriptorsEnabled(boolean enabled) {
+        numericDescriptorsEnabled = enabled;
+    }
+
+    public static boolean isNumericDescriptorsEnabled() {
+        return numericDescriptorsEnabled;
+    }
+
+    public static Collection<String> getRegisteredSymbols() {
+        return Collections.unmodifiableSet(codesBySymbol.keySet());
+    }
+
+    /**
+     * Returns the numeric code of the descriptor symbol, or UNKNOWN if the
+     * symbol is not registered or numeric descriptors are disabled.
+     *
+     * @param symbol
+     * @return
+     */
+    public static int getEncodableCode(String symbol) {
+        if (!numericDescriptorsEnabled) {
+            return UNKNOWN;
+        }
+        return getCode(symbol);
+    }
+
+    public static int getCode(String symbol) {
+        Integer code = codesBySymbol.get(symbol);
+        if (code != null) {
+            return code;
+        }
+        for (Map.Entry<String, Integer> entry : codesBySymbol.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(symbol)) {
+                return entry.getValue();
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the canonical descriptor symbol for the numeric code, or null
+     * if the code is not registered.
+     *
+     * @param code
+     * @return
+     */
+    public static String getSymbol(long code) {
+        if ((code < 0) || (code > MAX_DESCRIPTOR_CODE)) {
+            return null;
+        }
+        return symbolsByCode[(int) code];
+    }
+
+    /**
+     * Finds the registered descriptor whose UTF-8 encoding matches the
+     * length bytes at the index of the buffer, without decoding them.
+     *
+     * @param buffer
+     * @param index
+     * @param length
+     * @return descriptor code, or UNKNOWN
+     */
+    public static int findCode(ChannelBuffer buffer, int index, int length) {
+        for (int code = 0; code <= MAX_DESCRIPTOR_CODE; code++) {
+            byte[] encodedSymbol = encodedSymbolsByCode[code];
+            if ((encodedSymbol != null) && (encodedSymbol.length == length) && matches(buffer, index, encodedSymbol)) {
+                return code;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matches(ChannelBuffer buffer, int index, byte[] encodedSymbol) {
+        for (int i = 0; i < encodedSymbol.length; i++) {
+            if (buffer.getByte(index + i) != encodedSymbol[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
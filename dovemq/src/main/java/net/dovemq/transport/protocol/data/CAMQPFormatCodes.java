@@ -26,6 +26,7 @@ public class CAMQPFormatCodes
     public static final int CHAR = 0x73;
     public static final int INT = 0x71;
     public static final int SMALLINT = 0x54;
+    public static final int LIST0 = 0x45;
     public static final int LIST8 = 0xc0;
     public static final int LIST32 = 0xd0;
     public static final int DECIMAL64 = 0x84;
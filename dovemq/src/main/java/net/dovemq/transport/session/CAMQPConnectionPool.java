@@ -0,0 +1,238 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.dovemq.transport.connection.CAMQPConnectionFactory;
+import net.dovemq.transport.connection.CAMQPConnectionInterface;
+import net.dovemq.transport.connection.CAMQPConnectionKey;
+import net.dovemq.transport.connection.CAMQPConnectionProperties;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Pool of AMQP connections to each remote container, over which the
+ * sessions are multiplexed.
+ *
+ * A new session is placed on the least loaded connection of the pool. The
+ * load of a connection is its outbound bytes, plus SESSION_LOAD_BYTES for
+ * each of its sessions, including the sessions still being placed on it.
+ * A new connection is opened only if every pooled connection is in use,
+ * and the pool has fewer connections than the configured pool size.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+class CAMQPConnectionPool {
+    /**
+     * Pooled connection, and the number of sessions being placed on it,
+     * i.e, the sessions that are not yet mapped to the connection.
+     */
+    @NotThreadSafe
+    private static final class PooledConnection {
+        private final CAMQPConnectionInterface connection;
+
+        private int placingSessionCount = 0;
+
+        PooledConnection(CAMQPConnectionInterface connection) {
+            this.connection = connection;
+        }
+
+        long getLoad() {
+            return CAMQPConnectionPool.getLoad(connection) + (placingSessionCount * CAMQPSessionConstants.SESSION_LOAD_BYTES);
+        }
+    }
+
+    /**
+     * Connections to a remote container, and the number of connections
+     * being opened to it.
+     */
+    @ThreadSafe
+    private static final class ContainerConnections {
+        @GuardedBy("this")
+        private final List<PooledConnection> connections = new ArrayList<>();
+
+        @GuardedBy("this")
+        private int pendingConnectCount = 0;
+
+        @GuardedBy("this")
+        private PooledConnection getLeastLoadedConnection() {
+            PooledConnection leastLoadedConnection = null;
+            long leastLoad = Long.MAX_VALUE;
+            for (PooledConnection pooledConnection : connections) {
+                long load = pooledConnection.getLoad();
+                if (load < leastLoad) {
+                    leastLoad = load;
+                    leastLoadedConnection = pooledConnection;
+                }
+            }
+            return leastLoadedConnection;
+        }
+
+        @GuardedBy("this")
+        private PooledConnection findConnection(CAMQPConnectionInterface connection) {
+            for (PooledConnection pooledConnection : connections) {
+                if (pooledConnection.connection == connection) {
+                    return pooledConnection;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final ConcurrentMap<String, ContainerConnections> pooledConnections = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the least loaded connection to the remote container, or a new
+     * connection, on which a session is then placed. The connection is
+     * opened outside the lock of the pool, as it blocks until the AMQP
+     * connection is established. If the pool has been filled up meanwhile,
+     * the new connection is closed, and the least loaded pooled connection
+     * is returned instead.
+     *
+     * The session is counted in the load of the returned connection until
+     * sessionPlaced() is called, so that the sessions being created
+     * concurrently are spread over the pool.
+     *
+     * @param targetContainerId
+     * @param poolSize
+     * @return
+     */
+    CAMQPConnectionInterface getConnection(String targetContainerId, int poolSize) {
+        ContainerConnections containerConnections = getContainerConnections(targetContainerId);
+        synchronized (containerConnections) {
+            PooledConnection leastLoadedConnection = containerConnections.getLeastLoadedConnection();
+            if ((leastLoadedConnection != null) &&
+                    ((leastLoadedConnection.getLoad() == 0) ||
+                    (containerConnections.connections.size() + containerConnections.pendingConnectCount >= poolSize))) {
+                leastLoadedConnection.placingSessionCount++;
+                return leastLoadedConnection.connection;
+            }
+            containerConnections.pendingConnectCount++;
+        }
+
+        CAMQPConnectionInterface connection = null;
+        try {
+            connection = openConnection(targetContainerId);
+        }
+        finally {
+            synchronized (containerConnections) {
+                containerConnections.pendingConnectCount--;
+            }
+        }
+
+        PooledConnection leastLoadedConnection;
+        synchronized (containerConnections) {
+            leastLoadedConnection = containerConnections.getLeastLoadedConnection();
+            if ((leastLoadedConnection == null) || (containerConnections.connections.size() < poolSize)) {
+                PooledConnection pooledConnection = new PooledConnection(connection);
+                pooledConnection.placingSessionCount++;
+                containerConnections.connections.add(pooledConnection);
+                return connection;
+            }
+            leastLoadedConnection.placingSessionCount++;
+        }
+        connection.closeAsync();
+        return leastLoadedConnection.connection;
+    }
+
+    /**
+     * Called after the session, placed on the connection returned by
+     * getConnection(), has been mapped to the connection, or has failed to
+     * be mapped.
+     *
+     * @param targetContainerId
+     * @param connection
+     */
+    void sessionPlaced(String targetContainerId, CAMQPConnectionInterface connection) {
+        ContainerConnections containerConnections = pooledConnections.get(targetContainerId);
+        if (containerConnections == null) {
+            return;
+        }
+        synchronized (containerConnections) {
+            PooledConnection pooledConnection = containerConnections.findConnection(connection);
+            if (pooledConnection != null) {
+                pooledConnection.placingSessionCount--;
+            }
+        }
+    }
+
+    /**
+     * Removes the closed connection from the pool.
+     *
+     * @param connectionKey
+     */
+    void connectionClosed(CAMQPConnectionKey connectionKey) {
+        for (ContainerConnections containerConnections : pooledConnections.values()) {
+            synchronized (containerConnections) {
+                Iterator<PooledConnection> iter = containerConnections.connections.iterator();
+                while (iter.hasNext()) {
+                    if (connectionKey.equals(iter.next().connection.getKey())) {
+                        iter.remove();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    int getConnectionCount(String targetContainerId) {
+        ContainerConnections containerConnections = pooledConnections.get(targetContainerId);
+        if (containerConnections == null) {
+            return 0;
+        }
+        synchronized (containerConnections) {
+            return containerConnections.connections.size();
+        }
+    }
+
+    /**
+     * Opens a new AMQP connection to the remote container. Overridden by
+     * the unit tests.
+     *
+     * @param targetContainerId
+     * @return
+     */
+    CAMQPConnectionInterface openConnection(String targetContainerId) {
+        CAMQPConnectionProperties connectionProps = CAMQPConnectionProperties.createConnectionProperties();
+        return CAMQPConnectionFactory.createCAMQPConnection(targetContainerId, connectionProps);
+    }
+
+    private ContainerConnections getContainerConnections(String targetContainerId) {
+        ContainerConnections containerConnections = pooledConnections.get(targetContainerId);
+        if (containerConnections == null) {
+            ContainerConnections newContainerConnections = new ContainerConnections();
+            containerConnections = pooledConnections.putIfAbsent(targetContainerId, newContainerConnections);
+            if (containerConnections == null) {
+                containerConnections = newContainerConnections;
+            }
+        }
+        return containerConnections;
+    }
+
+    private static long getLoad(CAMQPConnectionInterface connection) {
+        int sessionCount = CAMQPSessionManager.getSessionCount(connection.getKey());
+        return connection.getOutboundBytes() + (sessionCount * CAMQPSessionConstants.SESSION_LOAD_BYTES);
+    }
+}
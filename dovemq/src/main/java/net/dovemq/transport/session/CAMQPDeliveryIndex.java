@@ -0,0 +1,212 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.dovemq.transport.link.CAMQPLinkMessageHandler;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Index of the unsettled deliveries of a session, in one direction (sent or
+ * received), to the link end-points that own them.
+ *
+ * The index is kept as runs of consecutive deliveryIds owned by the same
+ * link end-point, keyed by the first deliveryId of the run. Since the
+ * deliveryIds are assigned in increasing order, a delivery mostly extends
+ * the last run of its link, so a link that is the only one sending on the
+ * session is tracked by a single run. A disposition range is thus mapped to
+ * the owning link end-points by looking up the runs it overlaps, without
+ * visiting the individual deliveryIds.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+final class CAMQPDeliveryIndex {
+    /**
+     * Range of deliveryIds [first, last] owned by a link end-point. The
+     * ranges of the index are extended in place, under the lock of the
+     * index. getRanges() hands out copies.
+     */
+    @NotThreadSafe
+    static final class DeliveryRange {
+        DeliveryRange(long first, long last, CAMQPLinkMessageHandler linkEndpoint) {
+            this.first = first;
+            this.last = last;
+            this.linkEndpoint = linkEndpoint;
+        }
+
+        final long first;
+
+        long last;
+
+        final CAMQPLinkMessageHandler linkEndpoint;
+    }
+
+    @GuardedBy("this")
+    private final TreeMap<Long, DeliveryRange> deliveryRanges = new TreeMap<>();
+
+    /*
+     * The run with the highest deliveryIds, or null if the index is empty.
+     */
+    @GuardedBy("this")
+    private DeliveryRange tail = null;
+
+    /**
+     * Records the deliveryId as owned by the link end-point. Recording the
+     * same deliveryId again (for the subsequent frames of a multi-frame
+     * transfer) has no effect.
+     *
+     * The common case of a deliveryId that extends, or is already in, the
+     * last run is handled on the cached tail run, without looking up the
+     * map or allocating a run.
+     *
+     * @param deliveryId
+     * @param linkEndpoint
+     */
+    synchronized void add(long deliveryId, CAMQPLinkMessageHandler linkEndpoint) {
+        if (tail != null) {
+            if ((deliveryId == tail.last + 1) && (tail.linkEndpoint == linkEndpoint)) {
+                tail.last = deliveryId;
+                return;
+            }
+            if ((deliveryId >= tail.first) && (deliveryId <= tail.last)) {
+                return;
+            }
+        }
+
+        DeliveryRange lower = null;
+        Map.Entry<Long, DeliveryRange> lowerEntry = deliveryRanges.floorEntry(deliveryId);
+        if (lowerEntry != null) {
+            lower = lowerEntry.getValue();
+            if (deliveryId <= lower.last) {
+                return;
+            }
+            if ((lower.last != deliveryId - 1) || (lower.linkEndpoint != linkEndpoint)) {
+                lower = null;
+            }
+        }
+
+        DeliveryRange higher = deliveryRanges.get(deliveryId + 1);
+        if ((higher != null) && (higher.linkEndpoint != linkEndpoint)) {
+            higher = null;
+        }
+
+        if (lower != null) {
+            lower.last = deliveryId;
+            if (higher != null) {
+                deliveryRanges.remove(higher.first);
+                lower.last = higher.last;
+            }
+        }
+        else if (higher != null) {
+            deliveryRanges.remove(higher.first);
+            deliveryRanges.put(deliveryId, new DeliveryRange(deliveryId, higher.last, linkEndpoint));
+        }
+        else {
+            deliveryRanges.put(deliveryId, new DeliveryRange(deliveryId, deliveryId, linkEndpoint));
+        }
+        updateTail();
+    }
+
+    /**
+     * Returns the ranges of deliveryIds within [first, last] that are owned
+     * by a link end-point, clipped to [first, last], in increasing order.
+     *
+     * @param first
+     * @param last
+     * @return
+     */
+    synchronized List<DeliveryRange> getRanges(long first, long last) {
+        List<DeliveryRange> ranges = new ArrayList<>();
+        for (DeliveryRange range : getOverlappingRanges(first, last)) {
+            ranges.add(new DeliveryRange(Math.max(first, range.first), Math.min(last, range.last), range.linkEndpoint));
+        }
+        return ranges;
+    }
+
+    /**
+     * Forgets the settled deliveryIds [first, last].
+     *
+     * @param first
+     * @param last
+     */
+    synchronized void remove(long first, long last) {
+        for (DeliveryRange range : getOverlappingRanges(first, last)) {
+            deliveryRanges.remove(range.first);
+            if (range.first < first) {
+                deliveryRanges.put(range.first, new DeliveryRange(range.first, first - 1, range.linkEndpoint));
+            }
+            if (range.last > last) {
+                deliveryRanges.put(last + 1, new DeliveryRange(last + 1, range.last, range.linkEndpoint));
+            }
+        }
+        updateTail();
+    }
+
+    /**
+     * Forgets all the deliveryIds owned by the (detached) link end-point.
+     *
+     * @param linkEndpoint
+     */
+    synchronized void remove(CAMQPLinkMessageHandler linkEndpoint) {
+        Iterator<DeliveryRange> iter = deliveryRanges.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().linkEndpoint == linkEndpoint) {
+                iter.remove();
+            }
+        }
+        updateTail();
+    }
+
+    synchronized void clear() {
+        deliveryRanges.clear();
+        tail = null;
+    }
+
+    synchronized int getRangeCount() {
+        return deliveryRanges.size();
+    }
+
+    @GuardedBy("this")
+    private List<DeliveryRange> getOverlappingRanges(long first, long last) {
+        List<DeliveryRange> ranges = new ArrayList<>();
+        Long fromKey = deliveryRanges.floorKey(first);
+        if (fromKey == null) {
+            fromKey = first;
+        }
+        for (DeliveryRange range : deliveryRanges.subMap(fromKey, true, last, true).values()) {
+            if (range.last >= first) {
+                ranges.add(range);
+            }
+        }
+        return ranges;
+    }
+
+    @GuardedBy("this")
+    private void updateTail() {
+        Map.Entry<Long, DeliveryRange> lastEntry = deliveryRanges.lastEntry();
+        tail = (lastEntry != null) ? lastEntry.getValue() : null;
+    }
+}
@@ -17,11 +17,12 @@
 
 package net.dovemq.transport.session;
 
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.dovemq.transport.protocol.CAMQPEncoder;
 import net.dovemq.transport.protocol.data.CAMQPControlDisposition;
@@ -29,16 +30,23 @@ import net.dovemq.transport.protocol.data.CAMQPDefinitionAccepted;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionDeliveryState;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionModified;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionRejected;
+import net.dovemq.transport.protocol.data.CAMQPDefinitionReleased;
 import net.dovemq.transport.session.CAMQPSession.CAMQPChannel;
 import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.NotThreadSafe;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 
 /**
- * This class is responsible for sending batched dispositions at a scheduled
- * interval. It manages the outstanding disposition ranges, merging them into
- * batches having the same characteristics (outcome and settled flag) if
- * necessary, for efficient disposition.
+ * This class is responsible for sending batched dispositions. It manages the
+ * outstanding dispositions, merging them into ranges having the same
+ * characteristics (outcome and settled flag), for efficient disposition.
+ *
+ * The dispositions are sent every BATCHED_DISPOSITION_SEND_INTERVAL, or
+ * sooner, once the outstanding dispositions reach DISPOSITION_FLUSH_COUNT
+ * delivery ids, or their disposition frames reach DISPOSITION_FLUSH_BYTES.
+ * All the disposition frames of a flush are sent in a single write.
  *
  * @author tejdas
  */
@@ -104,6 +112,13 @@ final class CAMQPDispositionSender implements Runnable {
             if (this.settled != settled)
                 return false;
 
+            return isCompatibleOutcome(outcome, newOutcome);
+        }
+
+        /**
+         * Outcomes of the same kind are sent in the same disposition range.
+         */
+        static boolean isCompatibleOutcome(Object outcome, Object newOutcome) {
             if (outcome == newOutcome)
                 return true;
 
@@ -113,6 +128,8 @@ final class CAMQPDispositionSender implements Runnable {
                 return true;
             if ((outcome instanceof CAMQPDefinitionRejected) && (newOutcome instanceof CAMQPDefinitionRejected))
                 return true;
+            if ((outcome instanceof CAMQPDefinitionReleased) && (newOutcome instanceof CAMQPDefinitionReleased))
+                return true;
 
             return false;
         }
@@ -127,14 +144,198 @@ final class CAMQPDispositionSender implements Runnable {
     }
 
     /**
-     * Maintains two separate lists of disposition ranges, for Link Sender and
+     * Sliding window of the delivery ids awaiting disposition, kept in a ring
+     * buffer indexed by delivery id. Adding a delivery id, or changing its
+     * disposition, is O(1). The window also keeps count of the adjacent
+     * delivery ids that have compatible dispositions, so the number of
+     * disposition ranges is known without walking the window.
+     */
+    @NotThreadSafe
+    static final class DispositionWindow {
+        private static final byte EMPTY = 0;
+
+        private static final byte UNSETTLED = 1;
+
+        private static final byte SETTLED = 2;
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        private byte[] states = new byte[INITIAL_CAPACITY];
+
+        private Object[] outcomes = new Object[INITIAL_CAPACITY];
+
+        /*
+         * Lowest and highest delivery ids in the window, if not empty
+         */
+        private long first = 0;
+
+        private long last = -1;
+
+        /*
+         * Position of the first delivery id in the ring buffer
+         */
+        private int firstIndex = 0;
+
+        private int count = 0;
+
+        /*
+         * Number of delivery ids that have a compatible disposition with the
+         * next delivery id
+         */
+        private int joins = 0;
+
+        boolean isEmpty() {
+            return (count == 0);
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        int getRangeCount() {
+            return count - joins;
+        }
+
+        /**
+         * Returns true if the window can take the delivery id without
+         * spanning more than MAX_DISPOSITION_WINDOW_SIZE delivery ids.
+         *
+         * @param deliveryId
+         * @return
+         */
+        boolean fits(long deliveryId) {
+            if (count == 0) {
+                return true;
+            }
+            long span = Math.max(last, deliveryId) - Math.min(first, deliveryId) + 1;
+            return (span <= CAMQPSessionConstants.MAX_DISPOSITION_WINDOW_SIZE);
+        }
+
+        /**
+         * Adds the delivery id to the window, or replaces its disposition if
+         * it is already in the window.
+         *
+         * @param deliveryId
+         * @param settled
+         * @param outcome
+         */
+        void add(long deliveryId, boolean settled, Object outcome) {
+            if (count == 0) {
+                first = deliveryId;
+                last = deliveryId;
+                firstIndex = 0;
+            }
+            else {
+                ensureCapacity(Math.max(last, deliveryId) - Math.min(first, deliveryId) + 1);
+                if (deliveryId < first) {
+                    firstIndex = (firstIndex - (int) (first - deliveryId)) & (states.length - 1);
+                    first = deliveryId;
+                }
+                else if (deliveryId > last) {
+                    last = deliveryId;
+                }
+            }
+
+            int index = indexOf(deliveryId);
+            joins -= countJoins(deliveryId);
+            if (states[index] == EMPTY) {
+                count++;
+            }
+            states[index] = settled ? SETTLED : UNSETTLED;
+            outcomes[index] = outcome;
+            joins += countJoins(deliveryId);
+        }
+
+        /**
+         * Empties the window, and returns its dispositions, merged into
+         * ranges in the order of delivery ids.
+         *
+         * @return
+         */
+        List<DispositionRange> drain() {
+            List<DispositionRange> ranges = new ArrayList<>(getRangeCount());
+            DispositionRange range = null;
+            for (long deliveryId = first; deliveryId <= last; deliveryId++) {
+                int index = indexOf(deliveryId);
+                if (states[index] == EMPTY) {
+                    range = null;
+                    continue;
+                }
+
+                boolean settled = (states[index] == SETTLED);
+                if ((range != null) && range.isCompatible(settled, outcomes[index])) {
+                    range.setMax(deliveryId);
+                }
+                else {
+                    range = new DispositionRange(deliveryId, deliveryId, settled, outcomes[index]);
+                    ranges.add(range);
+                }
+                states[index] = EMPTY;
+                outcomes[index] = null;
+            }
+
+            count = 0;
+            joins = 0;
+            first = 0;
+            last = -1;
+            return ranges;
+        }
+
+        private int indexOf(long deliveryId) {
+            return (firstIndex + (int) (deliveryId - first)) & (states.length - 1);
+        }
+
+        private int countJoins(long deliveryId) {
+            return (isJoined(deliveryId - 1) ? 1 : 0) + (isJoined(deliveryId) ? 1 : 0);
+        }
+
+        /*
+         * Returns true if both the delivery id and the next one are in the
+         * window, with compatible dispositions.
+         */
+        private boolean isJoined(long deliveryId) {
+            if ((deliveryId < first) || (deliveryId >= last)) {
+                return false;
+            }
+            int index = indexOf(deliveryId);
+            int nextIndex = (index + 1) & (states.length - 1);
+            return (states[index] != EMPTY) && (states[index] == states[nextIndex])
+                    && DispositionRange.isCompatibleOutcome(outcomes[index], outcomes[nextIndex]);
+        }
+
+        private void ensureCapacity(long span) {
+            if (span <= states.length) {
+                return;
+            }
+            int capacity = states.length;
+            while (capacity < span) {
+                capacity <<= 1;
+            }
+
+            byte[] newStates = new byte[capacity];
+            Object[] newOutcomes = new Object[capacity];
+            for (long deliveryId = first; deliveryId <= last; deliveryId++) {
+                int index = indexOf(deliveryId);
+                newStates[(int) (deliveryId - first)] = states[index];
+                newOutcomes[(int) (deliveryId - first)] = outcomes[index];
+            }
+            states = newStates;
+            outcomes = newOutcomes;
+            firstIndex = 0;
+        }
+    }
+
+    /**
+     * Maintains two separate windows of dispositions, for Link Sender and
      * Link Receiver.
      */
     @GuardedBy("this")
-    private List<DispositionRange> senderDispositionRanges = null;
+    private final DispositionWindow senderDispositions = new DispositionWindow();
 
     @GuardedBy("this")
-    private List<DispositionRange> receiverDispositionRanges = null;
+    private final DispositionWindow receiverDispositions = new DispositionWindow();
+
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
 
     private final CAMQPSession session;
 
@@ -162,275 +363,126 @@ final class CAMQPDispositionSender implements Runnable {
     }
 
     /**
-     * Called by CAMQPSession to park a transferId for a scheduled batch
-     * disposition.
+     * Called by CAMQPSession to park a transferId for a batched disposition.
+     * Schedules an early flush if enough dispositions are outstanding.
      *
      * @param transferId
      * @param role
      * @param settled
      * @param newOutcome
      */
-    synchronized void insertDispositionRange(long transferId, boolean role, boolean settled, Object newOutcome) {
-        List<DispositionRange> dispositionRanges;
-        if (role) {
-            if (senderDispositionRanges == null) {
-                senderDispositionRanges = new LinkedList<>();
+    void insertDispositionRange(long transferId, boolean role, boolean settled, Object newOutcome) {
+        List<DispositionRange> overflowRanges = null;
+        boolean flushNeeded;
+        synchronized (this) {
+            DispositionWindow dispositions = role ? senderDispositions : receiverDispositions;
+            if (!dispositions.fits(transferId)) {
+                overflowRanges = dispositions.drain();
             }
-            dispositionRanges = senderDispositionRanges;
+            dispositions.add(transferId, settled, newOutcome);
+
+            int count = senderDispositions.getCount() + receiverDispositions.getCount();
+            int rangeCount = senderDispositions.getRangeCount() + receiverDispositions.getRangeCount();
+            flushNeeded = (count >= CAMQPSessionConstants.DISPOSITION_FLUSH_COUNT)
+                    || (rangeCount * CAMQPSessionConstants.ESTIMATED_DISPOSITION_FRAME_SIZE >= CAMQPSessionConstants.DISPOSITION_FLUSH_BYTES);
         }
-        else {
-            if (receiverDispositionRanges == null) {
-                receiverDispositionRanges = new LinkedList<>();
+
+        if (overflowRanges != null) {
+            /*
+             * The delivery id is too far from the outstanding ones: send those
+             * right away, rather than grow the window.
+             */
+            if (role) {
+                sendDispositions(overflowRanges, null);
+            }
+            else {
+                sendDispositions(null, overflowRanges);
+            }
+        }
+
+        if (flushNeeded && flushScheduled.compareAndSet(false, true)) {
+            try {
+                CAMQPSessionManager.getSessionSendDispositionScheduler().execute(this);
+            }
+            catch (RejectedExecutionException ex) {
+                flushScheduled.set(false);
             }
-            dispositionRanges = receiverDispositionRanges;
         }
-        addDisposition(transferId, settled, newOutcome, dispositionRanges);
     }
 
     @Override
     public void run() {
-        List<DispositionRange> localSenderDispositionRanges = null;
-        List<DispositionRange> localReceiverDispositionRanges = null;
+        flushScheduled.set(false);
+        List<DispositionRange> senderDispositionRanges = null;
+        List<DispositionRange> receiverDispositionRanges = null;
         synchronized (this) {
-            localSenderDispositionRanges = senderDispositionRanges;
-            localReceiverDispositionRanges = receiverDispositionRanges;
-            senderDispositionRanges = null;
-            receiverDispositionRanges = null;
-        }
-
-        CAMQPChannel channel = session.getChannel();
-        if (channel == null) {
-            return;
-        }
-
-        sendDispositions(localSenderDispositionRanges, true, channel);
-        sendDispositions(localReceiverDispositionRanges, false, channel);
-    }
-
-    private static void sendDispositions(List<DispositionRange> dispositionRanges, boolean role, CAMQPChannel channel) {
-        if (dispositionRanges != null) {
-            for (DispositionRange range : dispositionRanges) {
-                CAMQPControlDisposition disposition = new CAMQPControlDisposition();
-                disposition.setBatchable(false);
-                disposition.setFirst(range.getMin());
-                disposition.setLast(range.getMax());
-                disposition.setRole(role);
-                disposition.setSettled(range.isSettled());
-                if (range.getOutcome() != null) {
-                    CAMQPDefinitionDeliveryState deliveryState = new CAMQPDefinitionDeliveryState();
-                    deliveryState.setOutcome(range.getOutcome());
-                    disposition.setState(deliveryState);
-                }
-                CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
-                CAMQPControlDisposition.encode(encoder, disposition);
-                ChannelBuffer encodedTransfer = encoder.getEncodedBuffer();
-                channel.getAmqpConnection()
-                        .sendFrame(encodedTransfer, channel.getChannelId());
+            if (!senderDispositions.isEmpty()) {
+                senderDispositionRanges = senderDispositions.drain();
+            }
+            if (!receiverDispositions.isEmpty()) {
+                receiverDispositionRanges = receiverDispositions.drain();
             }
         }
+        sendDispositions(senderDispositionRanges, receiverDispositionRanges);
     }
 
     /**
-     * Add a transferId to the outstanding disposition ranges, consolidating the
-     * ranges if necessary.
+     * Encodes a disposition frame for each range, and sends all of them in a
+     * single write.
      *
-     * @param transferId
-     * @param settled
-     * @param newOutcome
-     * @param dispositionRanges
+     * @param senderDispositionRanges
+     * @param receiverDispositionRanges
      */
-    static void addDisposition(long transferId, boolean settled, Object newOutcome, List<DispositionRange> dispositionRanges) {
-        if (dispositionRanges.isEmpty()) {
-            dispositionRanges.add(new DispositionRange(transferId, transferId, settled, newOutcome));
+    private void sendDispositions(List<DispositionRange> senderDispositionRanges, List<DispositionRange> receiverDispositionRanges) {
+        if ((senderDispositionRanges == null) && (receiverDispositionRanges == null)) {
             return;
         }
 
-        if (isDispositionUpdated(transferId, settled, newOutcome, dispositionRanges))
+        CAMQPChannel channel = session.getChannel();
+        if (channel == null) {
             return;
-
-        Iterator<DispositionRange> iter = dispositionRanges.iterator();
-        DispositionRange range = iter.next();
-        DispositionRange nextRange = null;
-
-        int indexToInsert = 0;
-        while (range != null) {
-            if (transferId < range.getMin() - 1) {
-                dispositionRanges.add(indexToInsert, new DispositionRange(transferId, transferId, settled, newOutcome));
-                return;
-            }
-
-            if (iter.hasNext()) {
-                nextRange = iter.next();
-            }
-
-            if (nextRange != null) {
-                if (transferId == range.getMax() + 1 && transferId == nextRange.getMin() - 1) {
-                    if (range.isCompatible(settled, newOutcome) && nextRange.isCompatible(settled, newOutcome)) {
-                        range.setMax(nextRange.getMax());
-                        dispositionRanges.remove(nextRange);
-                        return;
-                    }
-                    else if (nextRange.isCompatible(settled, newOutcome)) {
-                        nextRange.setMin(transferId);
-                        return;
-                    }
-                    else if (range.isCompatible(settled, newOutcome)) {
-                        range.setMax(transferId);
-                        return;
-                    }
-                    else {
-                        dispositionRanges.add(indexToInsert + 1, new DispositionRange(transferId, transferId, settled, newOutcome));
-                        return;
-                    }
-                }
-            }
-
-            if (transferId == range.getMax() + 1) {
-                if (range.isCompatible(settled, newOutcome)) {
-                    range.setMax(transferId);
-                    return;
-                }
-                else {
-                    dispositionRanges.add(indexToInsert + 1, new DispositionRange(transferId, transferId, settled, newOutcome));
-                    return;
-                }
-            }
-            if (transferId == range.getMin() - 1) {
-                if (range.isCompatible(settled, newOutcome)) {
-                    range.setMin(transferId);
-                    return;
-                }
-                else {
-                    dispositionRanges.add(indexToInsert, new DispositionRange(transferId, transferId, settled, newOutcome));
-                    return;
-                }
-            }
-
-            if (transferId > range.getMax() + 1) {
-                range = nextRange;
-                nextRange = null;
-                indexToInsert++;
-                continue;
-            }
-
-            assert (false);
         }
-        dispositionRanges.add(new DispositionRange(transferId, transferId, settled, newOutcome));
-    }
-
-    /**
-     * Returns true if it's an update to an existing disposition. An update
-     * could happen either if the settled state changes or it it has a new
-     * outcome, or both.
-     *
-     * @param transferId
-     * @param settled
-     * @param newOutcome
-     * @param dispositionRanges
-     * @return
-     */
-    private static boolean isDispositionUpdated(long transferId, boolean settled, Object newOutcome, List<DispositionRange> dispositionRanges) {
-        Iterator<DispositionRange> iter = dispositionRanges.iterator();
-        DispositionRange range = iter.next();
-        DispositionRange nextRange = null;
-        DispositionRange prevRange = null;
-        boolean updated = false;
-
-        int index = 0;
-        while (range != null) {
-            if (transferId < range.getMin())
-                return false;
 
-            if (iter.hasNext()) {
-                nextRange = iter.next();
-            }
-
-            if (transferId >= range.getMin() && transferId <= range.getMax()) {
-                if (range.isCompatible(settled, newOutcome)) {
-                    return true;
-                }
-                updated = true;
-                break;
-            }
-            prevRange = range;
-            range = nextRange;
-            nextRange = null;
-            index++;
-        }
+        List<ChannelBuffer> encodedFrames = new ArrayList<>();
+        CAMQPPerformativePool performativePool = session.getPerformativePool();
+        CAMQPControlDisposition disposition = performativePool.acquireDisposition();
+        encodeDispositions(senderDispositionRanges, true, disposition, channel.getChannelId(), encodedFrames);
+        encodeDispositions(receiverDispositionRanges, false, disposition, channel.getChannelId(), encodedFrames);
+        performativePool.releaseDisposition(disposition);
 
-        if (!updated)
-            return false;
-
-        if (range.getMin() == range.getMax() && transferId == range.getMax()) {
-            range.setSettled(settled);
-            range.setOutcome(newOutcome);
-
-            if (prevRange != null && nextRange != null) {
-                if (prevRange.getMax() + 1 == nextRange.getMin() - 1) {
-                    if (prevRange.isCompatible(settled, newOutcome) && nextRange.isCompatible(settled, newOutcome)) {
-                        prevRange.setMax(nextRange.getMax());
-                        dispositionRanges.remove(range);
-                        dispositionRanges.remove(nextRange);
-                        return true;
-                    }
-                }
-            }
-            if (prevRange != null && (prevRange.getMax() + 1 == transferId)) {
-                if (prevRange.isCompatible(settled, newOutcome)) {
-                    prevRange.setMax(transferId);
-                    dispositionRanges.remove(range);
-                    return true;
-                }
-            }
-            if (nextRange != null && (nextRange.getMin() - 1 == transferId)) {
-                if (nextRange.isCompatible(settled, newOutcome)) {
-                    nextRange.setMin(transferId);
-                    dispositionRanges.remove(range);
-                    return true;
-                }
-            }
-            return true;
+        if (encodedFrames.isEmpty()) {
+            return;
         }
+        ChannelBuffer coalescedFrames = (encodedFrames.size() == 1) ?
+                encodedFrames.get(0) :
+                ChannelBuffers.wrappedBuffer(encodedFrames.toArray(new ChannelBuffer[encodedFrames.size()]));
+        channel.getAmqpConnection().sendEncodedFrame(coalescedFrames, null);
+    }
 
-        DispositionRange newRange = new DispositionRange(transferId, transferId, settled, newOutcome);
-
-        if (range.getMin() == transferId) {
-            range.setMin(range.getMin() + 1);
-
-            if (prevRange != null && (prevRange.getMax() + 1 == transferId)) {
-                if (prevRange.isCompatible(settled, newOutcome)) {
-                    prevRange.setMax(transferId);
-                    return true;
-                }
-            }
-            dispositionRanges.add(index, newRange);
-            return true;
+    private static void encodeDispositions(List<DispositionRange> dispositionRanges,
+            boolean role,
+            CAMQPControlDisposition disposition,
+            int channelId,
+            List<ChannelBuffer> encodedFrames) {
+        if (dispositionRanges == null) {
+            return;
         }
-        else if (range.getMax() == transferId) {
-            range.setMax(range.getMax() - 1);
-
-            if (nextRange != null && (nextRange.getMin() - 1 == transferId)) {
-                if (nextRange.isCompatible(settled, newOutcome)) {
-                    nextRange.setMin(transferId);
-                    return true;
-                }
+        for (DispositionRange range : dispositionRanges) {
+            disposition.reset();
+            disposition.setBatchable(false);
+            disposition.setFirst(range.getMin());
+            disposition.setLast(range.getMax());
+            disposition.setRole(role);
+            disposition.setSettled(range.isSettled());
+            if (range.getOutcome() != null) {
+                CAMQPDefinitionDeliveryState deliveryState = new CAMQPDefinitionDeliveryState();
+                deliveryState.setOutcome(range.getOutcome());
+                disposition.setState(deliveryState);
             }
-
-            if (nextRange != null)
-                dispositionRanges.add(index + 1, newRange);
-            else
-                dispositionRanges.add(newRange);
-            return true;
-        }
-        else if (transferId > range.getMin() && transferId < range.getMax()) {
-            DispositionRange splitRange = new DispositionRange(range.getMin(), transferId - 1, range.isSettled(), range.getOutcome());
-            range.setMin(transferId + 1);
-
-            dispositionRanges.add(index, newRange);
-            dispositionRanges.add(index, splitRange);
-            return true;
+            CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+            encoder.reserveFrameHeader();
+            CAMQPControlDisposition.encode(encoder, disposition);
+            encodedFrames.add(encoder.getEncodedFrame(channelId));
         }
-
-        return true;
     }
 }
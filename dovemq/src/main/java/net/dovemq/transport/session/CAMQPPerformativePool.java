@@ -0,0 +1,108 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import net.dovemq.transport.protocol.data.CAMQPControlDisposition;
+import net.dovemq.transport.protocol.data.CAMQPControlFlow;
+import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Per-session pool of the hot performatives (transfer, flow and
+ * disposition), so that they are not allocated for every frame received
+ * or every session-originated frame sent.
+ *
+ * The pool caches a couple of instances of each performative: the
+ * incoming frames of a session are processed one at a time by the
+ * connection's I/O thread, so the same instances are reused in the steady
+ * state. If all of them are in use, a new one is allocated.
+ *
+ * A performative must be released only when nobody references it any
+ * longer, i.e, after it has been encoded, or after the Link layer has
+ * processed it.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+final class CAMQPPerformativePool {
+    /*
+     * An incoming frame and a session-originated response to it (for
+     * instance, an echoed flow frame) may be in use at the same time.
+     */
+    private static final int POOL_SIZE = 2;
+
+    private final AtomicReferenceArray<CAMQPControlTransfer> transfers = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private final AtomicReferenceArray<CAMQPControlFlow> flows = new AtomicReferenceArray<>(POOL_SIZE);
+
+    private final AtomicReferenceArray<CAMQPControlDisposition> dispositions = new AtomicReferenceArray<>(POOL_SIZE);
+
+    CAMQPControlTransfer acquireTransfer() {
+        CAMQPControlTransfer transfer = acquire(transfers);
+        return (transfer != null) ? transfer : new CAMQPControlTransfer();
+    }
+
+    void releaseTransfer(CAMQPControlTransfer transfer) {
+        transfer.reset();
+        release(transfers, transfer);
+    }
+
+    CAMQPControlFlow acquireFlow() {
+        CAMQPControlFlow flow = acquire(flows);
+        return (flow != null) ? flow : new CAMQPControlFlow();
+    }
+
+    void releaseFlow(CAMQPControlFlow flow) {
+        flow.reset();
+        release(flows, flow);
+    }
+
+    CAMQPControlDisposition acquireDisposition() {
+        CAMQPControlDisposition disposition = acquire(dispositions);
+        return (disposition != null) ? disposition : new CAMQPControlDisposition();
+    }
+
+    void releaseDisposition(CAMQPControlDisposition disposition) {
+        disposition.reset();
+        release(dispositions, disposition);
+    }
+
+    private static <T> T acquire(AtomicReferenceArray<T> pool) {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            T pooled = pool.getAndSet(i, null);
+            if (pooled != null) {
+                return pooled;
+            }
+        }
+        return null;
+    }
+
+    /*
+     * If the pool is full, the released instance is left to the garbage
+     * collector.
+     */
+    private static <T> void release(AtomicReferenceArray<T> pool, T released) {
+        for (int i = 0; i < POOL_SIZE; i++) {
+            if (pool.compareAndSet(i, null, released)) {
+                return;
+            }
+        }
+    }
+}
@@ -17,14 +17,15 @@
 
 package net.dovemq.transport.session;
 
-import java.util.Collection;
 import java.util.Date;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import net.dovemq.transport.connection.CAMQPConnectionInterface;
@@ -37,6 +38,7 @@ import net.dovemq.transport.link.CAMQPLinkMessageHandler;
 import net.dovemq.transport.link.CAMQPLinkSenderInterface;
 import net.dovemq.transport.link.LinkRole;
 import net.dovemq.transport.protocol.CAMQPEncoder;
+import net.dovemq.transport.protocol.CAMQPProtocolConstants;
 import net.dovemq.transport.protocol.CAMQPSyncDecoder;
 import net.dovemq.transport.protocol.data.CAMQPControlAttach;
 import net.dovemq.transport.protocol.data.CAMQPControlBegin;
@@ -46,6 +48,7 @@ import net.dovemq.transport.protocol.data.CAMQPControlEnd;
 import net.dovemq.transport.protocol.data.CAMQPControlFlow;
 import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionDeliveryState;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionError;
 import net.jcip.annotations.GuardedBy;
 import net.jcip.annotations.Immutable;
@@ -102,6 +105,12 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
 
     private static final Logger log = Logger.getLogger(CAMQPSession.class);
 
+    /*
+     * Descriptor code of an incoming frame that does not carry an AMQP
+     * performative, and is ignored.
+     */
+    private static final int NO_DESCRIPTOR = -2;
+
     /*
      * The following attributes are used to schedule a recurring send of
      * flow-frame until the session is not under flow-control state any longer.
@@ -109,14 +118,28 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     @GuardedBy("this")
     private Date lastFlowSent = new Date();
 
-    @GuardedBy("this")
-    private boolean isFlowSendScheduled = false;
+    /*
+     * Set and cleared under the session lock, so that it is not set between
+     * the flow-control check of requestOrProvideCreditIfUnderFlowControl()
+     * and its clearing. Volatile, so the sender can skip the lock if it is
+     * already set.
+     */
+    private volatile boolean isFlowSendScheduled = false;
 
     /*
      * Map of LinkReceivers keyed by remote Link Handle, i.e, Link Handle of the remote endpoint.
      */
     private final Map<Long, CAMQPLinkMessageHandler> linkReceivers = new ConcurrentHashMap<>();
 
+    /*
+     * Unsettled deliveries sent and received on this session, indexed to
+     * the link end-points that own them, so that a disposition range is
+     * dispatched directly to the owning link end-points.
+     */
+    private final CAMQPDeliveryIndex sentDeliveries = new CAMQPDeliveryIndex();
+
+    private final CAMQPDeliveryIndex receivedDeliveries = new CAMQPDeliveryIndex();
+
     private final CAMQPSessionStateActor stateActor;
 
     @GuardedBy("stateActor")
@@ -141,26 +164,35 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
 
     private volatile CAMQPDispositionSender dispositionSender = null;
 
+    private final CAMQPPerformativePool performativePool = new CAMQPPerformativePool();
+
     CAMQPConnectionInterface getConnection() {
         return connection;
     }
 
+    CAMQPPerformativePool getPerformativePool() {
+        return performativePool;
+    }
+
     /*
      * I/O state
      */
     private final AtomicLong deliveryId = new AtomicLong(0L);
 
-    @GuardedBy("this")
-    private boolean sendInProgress = false;
+    /*
+     * Outbound transfer frames are enqueued by the link senders, and sent by
+     * a single sender: the thread that sets sendScheduled. It is the only
+     * one that dequeues the transfer frames, and advances
+     * nextOutgoingTransferId.
+     */
+    private final AtomicBoolean sendScheduled = new AtomicBoolean(false);
 
-    @GuardedBy("this")
     private final ConcurrentLinkedQueue<Transfer> unsentTransfers = new ConcurrentLinkedQueue<>();
 
     /*
      * Flow control state
      */
-    @GuardedBy("this")
-    private long nextOutgoingTransferId = 0;
+    private volatile long nextOutgoingTransferId = 0;
 
     @GuardedBy("this")
     private long outgoingWindow;
@@ -168,6 +200,24 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     @GuardedBy("this")
     private long incomingWindow;
 
+    /*
+     * Sizes the incoming window to the measured bandwidth-delay product. A
+     * shrunk window is not taken away from the peer: the acked transfers
+     * replenish the withheldIncomingWindow first, instead of the
+     * incomingWindow.
+     */
+    @GuardedBy("this")
+    private final CAMQPSessionWindowController windowController = new CAMQPSessionWindowController(CAMQPSessionManager.getMaxIncomingWindowSize());
+
+    @GuardedBy("this")
+    private long withheldIncomingWindow = 0;
+
+    /*
+     * next-incoming-id + incoming-window, as last advertised to the peer
+     */
+    @GuardedBy("this")
+    private long advertisedIncomingLimit = 0;
+
     /*
      * computed after begin, transfer and flow frames received from peer
      */
@@ -177,8 +227,13 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     @GuardedBy("this")
     private long nextIncomingTransferId = -1;
 
-    @GuardedBy("this")
-    private long remoteIncomingWindow = -1;
+    /*
+     * Transfer-id up to which (exclusive) the peer is willing to accept
+     * transfer frames, i.e, the peer's next-incoming-id + incoming-window.
+     * The remoteIncomingWindow is computed from it, without locking, by the
+     * sender.
+     */
+    private volatile long remoteIncomingLimit = 0;
 
     private final String sessionId;
 
@@ -195,7 +250,7 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         this.connection = connection;
         this.stateActor = stateActor;
         outgoingWindow = CAMQPSessionManager.getMaxOutgoingWindowSize();
-        incomingWindow = CAMQPSessionManager.getMaxIncomingWindowSize();
+        incomingWindow = windowController.getWindowSize();
         sessionId = UUID.randomUUID().toString();
     }
 
@@ -207,7 +262,7 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         this.connection = connection;
         stateActor = new CAMQPSessionStateActor(this);
         outgoingWindow = CAMQPSessionManager.getMaxOutgoingWindowSize();
-        incomingWindow = CAMQPSessionManager.getMaxIncomingWindowSize();
+        incomingWindow = windowController.getWindowSize();
         sessionId = UUID.randomUUID().toString();
     }
 
@@ -287,7 +342,12 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     void retrieveAndSetRemoteFlowControlAttributes(long remoteOutgoingWindow, long nextIncomingTransferId, long remoteIncomingWindow) {
         this.remoteOutgoingWindow = remoteOutgoingWindow;
         this.nextIncomingTransferId = nextIncomingTransferId;
-        this.remoteIncomingWindow = remoteIncomingWindow;
+        remoteIncomingLimit = nextOutgoingTransferId + remoteIncomingWindow;
+        advertisedIncomingLimit = nextIncomingTransferId + incomingWindow;
+    }
+
+    private long getRemoteIncomingWindow() {
+        return remoteIncomingLimit - nextOutgoingTransferId;
     }
 
     /*
@@ -367,6 +427,8 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
             if (linkReceiver != null)
                 linkReceiver.sessionClosed();
         }
+        sentDeliveries.clear();
+        receivedDeliveries.clear();
     }
 
     @Override
@@ -404,24 +466,39 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         return deliveryId.getAndIncrement();
     }
 
-    @GuardedBy("this")
+    /*
+     * Transfer frames are sent only if the remoteIncomingWindow is open, and
+     * the connection is writable, i.e, not under outbound backpressure. No
+     * transfer can be sent once the session is unmapped from its connection.
+     */
     private boolean canSendTransfer() {
-        return (!unsentTransfers.isEmpty()) && (remoteIncomingWindow > 0);
+        CAMQPConnectionInterface currentConnection = connection;
+        return (currentConnection != null) && (!unsentTransfers.isEmpty()) && (getRemoteIncomingWindow() > 0) && currentConnection.isWritable();
     }
 
     /**
-     * Sends the transfer frame to the peer AMQP session. If the sending
-     * transfer frames is in progress by another thread the calling thread
-     * enqueues the transfer frame (to be picked up by the sender thread) and
-     * returns. If the remote session's incoming window is closed, the calling
-     * thread just enqueues the transfer frame and returns. Otherwise, the
-     * calling thread sends the transfer frame and decrements the remote
-     * session's incoming window size. If the remoteIncomingWindow falls below a
-     * configurable threshold, the calling thread sends a flow-frame (with
-     * echo), notifying the peer to send a flow response with an updated
-     * remoteIncomingWindow, if possible. Finally, if there are outstanding
-     * transfer frames waiting to be sent, the called thread enqueues a runnable
-     * to send the transfer frames.
+     * Called by the connection when it becomes writable again. Resumes
+     * sending the transfer frames that have been parked meanwhile.
+     */
+    @Override
+    public void channelWritable() {
+        scheduleSendTask();
+    }
+
+    /**
+     * Sends the transfer frame to the peer AMQP session. The calling thread
+     * enqueues the transfer frame, and if no other thread is sending the
+     * transfer frames of the session, becomes the sender: it sends one
+     * transfer frame, and if there are more transfer frames waiting to be
+     * sent, hands them over to a send task. If the remote session's incoming
+     * window is closed, or the connection is not writable, the transfer
+     * frames stay enqueued until the remoteIncomingWindow opens up, or the
+     * connection becomes writable.
+     *
+     * The per-transfer path does not take the session lock: the transfer
+     * frames are enqueued in a lock-free queue, and the remoteIncomingWindow
+     * is accounted for by the sender only. An unsettled transfer frame is
+     * recorded in sentDeliveries, under the (short) lock of the index.
      */
     @Override
     public void sendTransfer(CAMQPControlTransfer transferFrame, CAMQPMessagePayload payload, CAMQPLinkSenderInterface linkSender) {
@@ -430,54 +507,18 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
             throw new CAMQPSessionException("Cannot send transfer frame as the underlying channel is detached: SessionID: " + sessionId);
         }
 
-        /*
-         * TODO: if unsentTransfers.add() fails, throw an exception indicating
-         * to the Link layer that the outgoing-window is full.
-         */
-        synchronized (this) {
-            if (!unsentTransfers.isEmpty()) {
-                assert (sendInProgress || (remoteIncomingWindow <= 0));
-                unsentTransfers.add(new Transfer(transferFrame, payload, linkSender));
-                return;
-            }
-
-            if (sendInProgress || (remoteIncomingWindow <= 0)) {
-                unsentTransfers.add(new Transfer(transferFrame, payload, linkSender));
-                return;
-            }
-
-            sendInProgress = true;
-            nextOutgoingTransferId++;
-            /*
-             * Decrement remoteIncomingWindow and if has fallen below
-             * MIN_INCOMING_WINDOW_SIZE_THRESHOLD, send a flow frame asking the
-             * peer to send an updated remoteIncomingWindow.
-             */
-            remoteIncomingWindow--;
-            if (remoteIncomingWindow < CAMQPSessionConstants.MIN_INCOMING_WINDOW_SIZE_THRESHOLD) {
-                isFlowSendScheduled = true;
-            }
+        if (!(transferFrame.isSetSettled() && transferFrame.getSettled()) && (linkSender instanceof CAMQPLinkMessageHandler)) {
+            sentDeliveries.add(transferFrame.getDeliveryId(), (CAMQPLinkMessageHandler) linkSender);
         }
 
-        sendTransferFrame(transferFrame, payload, channel);
         /*
-         * Notify the link layer that the transfer frame has been sent
+         * TODO: if unsentTransfers.add() fails, throw an exception indicating
+         * to the Link layer that the outgoing-window is full.
          */
-        linkSender.messageSent(transferFrame);
-
-        synchronized (this) {
-            /*
-             * There are more transfer frames in the outgoing window waiting to
-             * be sent. Schedule a runnable to send the transfer frames only if
-             * we are not under flow control
-             */
-            if (!canSendTransfer()) {
-                sendInProgress = false;
-                return;
-            }
+        unsentTransfers.add(new Transfer(transferFrame, payload, linkSender));
+        if (sendScheduled.compareAndSet(false, true)) {
+            sendTransfers(channel, 1);
         }
-
-        CAMQPSessionManager.getExecutor().execute(this);
     }
 
     /**
@@ -531,15 +572,17 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
             }
 
             if ((now.getTime() - lastFlowSent.getTime()) >= CAMQPSessionConstants.FLOW_SENDER_INTERVAL) {
-                flow = new CAMQPControlFlow();
+                flow = performativePool.acquireFlow();
                 populateFlowFrame(flow);
                 flow.setEcho(true);
+                windowController.requestEcho(System.nanoTime());
                 lastFlowSent = now;
             }
         }
 
         if (flow != null) {
             sendFlowFrame(flow, channel);
+            performativePool.releaseFlow(flow);
         }
     }
 
@@ -550,10 +593,9 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
      *
      * @return
      */
-    @GuardedBy("this")
     private boolean isSenderUnderFlowControl() {
         return (!unsentTransfers.isEmpty() &&
-                remoteIncomingWindow < CAMQPSessionConstants.MIN_INCOMING_WINDOW_SIZE_THRESHOLD);
+                getRemoteIncomingWindow() < CAMQPSessionConstants.MIN_INCOMING_WINDOW_SIZE_THRESHOLD);
     }
 
     @GuardedBy("this")
@@ -563,38 +605,61 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     }
 
     /**
-     * If the caller of sendTransfer() finds outstanding transfer frames to be
-     * sent, it submits a runnable that acts as a transfer frame sender, and
-     * sends the outstanding transfer frames.
+     * Send task of the session, run by the session's send executor, when the
+     * sending of the outstanding transfer frames is handed over by
+     * sendTransfer(), or when the remoteIncomingWindow opens up, or the
+     * connection becomes writable. Sends up to MAX_TRANSFERS_PER_SEND_TASK
+     * transfer frames before yielding the executor thread.
      */
     @Override
     public void run() {
-        while (true) {
-            Transfer transfer = null;
-            CAMQPChannel channel = getChannel();
+        CAMQPChannel channel = getChannel();
+        if (channel == null) {
+            sendScheduled.set(false);
+            return;
+        }
+        sendTransfers(channel, CAMQPSessionConstants.MAX_TRANSFERS_PER_SEND_TASK);
+    }
 
-            synchronized (this) {
-                if ((channel != null) && canSendTransfer()) {
-                    /*
-                     * Still outstanding unsent transfer frames and
-                     * remoteIncomingWindow is open
-                     */
-                    transfer = unsentTransfers.poll();
-                    nextOutgoingTransferId++;
-                    /*
-                     * Decrement remoteIncomingWindow and if has fallen below
-                     * MIN_INCOMING_WINDOW_SIZE_THRESHOLD, send a flow frame
-                     * asking the peer to send an updated remoteIncomingWindow.
-                     */
-                    remoteIncomingWindow--;
-                    if (isSenderUnderFlowControl()) {
-                        isFlowSendScheduled = true;
-                    }
+    /**
+     * Called only by the thread that has set sendScheduled. Sends the
+     * outstanding transfer frames while the remoteIncomingWindow is open, and
+     * the connection is writable. After sending maxTransfers transfer frames,
+     * hands the sending over to a send task. Otherwise clears sendScheduled,
+     * and then checks again for transfer frames that may have been enqueued,
+     * or for the remoteIncomingWindow that may have opened up meanwhile.
+     *
+     * @param channel
+     * @param maxTransfers
+     */
+    private void sendTransfers(CAMQPChannel channel, int maxTransfers) {
+        int sentTransfers = 0;
+        while (true) {
+            if (!canSendTransfer()) {
+                sendScheduled.set(false);
+                if (canSendTransfer() && sendScheduled.compareAndSet(false, true)) {
+                    continue;
                 }
-                else {
-                    sendInProgress = false;
-                    return;
+                if (isSenderUnderFlowControl()) {
+                    scheduleFlowSend();
                 }
+                return;
+            }
+
+            if (sentTransfers == maxTransfers) {
+                executeSendTask();
+                return;
+            }
+
+            Transfer transfer = unsentTransfers.poll();
+            nextOutgoingTransferId++;
+            /*
+             * If the remoteIncomingWindow has fallen below
+             * MIN_INCOMING_WINDOW_SIZE_THRESHOLD, send a flow frame asking
+             * the peer to send an updated remoteIncomingWindow.
+             */
+            if (getRemoteIncomingWindow() < CAMQPSessionConstants.MIN_INCOMING_WINDOW_SIZE_THRESHOLD) {
+                scheduleFlowSend();
             }
 
             /*
@@ -602,6 +667,51 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
              */
             sendTransferFrame(transfer.transferFrame, transfer.payload, channel);
             transfer.linkSender.messageSent(transfer.transferFrame);
+            sentTransfers++;
+        }
+    }
+
+    /**
+     * Schedules sending of a flow-frame, from the sender, which does not
+     * hold the session lock.
+     */
+    private void scheduleFlowSend() {
+        if (!isFlowSendScheduled) {
+            synchronized (this) {
+                isFlowSendScheduled = true;
+            }
+        }
+    }
+
+    /**
+     * Starts a send task, if there are outstanding transfer frames that can
+     * be sent, and no thread is sending them.
+     */
+    private void scheduleSendTask() {
+        if (canSendTransfer() && sendScheduled.compareAndSet(false, true)) {
+            executeSendTask();
+        }
+    }
+
+    /**
+     * Called only by the thread that has set sendScheduled. Clears
+     * sendScheduled if the send task could not be handed over, e.g, because
+     * the send executor has been shut down, so that a later sendTransfer()
+     * can send the outstanding transfer frames.
+     */
+    private void executeSendTask() {
+        boolean handedOver = false;
+        try {
+            getSendExecutor().execute(this);
+            handedOver = true;
+        }
+        catch (RejectedExecutionException ex) {
+            log.warn("Send task rejected by the send executor: SessionID: " + sessionId);
+        }
+        finally {
+            if (!handedOver) {
+                sendScheduled.set(false);
+            }
         }
     }
 
@@ -611,23 +721,63 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         flow.setIncomingWindow(incomingWindow);
         flow.setNextOutgoingId(nextOutgoingTransferId);
         flow.setNextIncomingId(nextIncomingTransferId);
+        advertisedIncomingLimit = nextIncomingTransferId + incomingWindow;
+    }
+
+    /**
+     * Applies the new size of the incoming window. A grown window first
+     * cancels the withheldIncomingWindow.
+     *
+     * @param newWindowSize
+     * @param oldWindowSize
+     */
+    @GuardedBy("this")
+    private void incomingWindowResized(long newWindowSize, long oldWindowSize) {
+        long delta = newWindowSize - oldWindowSize;
+        if (delta > 0) {
+            long cancelled = Math.min(withheldIncomingWindow, delta);
+            withheldIncomingWindow -= cancelled;
+            incomingWindow += delta - cancelled;
+        }
+        else if (delta < 0) {
+            withheldIncomingWindow -= delta;
+        }
+    }
+
+    /**
+     * The incoming window is advertised to the peer in batches: once the
+     * acked transfers have opened up half of the window, since it was last
+     * advertised.
+     *
+     * @return
+     */
+    @GuardedBy("this")
+    private boolean isIncomingWindowAdvertisementDue() {
+        long unadvertisedWindow = (nextIncomingTransferId + incomingWindow) - advertisedIncomingLimit;
+        return (unadvertisedWindow > 0) && (unadvertisedWindow >= windowController.getWindowSize() / 2);
+    }
+
+    synchronized long getIncomingWindowSize() {
+        return windowController.getWindowSize();
     }
 
     private static void sendFlowFrame(CAMQPControlFlow flow, CAMQPChannel channel) {
-        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPEncoder encoder = CAMQPEncoder.createRecycledCAMQPEncoder();
+        encoder.reserveFrameHeader();
         CAMQPControlFlow.encode(encoder, flow);
-        ChannelBuffer encodedTransfer = encoder.getEncodedBuffer();
+        ChannelBuffer encodedFrame = encoder.getEncodedFrame(channel.getChannelId());
         channel.getAmqpConnection()
-                .sendFrame(encodedTransfer, channel.getChannelId());
+                .sendEncodedFrame(encodedFrame, encoder.takeBufferLease());
     }
 
     private static void sendTransferFrame(CAMQPControlTransfer transfer, CAMQPMessagePayload payload, CAMQPChannel channel) {
-        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPEncoder encoder = CAMQPEncoder.createRecycledCAMQPEncoder();
+        encoder.reserveFrameHeader();
         CAMQPControlTransfer.encode(encoder, transfer);
         encoder.writePayload(payload);
-        ChannelBuffer encodedTransfer = encoder.getEncodedBuffer();
+        ChannelBuffer encodedFrame = encoder.getEncodedFrame(channel.getChannelId());
         channel.getAmqpConnection()
-                .sendFrame(encodedTransfer, channel.getChannelId());
+                .sendEncodedFrame(encodedFrame, encoder.takeBufferLease());
     }
 
     CAMQPChannel getChannel() {
@@ -651,47 +801,83 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
      */
     @Override
     public void frameReceived(CAMQPFrame frame) {
-        if (frame.getHeader().getFrameType() == CAMQPFrameConstants.AMQP_FRAME_TYPE) {
-            CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
-            decoder.take(frame.getBody());
-            String controlName = decoder.readSymbol();
-            if (isSessionControlFrame(controlName)) {
-                processSessionControlFrame(controlName, frame);
-            }
-            else if (isLinkControlFrame(controlName)) {
-                processLinkControlFrame(controlName, frame);
-            }
-            else if (isFlowFrame(controlName)) {
-                processFlowFrame(frame);
-            }
-            else if (isTransferFrame(controlName)) {
-                processTransferFrame(controlName, frame);
-            }
-            else {
-                log.error("Unknown control frame " + controlName
-                        + " received at CAMQPSession.frameReceived().  ConnectionKey: "
-                        + connection.getKey().toString());
-            }
+        int descriptorCode = readDescriptorCode(frame);
+        if (descriptorCode == CAMQPDescriptors.TRANSFER) {
+            transfersReceived(1);
+            processTransferFrame(frame);
+        }
+        else {
+            dispatchFrame(descriptorCode, frame);
         }
     }
 
-    private static boolean isSessionControlFrame(String controlName) {
-        return ((controlName.equalsIgnoreCase(CAMQPControlBegin.descriptor)) ||
-                (controlName.equalsIgnoreCase(CAMQPControlEnd.descriptor)));
-    }
+    /**
+     * Decodes and dispatches a batch of incoming frames. The session
+     * flow-control accounting of consecutive transfer frames is done once
+     * for all of them.
+     */
+    @Override
+    public void framesReceived(List<CAMQPFrame> frames) {
+        int frameCount = frames.size();
+        int[] descriptorCodes = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            descriptorCodes[i] = readDescriptorCode(frames.get(i));
+        }
 
-    private static boolean isLinkControlFrame(String controlName) {
-        return ((controlName.equalsIgnoreCase(CAMQPControlAttach.descriptor)) ||
-                (controlName.equalsIgnoreCase(CAMQPControlDetach.descriptor)) ||
-                (controlName.equalsIgnoreCase(CAMQPControlDisposition.descriptor)));
+        int index = 0;
+        while (index < frameCount) {
+            if (descriptorCodes[index] != CAMQPDescriptors.TRANSFER) {
+                dispatchFrame(descriptorCodes[index], frames.get(index));
+                index++;
+                continue;
+            }
+
+            int end = index + 1;
+            while ((end < frameCount) && (descriptorCodes[end] == CAMQPDescriptors.TRANSFER)) {
+                end++;
+            }
+            transfersReceived(end - index);
+            for (int i = index; i < end; i++) {
+                processTransferFrame(frames.get(i));
+            }
+            index = end;
+        }
     }
 
-    private static boolean isFlowFrame(String controlName) {
-        return (controlName.equalsIgnoreCase(CAMQPControlFlow.descriptor));
+    /*
+     * Reads the descriptor of the performative, leaving the frame body
+     * positioned at the performative fields.
+     */
+    private static int readDescriptorCode(CAMQPFrame frame) {
+        if ((frame.getFrameType() != CAMQPFrameConstants.AMQP_FRAME_TYPE) || (frame.getBody() == null)) {
+            return NO_DESCRIPTOR;
+        }
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(frame.getBody());
+        return decoder.readDescriptorCode();
     }
 
-    private static boolean isTransferFrame(String controlName) {
-        return (controlName.equalsIgnoreCase(CAMQPControlTransfer.descriptor));
+    private void dispatchFrame(int descriptorCode, CAMQPFrame frame) {
+        switch (descriptorCode) {
+        case NO_DESCRIPTOR:
+            break;
+        case CAMQPDescriptors.FLOW:
+            processFlowFrame(frame);
+            break;
+        case CAMQPDescriptors.ATTACH:
+        case CAMQPDescriptors.DETACH:
+        case CAMQPDescriptors.DISPOSITION:
+            processLinkControlFrame(descriptorCode, frame);
+            break;
+        case CAMQPDescriptors.BEGIN:
+        case CAMQPDescriptors.END:
+            processSessionControlFrame(descriptorCode, frame);
+            break;
+        default:
+            log.error("Unknown control frame " + CAMQPDescriptors.getSymbol(descriptorCode)
+                    + " received at CAMQPSession.frameReceived().  ConnectionKey: "
+                    + connection.getKey().toString());
+        }
     }
 
     /**
@@ -709,9 +895,8 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         }
         CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
         decoder.take(body);
-        CAMQPControlFlow flowFrame = CAMQPControlFlow.decode(decoder);
+        CAMQPControlFlow flowFrame = CAMQPControlFlow.decode(decoder, performativePool.acquireFlow());
 
-        boolean unsentTransferFramesPending = false;
         CAMQPControlFlow echoedFlowFrame = null;
 
         CAMQPChannel channel = (needFlowFrameEcho(flowFrame)) ? getChannel() : null;
@@ -724,16 +909,18 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
              */
             remoteOutgoingWindow = flowFrame.getOutgoingWindow();
 
-            remoteIncomingWindow = flowFrame.getIncomingWindow() - (nextOutgoingTransferId - flowFrame.getNextIncomingId());
+            remoteIncomingLimit = flowFrame.getNextIncomingId() + flowFrame.getIncomingWindow();
 
-            if (!sendInProgress && canSendTransfer()) {
-                /*
-                 * If the remote incoming window opens up and we have
-                 * outstanding transfer frames waiting to be sent, then start
-                 * sending.
-                 */
-                sendInProgress = true;
-                unsentTransferFramesPending = true;
+            /*
+             * A session flow frame without the echo flag is the echo of ours:
+             * measure the round-trip time. It may also be an advertisement of
+             * the peer's incoming window, sent while the peer's own echo
+             * request is outstanding, which shortens the sample; the
+             * smoothing of the round-trip time absorbs it.
+             */
+            if (!flowFrame.isSetHandle() && !(flowFrame.isSetEcho() && flowFrame.getEcho())) {
+                long oldWindowSize = windowController.getWindowSize();
+                incomingWindowResized(windowController.echoReceived(System.nanoTime()), oldWindowSize);
             }
 
             /*
@@ -742,7 +929,7 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
              */
             if (channel != null) {
                 lastFlowSent = new Date();
-                echoedFlowFrame = new CAMQPControlFlow();
+                echoedFlowFrame = performativePool.acquireFlow();
                 populateFlowFrame(echoedFlowFrame);
                 echoedFlowFrame.setEcho(false); // we do not want echo flow
                                                 // frame ping-pong
@@ -751,6 +938,7 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
 
         if (echoedFlowFrame != null) {
             sendFlowFrame(echoedFlowFrame, channel);
+            performativePool.releaseFlow(echoedFlowFrame);
         }
 
         /*
@@ -764,10 +952,13 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
                 log.warn("Unable to process link control frame received for Link with remote handle: " + flowFrame.getHandle());
             }
         }
+        performativePool.releaseFlow(flowFrame);
 
-        if (unsentTransferFramesPending) {
-            CAMQPSessionManager.getExecutor().execute(this);
-        }
+        /*
+         * If the remote incoming window opens up and we have outstanding
+         * transfer frames waiting to be sent, then start sending.
+         */
+        scheduleSendTask();
     }
 
     /**
@@ -783,22 +974,13 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     }
 
     /**
-     * Processes an incoming transfer frame (AMQP session receiver)
+     * Updates the session flow-control attributes for the incoming transfer
+     * frames (AMQP session receiver), before they are processed.
      *
-     * @param controlName
-     * @param frame
+     * @param transferCount
      */
-    private void processTransferFrame(String controlName, CAMQPFrame frame) {
-        ChannelBuffer body = frame.getBody();
-        if (body == null) {
-            return;
-        }
-        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
-        decoder.take(body);
-        CAMQPControlTransfer transferFrame = CAMQPControlTransfer.decode(decoder);
-        CAMQPMessagePayload payload = decoder.getPayload();
-
-        synchronized (this) {
+    private synchronized void transfersReceived(int transferCount) {
+        for (int i = 0; i < transferCount; i++) {
             if (incomingWindow <= 0) {
                 /*
                  * TODO Peer is not honoring the session flow control. Reject
@@ -811,25 +993,46 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
                 remoteOutgoingWindow--;
                 incomingWindow--;
             }
+        }
 
-            /*
-             * Schedule sending of a flow-frame, if remote sender is under
-             * flow-control.
-             */
-            if (isRemoteSenderUnderFlowControl()) {
-                isFlowSendScheduled = true;
-            }
+        /*
+         * Schedule sending of a flow-frame, if remote sender is under
+         * flow-control.
+         */
+        if (isRemoteSenderUnderFlowControl()) {
+            isFlowSendScheduled = true;
         }
+    }
+
+    /**
+     * Processes an incoming transfer frame (AMQP session receiver), after
+     * transfersReceived() has accounted for it.
+     *
+     * @param frame
+     */
+    private void processTransferFrame(CAMQPFrame frame) {
+        ChannelBuffer body = frame.getBody();
+        if (body == null) {
+            return;
+        }
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(body);
+        CAMQPControlTransfer transferFrame = CAMQPControlTransfer.decode(decoder, performativePool.acquireTransfer());
+        CAMQPMessagePayload payload = decoder.getPayload();
 
         /*
          * dispatch the transfer frame to a LinkReceiver
          */
         CAMQPLinkMessageHandler linkReceiver = linkReceivers.get(transferFrame.getHandle());
         if (linkReceiver != null) {
+            if (!(transferFrame.isSetSettled() && transferFrame.getSettled())) {
+                receivedDeliveries.add(transferFrame.getDeliveryId(), linkReceiver);
+            }
             linkReceiver.transferReceived(transferFrame.getDeliveryId(), transferFrame, payload);
         } else {
             log.warn("Unable to process Link Transfer frame received for non-existant Link with remote link handle: " + transferFrame.getHandle());
         }
+        performativePool.releaseTransfer(transferFrame);
 
         return;
     }
@@ -837,10 +1040,10 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
     /**
      * Processes Link control frames (attach and detach)
      *
-     * @param controlName
+     * @param descriptorCode
      * @param frame
      */
-    private void processLinkControlFrame(String controlName, CAMQPFrame frame) {
+    private void processLinkControlFrame(int descriptorCode, CAMQPFrame frame) {
         ChannelBuffer body = frame.getBody();
         if (body == null) {
             return;
@@ -849,14 +1052,14 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         CAMQPLinkMessageHandler linkReceiver = null;
         CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
         decoder.take(body);
-        if (controlName.equalsIgnoreCase(CAMQPControlAttach.descriptor)) {
+        if (descriptorCode == CAMQPDescriptors.ATTACH) {
             CAMQPControlAttach data = CAMQPControlAttach.decode(decoder);
             linkReceiver = CAMQPSessionManager.getLinkReceiverFactory()
                     .linkAccepted(this, data);
             linkReceivers.put(data.getHandle(), linkReceiver);
             linkReceiver.attachReceived(data);
         }
-        else if (controlName.equalsIgnoreCase(CAMQPControlDetach.descriptor)) {
+        else if (descriptorCode == CAMQPDescriptors.DETACH) {
             CAMQPControlDetach data = CAMQPControlDetach.decode(decoder);
             linkReceiver = linkReceivers.get(data.getHandle());
             if (linkReceiver != null) {
@@ -865,25 +1068,24 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
                 log.warn("Unable to process Link detach control received for non-existant Link with remote link handle: " + data.getHandle());
             }
         }
-        else if (controlName.equalsIgnoreCase(CAMQPControlDisposition.descriptor)) {
+        else if (descriptorCode == CAMQPDescriptors.DISPOSITION) {
             dispatchDispositionFrame(decoder);
         }
     }
 
     /**
      * Processes incoming disposition frame, and dispatch it to Link layer. The
-     * DispositionRange could contain transferIds means for different link
-     * end-points. So, it first builds a collection of the transferIds. Then it
-     * iterates through all the registered link end-points (with the same role)
-     * passing the collection. Each link end-point processes the transferIds
-     * that originated from it, and removes it from the collection and returns
-     * the collection back to this method.
+     * DispositionRange could contain deliveryIds meant for different link
+     * end-points. So, it looks up the ranges of the unsettled deliveries
+     * covered by the disposition, and dispatches each range directly to the
+     * link end-point that owns it. The deliveryIds that are not found in the
+     * index are dispatched to all the registered link end-points with the
+     * same role, each of which processes only the deliveryIds that it owns.
      *
      * @param decoder
      */
     private void dispatchDispositionFrame(CAMQPSyncDecoder decoder) {
-        CAMQPControlDisposition data = CAMQPControlDisposition.decode(decoder);
-        Collection<Long> disposedIds = new LinkedList<>();
+        CAMQPControlDisposition data = CAMQPControlDisposition.decode(decoder, performativePool.acquireDisposition());
 
         /*
          * Read the role, outcome, range and settled flag from the disposition
@@ -899,65 +1101,128 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
         boolean role = data.getRole();
         long firstDisposedId = data.getFirst();
         long lastDisposedId = data.isSetLast() ? data.getLast() : data.getFirst();
+        performativePool.releaseDisposition(data);
 
-        for (long disposedId = firstDisposedId; disposedId <= lastDisposedId; disposedId++) {
-            disposedIds.add(disposedId);
-        }
-
+        /*
+         * A disposition sent by the receiver (role true) is about the
+         * deliveries sent by this session, and vice versa.
+         */
+        CAMQPDeliveryIndex deliveries = role ? sentDeliveries : receivedDeliveries;
         LinkRole expectedRole = role ? LinkRole.LinkSender : LinkRole.LinkReceiver;
-        Set<Long> linkReceiverKeys = linkReceivers.keySet();
-        for (long linkReceiverKey : linkReceiverKeys) {
-            if (disposedIds.isEmpty()) {
-                break;
+
+        long nextDisposedId = firstDisposedId;
+        for (CAMQPDeliveryIndex.DeliveryRange range : deliveries.getRanges(firstDisposedId, lastDisposedId)) {
+            if (range.first > nextDisposedId) {
+                dispatchDisposition(nextDisposedId, range.first - 1, expectedRole, isMessageSettledByPeer, outcome);
             }
-            CAMQPLinkMessageHandler linkReceiver = linkReceivers.get(linkReceiverKey);
-            if ((linkReceiver != null) && linkReceiver.getRole() == expectedRole) {
-                /*
-                 * Pass the dispositionIds collection to the link endpoint, and
-                 * get back the collection containing the unprocessed Ids.
-                 */
-                disposedIds = linkReceiver.dispositionReceived(disposedIds, isMessageSettledByPeer, outcome);
+            range.linkEndpoint.dispositionReceived(range.first, range.last, isMessageSettledByPeer, outcome);
+            nextDisposedId = range.last + 1;
+        }
+        if (nextDisposedId <= lastDisposedId) {
+            dispatchDisposition(nextDisposedId, lastDisposedId, expectedRole, isMessageSettledByPeer, outcome);
+        }
+
+        if (isMessageSettledByPeer) {
+            deliveries.remove(firstDisposedId, lastDisposedId);
+        }
+    }
+
+    /**
+     * Dispatches the disposition of the deliveryIds missing from the
+     * delivery index to all the link end-points with the expected role.
+     */
+    private void dispatchDisposition(long firstDisposedId, long lastDisposedId, LinkRole expectedRole, boolean isMessageSettledByPeer, Object outcome) {
+        for (CAMQPLinkMessageHandler linkReceiver : linkReceivers.values()) {
+            if (linkReceiver.getRole() == expectedRole) {
+                linkReceiver.dispositionReceived(firstDisposedId, lastDisposedId, isMessageSettledByPeer, outcome);
             }
         }
     }
 
-    private void processSessionControlFrame(String controlName, CAMQPFrame frame) {
-        CAMQPFrameHeader frameHeader = frame.getHeader();
+    private void processSessionControlFrame(int descriptorCode, CAMQPFrame frame) {
         ChannelBuffer body = frame.getBody();
 
         if (body == null) {
             log.warn("Unable to process session control frame with empty body");
             return;
         }
-        incomingChannelNumber = frameHeader.getChannelNumber();
+        incomingChannelNumber = frame.getChannelNumber();
         CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
         decoder.take(body);
-        if (controlName.equalsIgnoreCase(CAMQPControlEnd.descriptor)) {
+        if (descriptorCode == CAMQPDescriptors.END) {
             CAMQPControlEnd data = CAMQPControlEnd.decode(decoder);
             stateActor.endReceived(data);
         } else {
-            log.error("Unknown control frame " + controlName
+            log.error("Unknown control frame " + CAMQPDescriptors.getSymbol(descriptorCode)
                     + " received at CAMQPSession.processSessionControlFrame().  ConnectionKey: "
                     + connection.getKey().toString());
         }
     }
 
+    @Override
+    public long getMaxFrameSize() {
+        CAMQPConnectionInterface currentConnection = connection;
+        return (currentConnection != null) ? currentConnection.getMaxFrameSize() : CAMQPProtocolConstants.INT_MAX_VALUE;
+    }
+
+    /**
+     * Returns the executor of the session's connection, or the shared send
+     * executor once the session has been unmapped from its connection.
+     */
+    @Override
+    public ExecutorService getSendExecutor() {
+        CAMQPConnectionInterface currentConnection = connection;
+        return CAMQPSessionManager.getExecutor((currentConnection != null) ? currentConnection.getKey() : null);
+    }
+
     @Override
     public void unregisterLinkReceiver(Long remoteLinkHandle) {
-        linkReceivers.remove(remoteLinkHandle);
+        CAMQPLinkMessageHandler linkReceiver = linkReceivers.remove(remoteLinkHandle);
+        if (linkReceiver != null) {
+            sentDeliveries.remove(linkReceiver);
+            receivedDeliveries.remove(linkReceiver);
+        }
     }
 
     /**
      * Called by the Link layer to acknowledge completion of processing of
-     * transfer frame. Results in incomingWindow incrementing by 1. This
-     * mechanism allows throttling if the link receiver is not able to process
-     * the transfer frames at the same rate as the link sender is sending the
-     * frames.
+     * transfer frame. Results in incomingWindow incrementing by 1, unless the
+     * window has been shrunk. This mechanism allows throttling if the link
+     * receiver is not able to process the transfer frames at the same rate as
+     * the link sender is sending the frames. Once half of the window has
+     * opened up, advertises it to the peer with a flow frame. The flow frame
+     * requests an echo, which is used to measure the round-trip time, unless
+     * an echo request is already outstanding.
      */
     @Override
     public void ackTransfer(long transferId) {
+        CAMQPControlFlow flow = null;
         synchronized (this) {
-            incomingWindow++;
+            if (withheldIncomingWindow > 0) {
+                withheldIncomingWindow--;
+            }
+            else {
+                incomingWindow++;
+            }
+
+            long now = System.nanoTime();
+            long oldWindowSize = windowController.getWindowSize();
+            incomingWindowResized(windowController.transferAcked(now), oldWindowSize);
+
+            if (isIncomingWindowAdvertisementDue()) {
+                flow = performativePool.acquireFlow();
+                populateFlowFrame(flow);
+                flow.setEcho(windowController.requestEcho(now));
+                lastFlowSent = new Date();
+            }
+        }
+
+        if (flow != null) {
+            CAMQPChannel channel = getChannel();
+            if (channel != null) {
+                sendFlowFrame(flow, channel);
+            }
+            performativePool.releaseFlow(flow);
         }
     }
 
@@ -967,6 +1232,10 @@ final class CAMQPSession implements CAMQPIncomingChannelHandler, CAMQPSessionInt
      */
     @Override
     public void sendDisposition(long deliveryId, boolean settleMode, boolean role, Object newState) {
+        if (settleMode) {
+            CAMQPDeliveryIndex deliveries = role ? receivedDeliveries : sentDeliveries;
+            deliveries.remove(deliveryId, deliveryId);
+        }
         dispositionSender.insertDispositionRange(deliveryId, role, settleMode, newState);
     }
 }
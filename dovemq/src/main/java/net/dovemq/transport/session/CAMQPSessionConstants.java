@@ -24,13 +24,48 @@ public final class CAMQPSessionConstants {
 
     protected static final long MIN_INCOMING_WINDOW_SIZE_THRESHOLD = 8;
 
+    /*
+     * Smallest incoming window that the adaptive window sizing shrinks a
+     * session to
+     */
+    static final long MIN_SESSION_WINDOW_SIZE = 256;
+
     protected static final long BATCHED_DISPOSITION_SEND_INTERVAL = 500L; // milliseconds
 
+    /*
+     * Outstanding dispositions, or estimated bytes of their disposition
+     * frames, that trigger a flush before BATCHED_DISPOSITION_SEND_INTERVAL
+     */
+    static final int DISPOSITION_FLUSH_COUNT = 4096;
+
+    static final int DISPOSITION_FLUSH_BYTES = 16 * 1024;
+
+    static final int ESTIMATED_DISPOSITION_FRAME_SIZE = 48;
+
+    /*
+     * Maximum span of delivery ids awaiting disposition, per role
+     */
+    static final int MAX_DISPOSITION_WINDOW_SIZE = 64 * 1024;
+
     static final long FLOW_SENDER_INTERVAL = 1000L; // milliseconds
 
+    /*
+     * Transfer frames that a send task sends before yielding its thread to
+     * the other sessions of the connection
+     */
+    static final int MAX_TRANSFERS_PER_SEND_TASK = 256;
+
     static final int SESSION_SENDER_REQUEST_CREDIT_TIMER_INTERVAL = 1000; // milliseconds
 
     static final int DEFAULT_SESSION_DISPOSITION_SENDER_THREAD_COUNT = 8;
 
+    protected static final int DEFAULT_CONNECTION_POOL_SIZE = 4;
+
+    /*
+     * Outbound bytes that a session counts for, when choosing the least
+     * loaded pooled connection
+     */
+    static final long SESSION_LOAD_BYTES = 64 * 1024;
+
     protected static final long SESSION_HANDSHAKE_TIMEOUT = 10000L; // milliseconds
 }
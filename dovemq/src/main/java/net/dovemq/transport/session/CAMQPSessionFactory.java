@@ -61,23 +61,34 @@ public final class CAMQPSessionFactory {
         return sessionFactory.createSession(targetContainerId, false);
     }
 
+    /**
+     * Creates a new session on the least loaded of the pooled connections
+     * to the AMQP target.
+     *
+     * @param targetContainerId
+     * @return
+     */
     public static CAMQPSessionInterface createCAMQPSession(String targetContainerId) {
-        boolean exclusiveConnection = true;
-        return sessionFactory.createSession(targetContainerId, exclusiveConnection);
+        boolean pooledConnection = true;
+        return sessionFactory.createSession(targetContainerId, pooledConnection);
     }
 
-    private CAMQPSession createSession(String targetContainerId, boolean exclusiveConnection) {
-        CAMQPConnectionInterface connection;
-        if (exclusiveConnection) {
-            connection = CAMQPSessionManager.createCAMQPConnection(targetContainerId);
+    private CAMQPSession createSession(String targetContainerId, boolean pooledConnection) {
+        if (pooledConnection) {
+            CAMQPConnectionInterface connection = CAMQPSessionManager.getPooledCAMQPConnection(targetContainerId);
+            try {
+                return createSession(connection);
+            }
+            finally {
+                CAMQPSessionManager.pooledSessionPlaced(targetContainerId, connection);
+            }
         }
         else {
             /*
              * Used only for functional tests
              */
-            connection = CAMQPSessionManager.getCAMQPConnection(targetContainerId);
+            return createSession(CAMQPSessionManager.getCAMQPConnection(targetContainerId));
         }
-        return createSession(connection);
     }
 
     private CAMQPSession createSession(CAMQPConnectionInterface connection) {
@@ -24,7 +24,7 @@ import net.dovemq.transport.connection.CAMQPConnectionInterface;
 import net.dovemq.transport.frame.CAMQPFrame;
 import net.dovemq.transport.protocol.CAMQPSyncDecoder;
 import net.dovemq.transport.protocol.data.CAMQPControlBegin;
-import net.dovemq.transport.protocol.data.CAMQPControlEnd;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
 
 import org.apache.log4j.Logger;
 
@@ -46,8 +46,8 @@ public final class CAMQPSessionFrameHandler {
             CAMQPConnectionInterface connection) {
         CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
         decoder.take(frame.getBody());
-        String controlName = decoder.readSymbol();
-        if (controlName.equalsIgnoreCase(CAMQPControlBegin.descriptor)) {
+        int descriptorCode = decoder.readDescriptorCode();
+        if (descriptorCode == CAMQPDescriptors.BEGIN) {
             CAMQPControlBegin beginControl = CAMQPControlBegin.decode(decoder);
             int remoteChannelNumber = beginControl.getRemoteChannel();
             if (remoteChannelNumber > 0) {
@@ -71,11 +71,11 @@ public final class CAMQPSessionFrameHandler {
                         beginControl);
                 stateActor.beginReceived(beginContext);
             }
-        } else if (controlName.equalsIgnoreCase(CAMQPControlEnd.descriptor)) {
+        } else if (descriptorCode == CAMQPDescriptors.END) {
             log.error("No CAMQPSessionHandler found for Session DETACH control. Session DETACH control should have been dispatched directly to CAMQPSessionHandler. ConnectionKey: " + connection.getKey()
                     .toString());
         } else {
-            log.error("Unknown control frame " + controlName
+            log.error("Unknown control frame " + CAMQPDescriptors.getSymbol(descriptorCode)
                     + " received at CAMQPSessionFrameHandler.  ConnectionKey: "
                     + connection.getKey().toString());
         }
@@ -17,6 +17,8 @@
 
 package net.dovemq.transport.session;
 
+import java.util.concurrent.ExecutorService;
+
 import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.link.CAMQPLinkSenderInterface;
 import net.dovemq.transport.protocol.data.CAMQPControlFlow;
@@ -57,6 +59,14 @@ public interface CAMQPSessionInterface {
      */
     public long getNextDeliveryId();
 
+    /**
+     * Returns the max-frame-size negotiated on the underlying connection.
+     * Messages larger than that are sent as several transfer frames.
+     *
+     * @return
+     */
+    public long getMaxFrameSize();
+
     /**
      * Called by LinkSender to send a transfer frame to the sender. After the
      * frame is sent, {@link CAMQPLinkSenderInterface#messageSent()} is called
@@ -106,4 +116,12 @@ public interface CAMQPSessionInterface {
      * session has ended.
      */
     public void close();
+
+    /**
+     * Returns the executor on which the link layer schedules its send
+     * tasks for this session.
+     *
+     * @return
+     */
+    public ExecutorService getSendExecutor();
 }
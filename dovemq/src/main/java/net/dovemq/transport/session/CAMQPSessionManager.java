@@ -36,6 +36,8 @@ import net.dovemq.transport.connection.CAMQPConnectionManager;
 import net.dovemq.transport.connection.CAMQPConnectionProperties;
 import net.dovemq.transport.link.CAMQPLinkMessageHandlerFactory;
 import net.dovemq.transport.utils.CAMQPThreadFactory;
+import net.dovemq.transport.utils.CAMQPThreadPool;
+import net.dovemq.transport.utils.CAMQPThreadingConfig;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -51,7 +53,25 @@ public final class CAMQPSessionManager {
         return sessionSendFlowScheduler;
     }
 
-    private final ExecutorService executor = Executors.newCachedThreadPool(new CAMQPThreadFactory("DoveMQTransferFrameSenderThread"));
+    private final CAMQPThreadPool executor = CAMQPThreadPool.createThreadPool("DoveMQTransferFrameSenderThread",
+            CAMQPThreadingConfig.getSessionSenderThreadCount());
+
+    /*
+     * Single-threaded executors, one of which runs the send tasks of a given
+     * connection, if affinity is enabled.
+     */
+    private final CAMQPThreadPool[] affinityExecutors = createAffinityExecutors();
+
+    private static CAMQPThreadPool[] createAffinityExecutors() {
+        if (!CAMQPThreadingConfig.isAffinityEnabled()) {
+            return null;
+        }
+        CAMQPThreadPool[] affinityExecutors = new CAMQPThreadPool[CAMQPThreadingConfig.getSessionSenderThreadCount()];
+        for (int i = 0; i < affinityExecutors.length; i++) {
+            affinityExecutors[i] = CAMQPThreadPool.createThreadPool("DoveMQTransferFrameSenderThread", 1);
+        }
+        return affinityExecutors;
+    }
 
     private static final ScheduledExecutorService sessionSendDispositionScheduler =
             Executors.newScheduledThreadPool(
@@ -79,10 +99,88 @@ public final class CAMQPSessionManager {
         CAMQPSessionManager.maxIncomingWindowSize = maxIncomingWindowSize;
     }
 
+    private static volatile boolean adaptiveWindowEnabled = true;
+
+    /**
+     * Enables or disables the adaptive sizing of the sessions' incoming
+     * window, to the bandwidth-delay product measured on the session. The
+     * window never exceeds the max incoming window size. Enabled by default.
+     *
+     * @param enabled
+     */
+    public static void setAdaptiveWindowEnabled(boolean enabled) {
+        adaptiveWindowEnabled = enabled;
+    }
+
+    public static boolean isAdaptiveWindowEnabled() {
+        return adaptiveWindowEnabled;
+    }
+
+    private static volatile int connectionPoolSize = CAMQPSessionConstants.DEFAULT_CONNECTION_POOL_SIZE;
+
+    /**
+     * Sets the maximum number of pooled AMQP connections to a remote
+     * container, over which the sessions created by
+     * {@link CAMQPSessionFactory#createCAMQPSession(String)} are spread.
+     *
+     * @param poolSize
+     */
+    public static void setConnectionPoolSize(int poolSize) {
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("connectionPoolSize must be positive: " + poolSize);
+        }
+        connectionPoolSize = poolSize;
+    }
+
+    public static int getConnectionPoolSize() {
+        return connectionPoolSize;
+    }
+
+    /**
+     * @param targetContainerId
+     * @return number of pooled AMQP connections to the remote container
+     */
+    public static int getPooledConnectionCount(String targetContainerId) {
+        return _sessionManager.connectionPool.getConnectionCount(targetContainerId);
+    }
+
+    private final CAMQPConnectionPool connectionPool = new CAMQPConnectionPool();
+
     public static ExecutorService getExecutor() {
         return _sessionManager.executor;
     }
 
+    /**
+     * Returns the executor that runs the send tasks of the sessions of the
+     * connection. If affinity is enabled, it is the same single thread for
+     * all the sessions of the connection.
+     *
+     * @param connectionKey
+     * @return
+     */
+    static ExecutorService getExecutor(CAMQPConnectionKey connectionKey) {
+        CAMQPSessionManager sessionManager = _sessionManager;
+        if ((sessionManager.affinityExecutors == null) || (connectionKey == null)) {
+            return sessionManager.executor;
+        }
+        int index = (connectionKey.hashCode() & Integer.MAX_VALUE) % sessionManager.affinityExecutors.length;
+        return sessionManager.affinityExecutors[index];
+    }
+
+    /**
+     * @return number of session send tasks waiting for a thread
+     */
+    public static int getSendQueueDepth() {
+        CAMQPSessionManager sessionManager = _sessionManager;
+        int queueDepth = sessionManager.executor.getQueueDepth();
+        if (sessionManager.affinityExecutors != null) {
+            for (CAMQPThreadPool affinityExecutor : sessionManager.affinityExecutors) {
+                queueDepth += affinityExecutor.getQueueDepth();
+            }
+        }
+        return queueDepth;
+    }
+
     public static void initialize() {
         _sessionManager = new CAMQPSessionManager();
         sessionSendFlowScheduler = new CAMQPSessionSendFlowScheduler();
@@ -99,6 +197,11 @@ public final class CAMQPSessionManager {
         closeSessions();
 
         shutdownThreadPool(executor);
+        if (affinityExecutors != null) {
+            for (CAMQPThreadPool affinityExecutor : affinityExecutors) {
+                shutdownThreadPool(affinityExecutor);
+            }
+        }
         shutdownThreadPool(sessionSendDispositionScheduler);
     }
 
@@ -134,9 +237,28 @@ public final class CAMQPSessionManager {
         return connection;
     }
 
-    protected static CAMQPConnectionInterface createCAMQPConnection(String targetContainerId) {
-        CAMQPConnectionProperties connectionProps = CAMQPConnectionProperties.createConnectionProperties();
-        return CAMQPConnectionFactory.createCAMQPConnection(targetContainerId, connectionProps);
+    /**
+     * Returns the least loaded pooled connection to the target container,
+     * opening a new connection if the pool is not full yet. The caller must
+     * call pooledSessionPlaced() once the session has been placed on the
+     * connection.
+     *
+     * @param targetContainerId
+     * @return
+     */
+    protected static CAMQPConnectionInterface getPooledCAMQPConnection(String targetContainerId) {
+        return _sessionManager.connectionPool.getConnection(targetContainerId, connectionPoolSize);
+    }
+
+    /**
+     * Called after a session has been mapped to the pooled connection, or
+     * has failed to be mapped.
+     *
+     * @param targetContainerId
+     * @param connection
+     */
+    protected static void pooledSessionPlaced(String targetContainerId, CAMQPConnectionInterface connection) {
+        _sessionManager.connectionPool.sessionPlaced(targetContainerId, connection);
     }
 
     private final ConcurrentMap<CAMQPConnectionKey, List<CAMQPSession>> mappedSessions =
@@ -146,9 +268,19 @@ public final class CAMQPSessionManager {
         CAMQPSessionManager sessionManager = _sessionManager;
         if (sessionManager != null) {
             sessionManager.mappedSessions.remove(remoteContainerId);
+            sessionManager.connectionPool.connectionClosed(remoteContainerId);
         }
     }
 
+    /**
+     * @param amqpRemoteConnectionKey
+     * @return number of sessions mapped to the connection
+     */
+    static int getSessionCount(CAMQPConnectionKey amqpRemoteConnectionKey) {
+        List<CAMQPSession> sessions = _sessionManager.mappedSessions.get(amqpRemoteConnectionKey);
+        return (sessions == null) ? 0 : sessions.size();
+    }
+
     protected static void sessionCreated(CAMQPConnectionKey amqpRemoteConnectionKey, int sessionChannelId, CAMQPSession session) {
         List<CAMQPSession> sessions = _sessionManager.mappedSessions.get(amqpRemoteConnectionKey);
         List<CAMQPSession> sessionsPrevValue = null;
@@ -0,0 +1,159 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import java.util.concurrent.TimeUnit;
+
+import net.jcip.annotations.NotThreadSafe;
+
+/**
+ * Sizes the incoming window of a session like a bandwidth-delay product:
+ * the rate at which the session's transfer frames are consumed (acked by
+ * the Link layer), times the round-trip time of the session flow frames,
+ * times WINDOW_HEADROOM. The headroom lets the window grow until it is no
+ * longer the bottleneck, as the consumption rate is bounded by window/RTT.
+ *
+ * The round-trip time is measured between a session flow frame sent with
+ * the echo flag, and the peer's echoed flow frame. Both the round-trip time
+ * and the consumption rate are smoothed (EWMA). Until both have been
+ * measured, the window is the configured maximum window size, which also
+ * bounds the window at all times.
+ *
+ * Accessed under the lock of the owning CAMQPSession.
+ *
+ * @author tejdas
+ */
+@NotThreadSafe
+final class CAMQPSessionWindowController {
+    private static final long RATE_SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /*
+     * An echo request that has not been answered for that long is forgotten
+     */
+    private static final long ECHO_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(CAMQPSessionConstants.FLOW_SENDER_INTERVAL * 10);
+
+    private static final int WINDOW_HEADROOM = 2;
+
+    private final long maxWindowSize;
+
+    private final long minWindowSize;
+
+    private long windowSize;
+
+    /*
+     * Smoothed round-trip time (nanoseconds), and consumption rate
+     * (transfers per nanosecond). Zero until measured.
+     */
+    private long smoothedRtt = 0;
+
+    private double smoothedRate = 0;
+
+    private long echoRequestTime = -1;
+
+    private long rateSampleStart = -1;
+
+    private long rateSampleCount = 0;
+
+    CAMQPSessionWindowController(long maxWindowSize) {
+        this.maxWindowSize = maxWindowSize;
+        minWindowSize = Math.min(maxWindowSize, CAMQPSessionConstants.MIN_SESSION_WINDOW_SIZE);
+        windowSize = maxWindowSize;
+    }
+
+    long getWindowSize() {
+        return windowSize;
+    }
+
+    long getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * Called before sending a session flow frame. Returns true if the flow
+     * frame should be sent with the echo flag, to measure the round-trip
+     * time, i.e, if no other echo request is outstanding.
+     *
+     * @param now
+     *            : System.nanoTime()
+     * @return
+     */
+    boolean requestEcho(long now) {
+        if ((echoRequestTime != -1) && (now - echoRequestTime < ECHO_TIMEOUT)) {
+            return false;
+        }
+        echoRequestTime = now;
+        return true;
+    }
+
+    /**
+     * Called upon receipt of a session flow frame that echoes ours.
+     *
+     * @param now
+     *            : System.nanoTime()
+     * @return the new window size.
+     */
+    long echoReceived(long now) {
+        if (echoRequestTime == -1) {
+            return windowSize;
+        }
+        long rtt = Math.max(now - echoRequestTime, 1);
+        echoRequestTime = -1;
+        smoothedRtt = (smoothedRtt == 0) ? rtt : (smoothedRtt * 7 + rtt) / 8;
+        return resize();
+    }
+
+    /**
+     * Called when the Link layer acks a transfer frame.
+     *
+     * @param now
+     *            : System.nanoTime()
+     * @return the new window size.
+     */
+    long transferAcked(long now) {
+        if (rateSampleStart == -1) {
+            rateSampleStart = now;
+        }
+        rateSampleCount++;
+
+        long elapsed = now - rateSampleStart;
+        if (elapsed < RATE_SAMPLE_INTERVAL) {
+            return windowSize;
+        }
+        double rate = (double) rateSampleCount / elapsed;
+        smoothedRate = (smoothedRate == 0) ? rate : (smoothedRate * 3 + rate) / 4;
+        rateSampleStart = now;
+        rateSampleCount = 0;
+        return resize();
+    }
+
+    /**
+     * Resizes the window to the bandwidth-delay product, if it is off by
+     * more than an eighth of the current window.
+     */
+    private long resize() {
+        if (!CAMQPSessionManager.isAdaptiveWindowEnabled() || (smoothedRtt == 0) || (smoothedRate == 0)) {
+            return windowSize;
+        }
+        double bdp = smoothedRate * smoothedRtt * WINDOW_HEADROOM;
+        long targetWindowSize = Math.max(minWindowSize, Math.min(maxWindowSize, (long) Math.ceil(bdp)));
+        if (Math.abs(targetWindowSize - windowSize) > windowSize / 8) {
+            windowSize = targetWindowSize;
+        }
+        return windowSize;
+    }
+}
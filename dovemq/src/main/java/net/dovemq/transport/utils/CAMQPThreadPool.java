@@ -0,0 +1,83 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.dovemq.transport.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.ThreadSafe;
+
+/**
+ * Thread pool with a fixed maximum number of threads, that keeps track of
+ * the depth of its task queue. Idle threads are retired after a minute.
+ *
+ * @author tejdas
+ */
+@ThreadSafe
+public final class CAMQPThreadPool extends ThreadPoolExecutor {
+    private static final long THREAD_KEEP_ALIVE_TIME = 60L; // seconds
+
+    public static CAMQPThreadPool createThreadPool(String threadName, int threadCount) {
+        return new CAMQPThreadPool(threadName, threadCount);
+    }
+
+    private final AtomicLong submittedTaskCount = new AtomicLong(0L);
+
+    private final AtomicInteger maxQueueDepth = new AtomicInteger(0);
+
+    private CAMQPThreadPool(String threadName, int threadCount) {
+        super(threadCount, threadCount, THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new CAMQPThreadFactory(threadName));
+        allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submittedTaskCount.incrementAndGet();
+        super.execute(command);
+
+        int queueDepth = getQueue().size();
+        int currentMax = maxQueueDepth.get();
+        while ((queueDepth > currentMax) && !maxQueueDepth.compareAndSet(currentMax, queueDepth)) {
+            currentMax = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * @return number of tasks waiting for a thread
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @return largest number of tasks that have been waiting for a thread
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return number of tasks submitted to the pool
+     */
+    public long getSubmittedTaskCount() {
+        return submittedTaskCount.get();
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package net.dovemq.transport.utils;
+
+/**
+ * Threading configuration of DoveMQ: the number of threads of the bounded
+ * thread pools used by the transport (Netty I/O threads, and session send
+ * threads) and by the broker (router threads). A pool size must be set
+ * before the corresponding layer is initialized.
+ *
+ * If affinity is enabled, the send tasks of all the sessions and links of
+ * a connection are run by the same session send thread, as the incoming
+ * frames of a connection are always processed by the same Netty I/O
+ * thread. Java does not expose CPU pinning, so this keeps a connection on
+ * one thread, and leaves its placement on a core to the OS scheduler.
+ *
+ * @author tejdas
+ */
+public final class CAMQPThreadingConfig {
+    private static final int AVAILABLE_PROCESSORS = Runtime.getRuntime().availableProcessors();
+
+    private static volatile int ioThreadCount = AVAILABLE_PROCESSORS * 2;
+
+    private static volatile int sessionSenderThreadCount = Math.max(16, AVAILABLE_PROCESSORS * 2);
+
+    private static volatile int routerThreadCount = 128;
+
+    private static volatile boolean affinityEnabled = false;
+
+    public static int getIOThreadCount() {
+        return ioThreadCount;
+    }
+
+    /**
+     * Sets the number of Netty I/O threads of the AMQP listener, and of the
+     * outgoing connections.
+     *
+     * @param threadCount
+     */
+    public static void setIOThreadCount(int threadCount) {
+        ioThreadCount = checkThreadCount(threadCount);
+    }
+
+    public static int getSessionSenderThreadCount() {
+        return sessionSenderThreadCount;
+    }
+
+    /**
+     * Sets the number of threads that send the transfer frames of the
+     * sessions and links.
+     *
+     * @param threadCount
+     */
+    public static void setSessionSenderThreadCount(int threadCount) {
+        sessionSenderThreadCount = checkThreadCount(threadCount);
+    }
+
+    public static int getRouterThreadCount() {
+        return routerThreadCount;
+    }
+
+    /**
+     * Sets the number of threads of the broker that route the messages to
+     * the queue and topic subscribers.
+     *
+     * @param threadCount
+     */
+    public static void setRouterThreadCount(int threadCount) {
+        routerThreadCount = checkThreadCount(threadCount);
+    }
+
+    public static boolean isAffinityEnabled() {
+        return affinityEnabled;
+    }
+
+    /**
+     * Enables or disables running the send tasks of a connection on a
+     * single session send thread. Disabled by default.
+     *
+     * @param enabled
+     */
+    public static void setAffinityEnabled(boolean enabled) {
+        affinityEnabled = enabled;
+    }
+
+    private static int checkThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threadCount);
+        }
+        return threadCount;
+    }
+
+    private CAMQPThreadingConfig() {
+    }
+}
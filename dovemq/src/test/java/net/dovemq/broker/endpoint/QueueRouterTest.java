@@ -20,7 +20,6 @@ package net.dovemq.broker.endpoint;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.Collection;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -151,9 +150,8 @@ public class QueueRouterTest {
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         public void ackMessages(int count) {
@@ -224,9 +222,8 @@ public class QueueRouterTest {
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
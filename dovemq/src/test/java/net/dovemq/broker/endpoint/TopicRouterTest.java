@@ -19,7 +19,6 @@ package net.dovemq.broker.endpoint;
 
 import static org.junit.Assert.*;
 
-import java.util.Collection;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -87,9 +86,8 @@ public class TopicRouterTest {
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
@@ -126,9 +124,8 @@ public class TopicRouterTest {
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
@@ -17,17 +17,23 @@
 
 package net.dovemq.transport.connection;
 
+import java.util.LinkedList;
+import java.util.List;
+
 import junit.framework.TestCase;
 import net.dovemq.transport.connection.mockjetty.MockJettyChannel;
 import net.dovemq.transport.frame.CAMQPFrame;
 import net.dovemq.transport.frame.CAMQPFrameConstants;
 import net.dovemq.transport.frame.CAMQPFrameHeader;
 import net.dovemq.transport.frame.CAMQPFrameHeaderCodec;
+import net.dovemq.transport.frame.CAMQPHandshakeFrame;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
 import org.jmock.Mockery;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.Test;
@@ -145,4 +151,124 @@ public class CAMQPFrameDecoderTest extends TestCase
         assertEquals(outputBodyBuffer.readableBytes(), frameSize
                 - CAMQPFrameConstants.FRAME_HEADER_SIZE);
     }
+
+    @Test
+    public void testDecodeSplitAtEveryOffset() throws Exception
+    {
+        ChannelBuffer byteStream = createByteStream();
+        int streamSize = byteStream.readableBytes();
+        for (int splitOffset = 0; splitOffset <= streamSize; splitOffset++)
+        {
+            DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new CAMQPFrameDecoder());
+            embedder.offer(byteStream.slice(0, splitOffset));
+            embedder.offer(byteStream.slice(splitOffset, streamSize - splitOffset));
+            assertDecodedByteStream(embedder);
+        }
+    }
+
+    @Test
+    public void testDecodeOneByteAtATime() throws Exception
+    {
+        ChannelBuffer byteStream = createByteStream();
+        CAMQPFrameDecoder decoder = new CAMQPFrameDecoder();
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(decoder);
+        for (int i = 0; i < byteStream.readableBytes(); i++)
+        {
+            embedder.offer(byteStream.slice(i, 1));
+            assertFalse(decoder.getCumulation() instanceof CompositeChannelBuffer);
+        }
+        assertDecodedByteStream(embedder);
+        assertNull(decoder.getCumulation());
+    }
+
+    @Test
+    public void testDecodeFramesInOneRead() throws Exception
+    {
+        ChannelBuffer byteStream = createByteStream();
+        DecoderEmbedder<Object> embedder = new DecoderEmbedder<Object>(new CAMQPFrameDecoder());
+        embedder.offer(byteStream);
+
+        assertTrue(embedder.poll() instanceof CAMQPHandshakeFrame);
+        Object frames = embedder.poll();
+        assertTrue(frames instanceof List);
+        assertEquals(3, ((List<?>) frames).size());
+        assertNull(embedder.poll());
+    }
+
+    private static final int FIRST_BODY_SIZE = 300;
+
+    private static final int SECOND_BODY_SIZE = 50;
+
+    /*
+     * Connection header, followed by a frame on channel 1, an empty frame,
+     * and a frame on channel 2 with an extended header.
+     */
+    private static ChannelBuffer createByteStream()
+    {
+        ChannelBuffer byteStream = ChannelBuffers.dynamicBuffer();
+        byteStream.writeBytes(new byte[] {'A', 'M', 'Q', 'P', 0, 1, 0, 0});
+
+        byteStream.writeBytes(CAMQPFrameHeaderCodec.encode(CAMQPFrameHeader.createFrameHeader(1, FIRST_BODY_SIZE)));
+        byteStream.writeBytes(createBody(FIRST_BODY_SIZE));
+
+        byteStream.writeBytes(CAMQPFrameHeaderCodec.encode(CAMQPFrameHeader.createFrameHeader(0, 0)));
+
+        byteStream.writeInt(CAMQPFrameConstants.FRAME_HEADER_SIZE + 4 + SECOND_BODY_SIZE);
+        byteStream.writeByte(CAMQPFrameConstants.DEFAULT_DATA_OFFSET + 1);
+        byteStream.writeByte(CAMQPFrameConstants.AMQP_FRAME_TYPE);
+        byteStream.writeShort(2);
+        byteStream.writeInt(0);
+        byteStream.writeBytes(createBody(SECOND_BODY_SIZE));
+        return byteStream;
+    }
+
+    private static ChannelBuffer createBody(int bodySize)
+    {
+        ChannelBuffer body = ChannelBuffers.buffer(bodySize);
+        for (int i = 0; i < bodySize; i++)
+        {
+            body.writeByte(i + bodySize);
+        }
+        return body;
+    }
+
+    private static void assertDecodedByteStream(DecoderEmbedder<Object> embedder)
+    {
+        Object handshakeFrame = embedder.poll();
+        assertTrue(handshakeFrame instanceof CAMQPHandshakeFrame);
+        assertEquals(CAMQPConnectionConstants.HEADER_LENGTH, ((CAMQPHandshakeFrame) handshakeFrame).getBody().readableBytes());
+
+        /*
+         * Frames decoded from the same read are emitted as a List
+         */
+        LinkedList<CAMQPFrame> frames = new LinkedList<CAMQPFrame>();
+        Object decoded;
+        while ((decoded = embedder.poll()) != null)
+        {
+            if (decoded instanceof List)
+            {
+                for (Object frame : (List<?>) decoded)
+                {
+                    frames.add((CAMQPFrame) frame);
+                }
+            }
+            else
+            {
+                frames.add((CAMQPFrame) decoded);
+            }
+        }
+        assertEquals(3, frames.size());
+
+        CAMQPFrame frame = frames.poll();
+        assertEquals(1, frame.getChannelNumber());
+        assertEquals(createBody(FIRST_BODY_SIZE), frame.getBody());
+
+        frame = frames.poll();
+        assertEquals(CAMQPFrameConstants.FRAME_HEADER_SIZE, frame.getFrameSize());
+        assertNull(frame.getBody());
+
+        frame = frames.poll();
+        assertEquals(2, frame.getChannelNumber());
+        assertEquals(createBody(SECOND_BODY_SIZE), frame.getBody());
+    }
 }
@@ -18,6 +18,7 @@
 package net.dovemq.transport.connection;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
@@ -151,7 +152,122 @@ public class CAMQPSenderTest extends TestCase
         sender.close();
         sender.waitForClose();
         assertTrue(sender.isClosed());
-        assertEquals(((MockJettyChannel) channel).getNumberOfWrites(), numMessages*numThreads);
-    }    
+        assertEquals(sender.getFlushedFrameCount(), numMessages*numThreads);
+        assertEquals(((MockJettyChannel) channel).getNumberOfWrites(), sender.getFlushCount());
+    }
+
+    public void testCAMQPSenderCoalescedFlush()
+    {
+        CAMQPSender.setMaxFlushDelay(500);
+        try
+        {
+            Channel channel = new MockJettyChannel(true);
+            CAMQPSender sender = new CAMQPSender(channel);
+            for (int i = 0; i < 10; i++)
+            {
+                sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            }
+            assertEquals(0, ((MockJettyChannel) channel).getNumberOfWrites());
+
+            assertEquals(1000, ((MockJettyChannel) channel).getNextBuffer().readableBytes());
+            sender.close();
+            sender.waitForClose();
+            assertTrue(sender.isClosed());
+            assertEquals(1, ((MockJettyChannel) channel).getNumberOfWrites());
+            assertEquals(1, sender.getFlushCount());
+            assertEquals(10.0, sender.getFramesPerFlush());
+            assertEquals(1000.0, sender.getBytesPerFlush());
+        }
+        finally
+        {
+            CAMQPSender.setMaxFlushDelay(CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_DELAY);
+        }
+    }
+
+    public void testCAMQPSenderFlushBatchLimit()
+    {
+        CAMQPSender.setMaxFlushDelay(500);
+        CAMQPSender.setMaxFlushBatchBytes(300);
+        try
+        {
+            Channel channel = new MockJettyChannel(true);
+            CAMQPSender sender = new CAMQPSender(channel);
+            for (int i = 0; i < 10; i++)
+            {
+                sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            }
+
+            int bytesWritten = 0;
+            while (bytesWritten < 1000)
+            {
+                ChannelBuffer buffer = ((MockJettyChannel) channel).getNextBuffer();
+                assertTrue(buffer.readableBytes() <= 300);
+                bytesWritten += buffer.readableBytes();
+            }
+            assertEquals(1000, bytesWritten);
+            sender.close();
+            sender.waitForClose();
+            assertTrue(sender.isClosed());
+            assertEquals(10, sender.getFlushedFrameCount());
+            assertTrue(sender.getFlushCount() >= 4);
+        }
+        finally
+        {
+            CAMQPSender.setMaxFlushBatchBytes(CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_BATCH_BYTES);
+            CAMQPSender.setMaxFlushDelay(CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_DELAY);
+        }
+    }
+
+    public void testCAMQPSenderWritability() throws InterruptedException
+    {
+        CAMQPSender.setMaxFlushDelay(500);
+        CAMQPSender.setWriteBufferWatermarks(100, 300);
+        try
+        {
+            Channel channel = new MockJettyChannel(true);
+            CAMQPSender sender = new CAMQPSender(channel);
+            final CountDownLatch writabilityRestored = new CountDownLatch(1);
+            sender.setWritabilityListener(new CAMQPSender.WritabilityListener()
+            {
+                @Override
+                public void writabilityRestored()
+                {
+                    writabilityRestored.countDown();
+                }
+            });
+
+            sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            assertTrue(sender.isWritable());
+            sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            sender.sendBuffer(createFrame(100), CAMQPFrameConstants.FRAME_TYPE_SESSION);
+            assertFalse(sender.isWritable());
+            assertEquals(400, sender.getOutboundBytes());
+            assertEquals(1, sender.getUnwritableCount());
+
+            assertTrue(writabilityRestored.await(10, TimeUnit.SECONDS));
+            assertTrue(sender.isWritable());
+            assertTrue(sender.getOutboundBytes() <= 100);
+            assertTrue(sender.getUnwritableTime() > 0);
+
+            sender.close();
+            sender.waitForClose();
+            assertEquals(0, sender.getOutboundBytes());
+            assertEquals(1, sender.getUnwritableCount());
+        }
+        finally
+        {
+            CAMQPSender.setWriteBufferWatermarks(CAMQPConnectionConstants.DEFAULT_WRITE_BUFFER_LOW_WATERMARK,
+                    CAMQPConnectionConstants.DEFAULT_WRITE_BUFFER_HIGH_WATERMARK);
+            CAMQPSender.setMaxFlushDelay(CAMQPConnectionConstants.DEFAULT_MAX_FLUSH_DELAY);
+        }
+    }
+
+    private static ChannelBuffer createFrame(int frameSize)
+    {
+        ChannelBuffer buffer = ChannelBuffers.buffer(frameSize);
+        buffer.writerIndex(frameSize);
+        return buffer;
+    }
 }
 
@@ -19,13 +19,29 @@ package net.dovemq.transport.connection;
 
 import java.util.concurrent.BlockingQueue;
 
+import net.dovemq.transport.frame.CAMQPFrameConstants;
+import net.dovemq.transport.frame.CAMQPFrameHeader;
+import net.dovemq.transport.frame.CAMQPFrameHeaderCodec;
+import net.dovemq.transport.protocol.CAMQPBufferLease;
 import net.dovemq.transport.session.CAMQPSessionInterface;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 
 public class ConnectionTestUtils
 {
+    public static CAMQPConnectionKey createConnectionKey(String remoteContainerId)
+    {
+        CAMQPConnectionKey key = new CAMQPConnectionKey();
+        key.setRemoteContainerId(remoteContainerId);
+        return key;
+    }
+
     public static CAMQPConnectionInterface createStubConnection(final BlockingQueue<ChannelBuffer> framesQueue)
+    {
+        return createStubConnection(framesQueue, CAMQPConnectionConstants.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public static CAMQPConnectionInterface createStubConnection(final BlockingQueue<ChannelBuffer> framesQueue, final long maxFrameSize)
     {
         return new CAMQPConnectionInterface() {
             @Override
@@ -34,6 +50,19 @@ public class ConnectionTestUtils
                 framesQueue.add(buffer);
             }
 
+            @Override
+            public void sendEncodedFrame(ChannelBuffer frame, CAMQPBufferLease bufferLease)
+            {
+                /*
+                 * Only the frame body is queued. The queued frame keeps the
+                 * pooled buffers, so the lease is never released.
+                 */
+                CAMQPFrameHeader frameHeader = CAMQPFrameHeaderCodec.decode(frame.duplicate());
+                assert (frameHeader.getFrameSize() == frame.readableBytes());
+                framesQueue.add(frame.slice(frame.readerIndex() + CAMQPFrameConstants.FRAME_HEADER_SIZE,
+                        frame.readableBytes() - CAMQPFrameConstants.FRAME_HEADER_SIZE));
+            }
+
             @Override
             public int reserveOutgoingChannel()
             {
@@ -72,6 +101,24 @@ public class ConnectionTestUtils
                 return null;
             }
 
+            @Override
+            public boolean isWritable()
+            {
+                return true;
+            }
+
+            @Override
+            public long getMaxFrameSize()
+            {
+                return maxFrameSize;
+            }
+
+            @Override
+            public long getOutboundBytes()
+            {
+                return 0;
+            }
+
             @Override
             public void close()
             {
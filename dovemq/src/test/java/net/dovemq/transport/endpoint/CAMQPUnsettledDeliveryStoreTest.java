@@ -0,0 +1,176 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.endpoint;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+public class CAMQPUnsettledDeliveryStoreTest extends TestCase
+{
+    public void testPutGetRemove()
+    {
+        CAMQPUnsettledDeliveryStore<String> store = new CAMQPUnsettledDeliveryStore<>();
+        assertTrue(store.isEmpty());
+        assertEquals(-1, store.ceilingDeliveryId(0, Long.MAX_VALUE));
+
+        for (long deliveryId = 1000; deliveryId < 1500; deliveryId++)
+        {
+            store.put(deliveryId, String.valueOf(deliveryId));
+        }
+        assertEquals(500, store.size());
+        assertEquals("1234", store.get(1234));
+        assertNull(store.get(999));
+        assertNull(store.get(1500));
+
+        assertEquals("1000", store.remove(1000));
+        assertNull(store.remove(1000));
+        assertEquals(1001, store.ceilingDeliveryId(0, Long.MAX_VALUE));
+        assertEquals(-1, store.ceilingDeliveryId(0, 1000));
+        assertEquals(499, store.size());
+    }
+
+    public void testRangeSettlement()
+    {
+        CAMQPUnsettledDeliveryStore<Long> store = new CAMQPUnsettledDeliveryStore<>();
+        for (long deliveryId = 0; deliveryId < 10000; deliveryId += 3)
+        {
+            store.put(deliveryId, deliveryId);
+        }
+
+        int settledCount = 0;
+        for (long deliveryId = store.ceilingDeliveryId(100, 8999);
+                deliveryId != -1;
+                deliveryId = store.ceilingDeliveryId(deliveryId + 1, 8999))
+        {
+            assertEquals(Long.valueOf(deliveryId), store.remove(deliveryId));
+            settledCount++;
+        }
+        assertEquals(2966, settledCount);
+        assertEquals(99, store.ceilingDeliveryId(99, 99));
+        assertEquals(9000, store.ceilingDeliveryId(100, Long.MAX_VALUE));
+        assertEquals(-1, store.ceilingDeliveryId(100, 8999));
+        assertEquals(3334 - settledCount, store.size());
+    }
+
+    public void testRandomOperationsMatchTreeMap()
+    {
+        Random random = new Random(12345);
+        CAMQPUnsettledDeliveryStore<Long> store = new CAMQPUnsettledDeliveryStore<>();
+        TreeMap<Long, Long> expected = new TreeMap<>();
+        long nextDeliveryId = 0;
+        for (int i = 0; i < 200000; i++)
+        {
+            if (random.nextInt(3) != 0)
+            {
+                long deliveryId = nextDeliveryId + random.nextInt(4);
+                nextDeliveryId = deliveryId + 1;
+                store.put(deliveryId, deliveryId);
+                expected.put(deliveryId, deliveryId);
+            }
+            else if (!expected.isEmpty())
+            {
+                /*
+                 * The oldest delivery stays unsettled, so that the span of
+                 * the unsettled deliveries keeps growing.
+                 */
+                long from = expected.firstKey() + 1 + random.nextInt(64);
+                Long deliveryId = expected.ceilingKey(from);
+                if (deliveryId != null)
+                {
+                    assertEquals(deliveryId.longValue(), store.ceilingDeliveryId(from, Long.MAX_VALUE));
+                    assertEquals(expected.remove(deliveryId), store.remove(deliveryId));
+                }
+            }
+        }
+
+        assertEquals(expected.size(), store.size());
+        for (Long deliveryId : expected.keySet())
+        {
+            assertEquals(deliveryId, store.get(deliveryId));
+        }
+    }
+
+    public void testLongUnsettledDeliveryOverflows()
+    {
+        CAMQPUnsettledDeliveryStore<Long> store = new CAMQPUnsettledDeliveryStore<>();
+        store.put(0, 0L);
+        long lastDeliveryId = 3L << 20;
+        for (long deliveryId = 1; deliveryId <= lastDeliveryId; deliveryId++)
+        {
+            store.put(deliveryId, deliveryId);
+            if (deliveryId > 1)
+            {
+                store.remove(deliveryId - 1);
+            }
+        }
+        assertEquals(2, store.size());
+        assertEquals(Long.valueOf(0), store.get(0));
+        assertEquals(0, store.ceilingDeliveryId(0, Long.MAX_VALUE));
+        assertEquals(lastDeliveryId, store.ceilingDeliveryId(1, Long.MAX_VALUE));
+        assertEquals(-1, store.ceilingDeliveryId(1, lastDeliveryId - 1));
+        assertEquals(Long.valueOf(0), store.remove(0));
+        assertEquals(1, store.size());
+    }
+
+    public void testStoreShrinksWhenDrained()
+    {
+        CAMQPUnsettledDeliveryStore<Long> store = new CAMQPUnsettledDeliveryStore<>();
+        int initialCapacity = store.getCapacity();
+        for (long deliveryId = 0; deliveryId < 100000; deliveryId++)
+        {
+            store.put(deliveryId, deliveryId);
+        }
+        assertTrue(store.getCapacity() >= 100000);
+
+        /*
+         * Settle from the oldest delivery, so the span shrinks with the
+         * number of unsettled deliveries.
+         */
+        for (long deliveryId = 0; deliveryId < 99990; deliveryId++)
+        {
+            assertEquals(Long.valueOf(deliveryId), store.remove(deliveryId));
+        }
+        assertEquals(10, store.size());
+        assertEquals(initialCapacity, store.getCapacity());
+        for (long deliveryId = 99990; deliveryId < 100000; deliveryId++)
+        {
+            assertEquals(Long.valueOf(deliveryId), store.get(deliveryId));
+        }
+        assertEquals(99990, store.ceilingDeliveryId(0, Long.MAX_VALUE));
+
+        /*
+         * The oldest delivery stays unsettled: the ring buffer keeps
+         * covering the span.
+         */
+        for (long deliveryId = 100000; deliveryId < 200000; deliveryId++)
+        {
+            store.put(deliveryId, deliveryId);
+        }
+        for (long deliveryId = 99991; deliveryId < 200000; deliveryId++)
+        {
+            store.remove(deliveryId);
+        }
+        assertEquals(1, store.size());
+        assertEquals(initialCapacity, store.getCapacity());
+        assertEquals(Long.valueOf(99990), store.remove(99990));
+        assertTrue(store.isEmpty());
+        assertEquals(initialCapacity, store.getCapacity());
+    }
+}
@@ -18,15 +18,19 @@
 package net.dovemq.transport.endpoint;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import junit.framework.TestCase;
+import net.dovemq.transport.frame.CAMQPMessagePayload;
 import net.dovemq.transport.protocol.CAMQPEncoder;
 import net.dovemq.transport.protocol.CAMQPSyncDecoder;
 
 import org.apache.commons.lang.RandomStringUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 public class DoveMQMessageCodecTest extends TestCase
@@ -60,6 +64,153 @@ public class DoveMQMessageCodecTest extends TestCase
         messageCodecTest(true, false, true, false, 1);
     }
 
+    @Test
+    public void testZeroCopyPayloadDecode()
+    {
+        zeroCopyPayloadDecodeTest(100);
+        zeroCopyPayloadDecodeTest(200 * 1024);
+    }
+
+    private void zeroCopyPayloadDecodeTest(int payloadSize)
+    {
+        byte[] inPayload = RandomStringUtils.randomAlphanumeric(payloadSize).getBytes();
+        DoveMQMessageImpl message = new DoveMQMessageImpl();
+        message.addApplicationProperty("appPropKey", "appPropVal");
+        message.addPayload(inPayload);
+
+        ChannelBuffer encodedBuffer = message.marshal().getPayload();
+        byte[] frameBody = new byte[encodedBuffer.readableBytes()];
+        encodedBuffer.readBytes(frameBody);
+
+        DoveMQMessageImpl outMessage = DoveMQMessageImpl.unmarshal(new CAMQPMessagePayload(ChannelBuffers.wrappedBuffer(frameBody)));
+
+        /*
+         * The decoded payload is a view on the received frame body
+         */
+        ChannelBuffer payloadBuffer = outMessage.getPayloadBuffer();
+        assertEquals(payloadSize, payloadBuffer.readableBytes());
+        assertTrue(ChannelBuffers.wrappedBuffer(inPayload).equals(payloadBuffer));
+        int payloadOffset = indexOf(frameBody, inPayload);
+        frameBody[payloadOffset]++;
+        assertEquals(inPayload[0] + 1, payloadBuffer.getByte(payloadBuffer.readerIndex()));
+        frameBody[payloadOffset]--;
+
+        /*
+         * The byte array is materialized once, on demand
+         */
+        byte[] outPayload = outMessage.getPayload();
+        assertTrue(Arrays.equals(inPayload, outPayload));
+        assertSame(outPayload, outMessage.getPayload());
+
+        /*
+         * Re-encoding the decoded message writes the payload from the view
+         */
+        DoveMQMessageImpl reencodedMessage = DoveMQMessageImpl.unmarshal(outMessage.marshal());
+        assertEquals("appPropVal", reencodedMessage.getApplicationProperty("appPropKey"));
+        assertTrue(Arrays.equals(inPayload, reencodedMessage.getPayload()));
+    }
+
+    @Test
+    public void testLazyUnmarshal()
+    {
+        DoveMQMessageImpl message = new DoveMQMessageImpl();
+        message.getHeaderProperties().setPriority(7);
+        message.getMessageProperties().setMessageId("messageId");
+        message.getMessageProperties().setCreationTime(new Date());
+        message.addDeliveryAnnotation("deliveryKey", "deliveryVal");
+        message.addMessageAnnotation("messageAnnotKey", "messageAnnotVal");
+        message.setRoutingTag("routingTag");
+        message.setTopicPublishHierarchy("a.b.c");
+        message.addApplicationProperty("appPropKey", "appPropVal");
+        message.addPayload("firstPayload".getBytes());
+        message.addPayload(RandomStringUtils.randomAlphanumeric(100 * 1024).getBytes());
+        message.addFooter("footerkey", "footerval");
+
+        CAMQPMessagePayload encodedMessage = message.marshal();
+        int readerIndex = encodedMessage.getPayload().readerIndex();
+
+        DoveMQMessageImpl outMessage = DoveMQMessageImpl.unmarshal(encodedMessage);
+        assertEquals(readerIndex, encodedMessage.getPayload().readerIndex());
+
+        /*
+         * Single property lookups
+         */
+        assertEquals("routingTag", outMessage.getApplicationProperty(DoveMQMessageImpl.ROUTING_TAG_KEY));
+        assertEquals("a.b.c", outMessage.getApplicationProperty(DoveMQMessageImpl.TOPIC_PUBLISH_HIERARCHY_KEY));
+        assertNull(outMessage.getApplicationProperty("missingKey"));
+
+        /*
+         * Section decoding, in an arbitrary order
+         */
+        assertEquals("footerval", outMessage.getFooter("footerkey"));
+        assertTrue(outMessage.hasMultiplePayloads());
+        assertTrue(Arrays.equals("firstPayload".getBytes(), outMessage.getPayload()));
+        assertEquals(2, outMessage.getPayloads().size());
+        assertEquals("messageId", outMessage.getMessageProperties().getMessageId());
+        assertEquals(message.getMessageProperties().getCreationTime(), outMessage.getMessageProperties().getCreationTime());
+        assertEquals(7, outMessage.getHeaderProperties().getPriority());
+        assertEquals("messageAnnotVal", outMessage.getMessageAnnotation("messageAnnotKey"));
+        assertEquals("deliveryVal", outMessage.getDeliveryAnnotation("deliveryKey"));
+        assertEquals(3, outMessage.getApplicationPropertyKeys().size());
+
+        /*
+         * A decoded section can be modified, and re-encoded
+         */
+        outMessage.addApplicationProperty("newAppPropKey", "newAppPropVal");
+        DoveMQMessageImpl reencodedMessage = DoveMQMessageImpl.unmarshal(outMessage.marshal());
+        assertEquals("newAppPropVal", reencodedMessage.getApplicationProperty("newAppPropKey"));
+        assertEquals("appPropVal", reencodedMessage.getApplicationProperty("appPropKey"));
+        assertEquals("footerval", reencodedMessage.getFooter("footerkey"));
+        assertEquals(2, reencodedMessage.getPayloads().size());
+    }
+
+    @Test
+    public void testPassThroughMarshal()
+    {
+        DoveMQMessageImpl message = new DoveMQMessageImpl();
+        message.setRoutingTag("routingTag");
+        message.addPayload(RandomStringUtils.randomAlphanumeric(1024).getBytes());
+        ChannelBuffer encodedBuffer = message.marshal().getPayload();
+
+        DoveMQMessageImpl forwardedMessage = DoveMQMessageImpl.unmarshal(new CAMQPMessagePayload(encodedBuffer));
+        assertEquals("routingTag", forwardedMessage.getApplicationProperty(DoveMQMessageImpl.ROUTING_TAG_KEY));
+
+        /*
+         * Every subscriber gets a view on the original encoding
+         */
+        for (int subscriber = 0; subscriber < 3; subscriber++)
+        {
+            ChannelBuffer forwardedBuffer = forwardedMessage.marshal().getPayload();
+            assertTrue(encodedBuffer.equals(forwardedBuffer));
+            forwardedBuffer.skipBytes(forwardedBuffer.readableBytes());
+        }
+        int lastIndex = encodedBuffer.writerIndex() - 1;
+        encodedBuffer.setByte(lastIndex, encodedBuffer.getByte(lastIndex) + 1);
+        assertTrue(encodedBuffer.equals(forwardedMessage.marshal().getPayload()));
+        encodedBuffer.setByte(lastIndex, encodedBuffer.getByte(lastIndex) - 1);
+
+        /*
+         * A modified message is re-encoded
+         */
+        forwardedMessage.addApplicationProperty("appPropKey", "appPropVal");
+        ChannelBuffer reencodedBuffer = forwardedMessage.marshal().getPayload();
+        assertFalse(encodedBuffer.equals(reencodedBuffer));
+        DoveMQMessageImpl reencodedMessage = DoveMQMessageImpl.unmarshal(new CAMQPMessagePayload(reencodedBuffer));
+        assertEquals("appPropVal", reencodedMessage.getApplicationProperty("appPropKey"));
+        assertEquals("routingTag", reencodedMessage.getApplicationProperty(DoveMQMessageImpl.ROUTING_TAG_KEY));
+        assertEquals(1024, reencodedMessage.getPayload().length);
+    }
+
+    private static int indexOf(byte[] array, byte[] subArray)
+    {
+        for (int i = 0; i <= array.length - subArray.length; i++)
+        {
+            if (ChannelBuffers.wrappedBuffer(array, i, subArray.length).equals(ChannelBuffers.wrappedBuffer(subArray)))
+                return i;
+        }
+        return -1;
+    }
+
     private void messageCodecTest(boolean setAppProperty, boolean setDeliveryAnnotation, boolean setMessageAnnotation,
             boolean setFooter, int messageCount)
     {
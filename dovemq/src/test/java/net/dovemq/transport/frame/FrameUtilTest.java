@@ -17,8 +17,13 @@
 
 package net.dovemq.transport.frame;
 
-import org.jboss.netty.buffer.ChannelBuffer;
 import junit.framework.TestCase;
+import net.dovemq.transport.protocol.CAMQPEncoder;
+import net.dovemq.transport.protocol.data.CAMQPControlFlow;
+import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
 
 public class FrameUtilTest extends TestCase
 {
@@ -62,6 +67,66 @@ public class FrameUtilTest extends TestCase
                 (out.getDataOffset() > CAMQPFrameConstants.DEFAULT_DATA_OFFSET) &&
                 (in.getFrameSize() == out.getFrameSize());
     }
-}
 
+    public void testFrameHeaderEncodedInPlace()
+    {
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setNextIncomingId(5L);
+        flow.setIncomingWindow(100L);
+
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.reserveFrameHeader();
+        CAMQPControlFlow.encode(encoder, flow);
+        ChannelBuffer frame = encoder.getEncodedFrame(7);
+        assertFalse(frame instanceof CompositeChannelBuffer);
+
+        ChannelBuffer body = assertFrameHeader(frame, 7);
+        assertTrue(body.equals(encodeFlow(flow)));
+    }
+
+    public void testLargeFrameEncodedForGatheringWrite()
+    {
+        CAMQPControlTransfer transfer = new CAMQPControlTransfer();
+        transfer.setHandle(1L);
+        transfer.setDeliveryId(3L);
+        transfer.setDeliveryTag(new byte[] {1, 2, 3, 4});
+        byte[] payloadBytes = new byte[65536];
+        for (int i = 0; i < payloadBytes.length; i++)
+        {
+            payloadBytes[i] = (byte) i;
+        }
+        CAMQPMessagePayload payload = new CAMQPMessagePayload(payloadBytes);
 
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.reserveFrameHeader();
+        CAMQPControlTransfer.encode(encoder, transfer);
+        encoder.writePayload(payload);
+        ChannelBuffer frame = encoder.getEncodedFrame(3);
+        assertTrue(frame instanceof CompositeChannelBuffer);
+        assertTrue(((CompositeChannelBuffer) frame).useGathering());
+
+        ChannelBuffer body = assertFrameHeader(frame, 3);
+        encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlTransfer.encode(encoder, transfer);
+        encoder.writePayload(payload);
+        assertTrue(body.equals(encoder.getEncodedBuffer()));
+    }
+
+    private static ChannelBuffer assertFrameHeader(ChannelBuffer frame, int channelNumber)
+    {
+        ChannelBuffer frameBuffer = frame.duplicate();
+        CAMQPFrameHeader frameHeader = CAMQPFrameHeaderCodec.decode(frameBuffer);
+        assertEquals(frame.readableBytes(), frameHeader.getFrameSize());
+        assertEquals(channelNumber, frameHeader.getChannelNumber());
+        assertEquals(CAMQPFrameConstants.DEFAULT_DATA_OFFSET, frameHeader.getDataOffset());
+        assertEquals(CAMQPFrameConstants.AMQP_FRAME_TYPE, frameHeader.getFrameType());
+        return frameBuffer;
+    }
+
+    private static ChannelBuffer encodeFlow(CAMQPControlFlow flow)
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow.encode(encoder, flow);
+        return encoder.getEncodedBuffer();
+    }
+}
@@ -21,7 +21,6 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.Collection;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -104,12 +103,11 @@ public class CAMQPLinkAsyncSenderTest
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds,
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId,
                 boolean settleMode,
                 Object newState)
         {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
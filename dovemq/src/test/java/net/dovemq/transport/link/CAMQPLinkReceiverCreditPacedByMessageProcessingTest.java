@@ -197,9 +197,8 @@ public class CAMQPLinkReceiverCreditPacedByMessageProcessingTest {
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean isMessageSettledByPeer, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean isMessageSettledByPeer, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
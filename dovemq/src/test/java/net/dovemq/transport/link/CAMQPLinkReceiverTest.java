@@ -21,7 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
@@ -81,15 +81,17 @@ public class CAMQPLinkReceiverTest {
     private class TestTarget implements CAMQPTargetInterface {
         public AtomicInteger numMessagesReceived = new AtomicInteger(0);
 
+        public volatile CAMQPMessagePayload lastMessageReceived = null;
+
         @Override
         public void messageReceived(long deliveryId, String deliveryTag, CAMQPMessagePayload message, boolean settledBySender, int receiverSettleMode) {
+            lastMessageReceived = message;
             numMessagesReceived.incrementAndGet();
         }
 
         @Override
-        public Collection<Long> processDisposition(Collection<Long> deliveryIds, boolean settleMode, Object newState) {
+        public void processDisposition(long firstDeliveryId, long lastDeliveryId, boolean settleMode, Object newState) {
             // TODO Auto-generated method stub
-            return null;
         }
 
         @Override
@@ -393,6 +395,29 @@ public class CAMQPLinkReceiverTest {
         getAndAssertLinkCredit(configuredCreditBoost);
     }
 
+    @Test
+    public void testReceiveFragmentedMessage() {
+        linkReceiver.getMessages(1);
+        getAndAssertLinkCredit(1);
+
+        byte[] message = new byte[3000];
+        new Random().nextBytes(message);
+        String deliveryTag = UUID.randomUUID().toString();
+        long deliveryId = globalDeliveryId.getAndIncrement();
+
+        sendTransferFrame(deliveryId, deliveryTag, Arrays.copyOfRange(message, 0, 1000), true);
+        sendTransferFrame(deliveryId, deliveryTag, Arrays.copyOfRange(message, 1000, 2000), true);
+        assertEquals(0, target.numMessagesReceived.get());
+
+        sendTransferFrame(deliveryId, deliveryTag, Arrays.copyOfRange(message, 2000, 3000), false);
+        assertEquals(1, target.numMessagesReceived.get());
+
+        ChannelBuffer received = target.lastMessageReceived.getPayload();
+        byte[] receivedMessage = new byte[received.readableBytes()];
+        received.getBytes(received.readerIndex(), receivedMessage);
+        assertTrue(Arrays.equals(message, receivedMessage));
+    }
+
     private void attachHandshakeAndVerify(long linkHandle) {
         ChannelBuffer attachBuf = CAMQPSessionSenderTest.createAttachFrame(linkHandle);
         CAMQPFrameHeader frameHeader = CAMQPFrameHeader.createFrameHeader(sessionIncomingChannelId, attachBuf.readableBytes());
@@ -443,6 +468,21 @@ public class CAMQPLinkReceiverTest {
         frameHandler.frameReceived(new CAMQPFrame(frameHeader, messageBuf));
     }
 
+    private void sendTransferFrame(long deliveryId, String deliveryTag, byte[] payload, boolean more) {
+        CAMQPControlTransfer transferFrame = new CAMQPControlTransfer();
+        transferFrame.setDeliveryId(deliveryId);
+        transferFrame.setMore(more);
+        transferFrame.setHandle(linkHandle);
+        transferFrame.setDeliveryTag(deliveryTag.getBytes());
+
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlTransfer.encode(encoder, transferFrame);
+        encoder.writePayload(new CAMQPMessagePayload(payload));
+        ChannelBuffer messageBuf = encoder.getEncodedBuffer();
+        CAMQPFrameHeader frameHeader = CAMQPFrameHeader.createFrameHeader(sessionIncomingChannelId, messageBuf.readableBytes());
+        frameHandler.frameReceived(new CAMQPFrame(frameHeader, messageBuf));
+    }
+
     private void getAndAssertLinkCredit(long expectedLinkCredit) {
         Object control = null;
         try {
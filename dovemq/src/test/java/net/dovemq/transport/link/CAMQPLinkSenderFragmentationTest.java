@@ -0,0 +1,247 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.link;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.dovemq.transport.connection.CAMQPConnectionInterface;
+import net.dovemq.transport.connection.CAMQPIncomingChannelHandler;
+import net.dovemq.transport.connection.ConnectionTestUtils;
+import net.dovemq.transport.frame.CAMQPFrame;
+import net.dovemq.transport.frame.CAMQPFrameConstants;
+import net.dovemq.transport.frame.CAMQPFrameHeader;
+import net.dovemq.transport.frame.CAMQPMessagePayload;
+import net.dovemq.transport.protocol.CAMQPEncoder;
+import net.dovemq.transport.protocol.CAMQPSyncDecoder;
+import net.dovemq.transport.protocol.data.CAMQPControlAttach;
+import net.dovemq.transport.protocol.data.CAMQPControlDetach;
+import net.dovemq.transport.protocol.data.CAMQPControlFlow;
+import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+import net.dovemq.transport.session.CAMQPSessionInterface;
+import net.dovemq.transport.session.CAMQPSessionManager;
+import net.dovemq.transport.session.CAMQPSessionSenderTest;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jmock.Mockery;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Sends messages larger than the max-frame-size negotiated on the
+ * connection, and checks the transfer frames that reach the connection.
+ */
+public class CAMQPLinkSenderFragmentationTest
+{
+    private static final class MockLinkReceiverFactory implements CAMQPLinkMessageHandlerFactory
+    {
+        private volatile CAMQPLinkSender linkSender = null;
+
+        @Override
+        public CAMQPLinkMessageHandler linkAccepted(CAMQPSessionInterface session, CAMQPControlAttach attach)
+        {
+            return linkSender;
+        }
+    }
+
+    /*
+     * Smallest max-frame-size permitted by AMQP
+     */
+    private static final int MAX_FRAME_SIZE = 512;
+
+    private static final MockLinkReceiverFactory factory = new MockLinkReceiverFactory();
+
+    private final BlockingQueue<ChannelBuffer> framesQueue = new LinkedBlockingQueue<ChannelBuffer>();
+
+    private Mockery mockContext = null;
+    private CAMQPIncomingChannelHandler frameHandler = null;
+    private CAMQPLinkSender linkSender = null;
+    private final long linkHandle = 1;
+    private final int sessionIncomingChannelId = 5;
+
+    @BeforeClass
+    public static void setupBeforeClass()
+    {
+        CAMQPSessionManager.initialize();
+        CAMQPSessionManager.registerLinkReceiverFactory(factory);
+    }
+
+    @AfterClass
+    public static void teardownAfterClass()
+    {
+        CAMQPSessionManager.shutdown();
+    }
+
+    @Before
+    public void setup() throws InterruptedException
+    {
+        mockContext = new Mockery() {
+            {
+                setImposteriser(ClassImposteriser.INSTANCE);
+            }
+        };
+
+        CAMQPConnectionInterface stubConnection = ConnectionTestUtils.createStubConnection(framesQueue, MAX_FRAME_SIZE);
+        CAMQPSessionInterface session = CAMQPSessionSenderTest.createMockSessionAndSetExpectations(mockContext, stubConnection);
+        frameHandler = (CAMQPIncomingChannelHandler) session;
+
+        linkSender = new CAMQPLinkSender(session);
+        factory.linkSender = linkSender;
+
+        receiveFrame(CAMQPSessionSenderTest.createAttachFrame(linkHandle));
+        assertNotNull(pollFrame(CAMQPControlAttach.descriptor));
+    }
+
+    @After
+    public void tearDown() throws InterruptedException
+    {
+        receiveFrame(CAMQPSessionSenderTest.createDetachFrame(linkHandle));
+        assertNotNull(pollFrame(CAMQPControlDetach.descriptor));
+        mockContext.assertIsSatisfied();
+        framesQueue.clear();
+        linkSender = null;
+    }
+
+    @Test
+    public void testLargeMessageIsSentAsTransferFragments() throws InterruptedException
+    {
+        String deliveryTag = UUID.randomUUID().toString();
+        byte[] message = new byte[2000];
+        new Random().nextBytes(message);
+
+        receiveFlowFrame(10, 100);
+        linkSender.sendMessage(new CAMQPMessage(deliveryTag, new CAMQPMessagePayload(message)));
+
+        int maxFragmentSize = MAX_FRAME_SIZE - CAMQPLinkConstants.MAX_TRANSFER_FRAME_OVERHEAD - deliveryTag.length();
+        int expectedFragmentCount = (message.length + maxFragmentSize - 1) / maxFragmentSize;
+        assertTrue(expectedFragmentCount > 1);
+
+        List<CAMQPControlTransfer> fragments = new ArrayList<CAMQPControlTransfer>();
+        ChannelBuffer reassembledMessage = ChannelBuffers.dynamicBuffer(message.length);
+        for (int i = 0; i < expectedFragmentCount; i++)
+        {
+            ChannelBuffer frameBody = pollFrame(CAMQPControlTransfer.descriptor);
+            assertNotNull(frameBody);
+            assertTrue("transfer frame exceeds max-frame-size: " + (frameBody.readableBytes() + CAMQPFrameConstants.FRAME_HEADER_SIZE),
+                    frameBody.readableBytes() + CAMQPFrameConstants.FRAME_HEADER_SIZE <= MAX_FRAME_SIZE);
+
+            CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+            decoder.take(frameBody);
+            decoder.readSymbol();
+            fragments.add(CAMQPControlTransfer.decode(decoder));
+            reassembledMessage.writeBytes(decoder.getPayload().getPayload());
+        }
+        assertNull(pollFrame(CAMQPControlTransfer.descriptor));
+
+        CAMQPControlTransfer firstFragment = fragments.get(0);
+        for (int i = 0; i < fragments.size(); i++)
+        {
+            CAMQPControlTransfer fragment = fragments.get(i);
+            assertEquals(i < fragments.size() - 1, fragment.getMore());
+            assertEquals(firstFragment.getDeliveryId(), fragment.getDeliveryId());
+            assertArrayEquals(deliveryTag.getBytes(), fragment.getDeliveryTag());
+        }
+
+        byte[] reassembledBytes = new byte[reassembledMessage.readableBytes()];
+        reassembledMessage.readBytes(reassembledBytes);
+        assertArrayEquals(message, reassembledBytes);
+    }
+
+    @Test
+    public void testSmallMessageIsSentAsOneTransfer() throws InterruptedException
+    {
+        String deliveryTag = UUID.randomUUID().toString();
+        int maxFragmentSize = MAX_FRAME_SIZE - CAMQPLinkConstants.MAX_TRANSFER_FRAME_OVERHEAD - deliveryTag.length();
+
+        receiveFlowFrame(10, 100);
+        linkSender.sendMessage(new CAMQPMessage(deliveryTag, new CAMQPMessagePayload(new byte[maxFragmentSize])));
+
+        ChannelBuffer frameBody = pollFrame(CAMQPControlTransfer.descriptor);
+        assertNotNull(frameBody);
+        assertTrue(frameBody.readableBytes() + CAMQPFrameConstants.FRAME_HEADER_SIZE <= MAX_FRAME_SIZE);
+
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(frameBody);
+        decoder.readSymbol();
+        assertFalse(CAMQPControlTransfer.decode(decoder).getMore());
+        assertEquals(maxFragmentSize, decoder.getPayload().getPayload().readableBytes());
+        assertNull(pollFrame(CAMQPControlTransfer.descriptor));
+    }
+
+    private void receiveFlowFrame(long linkCredit, long sessionCredit)
+    {
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setHandle(linkHandle);
+        flow.setDrain(false);
+        flow.setEcho(false);
+        flow.setLinkCredit(linkCredit);
+        flow.setIncomingWindow(sessionCredit);
+        flow.setNextIncomingId(0L);
+        flow.setDeliveryCount(0L);
+
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow.encode(encoder, flow);
+        receiveFrame(encoder.getEncodedBuffer());
+    }
+
+    private void receiveFrame(ChannelBuffer frameBody)
+    {
+        CAMQPFrameHeader frameHeader = CAMQPFrameHeader.createFrameHeader(sessionIncomingChannelId, frameBody.readableBytes());
+        frameHandler.frameReceived(new CAMQPFrame(frameHeader, frameBody));
+    }
+
+    /**
+     * Returns the body of the next frame sent on the connection with the
+     * given descriptor, skipping other frames, or null if none is sent
+     * within a second.
+     */
+    private ChannelBuffer pollFrame(String descriptor) throws InterruptedException
+    {
+        while (true)
+        {
+            ChannelBuffer frameBody = framesQueue.poll(1000, TimeUnit.MILLISECONDS);
+            if (frameBody == null)
+            {
+                return null;
+            }
+            CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+            decoder.take(frameBody.duplicate());
+            if (descriptor.equalsIgnoreCase(decoder.readSymbol()))
+            {
+                return frameBody;
+            }
+        }
+    }
+}
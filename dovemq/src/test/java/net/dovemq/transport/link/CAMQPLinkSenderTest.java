@@ -196,6 +196,18 @@ public class CAMQPLinkSenderTest
         {
         }
 
+        @Override
+        public long getMaxFrameSize()
+        {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public ExecutorService getSendExecutor()
+        {
+            return CAMQPSessionManager.getExecutor();
+        }
+
         @Override
         public void ackTransfer(long transferId)
         {
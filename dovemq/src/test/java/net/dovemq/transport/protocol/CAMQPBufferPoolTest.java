@@ -0,0 +1,124 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import junit.framework.TestCase;
+import net.dovemq.transport.frame.CAMQPMessagePayload;
+import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+public class CAMQPBufferPoolTest extends TestCase
+{
+    public CAMQPBufferPoolTest(String name)
+    {
+        super(name);
+    }
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        CAMQPBufferPool.setPoolingEnabled(true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        CAMQPBufferPool.setPoolingEnabled(false);
+        super.tearDown();
+    }
+
+    public void testRecycledEncoderIsAllocationFreeInSteadyState()
+    {
+        CAMQPBufferPool pool = CAMQPBufferPool.getBufferPool();
+        CAMQPMessagePayload payload = new CAMQPMessagePayload(new byte[100]);
+
+        encodeAndRelease(10L, payload);
+        long allocationsAfterWarmup = pool.getAllocationCount();
+
+        for (long deliveryId = 0; deliveryId < 1000; deliveryId++)
+        {
+            encodeAndRelease(deliveryId, payload);
+        }
+        assertEquals(allocationsAfterWarmup, pool.getAllocationCount());
+        assertTrue(pool.getReuseCount() >= 1000);
+    }
+
+    public void testRecycledEncoderReentrantUse()
+    {
+        CAMQPEncoder outer = CAMQPEncoder.createRecycledCAMQPEncoder();
+        outer.writeUInt(5L);
+        CAMQPEncoder inner = CAMQPEncoder.createRecycledCAMQPEncoder();
+        assertNotSame(outer, inner);
+        inner.writeUInt(6L);
+
+        ChannelBuffer innerBuffer = inner.getEncodedBuffer();
+        ChannelBuffer outerBuffer = outer.getEncodedBuffer();
+        assertEquals(6L, decodeUInt(innerBuffer));
+        assertEquals(5L, decodeUInt(outerBuffer));
+
+        assertNotNull(inner.takeBufferLease());
+        CAMQPBufferLease lease = outer.takeBufferLease();
+        assertNotNull(lease);
+        lease.release();
+        CAMQPEncoder recycled = CAMQPEncoder.createRecycledCAMQPEncoder();
+        assertSame(outer, recycled);
+        recycled.takeBufferLease().release();
+    }
+
+    public void testPoolingDisabled()
+    {
+        CAMQPBufferPool.setPoolingEnabled(false);
+        CAMQPEncoder encoder = CAMQPEncoder.createRecycledCAMQPEncoder();
+        encoder.writeUInt(5L);
+        assertFalse(encoder.getEncodedBuffer().isDirect());
+        assertNull(encoder.takeBufferLease());
+    }
+
+    private static void encodeAndRelease(long deliveryId, CAMQPMessagePayload payload)
+    {
+        CAMQPControlTransfer transfer = new CAMQPControlTransfer();
+        transfer.setHandle(1L);
+        transfer.setDeliveryId(deliveryId);
+        transfer.setDeliveryTag(new byte[] {1, 2, 3, 4});
+
+        CAMQPEncoder encoder = CAMQPEncoder.createRecycledCAMQPEncoder();
+        CAMQPControlTransfer.encode(encoder, transfer);
+        encoder.writePayload(payload);
+        ChannelBuffer encodedBuffer = encoder.getEncodedBuffer();
+
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(encodedBuffer);
+        String controlName = decoder.readSymbol();
+        assertEquals(CAMQPControlTransfer.descriptor, controlName);
+        CAMQPControlTransfer decodedTransfer = CAMQPControlTransfer.decode(decoder);
+        assertEquals(deliveryId, decodedTransfer.getDeliveryId());
+        assertEquals(100, decoder.getPayload().getPayload().readableBytes());
+
+        encoder.takeBufferLease().release();
+    }
+
+    private static long decodeUInt(ChannelBuffer buffer)
+    {
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(buffer);
+        decoder.readFormatCode();
+        return decoder.readUInt();
+    }
+}
@@ -17,19 +17,25 @@
 
 package net.dovemq.transport.protocol;
 
+import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
 import junit.framework.TestCase;
 import net.dovemq.transport.protocol.data.CAMQPControlBegin;
+import net.dovemq.transport.protocol.data.CAMQPControlFlow;
 import net.dovemq.transport.protocol.data.CAMQPControlOpen;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionAccepted;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionError;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionRejected;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionSource;
+import net.dovemq.transport.protocol.data.CAMQPDescriptors;
+import net.dovemq.transport.protocol.data.CAMQPFormatCodes;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 public class CAMQPCodecTest extends TestCase
@@ -499,4 +505,257 @@ public class CAMQPCodecTest extends TestCase
         String outAddress = new String(outBytes);
         assertTrue(address.equalsIgnoreCase(outAddress));
     }
+
+    @Test
+    public void testNumericDescriptor()
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setNextIncomingId(5L);
+        CAMQPControlFlow.encode(encoder, flow);
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+
+        assertEquals(0, buffer.getByte(0));
+        assertEquals((byte) CAMQPFormatCodes.SMALLULONG, buffer.getByte(1));
+        assertEquals((byte) CAMQPDescriptors.FLOW, buffer.getByte(2));
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        assertEquals(CAMQPDescriptors.FLOW, inputPipe.readDescriptorCode());
+        CAMQPControlFlow outputData = CAMQPControlFlow.decode(inputPipe);
+        assertEquals(5L, outputData.getNextIncomingId());
+    }
+
+    @Test
+    public void testSymbolicDescriptorFallback()
+    {
+        CAMQPDescriptors.setNumericDescriptorsEnabled(false);
+        try
+        {
+            CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+            CAMQPControlFlow.encode(encoder, new CAMQPControlFlow());
+            CAMQPControlFlow.encode(encoder, new CAMQPControlFlow());
+            ChannelBuffer buffer = encoder.getEncodedBuffer();
+            assertEquals((byte) CAMQPFormatCodes.SYM8, buffer.getByte(1));
+
+            CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+            inputPipe.take(buffer);
+            assertEquals(CAMQPDescriptors.FLOW, inputPipe.readDescriptorCode());
+            CAMQPControlFlow.decode(inputPipe);
+            assertSame(CAMQPControlFlow.descriptor, inputPipe.readSymbol());
+            CAMQPControlFlow.decode(inputPipe);
+        }
+        finally
+        {
+            CAMQPDescriptors.setNumericDescriptorsEnabled(true);
+        }
+    }
+
+    @Test
+    public void testPreEncodedSymbols()
+    {
+        String symbol = "dovemq:pre-encoded-test:list";
+        ChannelBuffer encodedOnTheFly = encodeSymbolAndConstructor(symbol);
+        CAMQPSymbolTable.register(symbol);
+        ChannelBuffer preEncoded = encodeSymbolAndConstructor(symbol);
+        assertTrue(encodedOnTheFly.equals(preEncoded));
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(preEncoded);
+        assertEquals(symbol, inputPipe.readString(inputPipe.readFormatCode()));
+        assertEquals(symbol, inputPipe.readSymbol());
+        assertEquals(CAMQPFormatCodes.LIST32, inputPipe.readFormatCode());
+    }
+
+    @Test
+    public void testPreEncodedDescriptorsMatchGenericEncoding()
+    {
+        boolean numericDescriptorsEnabled = CAMQPDescriptors.isNumericDescriptorsEnabled();
+        try
+        {
+            for (boolean numeric : new boolean[] {true, false})
+            {
+                CAMQPDescriptors.setNumericDescriptorsEnabled(numeric);
+                for (String symbol : CAMQPDescriptors.getRegisteredSymbols())
+                {
+                    byte[] symbolBytes = symbol.getBytes(CAMQPProtocolConstants.UTF8);
+                    ChannelBuffer expected = ChannelBuffers.dynamicBuffer();
+                    expected.writeByte(CAMQPFormatCodes.SYM8);
+                    expected.writeByte(symbolBytes.length);
+                    expected.writeBytes(symbolBytes);
+                    expected.writeByte(0);
+                    if (numeric)
+                    {
+                        expected.writeByte(CAMQPFormatCodes.SMALLULONG);
+                        expected.writeByte(CAMQPDescriptors.getCode(symbol));
+                    }
+                    else
+                    {
+                        expected.writeByte(CAMQPFormatCodes.SYM8);
+                        expected.writeByte(symbolBytes.length);
+                        expected.writeBytes(symbolBytes);
+                    }
+                    expected.writeByte(CAMQPFormatCodes.LIST32);
+
+                    assertTrue(symbol, expected.equals(encodeSymbolAndConstructor(symbol)));
+                }
+            }
+        }
+        finally
+        {
+            CAMQPDescriptors.setNumericDescriptorsEnabled(numericDescriptorsEnabled);
+        }
+    }
+
+    private static ChannelBuffer encodeSymbolAndConstructor(String symbol)
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.writeSymbol(symbol);
+        encoder.writeSymbolicConstructor(symbol, CAMQPFormatCodes.LIST32);
+        return encoder.getEncodedBuffer();
+    }
+
+    @Test
+    public void testUnknownDescriptor()
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.writeSymbolicConstructor("amqp:unknown:list", CAMQPFormatCodes.LIST8);
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        assertEquals(CAMQPDescriptors.UNKNOWN, inputPipe.readDescriptorCode());
+    }
+
+    @Test
+    public void testCompactIntegerEncodings()
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.writeUInt(0L);
+        encoder.writeUInt(200L);
+        encoder.writeUInt(70000L);
+        encoder.writeULong(BigInteger.ZERO);
+        encoder.writeULong(BigInteger.valueOf(255L));
+        BigInteger maxULong = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        encoder.writeULong(maxULong);
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+        assertEquals(1 + 2 + 5 + 1 + 2 + 9, buffer.readableBytes());
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        assertEquals(CAMQPFormatCodes.UINT0, inputPipe.readFormatCode());
+        assertEquals(0L, inputPipe.readUInt());
+        assertEquals(CAMQPFormatCodes.SMALLUINT, inputPipe.readFormatCode());
+        assertEquals(200L, inputPipe.readUInt());
+        assertEquals(CAMQPFormatCodes.UINT, inputPipe.readFormatCode());
+        assertEquals(70000L, inputPipe.readUInt());
+        assertEquals(CAMQPFormatCodes.ULONG0, inputPipe.readFormatCode());
+        assertEquals(BigInteger.ZERO, inputPipe.readULong());
+        assertEquals(CAMQPFormatCodes.SMALLULONG, inputPipe.readFormatCode());
+        assertEquals(BigInteger.valueOf(255L), inputPipe.readULong());
+        assertEquals(CAMQPFormatCodes.ULONG, inputPipe.readFormatCode());
+        assertEquals(maxULong, inputPipe.readULong());
+    }
+
+    @Test
+    public void testTrailingNullFieldsAreOmitted()
+    {
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setNextIncomingId(5L);
+        flow.setIncomingWindow(10L);
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow.encode(encoder, flow);
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+
+        /*
+         * descriptor (3 bytes), list8 header (3 bytes), smalluint 5,
+         * smalluint 10, and the mandatory next-outgoing-id and
+         * outgoing-window as uint0. The trailing null fields are omitted.
+         */
+        assertEquals(12, buffer.readableBytes());
+        assertEquals((byte) CAMQPFormatCodes.LIST8, buffer.getByte(3));
+        assertEquals(7, buffer.getUnsignedByte(4));
+        assertEquals(4, buffer.getUnsignedByte(5));
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        assertEquals(CAMQPDescriptors.FLOW, inputPipe.readDescriptorCode());
+        CAMQPControlFlow outputData = CAMQPControlFlow.decode(inputPipe);
+        assertEquals(5L, outputData.getNextIncomingId());
+        assertEquals(10L, outputData.getIncomingWindow());
+        assertFalse(outputData.isSetHandle());
+        assertFalse(outputData.getEcho());
+    }
+
+    @Test
+    public void testEmptyListEncodedAsList0()
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPDefinitionAccepted.encode(encoder, new CAMQPDefinitionAccepted());
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+        assertEquals(4, buffer.readableBytes());
+        assertEquals((byte) CAMQPFormatCodes.LIST0, buffer.getByte(3));
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        inputPipe.readDescriptorCode();
+        assertNotNull(CAMQPDefinitionAccepted.decode(inputPipe));
+    }
+
+    @Test
+    public void testList8WidenedToList32()
+    {
+        CAMQPControlOpen data = new CAMQPControlOpen();
+        data.setContainerId(repeat('c', 200));
+        data.setHostname(repeat('h', 200));
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlOpen.encode(encoder, data);
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+
+        int listPosition = buffer.readerIndex() + 3;
+        assertEquals((byte) CAMQPFormatCodes.LIST32, buffer.getByte(listPosition));
+        assertEquals(buffer.writerIndex() - (listPosition + 5), buffer.getInt(listPosition + 1));
+        assertEquals(2, buffer.getInt(listPosition + 5));
+
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        inputPipe.readDescriptorCode();
+        CAMQPControlOpen outputData = CAMQPControlOpen.decode(inputPipe);
+        assertEquals(data.getContainerId(), outputData.getContainerId());
+        assertEquals(data.getHostname(), outputData.getHostname());
+    }
+
+    @Test
+    public void testTakeSplitAtEveryOffset()
+    {
+        CAMQPControlOpen data = new CAMQPControlOpen();
+        data.setContainerId("container-id");
+        data.setHostname("localhost");
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlOpen.encode(encoder, data);
+        encoder.writeUTF8String("trailer");
+        ChannelBuffer buffer = encoder.getEncodedBuffer();
+
+        int size = buffer.readableBytes();
+        for (int splitOffset = 0; splitOffset <= size; splitOffset++)
+        {
+            CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+            inputPipe.take(buffer.slice(0, splitOffset));
+            inputPipe.take(buffer.slice(splitOffset, size - splitOffset));
+            inputPipe.take(ChannelBuffers.EMPTY_BUFFER);
+
+            assertEquals(CAMQPDescriptors.OPEN, inputPipe.readDescriptorCode());
+            CAMQPControlOpen outputData = CAMQPControlOpen.decode(inputPipe);
+            assertEquals("container-id", outputData.getContainerId());
+            assertEquals("localhost", outputData.getHostname());
+            assertEquals("trailer", inputPipe.readString(inputPipe.readFormatCode()));
+        }
+    }
+
+    private static String repeat(char c, int count)
+    {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
 }
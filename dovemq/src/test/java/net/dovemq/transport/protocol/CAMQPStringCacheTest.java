@@ -0,0 +1,119 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.protocol;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+public class CAMQPStringCacheTest extends TestCase
+{
+    public CAMQPStringCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public void testRepeatedPropertiesAreCanonical()
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("routing-tag", "orders.eu");
+        properties.put("content-kind", "json");
+
+        CAMQPStringCache stringCache = CAMQPStringCache.getStringCache();
+        Map<String, String> firstDecoded = decodePropertiesMap(encodePropertiesMap(properties));
+        long hitCount = stringCache.getHitCount();
+        Map<String, String> secondDecoded = decodePropertiesMap(encodePropertiesMap(properties));
+
+        assertEquals(properties, firstDecoded);
+        assertEquals(properties, secondDecoded);
+        assertTrue(stringCache.getHitCount() >= hitCount + 4);
+        for (Map.Entry<String, String> entry : firstDecoded.entrySet())
+        {
+            assertSame(entry.getValue(), secondDecoded.get(entry.getKey()));
+        }
+    }
+
+    public void testNonAsciiString()
+    {
+        String str = "région-日本";
+        assertEquals(str, decodeString(str));
+        assertSame(decodeString(str), decodeString(str));
+    }
+
+    public void testLongStringIsNotCached()
+    {
+        char[] chars = new char[100];
+        Arrays.fill(chars, 'x');
+        String str = new String(chars);
+
+        long missCount = CAMQPStringCache.getStringCache().getMissCount();
+        String firstDecoded = decodeString(str);
+        String secondDecoded = decodeString(str);
+        assertEquals(str, firstDecoded);
+        assertEquals(str, secondDecoded);
+        assertNotSame(firstDecoded, secondDecoded);
+        assertEquals(missCount, CAMQPStringCache.getStringCache().getMissCount());
+    }
+
+    public void testCachingDisabled()
+    {
+        CAMQPStringCache.setCachingEnabled(false);
+        try
+        {
+            String str = "not-cached";
+            assertNotSame(decodeString(str), decodeString(str));
+        }
+        finally
+        {
+            CAMQPStringCache.setCachingEnabled(true);
+        }
+    }
+
+    private static String decodeString(String str)
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.writeUTF8String(str);
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(encoder.getEncodedBuffer());
+        return decoder.readString(decoder.readFormatCode());
+    }
+
+    private static ChannelBuffer encodePropertiesMap(Map<String, String> properties)
+    {
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        encoder.writeMapHeader(properties.size());
+        for (Map.Entry<String, String> entry : properties.entrySet())
+        {
+            encoder.writeSymbol(entry.getKey());
+            encoder.writeUTF8String(entry.getValue());
+        }
+        encoder.fillCompoundSize(properties.size());
+        return encoder.getEncodedBuffer();
+    }
+
+    private static Map<String, String> decodePropertiesMap(ChannelBuffer buffer)
+    {
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(buffer);
+        return decoder.decodePropertiesMap();
+    }
+}
@@ -144,7 +144,7 @@ public class SyncEncodeDecodeTest extends TestCase
                 CAMQPSyncDecoder.createCAMQPSyncDecoder();
         inputPipe.take(buffer);
 
-        assertTrue(CAMQPFormatCodes.LONG == inputPipe.readFormatCode());
+        assertTrue(CAMQPFormatCodes.ULONG == inputPipe.readFormatCode());
         BigInteger output = inputPipe.readULong();
         assertEquals(output.longValue(), 8746L);
     }
@@ -0,0 +1,270 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.dovemq.transport.connection.CAMQPConnectionInterface;
+import net.dovemq.transport.connection.CAMQPConnectionKey;
+import net.dovemq.transport.connection.ConnectionTestUtils;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class CAMQPConnectionPoolTest
+{
+    /**
+     * Connection pool whose new connections are handed over by the test.
+     * openConnection() blocks until the test supplies the next connection.
+     */
+    private static class TestConnectionPool extends CAMQPConnectionPool
+    {
+        private final BlockingQueue<CAMQPConnectionInterface> newConnections = new LinkedBlockingQueue<CAMQPConnectionInterface>();
+
+        private final AtomicInteger openCount = new AtomicInteger(0);
+
+        @Override
+        CAMQPConnectionInterface openConnection(String targetContainerId)
+        {
+            openCount.incrementAndGet();
+            try
+            {
+                return newConnections.take();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new CAMQPSessionException("Interrupted while opening connection");
+            }
+        }
+
+        void waitForOpenCount(int count) throws InterruptedException
+        {
+            while (openCount.get() < count)
+            {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static final String TARGET_CONTAINER_ID = "remoteContainer";
+
+    private Mockery mockContext = null;
+    private TestConnectionPool connectionPool = null;
+    private ExecutorService executor = null;
+
+    @BeforeClass
+    public static void setupBeforeClass()
+    {
+        CAMQPSessionManager.initialize();
+    }
+
+    @AfterClass
+    public static void teardownAfterClass()
+    {
+        CAMQPSessionManager.shutdown();
+    }
+
+    @Before
+    public void setup()
+    {
+        mockContext = new Mockery();
+        connectionPool = new TestConnectionPool();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        mockContext.assertIsSatisfied();
+    }
+
+    @Test
+    public void testLeastLoadedConnectionIsSelected()
+    {
+        int poolSize = 3;
+        CAMQPConnectionInterface connectionA = createMockConnection("A", 5000);
+        CAMQPConnectionInterface connectionB = createMockConnection("B", 100);
+        CAMQPConnectionInterface connectionC = createMockConnection("C", 1000);
+
+        assertSame(connectionA, getConnectionAndPlaceSession(connectionA, poolSize));
+        assertSame(connectionB, getConnectionAndPlaceSession(connectionB, poolSize));
+        assertSame(connectionC, getConnectionAndPlaceSession(connectionC, poolSize));
+        assertEquals(3, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+
+        /*
+         * The pool is full: the least loaded connection is selected, and the
+         * session being placed on it counts in its load.
+         */
+        assertSame(connectionB, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertSame(connectionC, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertSame(connectionA, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertEquals(3, connectionPool.openCount.get());
+    }
+
+    @Test
+    public void testSessionsBeingPlacedAreSpreadOverPool()
+    {
+        int poolSize = 2;
+        CAMQPConnectionInterface connectionA = createMockConnection("A", 0);
+        CAMQPConnectionInterface connectionB = createMockConnection("B", 0);
+        connectionPool.newConnections.add(connectionA);
+        connectionPool.newConnections.add(connectionB);
+
+        /*
+         * An idle connection is not handed out to a second session while the
+         * first one is still being placed on it.
+         */
+        assertSame(connectionA, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertSame(connectionB, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertSame(connectionA, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertEquals(2, connectionPool.openCount.get());
+
+        connectionPool.sessionPlaced(TARGET_CONTAINER_ID, connectionA);
+        connectionPool.sessionPlaced(TARGET_CONTAINER_ID, connectionA);
+        connectionPool.sessionPlaced(TARGET_CONTAINER_ID, connectionB);
+        assertSame(connectionA, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertEquals(2, connectionPool.openCount.get());
+    }
+
+    @Test
+    public void testPendingConnectCountsTowardsPoolSize() throws Exception
+    {
+        final int poolSize = 2;
+        CAMQPConnectionInterface connectionA = createMockConnection("A", 5000);
+        CAMQPConnectionInterface connectionB = createMockConnection("B", 0);
+        assertSame(connectionA, getConnectionAndPlaceSession(connectionA, poolSize));
+
+        Future<CAMQPConnectionInterface> pendingConnect = submitGetConnection(poolSize);
+        connectionPool.waitForOpenCount(2);
+
+        /*
+         * The pool has one connection, and another one being opened
+         */
+        assertSame(connectionA, connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize));
+        assertEquals(2, connectionPool.openCount.get());
+
+        connectionPool.newConnections.add(connectionB);
+        assertSame(connectionB, pendingConnect.get(5, TimeUnit.SECONDS));
+        assertEquals(2, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+    }
+
+    @Test
+    public void testNewConnectionClosedIfPoolFilledMeanwhile() throws Exception
+    {
+        final int poolSize = 1;
+        CAMQPConnectionInterface connectionA = createMockConnection("A", 0);
+        final CAMQPConnectionInterface connectionB = createMockConnection("B", 0);
+        mockContext.checking(new Expectations()
+            {{
+                oneOf(connectionB).closeAsync();
+            }}
+        );
+
+        Future<CAMQPConnectionInterface> firstConnect = submitGetConnection(poolSize);
+        connectionPool.waitForOpenCount(1);
+        Future<CAMQPConnectionInterface> secondConnect = submitGetConnection(poolSize);
+        connectionPool.waitForOpenCount(2);
+
+        connectionPool.newConnections.add(connectionA);
+        while (connectionPool.getConnectionCount(TARGET_CONTAINER_ID) == 0)
+        {
+            Thread.sleep(10);
+        }
+        connectionPool.newConnections.add(connectionB);
+
+        assertSame(connectionA, firstConnect.get(5, TimeUnit.SECONDS));
+        assertSame(connectionA, secondConnect.get(5, TimeUnit.SECONDS));
+        assertEquals(1, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+    }
+
+    @Test
+    public void testClosedConnectionIsRemoved()
+    {
+        int poolSize = 2;
+        CAMQPConnectionInterface connectionA = createMockConnection("A", 5000);
+        CAMQPConnectionInterface connectionB = createMockConnection("B", 5000);
+        CAMQPConnectionInterface connectionC = createMockConnection("C", 5000);
+        assertSame(connectionA, getConnectionAndPlaceSession(connectionA, poolSize));
+        assertSame(connectionB, getConnectionAndPlaceSession(connectionB, poolSize));
+
+        connectionPool.connectionClosed(ConnectionTestUtils.createConnectionKey("unknown"));
+        assertEquals(2, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+
+        connectionPool.connectionClosed(connectionB.getKey());
+        assertEquals(1, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+
+        connectionPool.sessionPlaced(TARGET_CONTAINER_ID, connectionB);
+        assertSame(connectionC, getConnectionAndPlaceSession(connectionC, poolSize));
+        assertEquals(2, connectionPool.getConnectionCount(TARGET_CONTAINER_ID));
+        assertFalse(connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize) == connectionB);
+    }
+
+    private CAMQPConnectionInterface createMockConnection(String name, final long outboundBytes)
+    {
+        final CAMQPConnectionInterface connection = mockContext.mock(CAMQPConnectionInterface.class, name);
+        final CAMQPConnectionKey key = ConnectionTestUtils.createConnectionKey(name);
+        mockContext.checking(new Expectations()
+            {{
+                allowing(connection).getKey();will(returnValue(key));
+                allowing(connection).getOutboundBytes();will(returnValue(outboundBytes));
+            }}
+        );
+        return connection;
+    }
+
+    /**
+     * Supplies the connection to be opened next, and places a session on
+     * the selected connection.
+     */
+    private CAMQPConnectionInterface getConnectionAndPlaceSession(CAMQPConnectionInterface newConnection, int poolSize)
+    {
+        connectionPool.newConnections.add(newConnection);
+        CAMQPConnectionInterface connection = connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize);
+        connectionPool.sessionPlaced(TARGET_CONTAINER_ID, connection);
+        return connection;
+    }
+
+    private Future<CAMQPConnectionInterface> submitGetConnection(final int poolSize)
+    {
+        return executor.submit(new Callable<CAMQPConnectionInterface>() {
+            @Override
+            public CAMQPConnectionInterface call()
+            {
+                return connectionPool.getConnection(TARGET_CONTAINER_ID, poolSize);
+            }
+        });
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.dovemq.transport.link.CAMQPLinkMessageHandler;
+
+import org.junit.Test;
+
+public class CAMQPDeliveryIndexTest
+{
+    private final CAMQPLinkMessageHandler linkA = new MockLinkReceiver(null);
+
+    private final CAMQPLinkMessageHandler linkB = new MockLinkReceiver(null);
+
+    @Test
+    public void testConsecutiveDeliveriesFormOneRange()
+    {
+        CAMQPDeliveryIndex index = new CAMQPDeliveryIndex();
+        for (long deliveryId = 0; deliveryId < 10000; deliveryId++)
+        {
+            index.add(deliveryId, linkA);
+            index.add(deliveryId, linkA);
+        }
+        assertEquals(1, index.getRangeCount());
+
+        List<CAMQPDeliveryIndex.DeliveryRange> ranges = index.getRanges(100, 20000);
+        assertEquals(1, ranges.size());
+        assertRange(ranges.get(0), 100, 9999, linkA);
+    }
+
+    @Test
+    public void testInterleavedDeliveriesAreRoutedToOwningLink()
+    {
+        CAMQPDeliveryIndex index = new CAMQPDeliveryIndex();
+        index.add(0, linkA);
+        index.add(1, linkA);
+        index.add(2, linkB);
+        index.add(3, linkB);
+        index.add(5, linkA);
+        index.add(4, linkA);
+
+        List<CAMQPDeliveryIndex.DeliveryRange> ranges = index.getRanges(1, 10);
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 1, 1, linkA);
+        assertRange(ranges.get(1), 2, 3, linkB);
+        assertRange(ranges.get(2), 4, 5, linkA);
+        assertTrue(index.getRanges(6, 10).isEmpty());
+    }
+
+    @Test
+    public void testSettledDeliveriesAreRemoved()
+    {
+        CAMQPDeliveryIndex index = new CAMQPDeliveryIndex();
+        for (long deliveryId = 0; deliveryId < 100; deliveryId++)
+        {
+            index.add(deliveryId, (deliveryId < 50) ? linkA : linkB);
+        }
+
+        index.remove(10, 19);
+        index.remove(0, 0);
+        List<CAMQPDeliveryIndex.DeliveryRange> ranges = index.getRanges(0, 99);
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 1, 9, linkA);
+        assertRange(ranges.get(1), 20, 49, linkA);
+        assertRange(ranges.get(2), 50, 99, linkB);
+
+        index.remove(linkA);
+        ranges = index.getRanges(0, 99);
+        assertEquals(1, ranges.size());
+        assertRange(ranges.get(0), 50, 99, linkB);
+
+        index.remove(40, 99);
+        assertEquals(0, index.getRangeCount());
+    }
+
+    @Test
+    public void testDeliveriesAfterSettlementOfTail()
+    {
+        CAMQPDeliveryIndex index = new CAMQPDeliveryIndex();
+        for (long deliveryId = 0; deliveryId < 10; deliveryId++)
+        {
+            index.add(deliveryId, linkA);
+        }
+        index.remove(5, 9);
+        index.add(10, linkA);
+        index.add(11, linkA);
+        index.add(5, linkB);
+
+        List<CAMQPDeliveryIndex.DeliveryRange> ranges = index.getRanges(0, 20);
+        assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 0, 4, linkA);
+        assertRange(ranges.get(1), 5, 5, linkB);
+        assertRange(ranges.get(2), 10, 11, linkA);
+
+        index.clear();
+        index.add(12, linkB);
+        index.add(13, linkB);
+        assertEquals(1, index.getRangeCount());
+        assertRange(index.getRanges(0, 20).get(0), 12, 13, linkB);
+    }
+
+    private static void assertRange(CAMQPDeliveryIndex.DeliveryRange range, long first, long last, CAMQPLinkMessageHandler linkEndpoint)
+    {
+        assertEquals(first, range.first);
+        assertEquals(last, range.last);
+        assertSame(linkEndpoint, range.linkEndpoint);
+    }
+}
@@ -17,19 +17,26 @@
 
 package net.dovemq.transport.session;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import net.dovemq.transport.protocol.data.CAMQPDefinitionAccepted;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionModified;
 import net.dovemq.transport.protocol.data.CAMQPDefinitionRejected;
 import net.dovemq.transport.session.CAMQPDispositionSender.DispositionRange;
+import net.dovemq.transport.session.CAMQPDispositionSender.DispositionWindow;
 
 import org.junit.After;
 import org.junit.Before;
@@ -70,7 +77,8 @@ public class CAMQPDispositionRangeTest
     @Test
     public void testDispositionRange() throws IOException
     {
-        List<DispositionRange> dispositionRanges = new LinkedList<DispositionRange>();
+        DispositionWindow dispositionWindow = new DispositionWindow();
+        Map<Long, DispositionRange> expectedDispositions = new TreeMap<Long, DispositionRange>();
         InputStream ins = getClass().getClassLoader().getResourceAsStream("input.txt");
 
         BufferedReader fis = new BufferedReader(new InputStreamReader(ins));
@@ -95,9 +103,75 @@ public class CAMQPDispositionRangeTest
                 else if (outcomeStr.equalsIgnoreCase("r"))
                     outcome = new CAMQPDefinitionRejected();
 
-                CAMQPDispositionSender.addDisposition(val, settled, outcome, dispositionRanges);
+                dispositionWindow.add(val, settled, outcome);
+                expectedDispositions.put(val, new DispositionRange(val, val, settled, outcome));
             }
         }
         fis.close();
+
+        int rangeCount = dispositionWindow.getRangeCount();
+        List<DispositionRange> dispositionRanges = dispositionWindow.drain();
+        assertEquals(rangeCount, dispositionRanges.size());
+        assertTrue(dispositionWindow.isEmpty());
+
+        int numDeliveryIds = 0;
+        DispositionRange prevRange = null;
+        for (DispositionRange range : dispositionRanges)
+        {
+            assertTrue(range.getMin() <= range.getMax());
+            if (prevRange != null)
+            {
+                assertTrue(prevRange.getMax() < range.getMin());
+                if (prevRange.getMax() + 1 == range.getMin())
+                {
+                    assertFalse(prevRange.isCompatible(range.isSettled(), range.getOutcome()));
+                }
+            }
+            for (long deliveryId = range.getMin(); deliveryId <= range.getMax(); deliveryId++)
+            {
+                DispositionRange expected = expectedDispositions.get(deliveryId);
+                assertNotNull(expected);
+                assertTrue(range.isCompatible(expected.isSettled(), expected.getOutcome()));
+                numDeliveryIds++;
+            }
+            prevRange = range;
+        }
+        assertEquals(expectedDispositions.size(), numDeliveryIds);
+    }
+
+    @Test
+    public void testDispositionWindowCoalescing()
+    {
+        int numDeliveryIds = 10000;
+        List<Long> deliveryIds = new ArrayList<Long>();
+        for (long deliveryId = 1000; deliveryId < 1000 + numDeliveryIds; deliveryId++)
+        {
+            deliveryIds.add(deliveryId);
+        }
+        Collections.shuffle(deliveryIds);
+
+        DispositionWindow dispositionWindow = new DispositionWindow();
+        for (Long deliveryId : deliveryIds)
+        {
+            dispositionWindow.add(deliveryId, true, new CAMQPDefinitionAccepted());
+        }
+        assertEquals(numDeliveryIds, dispositionWindow.getCount());
+        assertEquals(1, dispositionWindow.getRangeCount());
+
+        dispositionWindow.add(5000, true, new CAMQPDefinitionRejected());
+        assertEquals(numDeliveryIds, dispositionWindow.getCount());
+        assertEquals(3, dispositionWindow.getRangeCount());
+
+        List<DispositionRange> dispositionRanges = dispositionWindow.drain();
+        assertEquals(3, dispositionRanges.size());
+        assertEquals(1000, dispositionRanges.get(0).getMin());
+        assertEquals(4999, dispositionRanges.get(0).getMax());
+        assertEquals(5000, dispositionRanges.get(1).getMin());
+        assertEquals(5000, dispositionRanges.get(1).getMax());
+        assertEquals(5001, dispositionRanges.get(2).getMin());
+        assertEquals(1000 + numDeliveryIds - 1, dispositionRanges.get(2).getMax());
+
+        assertTrue(dispositionWindow.fits(1L << 40));
+        assertTrue(dispositionWindow.drain().isEmpty());
     }
 }
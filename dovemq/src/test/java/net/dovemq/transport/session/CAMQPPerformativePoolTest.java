@@ -0,0 +1,161 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import net.dovemq.transport.protocol.CAMQPEncoder;
+import net.dovemq.transport.protocol.CAMQPSyncDecoder;
+import net.dovemq.transport.protocol.data.CAMQPControlFlow;
+import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+import net.dovemq.transport.protocol.data.CAMQPDefinitionAccepted;
+import net.dovemq.transport.protocol.data.CAMQPDefinitionDeliveryState;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+public class CAMQPPerformativePoolTest
+{
+    private static final int ITERATIONS = 10000;
+
+    private static volatile Object sink = null;
+
+    @Test
+    public void testPooledInstancesAreReused()
+    {
+        CAMQPPerformativePool pool = new CAMQPPerformativePool();
+        CAMQPControlFlow flow = pool.acquireFlow();
+        CAMQPControlFlow echoedFlow = pool.acquireFlow();
+        assertNotSame(flow, echoedFlow);
+
+        flow.setEcho(true);
+        pool.releaseFlow(flow);
+        pool.releaseFlow(echoedFlow);
+
+        CAMQPControlFlow reusedFlow = pool.acquireFlow();
+        assertTrue((reusedFlow == flow) || (reusedFlow == echoedFlow));
+        assertFalse(reusedFlow.isSetEcho());
+        assertFalse(reusedFlow.getEcho());
+    }
+
+    @Test
+    public void testDecodeIntoPooledTransfer()
+    {
+        CAMQPPerformativePool pool = new CAMQPPerformativePool();
+        CAMQPControlTransfer transfer = pool.acquireTransfer();
+        assertSame(transfer, decode(encodeTransfer(5L, true), transfer));
+        assertEquals(5L, transfer.getDeliveryId());
+        assertTrue(transfer.getSettled());
+        assertNotNull(transfer.getState());
+
+        assertSame(transfer, decode(encodeTransfer(6L, false), transfer));
+        assertEquals(6L, transfer.getDeliveryId());
+        assertFalse(transfer.getSettled());
+        assertNull(transfer.getState());
+        pool.releaseTransfer(transfer);
+        assertSame(transfer, pool.acquireTransfer());
+    }
+
+    /**
+     * Decoding into a pooled transfer should allocate less than decoding
+     * into a new transfer. Skipped if the JVM does not report per-thread
+     * allocation.
+     */
+    @Test
+    public void testPooledTransferDecodeAllocation()
+    {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean))
+        {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled())
+        {
+            return;
+        }
+
+        ChannelBuffer encodedTransfer = encodeTransfer(5L, false);
+        CAMQPPerformativePool pool = new CAMQPPerformativePool();
+        long threadId = Thread.currentThread().getId();
+
+        decodeRepeatedly(encodedTransfer, pool);
+        decodeRepeatedly(encodedTransfer, null);
+
+        long startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        decodeRepeatedly(encodedTransfer, pool);
+        long pooledBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        startBytes = allocationBean.getThreadAllocatedBytes(threadId);
+        decodeRepeatedly(encodedTransfer, null);
+        long unpooledBytes = allocationBean.getThreadAllocatedBytes(threadId) - startBytes;
+
+        assertTrue(pooledBytes < unpooledBytes);
+    }
+
+    private static void decodeRepeatedly(ChannelBuffer encodedTransfer, CAMQPPerformativePool pool)
+    {
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            if (pool != null)
+            {
+                CAMQPControlTransfer transfer = decode(encodedTransfer, pool.acquireTransfer());
+                sink = transfer;
+                pool.releaseTransfer(transfer);
+            }
+            else
+            {
+                sink = decode(encodedTransfer, new CAMQPControlTransfer());
+            }
+        }
+    }
+
+    private static CAMQPControlTransfer decode(ChannelBuffer encodedTransfer, CAMQPControlTransfer transfer)
+    {
+        CAMQPSyncDecoder decoder = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        decoder.take(encodedTransfer.duplicate());
+        decoder.readSymbol();
+        return CAMQPControlTransfer.decode(decoder, transfer);
+    }
+
+    private static ChannelBuffer encodeTransfer(long deliveryId, boolean settled)
+    {
+        CAMQPControlTransfer transfer = new CAMQPControlTransfer();
+        transfer.setHandle(1L);
+        transfer.setDeliveryId(deliveryId);
+        transfer.setDeliveryTag(new byte[] {1, 2, 3, 4});
+        transfer.setSettled(settled);
+        if (settled)
+        {
+            CAMQPDefinitionDeliveryState deliveryState = new CAMQPDefinitionDeliveryState();
+            deliveryState.setOutcome(new CAMQPDefinitionAccepted());
+            transfer.setState(deliveryState);
+        }
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlTransfer.encode(encoder, transfer);
+        return encoder.getEncodedBuffer();
+    }
+}
@@ -18,10 +18,14 @@
 package net.dovemq.transport.session;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -101,6 +105,7 @@ public class CAMQPSessionReceiverTest
     public void tearDown()
     {
         executor.shutdown();
+        CAMQPSessionManager.setAdaptiveWindowEnabled(true);
         mockContext.assertIsSatisfied();
         session = null;
         mockConnection = null;
@@ -170,6 +175,37 @@ public class CAMQPSessionReceiverTest
         assertEquals(true, linkReceiver.linkFlowFrameReceived);
     }
 
+    @Test(timeout=120000L)
+    public void testSessionReceiveFrameBatch()
+    {
+        sendAttachedFrame();
+
+        List<CAMQPFrame> frames = new ArrayList<CAMQPFrame>();
+        for (long deliveryId = 0; deliveryId < 3; deliveryId++)
+        {
+            CAMQPControlTransfer transfer = new CAMQPControlTransfer();
+            transfer.setHandle(linkHandle);
+            transfer.setDeliveryId(deliveryId);
+
+            CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+            CAMQPControlTransfer.encode(encoder, transfer);
+            encoder.writePayload(new CAMQPMessagePayload(new byte[1024]));
+            frames.add(createFrame(encoder, 1));
+        }
+
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setOutgoingWindow(256L);
+        flow.setIncomingWindow(256L);
+        flow.setHandle(linkHandle);
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow.encode(encoder, flow);
+        frames.add(createFrame(encoder, 1));
+
+        session.framesReceived(frames);
+        assertEquals(2, linkReceiver.lastTransferIdReceived);
+        assertEquals(true, linkReceiver.linkFlowFrameReceived);
+    }
+
     @Test(timeout=120000L)
     public void testSessionReceiveTransferFramesInduceFlowControl() throws InterruptedException
     {
@@ -189,6 +225,79 @@ public class CAMQPSessionReceiverTest
         getAndAssertFlowFrames();
     }
 
+    @Test(timeout=120000L)
+    public void testShrunkIncomingWindowIsWithheld() throws InterruptedException
+    {
+        long maxWindowSize = CAMQPSessionManager.getMaxIncomingWindowSize();
+        assertEquals(maxWindowSize, session.getIncomingWindowSize());
+
+        /*
+         * Acking half of the window advertises it, with an echo request
+         */
+        long transferId = 0;
+        while (transferId < maxWindowSize / 2)
+        {
+            session.ackTransfer(transferId++);
+        }
+        CAMQPControlFlow flow = pollFlowFrame();
+        assertTrue(flow.isSetEcho() && flow.getEcho());
+        assertEquals(maxWindowSize + maxWindowSize / 2, flow.getIncomingWindow());
+
+        /*
+         * Prompt echo, and slow consumption: the window shrinks
+         */
+        sendFlowFrame(1, false);
+        Thread.sleep(200);
+        session.ackTransfer(transferId++);
+        long windowSize = session.getIncomingWindowSize();
+        assertTrue(windowSize < maxWindowSize);
+        CAMQPSessionManager.setAdaptiveWindowEnabled(false);
+
+        /*
+         * The acks replenish the withheld window first, so there is nothing
+         * to advertise.
+         */
+        for (long i = 0; i < maxWindowSize - windowSize; i++)
+        {
+            session.ackTransfer(transferId++);
+        }
+        assertTrue(incomingFrames.isEmpty());
+
+        /*
+         * Then the incoming window, which is advertised once half of the
+         * shrunk window has opened up.
+         */
+        for (long i = 0; i < windowSize / 2 - 1; i++)
+        {
+            session.ackTransfer(transferId++);
+        }
+        flow = pollFlowFrame();
+        assertTrue(flow.isSetEcho() && flow.getEcho());
+        assertEquals(maxWindowSize + maxWindowSize / 2 + windowSize / 2, flow.getIncomingWindow());
+
+        /*
+         * No echo request while the previous one is outstanding
+         */
+        for (long i = 0; i < windowSize / 2; i++)
+        {
+            session.ackTransfer(transferId++);
+        }
+        flow = pollFlowFrame();
+        assertFalse(flow.isSetEcho() && flow.getEcho());
+        assertEquals(maxWindowSize + maxWindowSize / 2 + (windowSize / 2) * 2, flow.getIncomingWindow());
+        assertTrue(incomingFrames.isEmpty());
+    }
+
+    private CAMQPControlFlow pollFlowFrame() throws InterruptedException
+    {
+        ChannelBuffer buffer = incomingFrames.poll(5, TimeUnit.SECONDS);
+        assertNotNull(buffer);
+        CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+        inputPipe.take(buffer);
+        assertEquals(CAMQPControlFlow.descriptor, inputPipe.readSymbol());
+        return CAMQPControlFlow.decode(inputPipe);
+    }
+
     private static class TransferFrameSender implements Runnable
     {
         private int numTransferFramesToSend;
@@ -316,10 +425,15 @@ public class CAMQPSessionReceiverTest
     }
 
     private void sendFrame(CAMQPEncoder encoder, int channelId)
+    {
+        session.frameReceived(createFrame(encoder, channelId));
+    }
+
+    private static CAMQPFrame createFrame(CAMQPEncoder encoder, int channelId)
     {
         ChannelBuffer frameBody = encoder.getEncodedBuffer();
         CAMQPFrameHeader frameHeader = CAMQPFrameHeader.createFrameHeader(channelId, frameBody.readableBytes());
-        session.frameReceived(new CAMQPFrame(frameHeader, frameBody));
+        return new CAMQPFrame(frameHeader, frameBody);
     }
 
     private void getAndAssertFlowFrames() throws InterruptedException
@@ -18,6 +18,8 @@
 package net.dovemq.transport.session;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
@@ -45,6 +47,7 @@ import net.dovemq.transport.protocol.data.CAMQPControlAttach;
 import net.dovemq.transport.protocol.data.CAMQPControlDetach;
 import net.dovemq.transport.protocol.data.CAMQPControlFlow;
 import net.dovemq.transport.protocol.data.CAMQPControlTransfer;
+import net.dovemq.transport.utils.CAMQPThreadPool;
 
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jmock.Expectations;
@@ -249,6 +252,168 @@ public class CAMQPSessionSenderTest
         sendTransfers(numLinks, numTransfersPerLink);
     };
 
+    /**
+     * Many links enqueue transfers concurrently: every transfer is sent
+     * exactly once, and the transfers of each link are sent in order.
+     */
+    @Test(timeout=120000L)
+    public void testConcurrentTransfersSentOnceInLinkOrder() throws InterruptedException
+    {
+        final int numLinks = 8;
+        final int numTransfersPerLink = 500;
+        final CountDownLatch latch = new CountDownLatch(1);
+        for (int i = 0; i < numLinks; i++)
+        {
+            final long linkHandle = i;
+            executor.submit(new Runnable() {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        latch.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    CAMQPLinkSenderInterface linkSender = new MockLinkSender();
+                    for (long sequence = 0; sequence < numTransfersPerLink; sequence++)
+                    {
+                        session.sendTransfer(createTransferFrame(linkHandle, sequence), new CAMQPMessagePayload(new byte[64]), linkSender);
+                    }
+                }
+            });
+        }
+        latch.countDown();
+
+        long[] nextExpectedSequence = new long[numLinks];
+        for (int i = 0; i < numLinks * numTransfersPerLink; i++)
+        {
+            CAMQPControlTransfer transfer = pollTransferFrame(5000);
+            assertNotNull(transfer);
+            int linkHandle = (int) transfer.getHandle();
+            assertEquals(nextExpectedSequence[linkHandle], transfer.getDeliveryId());
+            nextExpectedSequence[linkHandle]++;
+        }
+        assertNull(pollTransferFrame(500));
+        for (int i = 0; i < numLinks; i++)
+        {
+            assertEquals(numTransfersPerLink, nextExpectedSequence[i]);
+        }
+    }
+
+    /**
+     * Transfers parked while the remote incoming window is closed are sent
+     * once a flow frame reopens the window.
+     */
+    @Test
+    public void testParkedTransfersResumeWhenWindowReopens() throws InterruptedException
+    {
+        int numTransfers = 10;
+        receiveSessionFlowFrame(0, 0);
+
+        CAMQPLinkSenderInterface linkSender = new MockLinkSender();
+        for (long sequence = 0; sequence < numTransfers; sequence++)
+        {
+            session.sendTransfer(createTransferFrame(1, sequence), new CAMQPMessagePayload(new byte[64]), linkSender);
+        }
+        assertNull(pollTransferFrame(500));
+
+        long sequence = 0;
+        receiveSessionFlowFrame(0, 4);
+        for (; sequence < 4; sequence++)
+        {
+            CAMQPControlTransfer transfer = pollTransferFrame(5000);
+            assertNotNull(transfer);
+            assertEquals(sequence, transfer.getDeliveryId());
+        }
+        assertNull(pollTransferFrame(500));
+
+        receiveSessionFlowFrame(4, 100);
+        for (; sequence < numTransfers; sequence++)
+        {
+            CAMQPControlTransfer transfer = pollTransferFrame(5000);
+            assertNotNull(transfer);
+            assertEquals(sequence, transfer.getDeliveryId());
+        }
+        assertNull(pollTransferFrame(500));
+    }
+
+    /**
+     * A send task sends up to MAX_TRANSFERS_PER_SEND_TASK transfers, and then
+     * hands the sending over to a new send task.
+     */
+    @Test
+    public void testSendTaskHandsOffAfterMaxTransfers() throws InterruptedException
+    {
+        int numTransfers = 2 * CAMQPSessionConstants.MAX_TRANSFERS_PER_SEND_TASK + 10;
+        receiveSessionFlowFrame(0, 0);
+
+        CAMQPLinkSenderInterface linkSender = new MockLinkSender();
+        for (long sequence = 0; sequence < numTransfers; sequence++)
+        {
+            session.sendTransfer(createTransferFrame(1, sequence), new CAMQPMessagePayload(new byte[64]), linkSender);
+        }
+        assertNull(pollTransferFrame(500));
+
+        CAMQPThreadPool sendExecutor = (CAMQPThreadPool) session.getSendExecutor();
+        long submittedTaskCount = sendExecutor.getSubmittedTaskCount();
+        receiveSessionFlowFrame(0, CAMQPSessionConstants.DEFAULT_INCOMING_WINDOW_SIZE);
+        for (long sequence = 0; sequence < numTransfers; sequence++)
+        {
+            CAMQPControlTransfer transfer = pollTransferFrame(5000);
+            assertNotNull(transfer);
+            assertEquals(sequence, transfer.getDeliveryId());
+        }
+        assertNull(pollTransferFrame(500));
+        assertEquals(3, sendExecutor.getSubmittedTaskCount() - submittedTaskCount);
+    }
+
+    private static CAMQPControlTransfer createTransferFrame(long linkHandle, long sequence)
+    {
+        CAMQPControlTransfer transfer = new CAMQPControlTransfer();
+        transfer.setHandle(linkHandle);
+        transfer.setDeliveryId(sequence);
+        return transfer;
+    }
+
+    /**
+     * Returns the next transfer frame sent on the connection, skipping the
+     * other frames, or null if none is sent within the timeout.
+     */
+    private CAMQPControlTransfer pollTransferFrame(long timeout) throws InterruptedException
+    {
+        while (true)
+        {
+            ChannelBuffer buffer = outgoingFrames.poll(timeout, TimeUnit.MILLISECONDS);
+            if (buffer == null)
+            {
+                return null;
+            }
+            CAMQPSyncDecoder inputPipe = CAMQPSyncDecoder.createCAMQPSyncDecoder();
+            inputPipe.take(buffer);
+            if (inputPipe.readSymbol().equalsIgnoreCase(CAMQPControlTransfer.descriptor))
+            {
+                return CAMQPControlTransfer.decode(inputPipe);
+            }
+        }
+    }
+
+    private void receiveSessionFlowFrame(long nextIncomingId, long incomingWindow)
+    {
+        CAMQPControlFlow flow = new CAMQPControlFlow();
+        flow.setNextIncomingId(nextIncomingId);
+        flow.setIncomingWindow(incomingWindow);
+        flow.setEcho(false);
+
+        CAMQPEncoder encoder = CAMQPEncoder.createCAMQPEncoder();
+        CAMQPControlFlow.encode(encoder, flow);
+        ChannelBuffer frameBody = encoder.getEncodedBuffer();
+        CAMQPFrameHeader frameHeader = CAMQPFrameHeader.createFrameHeader(0, frameBody.readableBytes());
+        session.frameReceived(new CAMQPFrame(frameHeader, frameBody));
+    }
+
     private void sendTransfers(int numLinks, int numTransfersPerLink) throws InterruptedException
     {
         CountDownLatch latch = new CountDownLatch(1);
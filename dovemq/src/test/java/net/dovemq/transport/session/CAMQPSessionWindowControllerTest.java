@@ -0,0 +1,131 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CAMQPSessionWindowControllerTest
+{
+    private static final long MAX_WINDOW_SIZE = 16384;
+
+    @After
+    public void tearDown()
+    {
+        CAMQPSessionManager.setAdaptiveWindowEnabled(true);
+    }
+
+    @Test
+    public void testWindowIsMaxUntilMeasured()
+    {
+        CAMQPSessionWindowController controller = new CAMQPSessionWindowController(MAX_WINDOW_SIZE);
+        assertEquals(MAX_WINDOW_SIZE, controller.getWindowSize());
+        assertEquals(MAX_WINDOW_SIZE, consume(controller, 0, 1000, 10000));
+    }
+
+    @Test
+    public void testLowLatencySessionShrinksWindow()
+    {
+        CAMQPSessionWindowController controller = new CAMQPSessionWindowController(MAX_WINDOW_SIZE);
+        measureRtt(controller, 0, TimeUnit.MICROSECONDS.toNanos(500));
+
+        /*
+         * 10000 transfers per second, 0.5 ms round-trip: the bandwidth-delay
+         * product is 5 transfers, so the window shrinks to its minimum.
+         */
+        long windowSize = consume(controller, TimeUnit.MILLISECONDS.toNanos(1), 10000, 5000);
+        assertEquals(CAMQPSessionConstants.MIN_SESSION_WINDOW_SIZE, windowSize);
+    }
+
+    @Test
+    public void testHighLatencySessionGrowsWindow()
+    {
+        CAMQPSessionWindowController controller = new CAMQPSessionWindowController(MAX_WINDOW_SIZE);
+        measureRtt(controller, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        consume(controller, TimeUnit.MILLISECONDS.toNanos(2), 10000, 5000);
+        assertEquals(CAMQPSessionConstants.MIN_SESSION_WINDOW_SIZE, controller.getWindowSize());
+
+        /*
+         * 200 ms round-trip at 10000 transfers per second: the window grows
+         * to twice the bandwidth-delay product, bounded by the max window
+         * size.
+         */
+        long now = TimeUnit.SECONDS.toNanos(1);
+        for (int i = 0; i < 20; i++)
+        {
+            measureRtt(controller, now, TimeUnit.MILLISECONDS.toNanos(200));
+            now += TimeUnit.MILLISECONDS.toNanos(200);
+        }
+        assertTrue(controller.getSmoothedRtt() > TimeUnit.MILLISECONDS.toNanos(150));
+        long windowSize = consume(controller, now, 10000, 2000);
+        assertTrue(windowSize > 2000);
+        assertTrue(windowSize <= 4000);
+
+        measureRtt(controller, now, TimeUnit.SECONDS.toNanos(10));
+        windowSize = consume(controller, now + TimeUnit.SECONDS.toNanos(10), 10000, 2000);
+        assertEquals(MAX_WINDOW_SIZE, windowSize);
+    }
+
+    @Test
+    public void testAdaptiveWindowDisabled()
+    {
+        CAMQPSessionManager.setAdaptiveWindowEnabled(false);
+        CAMQPSessionWindowController controller = new CAMQPSessionWindowController(MAX_WINDOW_SIZE);
+        measureRtt(controller, 0, TimeUnit.MICROSECONDS.toNanos(500));
+        assertEquals(MAX_WINDOW_SIZE, consume(controller, TimeUnit.MILLISECONDS.toNanos(1), 10000, 5000));
+    }
+
+    @Test
+    public void testOneOutstandingEchoRequest()
+    {
+        CAMQPSessionWindowController controller = new CAMQPSessionWindowController(MAX_WINDOW_SIZE);
+        assertTrue(controller.requestEcho(0));
+        assertFalse(controller.requestEcho(1000));
+        controller.echoReceived(TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(5), controller.getSmoothedRtt());
+        assertTrue(controller.requestEcho(TimeUnit.MILLISECONDS.toNanos(6)));
+    }
+
+    private static void measureRtt(CAMQPSessionWindowController controller, long now, long rtt)
+    {
+        controller.requestEcho(now);
+        controller.echoReceived(now + rtt);
+    }
+
+    /**
+     * Acks transfers at the given rate, starting at now.
+     *
+     * @return the window size after the last ack
+     */
+    private static long consume(CAMQPSessionWindowController controller, long now, int transfersPerSecond, int transferCount)
+    {
+        long interval = TimeUnit.SECONDS.toNanos(1) / transfersPerSecond;
+        long windowSize = controller.getWindowSize();
+        for (int i = 0; i < transferCount; i++)
+        {
+            windowSize = controller.transferAcked(now + i * interval);
+        }
+        return windowSize;
+    }
+}
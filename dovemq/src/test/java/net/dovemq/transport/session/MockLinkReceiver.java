@@ -17,7 +17,6 @@
 
 package net.dovemq.transport.session;
 
-import java.util.Collection;
 import java.util.Random;
 
 import net.dovemq.transport.frame.CAMQPMessagePayload;
@@ -142,12 +141,11 @@ public class MockLinkReceiver implements CAMQPLinkMessageHandler, Runnable
     }
 
     @Override
-    public Collection<Long> dispositionReceived(Collection<Long> deliveryIds,
+    public void dispositionReceived(long firstDeliveryId, long lastDeliveryId,
             boolean settleMode,
             Object newState)
     {
         // TODO Auto-generated method stub
-        return null;
     }
 
     @Override
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2012 Tejeswar Das
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package net.dovemq.transport.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class CAMQPThreadPoolTest extends TestCase
+{
+    public CAMQPThreadPoolTest(String name)
+    {
+        super(name);
+    }
+
+    public void testQueueDepth() throws InterruptedException
+    {
+        CAMQPThreadPool threadPool = CAMQPThreadPool.createThreadPool("CAMQPThreadPoolTest", 1);
+        final CountDownLatch startGate = new CountDownLatch(1);
+        final CountDownLatch endGate = new CountDownLatch(6);
+        Runnable task = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    startGate.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                endGate.countDown();
+            }
+        };
+
+        for (int i = 0; i < 6; i++)
+        {
+            threadPool.execute(task);
+        }
+        assertEquals(1, threadPool.getMaximumPoolSize());
+        assertEquals(5, threadPool.getQueueDepth());
+        assertEquals(5, threadPool.getMaxQueueDepth());
+        assertEquals(6, threadPool.getSubmittedTaskCount());
+
+        startGate.countDown();
+        assertTrue(endGate.await(10, TimeUnit.SECONDS));
+        assertEquals(0, threadPool.getQueueDepth());
+        assertEquals(5, threadPool.getMaxQueueDepth());
+
+        threadPool.shutdown();
+        assertTrue(threadPool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}